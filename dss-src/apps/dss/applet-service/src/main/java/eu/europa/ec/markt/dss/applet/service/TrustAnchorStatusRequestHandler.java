@@ -0,0 +1,92 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.markt.dss.applet.service;
+
+import eu.europa.ec.markt.dss.validation.tsl.TrustAnchorSnapshot;
+import eu.europa.ec.markt.dss.validation.tsl.TrustAnchorSource;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Date;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.HttpRequestHandler;
+
+/**
+ * Report whether the trust anchors are loaded, so that a load balancer can hold the traffic until they are. The
+ * response is 200 when the trust anchors are available and 503 otherwise; the body gives the version and the age of the
+ * current snapshot.
+ * 
+ * 
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class TrustAnchorStatusRequestHandler implements HttpRequestHandler {
+
+    private TrustAnchorSource trustAnchorSource;
+
+    private boolean unavailableWhenStale = false;
+
+    /**
+     * @param trustAnchorSource the trustAnchorSource to set
+     */
+    public void setTrustAnchorSource(TrustAnchorSource trustAnchorSource) {
+        this.trustAnchorSource = trustAnchorSource;
+    }
+
+    /**
+     * Answer 503 also when the trust anchors are stale (only restored from a previous run, or too old).
+     * 
+     * @param unavailableWhenStale the unavailableWhenStale to set
+     */
+    public void setUnavailableWhenStale(boolean unavailableWhenStale) {
+        this.unavailableWhenStale = unavailableWhenStale;
+    }
+
+    @Override
+    public void handleRequest(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        TrustAnchorSnapshot snapshot = trustAnchorSource.getSnapshot();
+        boolean ready = snapshot != null;
+        boolean stale = trustAnchorSource.isStale();
+
+        if (!ready || (stale && unavailableWhenStale)) {
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        } else {
+            resp.setStatus(HttpServletResponse.SC_OK);
+        }
+        resp.setContentType("text/plain");
+        resp.setHeader("Cache-Control", "no-cache");
+
+        PrintWriter writer = resp.getWriter();
+        writer.println("ready=" + ready);
+        writer.println("stale=" + stale);
+        if (snapshot != null) {
+            writer.println("version=" + snapshot.getVersion());
+            writer.println("loadingTime=" + snapshot.getLoadingTime().getTime());
+            writer.println("age=" + snapshot.getAge(new Date()));
+            writer.println("restored=" + snapshot.isRestored());
+        }
+        writer.flush();
+    }
+
+}
@@ -1,20 +1,14 @@
 package eu.europa.ec.markt.dss.signature;
 
-import java.io.ByteArrayOutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Collection;
 
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
-public class DocumentFactory {
+import eu.europa.ec.markt.dss.signature.xades.XMLInfrastructure;
 
-    private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+public class DocumentFactory {
 
     public static Document newXmlDocument(org.w3c.dom.Element element, String path, String elementId) {
         return new InMemoryDocument(toXml(element), formatXmlDocName(path, elementId), MimeType.XML);
@@ -56,14 +50,8 @@ public class DocumentFactory {
     }
 
     private static byte[] toXml(org.w3c.dom.Node node) {
-        Transformer t;
         try {
-            t = TRANSFORMER_FACTORY.newTransformer();
-            ByteArrayOutputStream s = new ByteArrayOutputStream(1024*20);
-            t.transform(new DOMSource(node), new StreamResult(s));
-            return s.toByteArray();
-        } catch (TransformerConfigurationException e) {
-            throw new IllegalStateException(e);
+            return XMLInfrastructure.toByteArray(node);
         } catch (TransformerException e) {
             throw new IllegalStateException(e);
         }
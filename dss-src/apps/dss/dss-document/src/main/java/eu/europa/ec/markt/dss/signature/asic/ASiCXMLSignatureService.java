@@ -11,6 +11,7 @@ package eu.europa.ec.markt.dss.signature.asic;
 
 import eu.europa.ec.markt.dss.Digest;
 import eu.europa.ec.markt.dss.DigestAlgorithm;
+import eu.europa.ec.markt.dss.signature.CompoundDocument;
 import eu.europa.ec.markt.dss.signature.Document;
 import eu.europa.ec.markt.dss.signature.DocumentSignatureService;
 import eu.europa.ec.markt.dss.signature.InMemoryDocument;
@@ -18,6 +19,7 @@ import eu.europa.ec.markt.dss.signature.SignatureFormat;
 import eu.europa.ec.markt.dss.signature.SignaturePackaging;
 import eu.europa.ec.markt.dss.signature.SignatureParameters;
 import eu.europa.ec.markt.dss.signature.xades.XAdESService;
+import eu.europa.ec.markt.dss.signature.xades.XMLInfrastructure;
 import eu.europa.ec.markt.dss.validation.CertificateVerifier;
 import eu.europa.ec.markt.dss.validation.SignedDocumentValidator;
 import eu.europa.ec.markt.dss.validation.tsp.TSPSource;
@@ -27,23 +29,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import org.apache.commons.io.IOUtils;
 import org.w3c.dom.Element;
 
 /**
- * Implementation of DocumentSignatureService for ASiC-S documents.
+ * Implementation of DocumentSignatureService for ASiC-S documents, and for ASiC-E documents when the document to sign
+ * is a CompoundDocument.
  * 
  * <p>
  * DISCLAIMER: Project owner DG-MARKT.
@@ -53,10 +51,16 @@ import org.w3c.dom.Element;
  */
 public class ASiCXMLSignatureService implements DocumentSignatureService {
 
+    private static final String MIMETYPE_ASIC_S = "application/vnd.etsi.asic-s+zip";
+
+    private static final String MIMETYPE_ASIC_E = "application/vnd.etsi.asic-e+zip";
+
     private TSPSource tspSource;
 
     private CertificateVerifier certificateVerifier;
 
+    private ExecutorService executorService;
+
     /**
      * @param tspSource the tspSource to set
      */
@@ -71,6 +75,16 @@ public class ASiCXMLSignatureService implements DocumentSignatureService {
         this.certificateVerifier = certificateVerifier;
     }
 
+    /**
+     * Set the executor used to digest the data objects of an ASiC-E container in parallel. If not set, the data
+     * objects are digested one after the other.
+     * 
+     * @param executorService the executorService to set
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
     @Override
     public Digest digest(Document document, SignatureParameters parameters) throws IOException {
         try {
@@ -90,6 +104,7 @@ public class ASiCXMLSignatureService implements DocumentSignatureService {
 
         /* Signature */
         XAdESService service = new XAdESService();
+        service.setExecutorService(executorService);
 
         SignatureParameters xadesParams = new SignatureParameters();
         xadesParams.setCertificateChain(parameters.getCertificateChain());
@@ -109,21 +124,40 @@ public class ASiCXMLSignatureService implements DocumentSignatureService {
             ByteArrayOutputStream output = new ByteArrayOutputStream();
             ZipOutputStream zip = new ZipOutputStream(output);
 
+            boolean asice = document instanceof CompoundDocument;
+
             ZipEntry mtEntry = new ZipEntry("mimetype");
             zip.setLevel(ZipEntry.STORED);
             zip.putNextEntry(mtEntry);
-            zip.write("application/vnd.etsi.asic-s+zip".getBytes());
+            zip.write((asice ? MIMETYPE_ASIC_E : MIMETYPE_ASIC_S).getBytes());
 
             zip.setLevel(ZipEntry.DEFLATED);
-            ZipEntry entry = new ZipEntry("detached-file");
-            zip.putNextEntry(entry);
-            IOUtils.copy(document.openStream(), zip);
+            if (asice) {
+                /* ASiC-E: each data object is stored under its name, which is the URI of its reference */
+                for (Document dataObject : (CompoundDocument) document) {
+                    if (dataObject.getName() == null) {
+                        throw new IllegalArgumentException("The data objects of an ASiC-E container must have a name");
+                    }
+                    zip.putNextEntry(new ZipEntry(dataObject.getName()));
+                    InputStream input = dataObject.openStream();
+                    try {
+                        IOUtils.copy(input, zip);
+                    } finally {
+                        input.close();
+                    }
+                }
+            } else {
+                ZipEntry entry = new ZipEntry("detached-file");
+                zip.putNextEntry(entry);
+                IOUtils.copy(document.openStream(), zip);
+            }
 
             /* Signature */
             ZipEntry signatureEntry = new ZipEntry("META-INF/signatures.xml");
             zip.putNextEntry(signatureEntry);
             
             XAdESService service = new XAdESService();
+            service.setExecutorService(executorService);
 
             SignatureParameters xadesParams = new SignatureParameters();
             xadesParams.setCertificateChain(parameters.getCertificateChain());
@@ -134,23 +168,20 @@ public class ASiCXMLSignatureService implements DocumentSignatureService {
 
             Document signedDocument = service.signDocument(document, xadesParams, signatureValue);
 
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            org.w3c.dom.Document signature = dbf.newDocumentBuilder().parse(signedDocument.openStream());
+            InputStream signedInput = signedDocument.openStream();
+            org.w3c.dom.Document signature = XMLInfrastructure.parse(signedInput);
+            signedInput.close();
             
             Element s = (Element) signature.removeChild(signature.getDocumentElement()); 
 
-            org.w3c.dom.Document doc = dbf.newDocumentBuilder().newDocument();
+            org.w3c.dom.Document doc = XMLInfrastructure.newDocument();
             Element sigs = doc.createElementNS("http://uri.etsi.org/2918/v1.1.1#", "XAdESSignatures");
             doc.adoptNode(s);
             sigs.appendChild(s);
             doc.appendChild(sigs);
 
             /* Output document */
-            Result outputResult = new StreamResult(zip);
-            Transformer xformer = TransformerFactory.newInstance().newTransformer();
-            Source source = new DOMSource(doc);
-            xformer.transform(source, outputResult);
+            XMLInfrastructure.transform(doc, new StreamResult(zip));
 
             zip.close();
 
@@ -0,0 +1,142 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.signature.xades;
+
+import eu.europa.ec.markt.dss.DigestAlgorithm;
+import eu.europa.ec.markt.dss.signature.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Digest of the data objects of a signature, streamed from each Document. The data objects of a multi-file signature
+ * (detached XAdES, ASiC-E) are independent, so they can be digested in parallel on an executor.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public abstract class DocumentDigester {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Digest the content of the document, read in one pass.
+     * 
+     * @param document
+     * @param digestAlgorithm
+     * @return the digest value
+     * @throws IOException
+     */
+    public static byte[] digest(Document document, DigestAlgorithm digestAlgorithm) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(digestAlgorithm.getName());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        InputStream input = document.openStream();
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            input.close();
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Digest each document with the algorithm at the same index. When an executor is given, the documents are digested
+     * in parallel on it, else they are digested one after the other in the calling thread.
+     * 
+     * @param documents
+     * @param digestAlgorithms
+     * @param executorService may be null
+     * @return the digest values, in the order of the documents
+     * @throws IOException
+     */
+    public static List<byte[]> digest(List<Document> documents, List<DigestAlgorithm> digestAlgorithms,
+            ExecutorService executorService) throws IOException {
+
+        List<byte[]> digests = new ArrayList<byte[]>(documents.size());
+        if (executorService == null || documents.size() < 2) {
+            for (int i = 0; i < documents.size(); i++) {
+                digests.add(digest(documents.get(i), digestAlgorithms.get(i)));
+            }
+            return digests;
+        }
+
+        List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>(documents.size());
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                futures.add(executorService.submit(new DigestTask(documents.get(i), digestAlgorithms.get(i))));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    digests.add(futures.get(i).get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while digesting " + documents.get(i).getName(), e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IOException("Cannot digest " + documents.get(i).getName(), e.getCause());
+                }
+            }
+            return digests;
+        } finally {
+            /* Nothing is left running when one of the digests failed */
+            for (Future<byte[]> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static class DigestTask implements Callable<byte[]> {
+
+        private final Document document;
+
+        private final DigestAlgorithm digestAlgorithm;
+
+        DigestTask(Document document, DigestAlgorithm digestAlgorithm) {
+            this.document = document;
+            this.digestAlgorithm = digestAlgorithm;
+        }
+
+        @Override
+        public byte[] call() throws IOException {
+            return digest(document, digestAlgorithm);
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.markt.dss.signature.xades;
+
+import eu.europa.ec.markt.dss.signature.Document;
+import eu.europa.ec.markt.dss.signature.MimeType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.logging.Logger;
+
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+/**
+ * Enveloping signature whose enveloped data is not kept in memory: the serialized signature is written once in a
+ * spool file, the content of the ds:Object holding the data being Base64 encoded from the original document while it
+ * is written. The signature does not depend on the original document afterwards. The spool file is deleted by
+ * {@link #delete()}, or when the document is garbage collected.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class EnvelopingSignatureDocument implements Document {
+
+    private static final Logger LOG = Logger.getLogger(EnvelopingSignatureDocument.class.getName());
+
+    private final File spoolFile;
+
+    private final String name;
+
+    /**
+     * The default constructor for EnvelopingSignatureDocument.
+     * 
+     * @param head the serialized signature up to the content of the ds:Object
+     * @param envelopedData the original document
+     * @param tail the serialized signature after the content of the ds:Object
+     * @param name the name of the signature
+     * @throws IOException if the original document cannot be read or the spool file cannot be written
+     */
+    EnvelopingSignatureDocument(byte[] head, Document envelopedData, byte[] tail, String name) throws IOException {
+        this.name = name;
+        this.spoolFile = File.createTempFile("signature", ".xml");
+        spoolFile.setReadable(false, false);
+        spoolFile.setWritable(false, false);
+        spoolFile.setReadable(true, true);
+        spoolFile.setWritable(true, true);
+        boolean complete = false;
+        try {
+            OutputStream output = new BufferedOutputStream(new FileOutputStream(spoolFile));
+            try {
+                output.write(head);
+                /*
+                 * Encoded without line breaks, like the data embedded in the DOM. Closing the Base64 stream writes its
+                 * last block without closing the spool file.
+                 */
+                OutputStream data = new Base64OutputStream(new CloseShieldOutputStream(output), true, 0, new byte[0]);
+                InputStream input = envelopedData.openStream();
+                try {
+                    IOUtils.copy(input, data);
+                } finally {
+                    input.close();
+                }
+                data.close();
+                output.write(tail);
+            } finally {
+                output.close();
+            }
+            complete = true;
+        } finally {
+            if (!complete) {
+                delete();
+            }
+        }
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        return new BufferedInputStream(new FileInputStream(spoolFile));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public MimeType getMimeType() {
+        return MimeType.XML;
+    }
+
+    /**
+     * Delete the spool file of the signature. The document cannot be read afterwards.
+     */
+    public void delete() {
+        if (spoolFile.exists() && !spoolFile.delete()) {
+            LOG.warning("Cannot delete the spooled signature " + spoolFile);
+        }
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            delete();
+        } finally {
+            super.finalize();
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.signature.xades;
+
+import eu.europa.ec.markt.dss.signature.CompoundDocument;
+import eu.europa.ec.markt.dss.signature.Document;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.xml.crypto.Data;
+import javax.xml.crypto.OctetStreamData;
+import javax.xml.crypto.URIDereferencer;
+import javax.xml.crypto.URIReference;
+import javax.xml.crypto.URIReferenceException;
+import javax.xml.crypto.XMLCryptoContext;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+
+/**
+ * URIDereferencer giving back the documents of a detached signature by their name. A document without name is the
+ * target of the reference without URI.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class NameBasedDocumentRepository implements URIDereferencer {
+
+    private static final String ANONYMOUS_REFERENCE_URI = "detached-file";
+
+    private final Map<String, Document> repo;
+    private final XMLSignatureFactory sigFac;
+
+    public NameBasedDocumentRepository(Document document, XMLSignatureFactory sigFac) {
+        this.repo = new HashMap<String, Document>();
+        this.sigFac = sigFac;
+        registerDocuments(documentIterator(document));
+    }
+
+    @Override
+    public Data dereference(URIReference uriReference, XMLCryptoContext context)
+            throws URIReferenceException {
+        Document doc;
+        doc = findDocument(uriReference.getURI());
+        if (doc != null) {
+            try {
+                return new OctetStreamData(doc.openStream());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        } else {
+            return sigFac.getURIDereferencer().dereference(uriReference, context);
+        }
+    }
+
+    private static Iterator<Document> documentIterator(Document document) {
+        if (document instanceof CompoundDocument) {
+            return ((CompoundDocument) document).iterator();
+        } else {
+            return Collections.singletonList(document).iterator();
+        }
+    }
+
+    private void registerDocuments(Iterator<Document> documents) {
+        while (documents.hasNext()) {
+            Document document = documents.next();
+            String name = document.getName();
+            if (name == null) {
+                // For backwards compatibility mainly
+                name = ANONYMOUS_REFERENCE_URI;
+                if (repo.containsKey(ANONYMOUS_REFERENCE_URI)) {
+                    throw new IllegalArgumentException("Multiple anonymous files are not supported");
+                }
+            }
+            try {
+                // Strip query string or fragment
+                URI uri = new URI(name);
+                name = new URI(uri.getScheme(), uri.getUserInfo(), uri.getHost(),
+                        uri.getPort(), uri.getPath(), null, null).toString();
+            } catch (URISyntaxException e) {
+                throw new RuntimeException(e);
+            }
+            repo.put(name, document);
+        }
+    }
+
+    /**
+     * @param uri the URI of a reference, null for the reference without URI
+     * @return the document, or null if the reference does not target a document of the repository
+     */
+    public Document findDocument(String uri) {
+        return repo.get(uri != null ? uri : ANONYMOUS_REFERENCE_URI);
+    }
+}
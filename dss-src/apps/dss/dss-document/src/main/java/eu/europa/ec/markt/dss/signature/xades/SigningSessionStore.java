@@ -0,0 +1,130 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.markt.dss.signature.xades;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the XAdES signing sessions between the computation of the data to be signed and the signature, so that the
+ * prepared DOM does not need to be built again. The sessions are kept in memory, they expire after a time to live and
+ * the oldest ones are dropped when there are too many of them.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class SigningSessionStore {
+
+    private static final Logger LOG = Logger.getLogger(SigningSessionStore.class.getName());
+
+    private static final SigningSessionStore SHARED_STORE = new SigningSessionStore();
+
+    private long timeToLive = 5 * 60 * 1000L;
+
+    private int maxSessions = 64;
+
+    /* Insertion order, so that the eldest entries are also the first to expire */
+    private final Map<String, XAdESSigningSession> sessions = new LinkedHashMap<String, XAdESSigningSession>() {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, XAdESSigningSession> eldest) {
+            if (size() > maxSessions) {
+                LOG.fine("Too many signing sessions, dropping " + eldest.getKey());
+                return true;
+            }
+            return false;
+        }
+
+    };
+
+    /**
+     * @return the store shared by default by the XAdESService instances
+     */
+    public static SigningSessionStore getSharedStore() {
+        return SHARED_STORE;
+    }
+
+    /**
+     * @param timeToLive the time to live of a session, in milliseconds
+     */
+    public synchronized void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * @param maxSessions the maximum number of sessions kept in memory
+     */
+    public synchronized void setMaxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * Keep the session until it expires. A previous session with the same id is replaced.
+     * 
+     * @param session
+     */
+    public synchronized void put(XAdESSigningSession session) {
+        purgeExpired();
+        sessions.remove(session.getId());
+        sessions.put(session.getId(), session);
+    }
+
+    /**
+     * Take the session out of the store.
+     * 
+     * @param id
+     * @return the session, or null if it is unknown or expired
+     */
+    public synchronized XAdESSigningSession remove(String id) {
+        purgeExpired();
+        return sessions.remove(id);
+    }
+
+    /**
+     * @return the number of sessions in the store
+     */
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Drop all the sessions
+     */
+    public synchronized void clear() {
+        sessions.clear();
+    }
+
+    private void purgeExpired() {
+        long expiry = System.currentTimeMillis() - timeToLive;
+        Iterator<XAdESSigningSession> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().getCreationTime() >= expiry) {
+                break;
+            }
+            it.remove();
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.markt.dss.signature.xades;
+
+import eu.europa.ec.markt.dss.signature.Document;
+import eu.europa.ec.markt.dss.signature.SignatureFormat;
+import eu.europa.ec.markt.dss.validation.CertificateVerifier;
+import eu.europa.ec.markt.dss.validation.ValidationContext;
+import eu.europa.ec.markt.dss.validation.xades.XAdESCertificateSource;
+import eu.europa.ec.markt.dss.validation.xades.XAdESSignature;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.w3c.dom.Element;
+
+/**
+ * State shared by the levels of a XAdES extension (-T, -C, -X, -XL, -A) applied to one signature. Every level works
+ * on the same DOM: the unsigned signature properties are added or removed one by one, and the certificate validation
+ * is done once for -C and -XL.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class XAdESExtensionContext {
+
+    private final Element signatureElement;
+
+    private final Document originalData;
+
+    private final SignatureFormat signatureFormat;
+
+    private final XAdESSignature signature;
+
+    private ValidationContext validationContext;
+
+    /**
+     * The default constructor for XAdESExtensionContext.
+     * 
+     * @param signatureElement
+     * @param originalData
+     * @param signatureFormat the target level
+     */
+    XAdESExtensionContext(Element signatureElement, Document originalData, SignatureFormat signatureFormat) {
+        this.signatureElement = signatureElement;
+        this.originalData = originalData;
+        this.signatureFormat = signatureFormat;
+        this.signature = new XAdESSignature(signatureElement);
+    }
+
+    /**
+     * @return the ds:Signature element
+     */
+    public Element getSignatureElement() {
+        return signatureElement;
+    }
+
+    /**
+     * @return the original data, for detached signatures
+     */
+    public Document getOriginalData() {
+        return originalData;
+    }
+
+    /**
+     * @return the target level of the extension
+     */
+    public SignatureFormat getSignatureFormat() {
+        return signatureFormat;
+    }
+
+    /**
+     * @return the signature, which reflects the properties added by the previous levels
+     */
+    public XAdESSignature getSignature() {
+        return signature;
+    }
+
+    /**
+     * @param localName
+     * @return the xades:UnsignedSignatureProperties children with the given name
+     */
+    public List<Element> getUnsignedSignatureProperties(String localName) {
+        return signature.getProperties().getUnsignedSignatureProperties(XAdESSignature.XADES_NAMESPACE, localName);
+    }
+
+    /**
+     * @return all the xades:UnsignedSignatureProperties children, in document order
+     */
+    public List<Element> getUnsignedSignatureProperties() {
+        return signature.getProperties().getUnsignedSignaturePropertyList();
+    }
+
+    /**
+     * Marshal the property at the end of xades:UnsignedSignatureProperties, which is created if needed.
+     * 
+     * @param marshaller
+     * @param property the JAXB element of the property
+     * @throws JAXBException
+     */
+    public void addUnsignedSignatureProperty(Marshaller marshaller, Object property) throws JAXBException {
+        marshaller.marshal(property, signature.getOrCreateUnsignedSignatureProperties());
+        signature.refreshProperties();
+    }
+
+    /**
+     * @param property the xades:UnsignedSignatureProperties child to remove
+     */
+    public void removeUnsignedSignatureProperty(Element property) {
+        property.getParentNode().removeChild(property);
+        signature.refreshProperties();
+    }
+
+    /**
+     * Validate the signing certificate at the signing time, once for all the levels that need it.
+     * 
+     * @param certificateVerifier
+     * @return the validation context
+     * @throws IOException
+     */
+    public ValidationContext getValidationContext(CertificateVerifier certificateVerifier) throws IOException {
+        if (validationContext == null) {
+            validationContext = certificateVerifier.validateCertificate(signature.getSigningCertificate(),
+                    signature.getSigningTime(), new XAdESCertificateSource(signatureElement, false), null, null);
+        }
+        return validationContext;
+    }
+
+}
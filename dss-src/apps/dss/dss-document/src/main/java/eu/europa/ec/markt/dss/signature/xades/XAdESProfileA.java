@@ -21,9 +21,6 @@
 package eu.europa.ec.markt.dss.signature.xades;
 
 import eu.europa.ec.markt.dss.DigestAlgorithm;
-import eu.europa.ec.markt.dss.signature.Document;
-import eu.europa.ec.markt.dss.signature.SignatureFormat;
-import eu.europa.ec.markt.dss.validation.xades.XAdESSignature;
 import eu.europa.ec.markt.tsl.jaxb.xades.XAdESTimeStampType;
 
 import java.io.IOException;
@@ -32,9 +29,6 @@ import java.security.NoSuchAlgorithmException;
 import java.util.logging.Logger;
 
 import javax.xml.bind.JAXBException;
-import javax.xml.xpath.XPathExpressionException;
-
-import org.w3c.dom.Element;
 
 /**
  * Holds level A aspects of xades
@@ -59,51 +53,22 @@ public class XAdESProfileA extends XAdESProfileXL {
         super();
     }
 
-    private Element getUnsignedSignatureProperties(Element signatureEl) throws XPathExpressionException {
-        Element unsignedSignaturePropertiesNode = XMLUtils.getElement(signatureEl,
-                "//xades:UnsignedSignatureProperties");
-        if (unsignedSignaturePropertiesNode == null) {
-            Element qualifyingProperties = XMLUtils.getElement(signatureEl, "//xades:QualifyingProperties");
-            Element unsignedProperties = XMLUtils.getElement(qualifyingProperties, "//xades:UnsignedProperties");
-            if (unsignedProperties == null) {
-                unsignedProperties = qualifyingProperties.getOwnerDocument().createElementNS(XADES_NAMESPACE,
-                        "UnsignedProperties");
-                qualifyingProperties.appendChild(unsignedProperties);
-            }
-            unsignedSignaturePropertiesNode = unsignedProperties.getOwnerDocument().createElementNS(XADES_NAMESPACE,
-                    "UnsignedSignatureProperties");
-            unsignedProperties.appendChild(unsignedSignaturePropertiesNode);
-        }
-        return unsignedSignaturePropertiesNode;
-    }
-
     @Override
-    protected void extendSignatureTag(Element signatureEl, Document originalData, SignatureFormat signatureFormat) {
+    protected void extendSignature(XAdESExtensionContext context) throws IOException, JAXBException {
 
         /* Up to -XL */
-        super.extendSignatureTag(signatureEl, originalData, signatureFormat);
+        super.extendSignature(context);
 
         try {
 
-            XAdESSignature signature = new XAdESSignature(signatureEl);
-
             MessageDigest digest = MessageDigest.getInstance(DigestAlgorithm.SHA1.getName());
-            digest.update(signature.getArchiveTimestampData(-1, originalData));
+            digest.update(context.getSignature().getArchiveTimestampData(-1, context.getOriginalData()));
             byte[] digestValue = digest.digest();
             XAdESTimeStampType timeStampXadesA = createXAdESTimeStamp(DigestAlgorithm.SHA1, digestValue);
 
-            Element unsignedSignaturePropertiesNode = getUnsignedSignatureProperties(signatureEl);
+            context.addUnsignedSignatureProperty(getMarshaller(),
+                    getXades14ObjectFactory().createArchiveTimeStamp(timeStampXadesA));
 
-            marshaller.marshal(getXades14ObjectFactory().createArchiveTimeStamp(timeStampXadesA),
-                    unsignedSignaturePropertiesNode);
-
-        } catch (XPathExpressionException e) {
-            throw new RuntimeException(e);
-
-        } catch (JAXBException e) {
-            throw new RuntimeException("JAXB error: " + e.getMessage(), e);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
@@ -16,45 +16,44 @@
  *
  * You should have received a copy of the GNU Lesser General Public License along with
  * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
- *
- * Inventi:
- *
- * * Added support for compound documents
- * * Support signing XML doc elements
+ *
+ * Inventi:
+ *
+ * * Added support for compound documents
+ * * Support signing XML doc elements
  */
 
 package eu.europa.ec.markt.dss.signature.xades;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.crypto.Data;
 import javax.xml.crypto.MarshalException;
-import javax.xml.crypto.OctetStreamData;
 import javax.xml.crypto.URIDereferencer;
 import javax.xml.crypto.URIReference;
 import javax.xml.crypto.URIReferenceException;
@@ -81,16 +80,7 @@ import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeConstants;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPathExpressionException;
 
 import org.apache.commons.codec.binary.Hex;
@@ -102,37 +92,38 @@ import org.apache.jcp.xml.dsig.internal.dom.DOMXMLSignature;
 import org.apache.jcp.xml.dsig.internal.dom.XMLDSigRI;
 import org.apache.xml.security.Init;
 import org.apache.xml.security.algorithms.implementations.SignatureECDSA;
-import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.transforms.Transforms;
 import org.bouncycastle.util.encoders.Base64;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
-
-import eu.europa.ec.markt.dss.DigestAlgorithm;
-import eu.europa.ec.markt.dss.SignatureAlgorithm;
-import eu.europa.ec.markt.dss.signature.CompoundDocument;
-import eu.europa.ec.markt.dss.signature.Document;
-import eu.europa.ec.markt.dss.signature.InMemoryDocument;
-import eu.europa.ec.markt.dss.signature.MimeType;
-import eu.europa.ec.markt.dss.signature.SignaturePackaging;
-import eu.europa.ec.markt.dss.signature.SignatureParameters;
-import eu.europa.ec.markt.dss.signature.provider.SpecialPrivateKey;
-import eu.europa.ec.markt.tsl.jaxb.xades.AnyType;
-import eu.europa.ec.markt.tsl.jaxb.xades.CertIDListType;
-import eu.europa.ec.markt.tsl.jaxb.xades.CertIDType;
-import eu.europa.ec.markt.tsl.jaxb.xades.ClaimedRolesListType;
-import eu.europa.ec.markt.tsl.jaxb.xades.DataObjectFormatType;
-import eu.europa.ec.markt.tsl.jaxb.xades.DigestAlgAndValueType;
-import eu.europa.ec.markt.tsl.jaxb.xades.ObjectFactory;
-import eu.europa.ec.markt.tsl.jaxb.xades.QualifyingPropertiesType;
-import eu.europa.ec.markt.tsl.jaxb.xades.SignedDataObjectPropertiesType;
-import eu.europa.ec.markt.tsl.jaxb.xades.SignedPropertiesType;
-import eu.europa.ec.markt.tsl.jaxb.xades.SignedSignaturePropertiesType;
-import eu.europa.ec.markt.tsl.jaxb.xades.SignerRoleType;
-import eu.europa.ec.markt.tsl.jaxb.xades.UnsignedPropertiesType;
-import eu.europa.ec.markt.tsl.jaxb.xmldsig.DigestMethodType;
-import eu.europa.ec.markt.tsl.jaxb.xmldsig.X509IssuerSerialType;
-
+
+import eu.europa.ec.markt.dss.DigestAlgorithm;
+import eu.europa.ec.markt.dss.SignatureAlgorithm;
+import eu.europa.ec.markt.dss.signature.CompoundDocument;
+import eu.europa.ec.markt.dss.signature.Document;
+import eu.europa.ec.markt.dss.signature.InMemoryDocument;
+import eu.europa.ec.markt.dss.signature.MimeType;
+import eu.europa.ec.markt.dss.signature.SignatureFormat;
+import eu.europa.ec.markt.dss.signature.SignaturePackaging;
+import eu.europa.ec.markt.dss.signature.SignatureParameters;
+import eu.europa.ec.markt.dss.signature.provider.SpecialPrivateKey;
+import eu.europa.ec.markt.dss.validation.x509.InstanceCache;
+import eu.europa.ec.markt.tsl.jaxb.xades.AnyType;
+import eu.europa.ec.markt.tsl.jaxb.xades.CertIDListType;
+import eu.europa.ec.markt.tsl.jaxb.xades.CertIDType;
+import eu.europa.ec.markt.tsl.jaxb.xades.ClaimedRolesListType;
+import eu.europa.ec.markt.tsl.jaxb.xades.DataObjectFormatType;
+import eu.europa.ec.markt.tsl.jaxb.xades.DigestAlgAndValueType;
+import eu.europa.ec.markt.tsl.jaxb.xades.ObjectFactory;
+import eu.europa.ec.markt.tsl.jaxb.xades.QualifyingPropertiesType;
+import eu.europa.ec.markt.tsl.jaxb.xades.SignedDataObjectPropertiesType;
+import eu.europa.ec.markt.tsl.jaxb.xades.SignedPropertiesType;
+import eu.europa.ec.markt.tsl.jaxb.xades.SignedSignaturePropertiesType;
+import eu.europa.ec.markt.tsl.jaxb.xades.SignerRoleType;
+import eu.europa.ec.markt.tsl.jaxb.xades.UnsignedPropertiesType;
+import eu.europa.ec.markt.tsl.jaxb.xmldsig.DigestMethodType;
+import eu.europa.ec.markt.tsl.jaxb.xmldsig.X509IssuerSerialType;
+
 /**
  * Contains BES aspects of XAdES
  * 
@@ -146,12 +137,15 @@ public class XAdESProfileBES {
 
     private static final Logger LOG = Logger.getLogger(XAdESProfileBES.class.getName());
 
+    /* Digest of the content of the documents recently signed, so that the session key does not hash them again */
+    private static final InstanceCache<Document, byte[]> CONTENT_DIGESTS = new InstanceCache<Document, byte[]>(64);
+
     private ObjectFactory xades13ObjectFactory = new ObjectFactory();
 
     private DatatypeFactory dataFactory;
 
-    private static final String ANONYMOUS_REFERENCE_URI = "detached-file";
-
+    private ExecutorService executorService;
+
     /**
      * The default constructor for XAdESProfileBES.
      */
@@ -159,6 +153,16 @@ public class XAdESProfileBES {
         Init.init();
     }
 
+    /**
+     * Set the executor used to digest the documents of a detached signature in parallel. If not set, the documents are
+     * digested one after the other.
+     * 
+     * @param executorService the executorService to set
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
     /**
      * @return the dataFactory
      */
@@ -187,14 +191,14 @@ public class XAdESProfileBES {
         return xades13ObjectFactory;
     }
 
-    protected final QualifyingPropertiesType createXAdESQualifyingProperties(SignatureParameters params,
-            String signedInfoId, Reference reference, MimeType mimeType) {
-        return createXAdESQualifyingProperties(params, signedInfoId, Collections.singletonList(reference),
-                new InMemoryDocument(null, null, mimeType));
-    }
-
+    protected final QualifyingPropertiesType createXAdESQualifyingProperties(SignatureParameters params,
+            String signedInfoId, Reference reference, MimeType mimeType) {
+        return createXAdESQualifyingProperties(params, signedInfoId, Collections.singletonList(reference),
+                new InMemoryDocument(null, null, mimeType));
+    }
+
     protected QualifyingPropertiesType createXAdESQualifyingProperties(SignatureParameters params,
-            String signedInfoId, List<Reference> documentReferences, Document document) {
+            String signedInfoId, List<Reference> documentReferences, Document document) {
 
         // QualifyingProperties
         QualifyingPropertiesType qualifyingProperties = xades13ObjectFactory.createQualifyingPropertiesType();
@@ -222,23 +226,23 @@ public class XAdESProfileBES {
         signingCertificates.getCert().add(signingCertificateId);
         signedSignatureProperties.setSigningCertificate(signingCertificates);
 
-        // DataObjectProperties
+        // DataObjectProperties
         SignedDataObjectPropertiesType dataObjectProperties = new SignedDataObjectPropertiesType();
-        Iterator<Reference> refIt = documentReferences.iterator();
-        Iterator<Document> docIt = documentIterator(document);
-        while (refIt.hasNext() && docIt.hasNext()) {
-            Reference ref = refIt.next();
-            Document doc = docIt.next();
-            if (ref.getId() != null && doc.getMimeType() != null) {
+        Iterator<Reference> refIt = documentReferences.iterator();
+        Iterator<Document> docIt = documentIterator(document);
+        while (refIt.hasNext() && docIt.hasNext()) {
+            Reference ref = refIt.next();
+            Document doc = docIt.next();
+            if (ref.getId() != null && doc.getMimeType() != null) {
         DataObjectFormatType dataFormat = new DataObjectFormatType();
-                dataFormat.setObjectReference("#" + ref.getId());
-                dataFormat.setMimeType(doc.getMimeType().getCode());
+                dataFormat.setObjectReference("#" + ref.getId());
+                dataFormat.setMimeType(doc.getMimeType().getCode());
         dataObjectProperties.getDataObjectFormat().add(dataFormat);
-            }
-        }
-        if (dataObjectProperties.getDataObjectFormat().size() > 0) {
+            }
+        }
+        if (dataObjectProperties.getDataObjectFormat().size() > 0) {
         signedProperties.setSignedDataObjectProperties(dataObjectProperties);
-        }
+        }
         
         // SignerRole
         if (params.getClaimedSignerRole() != null) {
@@ -321,14 +325,7 @@ public class XAdESProfileBES {
         List<Transform> transforms = new ArrayList<Transform>();
         transforms.add(fac.newTransform(CanonicalizationMethod.ENVELOPED, (TransformParameterSpec) null));
 
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setNamespaceAware(true);
-        org.w3c.dom.Document empty;
-        try {
-            empty = dbf.newDocumentBuilder().newDocument();
-        } catch (ParserConfigurationException e1) {
-            throw new RuntimeException(e1);
-        }
+        org.w3c.dom.Document empty = XMLInfrastructure.newDocument();
         Element xpathEl = empty.createElementNS(XMLSignature.XMLNS, "XPath");
         xpathEl.setTextContent("");
         empty.adoptNode(xpathEl);
@@ -344,12 +341,11 @@ public class XAdESProfileBES {
 
         String xadesSignedPropertiesId = "xades-" + computeDeterministicId(params);
         QualifyingPropertiesType qualifyingProperties = createXAdESQualifyingProperties(params,
-                xadesSignedPropertiesId, reference, MimeType.XML);
+                xadesSignedPropertiesId, reference, MimeType.XML);
         qualifyingProperties.setTarget("#" + signatureId);
 
         Node marshallNode = doc.createElement("marshall-node");
-        JAXBContext jaxbContext = JAXBContext.newInstance(ObjectFactory.class);
-        Marshaller marshaller = jaxbContext.createMarshaller();
+        Marshaller marshaller = XMLInfrastructure.getMarshaller(ObjectFactory.class);
         marshaller.marshal(xades13ObjectFactory.createQualifyingProperties(qualifyingProperties), marshallNode);
         Element qualifier = (Element) marshallNode.getFirstChild();
 
@@ -405,7 +401,7 @@ public class XAdESProfileBES {
     private DOMXMLSignature createEnveloping(SignatureParameters params, DOMSignContext signContext,
             org.w3c.dom.Document doc, String signatureId, String signatureValueId, Document inside)
             throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, JAXBException, MarshalException,
-            XMLSignatureException, ParserConfigurationException, IOException {
+            XMLSignatureException, IOException {
 
         XMLSignatureFactory fac = XMLSignatureFactory.getInstance("DOM", new XMLDSigRI());
 
@@ -414,7 +410,7 @@ public class XAdESProfileBES {
         List<XMLObject> objects = new ArrayList<XMLObject>();
         List<Reference> references = new ArrayList<Reference>();
 
-        byte[] b64data = Base64.encode(IOUtils.toByteArray(inside.openStream()));
+        boolean streamed = isStreamedEnveloping(params);
 
         List<Transform> transforms = new ArrayList<Transform>();
         Map<String, String> xpathNamespaceMap = new HashMap<String, String>();
@@ -424,19 +420,25 @@ public class XAdESProfileBES {
         transforms.add(exclusiveTransform);
 
         /* The first reference concern the whole document */
-        Reference reference = fac.newReference("#signed-data-" + computeDeterministicId(params), digestMethod,
-                transforms, null, "signed-data-ref");
+        Reference reference;
+        if (streamed) {
+            /* The Base64 transform gives back the original bytes, so they are digested directly from the document */
+            reference = fac.newReference("#signed-data-" + computeDeterministicId(params), digestMethod, transforms,
+                    null, "signed-data-ref", DocumentDigester.digest(inside, params.getDigestAlgorithm()));
+        } else {
+            reference = fac.newReference("#signed-data-" + computeDeterministicId(params), digestMethod,
+                    transforms, null, "signed-data-ref");
+        }
         references.add(reference);
 
         String xadesSignedPropertiesId = "xades-" + computeDeterministicId(params);
         QualifyingPropertiesType qualifyingProperties = createXAdESQualifyingProperties(params,
-                xadesSignedPropertiesId, reference, MimeType.PLAIN);
+                xadesSignedPropertiesId, reference, MimeType.PLAIN);
         qualifyingProperties.setTarget("#" + signatureId);
 
         Node marshallNode = doc.createElement("marshall-node");
 
-        JAXBContext jaxbContext = JAXBContext.newInstance(ObjectFactory.class);
-        Marshaller marshaller = jaxbContext.createMarshaller();
+        Marshaller marshaller = XMLInfrastructure.getMarshaller(ObjectFactory.class);
         marshaller.marshal(xades13ObjectFactory.createQualifyingProperties(qualifyingProperties), marshallNode);
 
         Element qualifier = (Element) marshallNode.getFirstChild();
@@ -488,7 +490,11 @@ public class XAdESProfileBES {
 
         Element dsObject = doc.createElementNS(XMLSignature.XMLNS, "Object");
         dsObject.setAttribute("Id", "signed-data-" + computeDeterministicId(params));
-        dsObject.setTextContent(new String(b64data));
+        if (streamed) {
+            dsObject.setTextContent(getEnvelopedDataMarker(params));
+        } else {
+            dsObject.setTextContent(new String(Base64.encode(IOUtils.toByteArray(inside.openStream()))));
+        }
         doc.getDocumentElement().appendChild(dsObject);
 
         signContext.setIdAttributeNS((Element) qualifier.getFirstChild(), null, "Id");
@@ -503,30 +509,29 @@ public class XAdESProfileBES {
     private DOMXMLSignature createDetached(SignatureParameters params, DOMSignContext signContext,
             org.w3c.dom.Document doc, String signatureId, String signatureValueId, final Document inside)
             throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, JAXBException, MarshalException,
-            XMLSignatureException, ParserConfigurationException, IOException {
+            XMLSignatureException, IOException {
 
         final XMLSignatureFactory fac = XMLSignatureFactory.getInstance("DOM", new XMLDSigRI());
         DigestMethod digestMethod = fac.newDigestMethod(params.getDigestAlgorithm().getXmlId(), null);
 
-        // Create references
+        // Create references
         List<Reference> references = new ArrayList<Reference>();
-        addReferences(documentIterator(inside), references, digestMethod, fac);
-        // Create repository
-        signContext.setURIDereferencer(new NameBasedDocumentRepository(inside, fac));
-
-        List<XMLObject> objects = new ArrayList<XMLObject>();
+        addReferences(documentIterator(inside), references, digestMethod, params.getDigestAlgorithm(), fac);
+        // Create repository
+        signContext.setURIDereferencer(new NameBasedDocumentRepository(inside, fac));
+
+        List<XMLObject> objects = new ArrayList<XMLObject>();
 
         Map<String, String> xpathNamespaceMap = new HashMap<String, String>();
         xpathNamespaceMap.put("ds", "http://www.w3.org/2000/09/xmldsig#");
 
         String xadesSignedPropertiesId = "xades-" + computeDeterministicId(params);
         QualifyingPropertiesType qualifyingProperties = createXAdESQualifyingProperties(params,
-                xadesSignedPropertiesId, references, inside);
+                xadesSignedPropertiesId, references, inside);
         qualifyingProperties.setTarget("#" + signatureId);
 
         Node marshallNode = doc.createElement("marshall-node");
-        JAXBContext jaxbContext = JAXBContext.newInstance(ObjectFactory.class);
-        Marshaller marshaller = jaxbContext.createMarshaller();
+        Marshaller marshaller = XMLInfrastructure.getMarshaller(ObjectFactory.class);
         marshaller.marshal(xades13ObjectFactory.createQualifyingProperties(qualifyingProperties), marshallNode);
         Element qualifier = (Element) marshallNode.getFirstChild();
 
@@ -583,54 +588,83 @@ public class XAdESProfileBES {
 
     }
 
-    private static Reference createReference(Document document, DigestMethod digestMethod, XMLSignatureFactory sigFac, Integer index)
-            throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
-        String path, fragment;
-        if (MimeType.XML.equals(document.getMimeType()) &&
-                document.getName() != null && document.getName().contains("#")) {
-            path = document.getName().substring(0, document.getName().indexOf("#"));
-            try {
-                fragment = new URI(document.getName()).getFragment();
-            } catch (URISyntaxException e) {
-                throw new IllegalArgumentException(e.getMessage());
-            }
-        } else {
-            path = document.getName();
-            fragment = null;
-        }
-
-        List<Transform> transforms;
-        if (MimeType.XML.equals(document.getMimeType())) {
-            transforms = new ArrayList<Transform>();
-
-            // Convert a # (fragment) within document name to element-id based Reference
-            if (fragment != null) {
-                // FIXME: this xpath should not be hardcoded
-                String xpath = "ancestor-or-self::*[@ID=" + Utils.xPathLiteral(fragment) + "]";
-                transforms.add(sigFac.newTransform(Transforms.TRANSFORM_XPATH,
-                        new XPathFilterParameterSpec(xpath)));
-            }
-
-            // Canonicalize
-            transforms.add(sigFac.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE,
-                    (C14NMethodParameterSpec) null));
-        } else {
-            transforms = null;
-        }
-
-        return sigFac.newReference(path, digestMethod, transforms, null,
-                index != null ? "ref-" + index : null);
-    }
-
-    private static void addReferences(Iterator<Document> documents, List<Reference> references, DigestMethod digestMethod, XMLSignatureFactory sigFac)
-            throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
-        int i = 0;
-        while (documents.hasNext()) {
-            Document document = documents.next();
-            references.add(createReference(document, digestMethod, sigFac, i++));
-        }
-    }
-
+    private static Reference createReference(Document document, DigestMethod digestMethod, XMLSignatureFactory sigFac, Integer index,
+            byte[] digestValue) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
+        String path, fragment;
+        if (MimeType.XML.equals(document.getMimeType()) &&
+                document.getName() != null && document.getName().contains("#")) {
+            path = document.getName().substring(0, document.getName().indexOf("#"));
+            try {
+                fragment = new URI(document.getName()).getFragment();
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        } else {
+            path = document.getName();
+            fragment = null;
+        }
+
+        List<Transform> transforms;
+        if (MimeType.XML.equals(document.getMimeType())) {
+            transforms = new ArrayList<Transform>();
+
+            // Convert a # (fragment) within document name to element-id based Reference
+            if (fragment != null) {
+                // FIXME: this xpath should not be hardcoded
+                String xpath = "ancestor-or-self::*[@ID=" + Utils.xPathLiteral(fragment) + "]";
+                transforms.add(sigFac.newTransform(Transforms.TRANSFORM_XPATH,
+                        new XPathFilterParameterSpec(xpath)));
+            }
+
+            // Canonicalize
+            transforms.add(sigFac.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE,
+                    (C14NMethodParameterSpec) null));
+        } else {
+            transforms = null;
+        }
+
+        if (digestValue != null) {
+            return sigFac.newReference(path, digestMethod, transforms, null,
+                    index != null ? "ref-" + index : null, digestValue);
+        }
+        return sigFac.newReference(path, digestMethod, transforms, null,
+                index != null ? "ref-" + index : null);
+    }
+
+    private void addReferences(Iterator<Document> documents, List<Reference> references, DigestMethod digestMethod,
+            DigestAlgorithm digestAlgorithm, XMLSignatureFactory sigFac) throws NoSuchAlgorithmException,
+            InvalidAlgorithmParameterException, IOException {
+        List<Document> documentList = new ArrayList<Document>();
+        while (documents.hasNext()) {
+            documentList.add(documents.next());
+        }
+
+        /*
+         * The documents without transform are digested up-front, in parallel on the executor. The XML documents are
+         * canonicalized by their reference, when the references are digested.
+         */
+        List<Document> untransformed = new ArrayList<Document>();
+        if (executorService != null) {
+            for (Document document : documentList) {
+                if (!MimeType.XML.equals(document.getMimeType())) {
+                    untransformed.add(document);
+                }
+            }
+        }
+        List<byte[]> digests = DocumentDigester.digest(untransformed,
+                Collections.nCopies(untransformed.size(), digestAlgorithm), executorService);
+
+        int i = 0;
+        int digested = 0;
+        for (Document document : documentList) {
+            byte[] digestValue = null;
+            if (digested < untransformed.size() && untransformed.get(digested) == document) {
+                digestValue = digests.get(digested++);
+            }
+            references.add(createReference(document, digestMethod, sigFac, i++, digestValue));
+        }
+    }
+
     /**
      * Explicit digest of the references. This incorporate the digest value in the Reference.
      * 
@@ -640,16 +674,38 @@ public class XAdESProfileBES {
      */
     private void digestReferences(DOMSignContext signContext, List<Reference> references)
             throws XMLSignatureException {
-        /* Digest references */
+        /* Digest references, except the ones created with their digest value */
         for (Reference signedInfoReference : references) {
-            DOMReference domReference = (DOMReference) signedInfoReference;
-            domReference.digest(signContext);
+            if (signedInfoReference.getDigestValue() == null) {
+                DOMReference domReference = (DOMReference) signedInfoReference;
+                domReference.digest(signContext);
+            }
         }
     }
 
+    /**
+     * An enveloping signature does not keep the enveloped data in the DOM, except for -A: its archive timestamp is
+     * computed over the data of the references.
+     * 
+     * @param parameters
+     * @return true if the enveloped data is streamed from the original document
+     */
+    boolean isStreamedEnveloping(SignatureParameters parameters) {
+        return parameters.getSignaturePackaging() == SignaturePackaging.ENVELOPING
+                && parameters.getSignatureFormat() != SignatureFormat.XAdES_A;
+    }
+
+    /**
+     * @param parameters
+     * @return the text put in place of the enveloped data in the DOM
+     */
+    private String getEnvelopedDataMarker(SignatureParameters parameters) {
+        return "signed-data-content-" + computeDeterministicId(parameters);
+    }
+
     private DOMXMLSignature createSignature(SignatureParameters parameters, org.w3c.dom.Document doc,
             Document document, DOMSignContext signContext, String signatureValueId) throws NoSuchAlgorithmException,
-            InvalidAlgorithmParameterException, XMLSignatureException, ParserConfigurationException, IOException {
+            InvalidAlgorithmParameterException, XMLSignatureException, IOException {
         try {
             DOMXMLSignature signature = null;
             String signatureId = "sigId-" + computeDeterministicId(parameters);
@@ -675,18 +731,35 @@ public class XAdESProfileBES {
     }
 
     protected InputStream getToBeSignedStream(Document document, SignatureParameters parameters) {
+        return prepareSigningSession(null, document, parameters, true).getToBeSigned();
+    }
+
+    /**
+     * Build the signature in a new DOM and digest its references. The returned session keeps everything needed to
+     * insert the signature value later.
+     * 
+     * @param sessionId
+     * @param document
+     * @param parameters
+     * @param canonicalize true to compute the data to be signed
+     * @return the session
+     */
+    XAdESSigningSession prepareSigningSession(String sessionId, Document document, SignatureParameters parameters,
+            boolean canonicalize) {
 
         try {
 
             /* Read the document */
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            DocumentBuilder db = dbf.newDocumentBuilder();
             org.w3c.dom.Document doc = null;
             if (parameters.getSignaturePackaging() == SignaturePackaging.ENVELOPED) {
-                doc = db.parse(document.openStream());
+                InputStream input = document.openStream();
+                try {
+                    doc = XMLInfrastructure.parse(input);
+                } finally {
+                    input.close();
+                }
             } else {
-                doc = db.newDocument();
+                doc = XMLInfrastructure.newDocument();
                 doc.appendChild(doc.createElement("empty"));
             }
 
@@ -700,22 +773,22 @@ public class XAdESProfileBES {
             String signatureValueId = "value-" + computeDeterministicId(parameters);
             DOMXMLSignature signature = createSignature(parameters, doc, document, signContext, signatureValueId);
 
-            /* Output document */
-            if (LOG.isLoggable(Level.FINE)) {
-                ByteArrayOutputStream logOutput = new ByteArrayOutputStream();
-                Result result = new StreamResult(logOutput);
-                Transformer xformer = TransformerFactory.newInstance().newTransformer();
-                Source source = new DOMSource(doc);
-                xformer.transform(source, result);
-                LOG.fine("Document after digest " + new String(logOutput.toByteArray()));
-            }
+            byte[] toBeSigned = null;
+            if (canonicalize) {
+                /* Output document */
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.fine("Document after digest " + new String(XMLInfrastructure.toByteArray(doc)));
+                }
 
-            DOMSignedInfo domSignedInfo = (DOMSignedInfo) signature.getSignedInfo();
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
-            domSignedInfo.canonicalize(signContext, output);
-            output.close();
+                DOMSignedInfo domSignedInfo = (DOMSignedInfo) signature.getSignedInfo();
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                domSignedInfo.canonicalize(signContext, output);
+                output.close();
+                toBeSigned = output.toByteArray();
+            }
 
-            return new ByteArrayInputStream(output.toByteArray());
+            return new XAdESSigningSession(sessionId, document, parameters, doc, signature, signatureValueId,
+                    toBeSigned);
 
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -723,33 +796,81 @@ public class XAdESProfileBES {
     }
 
     Document signDocument(Document document, SignatureParameters parameters, byte[] signatureValue) {
+        return signDocument(prepareSigningSession(null, document, parameters, false), signatureValue);
+    }
 
+    /**
+     * Insert the signature value in the DOM prepared by the session and serialize it.
+     * 
+     * @param session
+     * @param signatureValue
+     * @return the signed document
+     * @throws IOException
+     */
+    Document signDocument(XAdESSigningSession session, byte[] signatureValue) throws IOException {
         try {
+            return toSignedDocument(session, XMLInfrastructure.toByteArray(insertSignatureValue(session,
+                    signatureValue)));
+        } catch (TransformerException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-            /* Read the document */
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            org.w3c.dom.Document doc = null;
-            if (parameters.getSignaturePackaging() == SignaturePackaging.ENVELOPED) {
-                doc = db.parse(document.openStream());
-            } else {
-                doc = db.newDocument();
-                doc.appendChild(doc.createElement("empty"));
-            }
+    /**
+     * Give back the serialized signature of the session as a document. When the enveloped data is streamed, the
+     * serialized signature and the original document are written together in a spool file.
+     * 
+     * @param session
+     * @param signature the serialized DOM of the session
+     * @return the signed document
+     * @throws IOException
+     */
+    Document toSignedDocument(XAdESSigningSession session, byte[] signature) throws IOException {
+        if (!isStreamedEnveloping(session.getParameters())) {
+            return new InMemoryDocument(signature);
+        }
 
-            /* Interceptor */
-            SpecialPrivateKey dummyPrivateKey = new SpecialPrivateKey();
+        byte[] marker = getEnvelopedDataMarker(session.getParameters()).getBytes();
+        int index = lastIndexOf(signature, marker);
+        if (index < 0) {
+            throw new IllegalStateException("The enveloped data cannot be found in the signature");
+        }
+        String name = session.getOriginalDocument().getName();
+        return new EnvelopingSignatureDocument(Arrays.copyOfRange(signature, 0, index),
+                session.getOriginalDocument(), Arrays.copyOfRange(signature, index + marker.length, signature.length),
+                name != null ? name + ".xml" : "signature.xml");
+    }
 
-            /* Context */
-            DOMSignContext signContext = new DOMSignContext(dummyPrivateKey, doc.getDocumentElement());
-            signContext.putNamespacePrefix(XMLSignature.XMLNS, "ds");
+    private static int lastIndexOf(byte[] data, byte[] value) {
+        for (int i = data.length - value.length; i >= 0; i--) {
+            int j = 0;
+            while (j < value.length && data[i + j] == value[j]) {
+                j++;
+            }
+            if (j == value.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-            String signatureValueId = "value-" + computeDeterministicId(parameters);
+    /**
+     * Insert the signature value in the DOM prepared by the session. The DOM is given back without being serialized,
+     * so that the signature can be extended in place.
+     * 
+     * @param session
+     * @param signatureValue
+     * @return the signed DOM
+     */
+    org.w3c.dom.Document insertSignatureValue(XAdESSigningSession session, byte[] signatureValue) {
 
-            DOMXMLSignature domSig = createSignature(parameters, doc, document, signContext, signatureValueId);
+        session.markSigned();
+        SignatureParameters parameters = session.getParameters();
+        org.w3c.dom.Document doc = session.getXmlDocument();
 
-            String xpathString = "//ds:SignatureValue[@Id='" + signatureValueId + "']";
+        try {
+
+            String xpathString = "//ds:SignatureValue[@Id='" + session.getSignatureValueId() + "']";
             Element signatureValueEl = XMLUtils.getElement(doc, xpathString);
 
             if (parameters.getSignatureAlgorithm() == SignatureAlgorithm.ECDSA) {
@@ -761,25 +882,16 @@ public class XAdESProfileBES {
                 signatureValueEl.setTextContent(new String(Base64.encode(signatureValue)));
             }
 
-            UnsignedPropertiesType unsigned = createUnsignedXAdESProperties(parameters, domSig, null,
+            UnsignedPropertiesType unsigned = createUnsignedXAdESProperties(parameters, session.getSignature(), null,
                     signatureValueEl);
             if (unsigned != null) {
-                JAXBContext xadesJaxbContext = JAXBContext.newInstance(getXades13ObjectFactory().getClass());
-                Marshaller m = xadesJaxbContext.createMarshaller();
+                Marshaller m = XMLInfrastructure.getMarshaller(getXades13ObjectFactory().getClass());
                 JAXBElement<UnsignedPropertiesType> el = getXades13ObjectFactory()
                         .createUnsignedProperties(unsigned);
                 m.marshal(el, getXAdESQualifyingProperties(parameters, doc));
             }
 
-            /* Output document */
-            ByteArrayOutputStream outputDoc = new ByteArrayOutputStream();
-            Result output = new StreamResult(outputDoc);
-            Transformer xformer = TransformerFactory.newInstance().newTransformer();
-            Source source = new DOMSource(doc);
-            xformer.transform(source, output);
-            outputDoc.close();
-
-            return new InMemoryDocument(outputDoc.toByteArray());
+            return doc;
 
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -787,21 +899,96 @@ public class XAdESProfileBES {
             throw new RuntimeException(e);
         } catch (XPathExpressionException e) {
             throw new RuntimeException(e);
-        } catch (TransformerException e) {
-            throw new RuntimeException(e);
-        } catch (SAXException e) {
-            throw new RuntimeException(e);
-        } catch (XMLSignatureException e) {
-            throw new RuntimeException(e);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        } catch (InvalidAlgorithmParameterException e) {
-            throw new RuntimeException(e);
-        } catch (ParserConfigurationException e) {
-            throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Compute the key under which the signing session of a document is kept between the computation of the data to be
+     * signed and the signature. It covers the document and every parameter that goes into the signed data. The content
+     * of a document instance is only digested once.
+     * 
+     * @param document
+     * @param parameters
+     * @return the key
+     * @throws IOException
+     */
+    String computeSessionKey(Document document, SignatureParameters parameters) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            updateDigest(digest, getClass().getName());
+            updateDigest(digest, computeDeterministicId(parameters));
+            updateDigest(digest, String.valueOf(parameters.getSignatureFormat()));
+            updateDigest(digest, String.valueOf(parameters.getSignaturePackaging()));
+            updateDigest(digest, String.valueOf(parameters.getSignatureAlgorithm()));
+            updateDigest(digest, String.valueOf(parameters.getDigestAlgorithm()));
+            updateDigest(digest, parameters.getClaimedSignerRole());
+            updateDigest(digest, String.valueOf(parameters.getSignaturePolicy()));
+            updateDigest(digest, parameters.getSignaturePolicyId());
+            updateDigest(digest, parameters.getSignaturePolicyHashAlgo());
+            updateDigest(digest, parameters.getSignaturePolicyHashValue());
+            updateDigest(digest, parameters.getReason());
+            updateDigest(digest, parameters.getContactInfo());
+            updateDigest(digest, parameters.getLocation());
+            if (parameters.getCommitmentTypeIndication() != null) {
+                for (String commitmentType : parameters.getCommitmentTypeIndication()) {
+                    updateDigest(digest, commitmentType);
+                }
+            }
+            digest.update((byte) 0);
+            if (parameters.getCertificateChain() != null) {
+                for (X509Certificate c : parameters.getCertificateChain()) {
+                    updateDigest(digest, c.getEncoded());
+                }
+            }
+            digest.update((byte) 0);
+            digest.update(digestContent(document));
+            return Hex.encodeHexString(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        } catch (CertificateEncodingException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private byte[] digestContent(Document document) throws IOException, NoSuchAlgorithmException {
+        byte[] contentDigest = CONTENT_DIGESTS.get(document);
+        if (contentDigest != null) {
+            return contentDigest;
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        List<Document> parts = new ArrayList<Document>();
+        Iterator<Document> documents = documentIterator(document);
+        while (documents.hasNext()) {
+            Document part = documents.next();
+            updateDigest(digest, part.getName());
+            updateDigest(digest, part.getMimeType() != null ? part.getMimeType().getCode() : null);
+            parts.add(part);
+        }
+        /* The content of each part is digested on its own, in parallel when an executor is set */
+        for (byte[] partDigest : DocumentDigester.digest(parts,
+                Collections.nCopies(parts.size(), DigestAlgorithm.SHA256), executorService)) {
+            digest.update(partDigest);
+        }
+        contentDigest = digest.digest();
+        CONTENT_DIGESTS.put(document, contentDigest);
+        return contentDigest;
+    }
+
+    private static void updateDigest(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes());
+        }
+        digest.update((byte) 0);
+    }
+
+    private static void updateDigest(MessageDigest digest, byte[] value) {
+        if (value != null) {
+            updateDigest(digest, Integer.toString(value.length));
+            digest.update(value);
+        }
+        digest.update((byte) 0);
+    }
+
     private static byte[] convertASN1toXMLDSIG(byte asn1Bytes[]) throws IOException {
         byte rLength = asn1Bytes[3];
         int i;
@@ -883,66 +1070,11 @@ public class XAdESProfileBES {
         return digestAlgAndValue;
     }
 
-    private static Iterator<Document> documentIterator(Document document) {
-        if (document instanceof CompoundDocument) {
-            return ((CompoundDocument) document).iterator();
-        } else {
-            return Collections.singletonList(document).iterator();
-        }
-    }
-
-    private static class NameBasedDocumentRepository implements URIDereferencer {
-
-        private final Map<String, Document> repo;
-        private final XMLSignatureFactory sigFac;
-
-        public NameBasedDocumentRepository(Document document, XMLSignatureFactory sigFac) {
-            this.repo = new HashMap<String, Document>();
-            this.sigFac = sigFac;
-            registerDocuments(documentIterator(document));
-        }
-
-        @Override
-        public Data dereference(URIReference uriReference, XMLCryptoContext context)
-                throws URIReferenceException {
-            Document doc;
-            doc = findDocument(uriReference.getURI());
-            if (doc != null) {
-                try {
-                    return new OctetStreamData(doc.openStream());
-                } catch (IOException e) {
-                    throw new IllegalStateException(e);
-                }
-            } else {
-                return sigFac.getURIDereferencer().dereference(uriReference, context);
-            }
-        }
-
-        private void registerDocuments(Iterator<Document> documents) {
-            while (documents.hasNext()) {
-                Document document = documents.next();
-                String name = document.getName();
-                if (name == null) {
-                    // For backwards compatibility mainly
-                    name = ANONYMOUS_REFERENCE_URI;
-                    if (repo.containsKey(ANONYMOUS_REFERENCE_URI)) {
-                        throw new IllegalArgumentException("Multiple anonymous files are not supported");
-                    }
-                }
-                try {
-                    // Strip query string or fragment
-                    URI uri = new URI(name);
-                    name = new URI(uri.getScheme(), uri.getUserInfo(), uri.getHost(),
-                            uri.getPort(), uri.getPath(), null, null).toString();
-                } catch (URISyntaxException e) {
-                    throw new RuntimeException(e);
-                }
-                repo.put(name, document);
-            }
-        }
-
-        private Document findDocument(String uri) {
-            return repo.get(uri != null ? uri : ANONYMOUS_REFERENCE_URI);
-        }
-    }
+    private static Iterator<Document> documentIterator(Document document) {
+        if (document instanceof CompoundDocument) {
+            return ((CompoundDocument) document).iterator();
+        } else {
+            return Collections.singletonList(document).iterator();
+        }
+    }
 }
@@ -21,14 +21,10 @@
 package eu.europa.ec.markt.dss.signature.xades;
 
 import eu.europa.ec.markt.dss.DigestAlgorithm;
-import eu.europa.ec.markt.dss.signature.Document;
 import eu.europa.ec.markt.dss.signature.SignatureFormat;
-import eu.europa.ec.markt.dss.signature.SignatureParameters;
 import eu.europa.ec.markt.dss.validation.CertificateVerifier;
 import eu.europa.ec.markt.dss.validation.ValidationContext;
 import eu.europa.ec.markt.dss.validation.ocsp.OCSPUtils;
-import eu.europa.ec.markt.dss.validation.xades.XAdESCertificateSource;
-import eu.europa.ec.markt.dss.validation.xades.XAdESSignature;
 import eu.europa.ec.markt.tsl.jaxb.xades.CRLIdentifierType;
 import eu.europa.ec.markt.tsl.jaxb.xades.CRLRefType;
 import eu.europa.ec.markt.tsl.jaxb.xades.CRLRefsType;
@@ -41,7 +37,6 @@ import eu.europa.ec.markt.tsl.jaxb.xades.OCSPIdentifierType;
 import eu.europa.ec.markt.tsl.jaxb.xades.OCSPRefType;
 import eu.europa.ec.markt.tsl.jaxb.xades.OCSPRefsType;
 import eu.europa.ec.markt.tsl.jaxb.xades.ResponderIDType;
-import eu.europa.ec.markt.tsl.jaxb.xades.UnsignedPropertiesType;
 import eu.europa.ec.markt.tsl.jaxb.xmldsig.DigestMethodType;
 import eu.europa.ec.markt.tsl.jaxb.xmldsig.X509IssuerSerialType;
 
@@ -55,15 +50,12 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Logger;
 
-import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
-import javax.xml.xpath.XPathExpressionException;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.xml.security.Init;
@@ -75,8 +67,6 @@ import org.bouncycastle.jce.PrincipalUtil;
 import org.bouncycastle.ocsp.BasicOCSPResp;
 import org.bouncycastle.ocsp.RespID;
 import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * Contains XAdES-C profile aspects
@@ -201,122 +191,60 @@ public class XAdESProfileC extends XAdESProfileT {
         }
     }
 
-    private void extendSignatureTag(Element signatureEl, UnsignedPropertiesType unsigned) throws IOException {
-
-        XAdESSignature signature = new XAdESSignature(signatureEl);
-        X509Certificate signingCertificate = signature.getSigningCertificate();
-        Date signingTime = signature.getSigningTime();
-
-        ValidationContext ctx = certificateVerifier.validateCertificate(signingCertificate, signingTime,
-                new XAdESCertificateSource(signatureEl, false), null, null);
-
-        // XAdES-C: complete certificate refs
-        CompleteCertificateRefsType completeCertificateRefs = xadesObjectFactory.createCompleteCertificateRefsType();
-        CertIDListType certIdList = xadesObjectFactory.createCertIDListType();
-        completeCertificateRefs.setCertRefs(certIdList);
-        List<CertIDType> certIds = certIdList.getCert();
-
-        for (int i = 0; i < ctx.getNeededCertificates().size(); i++) {
-            X509Certificate certificate = ctx.getNeededCertificates().get(i).getCertificate();
-            CertIDType certId = getCertID(certificate, DigestAlgorithm.SHA1);
-            LOG.info("Add a reference for Certificate[subjectName=" + certificate.getSubjectDN() + "] : digest="
-                    + Hex.encodeHexString(certId.getCertDigest().getDigestValue()) + ",issuer="
-                    + certId.getIssuerSerial().getX509IssuerName() + ",serial="
-                    + certId.getIssuerSerial().getX509SerialNumber());
-            certIds.add(certId);
-        }
+    @Override
+    protected void extendSignature(XAdESExtensionContext context) throws IOException, JAXBException {
 
-        // XAdES-C: complete revocation refs
-        CompleteRevocationRefsType completeRevocationRefs = xadesObjectFactory.createCompleteRevocationRefsType();
-
-        incorporateCRLRefs(completeRevocationRefs, ctx);
-        incorporateOCSPRefs(completeRevocationRefs, ctx);
-
-        /* Remove previous OCSPRefs and CRLRefs tags. */
-        Iterator<?> it = unsigned.getUnsignedSignatureProperties()
-                .getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs().iterator();
-        while (it.hasNext()) {
-            Object e = it.next();
-            if (e instanceof CompleteRevocationRefsType || e instanceof CompleteCertificateRefsType) {
-                it.remove();
-            } else if (e instanceof JAXBElement) {
-                e = ((JAXBElement<?>) e).getValue();
-                if (e instanceof CompleteRevocationRefsType || e instanceof CompleteCertificateRefsType) {
-                    it.remove();
-                }
+        super.extendSignature(context);
+
+        /* If we change a level C of a previous signature, we need to remove other node than level -T. */
+        List<Element> toRemove = new ArrayList<Element>();
+        for (Element e : context.getUnsignedSignatureProperties()) {
+            if (!"SignatureTimeStamp".equals(e.getLocalName())) {
+                toRemove.add(e);
             }
         }
 
-        unsigned.getUnsignedSignatureProperties().getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs()
-                .add(xadesObjectFactory.createCompleteCertificateRefs(completeCertificateRefs));
-        unsigned.getUnsignedSignatureProperties().getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs()
-                .add(xadesObjectFactory.createCompleteRevocationRefs(completeRevocationRefs));
-
-    }
-
-    protected void extendSignatureTag(Element signatureEl, Document originalData, SignatureFormat signatureFormat) {
+        /* We replace only if we go to level C, XL */
+        SignatureFormat signatureFormat = context.getSignatureFormat();
+        if (toRemove.size() == 0 || signatureFormat == SignatureFormat.XAdES_C
+                || signatureFormat == SignatureFormat.XAdES_XL || signatureFormat == SignatureFormat.XAdES_A) {
 
-        super.extendSignatureTag(signatureEl, originalData, signatureFormat);
-
-        try {
-
-            Element qualifyingProperties = XMLUtils
-                    .getElement(signatureEl, "./ds:Object/xades:QualifyingProperties");
-            Element unsignedPropertiesNode = XMLUtils.getElement(qualifyingProperties, "./xades:UnsignedProperties");
-            Element unsignedSignaturePropertiesNode = XMLUtils.getElement(unsignedPropertiesNode,
-                    "./xades:UnsignedSignatureProperties");
-
-            List<Node> toRemove = new ArrayList<Node>();
-
-            if (unsignedSignaturePropertiesNode != null) {
-                /* If we change a level C of a previous signature, we need to remove other node than level -T. */
-                NodeList children = unsignedSignaturePropertiesNode.getChildNodes();
-                for (int i = 0; i < children.getLength(); i++) {
-                    Node n = children.item(i);
-                    if (n.getNodeType() == Node.ELEMENT_NODE) {
-                        Element e = (Element) n;
-                        if (!"SignatureTimeStamp".equals(e.getLocalName())) {
-                            toRemove.add(e);
-                        }
-                    }
-                }
+            for (Element e : toRemove) {
+                LOG.warning("Remove element " + e.getLocalName());
+                context.removeUnsignedSignatureProperty(e);
             }
 
-            /* We replace only if we go to level C, XL */
-            if (toRemove.size() == 0 || signatureFormat == SignatureFormat.XAdES_C
-                    || signatureFormat == SignatureFormat.XAdES_XL || signatureFormat == SignatureFormat.XAdES_A) {
-
-                for (Node e : toRemove) {
-                    LOG.warning("Remove element " + e.getLocalName());
-                    unsignedSignaturePropertiesNode.removeChild(e);
-                }
-
-                UnsignedPropertiesType unsignedPropertiesType = null;
-                if (unsignedPropertiesNode != null) {
-                    unsignedPropertiesType = ((JAXBElement<UnsignedPropertiesType>) unmarshaller
-                            .unmarshal(unsignedPropertiesNode)).getValue();
-                } else {
-                    unsignedPropertiesType = xadesObjectFactory.createUnsignedPropertiesType();
-                }
-
-                extendSignatureTag(signatureEl, unsignedPropertiesType);
-
-                if (unsignedPropertiesNode != null) {
-                    qualifyingProperties.removeChild(unsignedPropertiesNode);
-                }
+            ValidationContext ctx = context.getValidationContext(certificateVerifier);
+
+            // XAdES-C: complete certificate refs
+            CompleteCertificateRefsType completeCertificateRefs = xadesObjectFactory
+                    .createCompleteCertificateRefsType();
+            CertIDListType certIdList = xadesObjectFactory.createCertIDListType();
+            completeCertificateRefs.setCertRefs(certIdList);
+            List<CertIDType> certIds = certIdList.getCert();
+
+            for (int i = 0; i < ctx.getNeededCertificates().size(); i++) {
+                X509Certificate certificate = ctx.getNeededCertificates().get(i).getCertificate();
+                CertIDType certId = getCertID(certificate, DigestAlgorithm.SHA1);
+                LOG.info("Add a reference for Certificate[subjectName=" + certificate.getSubjectDN() + "] : digest="
+                        + Hex.encodeHexString(certId.getCertDigest().getDigestValue()) + ",issuer="
+                        + certId.getIssuerSerial().getX509IssuerName() + ",serial="
+                        + certId.getIssuerSerial().getX509SerialNumber());
+                certIds.add(certId);
+            }
 
-                marshaller.marshal(xadesObjectFactory.createUnsignedProperties(unsignedPropertiesType),
-                        qualifyingProperties);
+            // XAdES-C: complete revocation refs
+            CompleteRevocationRefsType completeRevocationRefs = xadesObjectFactory
+                    .createCompleteRevocationRefsType();
 
-            }
-        } catch (JAXBException e) {
-            throw new RuntimeException("JAXB error: " + e.getMessage(), e);
+            incorporateCRLRefs(completeRevocationRefs, ctx);
+            incorporateOCSPRefs(completeRevocationRefs, ctx);
 
-        } catch (XPathExpressionException e) {
-            throw new RuntimeException(e);
+            context.addUnsignedSignatureProperty(getMarshaller(),
+                    xadesObjectFactory.createCompleteCertificateRefs(completeCertificateRefs));
+            context.addUnsignedSignatureProperty(getMarshaller(),
+                    xadesObjectFactory.createCompleteRevocationRefs(completeRevocationRefs));
 
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         }
 
     }
@@ -29,11 +29,8 @@ import eu.europa.ec.markt.dss.signature.SignatureExtension;
 import eu.europa.ec.markt.dss.signature.SignatureFormat;
 import eu.europa.ec.markt.dss.signature.SignatureParameters;
 import eu.europa.ec.markt.dss.validation.tsp.TSPSource;
-import eu.europa.ec.markt.dss.validation.xades.XAdESSignature;
 import eu.europa.ec.markt.tsl.jaxb.xades.EncapsulatedPKIDataType;
 import eu.europa.ec.markt.tsl.jaxb.xades.ObjectFactory;
-import eu.europa.ec.markt.tsl.jaxb.xades.UnsignedPropertiesType;
-import eu.europa.ec.markt.tsl.jaxb.xades.UnsignedSignaturePropertiesType;
 import eu.europa.ec.markt.tsl.jaxb.xades.XAdESTimeStampType;
 import eu.europa.ec.markt.tsl.jaxb.xmldsig.CanonicalizationMethodType;
 
@@ -43,22 +40,14 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.logging.Logger;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
-import javax.xml.bind.Unmarshaller;
 import javax.xml.crypto.dsig.CanonicalizationMethod;
 import javax.xml.crypto.dsig.XMLSignature;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPathExpressionException;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.xml.security.Init;
@@ -69,10 +58,6 @@ import org.bouncycastle.tsp.TimeStampResponse;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.w3c.dom.bootstrap.DOMImplementationRegistry;
-import org.w3c.dom.ls.DOMImplementationLS;
-import org.w3c.dom.ls.LSOutput;
-import org.w3c.dom.ls.LSSerializer;
 import org.xml.sax.SAXException;
 
 /**
@@ -88,10 +73,6 @@ public class XAdESProfileT implements SignatureExtension {
 
     private TSPSource tspSource;
 
-    protected Marshaller marshaller;
-
-    protected Unmarshaller unmarshaller;
-
     protected ObjectFactory xadesObjectFactory = new ObjectFactory();
 
     private eu.europa.ec.markt.tsl.jaxb.xmldsig.ObjectFactory _xmldsigObjectFactory;
@@ -113,16 +94,14 @@ public class XAdESProfileT implements SignatureExtension {
     public XAdESProfileT() {
         super();
         Init.init();
+    }
 
-        try {
-            JAXBContext context = JAXBContext.newInstance(eu.europa.ec.markt.jaxb.xades141.ObjectFactory.class);
-            marshaller = context.createMarshaller();
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-            unmarshaller = context.createUnmarshaller();
-        } catch (JAXBException e) {
-            throw new RuntimeException(e);
-        }
-
+    /**
+     * @return the marshaller of the XAdES 1.4.1 ObjectFactory, pooled for the current thread
+     * @throws JAXBException
+     */
+    protected Marshaller getMarshaller() throws JAXBException {
+        return XMLInfrastructure.getMarshaller(eu.europa.ec.markt.jaxb.xades141.ObjectFactory.class, true);
     }
 
     /**
@@ -132,9 +111,7 @@ public class XAdESProfileT implements SignatureExtension {
         this.tspSource = tspSource;
     }
 
-    private XAdESTimeStampType createUnsignedXAdESProperties(byte[] data) throws IOException {
-
-        UnsignedPropertiesType unsigned = xadesObjectFactory.createUnsignedPropertiesType();
+    private XAdESTimeStampType createSignatureTimeStamp(byte[] data) throws IOException {
 
         try {
             /* Create a timestamp over the signature value */
@@ -145,18 +122,7 @@ public class XAdESProfileT implements SignatureExtension {
             byte[] digestValue = digest.digest();
             LOG.info("Digest " + Hex.encodeHexString(digestValue));
 
-            XAdESTimeStampType timestamp = createXAdESTimeStamp(DigestAlgorithm.SHA1, digestValue);
-
-            UnsignedSignaturePropertiesType properties = unsigned.getUnsignedSignatureProperties();
-            if (properties == null) {
-                properties = xadesObjectFactory.createUnsignedSignaturePropertiesType();
-                unsigned.setUnsignedSignatureProperties(properties);
-            }
-
-            properties.getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs().add(
-                    xadesObjectFactory.createSignatureTimeStamp(timestamp));
-
-            return timestamp;
+            return createXAdESTimeStamp(DigestAlgorithm.SHA1, digestValue);
 
         } catch (NoSuchAlgorithmException ex) {
             throw new RuntimeException("Cannot find algorithm");
@@ -213,74 +179,34 @@ public class XAdESProfileT implements SignatureExtension {
         return xadesTimeStamp;
     }
 
-    private void extendSignatureTag(Element signatureEl, UnsignedPropertiesType unsigned,
-            SignatureFormat signatureFormat) throws IOException {
-
-        XAdESSignature signature = new XAdESSignature(signatureEl);
-        XAdESTimeStampType signatureTimestamp = createUnsignedXAdESProperties(signature.getSignatureTimestampData());
-
-        UnsignedSignaturePropertiesType sp = unsigned.getUnsignedSignatureProperties();
-        if (sp == null) {
-            sp = xadesObjectFactory.createUnsignedSignaturePropertiesType();
-            unsigned.setUnsignedSignatureProperties(sp);
-        }
-
-        /* First we count the already existing timestamp */
-        List<Object> existingTimestamp = new ArrayList<Object>();
-        for (Object o : sp.getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs()) {
-            if (o instanceof JAXBElement) {
-                JAXBElement e = (JAXBElement) o;
-                if (e.getName().getLocalPart().equals("SignatureTimeStamp")) {
-                    existingTimestamp.add(o);
-                }
-            }
-        }
+    /**
+     * Add the properties of level -T to the signature. The profiles of the higher levels call this method before adding
+     * their own properties, so that all the levels are applied one after the other to the same DOM.
+     * 
+     * @param context
+     * @throws IOException
+     * @throws JAXBException
+     */
+    protected void extendSignature(XAdESExtensionContext context) throws IOException, JAXBException {
 
         /*
          * We add the timestamp only if there is no timestamp or there is one but we goes for a extension of level -T
          * again
          */
-        if (existingTimestamp.size() == 0
-                || (existingTimestamp.size() > 0 && signatureFormat == SignatureFormat.XAdES_T)) {
-            sp.getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs().add(
+        if (context.getUnsignedSignatureProperties("SignatureTimeStamp").isEmpty()
+                || context.getSignatureFormat() == SignatureFormat.XAdES_T) {
+            XAdESTimeStampType signatureTimestamp = createSignatureTimeStamp(context.getSignature()
+                    .getSignatureTimestampData());
+            context.addUnsignedSignatureProperty(getMarshaller(),
                     xadesObjectFactory.createSignatureTimeStamp(signatureTimestamp));
-
-            /*
-             * for (Object o : existingTimestamp) {
-             * sp.getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs().remove(o); }
-             */
-
         }
 
     }
 
-    @SuppressWarnings("unchecked")
     protected void extendSignatureTag(Element signatureEl, Document originalData, SignatureFormat signatureFormat) {
 
         try {
-
-            Element qualifyingProperties = XMLUtils
-                    .getElement(signatureEl, "./ds:Object/xades:QualifyingProperties");
-            Element unsignedPropertiesNode = XMLUtils.getElement(qualifyingProperties, "./xades:UnsignedProperties");
-
-            UnsignedPropertiesType unsignedPropertiesType = null;
-            if (unsignedPropertiesNode != null) {
-                unsignedPropertiesType = ((JAXBElement<UnsignedPropertiesType>) unmarshaller
-                        .unmarshal(unsignedPropertiesNode)).getValue();
-            } else {
-                unsignedPropertiesType = xadesObjectFactory.createUnsignedPropertiesType();
-            }
-
-            extendSignatureTag(signatureEl, unsignedPropertiesType, signatureFormat);
-
-            if (unsignedPropertiesNode != null) {
-                qualifyingProperties.removeChild(unsignedPropertiesNode);
-            }
-            marshaller.marshal(xadesObjectFactory.createUnsignedProperties(unsignedPropertiesType),
-                    qualifyingProperties);
-        } catch (XPathExpressionException e) {
-            throw new RuntimeException(e);
-
+            extendSignature(new XAdESExtensionContext(signatureEl, originalData, signatureFormat));
         } catch (JAXBException e) {
             throw new RuntimeException("JAXB error: " + e.getMessage(), e);
 
@@ -289,113 +215,69 @@ public class XAdESProfileT implements SignatureExtension {
         }
     }
 
-    @Override
-    public Document extendSignatures(Document document, Document originalData, SignatureParameters parameters)
-            throws IOException {
-        InputStream input = document.openStream();
+    /**
+     * Extend the signatures of a parsed document, in place.
+     * 
+     * @param doc
+     * @param signatureId the Id of the signature to extend, or null to extend all the signatures of the document
+     * @param originalData
+     * @param parameters
+     */
+    public void extendSignatures(org.w3c.dom.Document doc, Object signatureId, Document originalData,
+            SignatureParameters parameters) {
 
         if (this.tspSource == null) {
             throw new ConfigurationException(MSG.CONFIGURE_TSP_SERVER);
         }
 
-        try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            org.w3c.dom.Document doc = db.parse(input);
-
-            NodeList signatureNodeList = doc.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature");
-            if (signatureNodeList.getLength() == 0) {
-                throw new RuntimeException(
-                        "Impossible to perform the extension of the signature, the document is not signed.");
-            }
-            for (int i = 0; i < signatureNodeList.getLength(); i++) {
-                Element signatureEl = (Element) signatureNodeList.item(i);
+        NodeList signatureNodeList = doc.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature");
+        if (signatureNodeList.getLength() == 0) {
+            throw new RuntimeException(
+                    "Impossible to perform the extension of the signature, the document is not signed.");
+        }
+        for (int i = 0; i < signatureNodeList.getLength(); i++) {
+            Element signatureEl = (Element) signatureNodeList.item(i);
+            if (signatureId == null || signatureId.equals(signatureEl.getAttribute("Id"))) {
                 extendSignatureTag(signatureEl, originalData, parameters.getSignatureFormat());
             }
-
-            DOMImplementationRegistry registry = DOMImplementationRegistry.newInstance();
-            DOMImplementationLS impl = (DOMImplementationLS) registry.getDOMImplementation("LS");
-            LSSerializer writer = impl.createLSSerializer();
-
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            LSOutput output = impl.createLSOutput();
-            output.setByteStream(buffer);
-            writer.write(doc, output);
-
-            return new InMemoryDocument(buffer.toByteArray());
-
-        } catch (ParserConfigurationException ex) {
-            throw new RuntimeException(ex);
-        } catch (SAXException e) {
-            throw new IOException("Cannot parse document", e);
-        } catch (ClassCastException e) {
-            throw new IOException("Cannot save document", e);
-        } catch (ClassNotFoundException e) {
-            throw new IOException("Cannot save document", e);
-        } catch (InstantiationException e) {
-            throw new IOException("Cannot save document", e);
-        } catch (IllegalAccessException e) {
-            throw new IOException("Cannot save document", e);
-        } finally {
-            if (input != null) {
-                input.close();
-            }
         }
+    }
 
+    /**
+     * Serialize the extended document.
+     * 
+     * @param doc
+     * @return the serialized document
+     * @throws IOException
+     */
+    byte[] toByteArray(org.w3c.dom.Document doc) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        XMLInfrastructure.serialize(doc, buffer);
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public Document extendSignatures(Document document, Document originalData, SignatureParameters parameters)
+            throws IOException {
+        return extendSignature(null, document, originalData, parameters);
     }
 
     @Override
     public Document extendSignature(Object signatureId, Document document, Document originalData,
             SignatureParameters parameters) throws IOException {
-        InputStream input = document.openStream();
 
         if (this.tspSource == null) {
             throw new ConfigurationException(MSG.CONFIGURE_TSP_SERVER);
         }
 
+        InputStream input = document.openStream();
         try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            org.w3c.dom.Document doc = db.parse(input);
-
-            NodeList signatureNodeList = doc.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature");
-            if (signatureNodeList.getLength() == 0) {
-                throw new RuntimeException(
-                        "Impossible to perform the extension of the signature, the document is not signed.");
-            }
-            for (int i = 0; i < signatureNodeList.getLength(); i++) {
-                Element signatureEl = (Element) signatureNodeList.item(i);
-                String sid = signatureEl.getAttribute("Id");
-                if (signatureId.equals(sid)) {
-                    extendSignatureTag(signatureEl, originalData, parameters.getSignatureFormat());
-                }
-            }
-
-            DOMImplementationRegistry registry = DOMImplementationRegistry.newInstance();
-            DOMImplementationLS impl = (DOMImplementationLS) registry.getDOMImplementation("LS");
-            LSSerializer writer = impl.createLSSerializer();
-
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            LSOutput output = impl.createLSOutput();
-            output.setByteStream(buffer);
-            writer.write(doc, output);
-
-            return new InMemoryDocument(buffer.toByteArray());
+            org.w3c.dom.Document doc = XMLInfrastructure.parse(input);
+            extendSignatures(doc, signatureId, originalData, parameters);
+            return new InMemoryDocument(toByteArray(doc));
 
-        } catch (ParserConfigurationException ex) {
-            throw new RuntimeException(ex);
         } catch (SAXException e) {
             throw new IOException("Cannot parse document", e);
-        } catch (ClassCastException e) {
-            throw new IOException("Cannot save document", e);
-        } catch (ClassNotFoundException e) {
-            throw new IOException("Cannot save document", e);
-        } catch (InstantiationException e) {
-            throw new IOException("Cannot save document", e);
-        } catch (IllegalAccessException e) {
-            throw new IOException("Cannot save document", e);
         } finally {
             if (input != null) {
                 input.close();
@@ -21,22 +21,16 @@
 package eu.europa.ec.markt.dss.signature.xades;
 
 import eu.europa.ec.markt.dss.DigestAlgorithm;
-import eu.europa.ec.markt.dss.signature.Document;
 import eu.europa.ec.markt.dss.signature.SignatureFormat;
-import eu.europa.ec.markt.dss.validation.xades.XAdESSignature;
-import eu.europa.ec.markt.tsl.jaxb.xades.UnsignedPropertiesType;
 import eu.europa.ec.markt.tsl.jaxb.xades.XAdESTimeStampType;
 
 import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
-import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
-import javax.xml.xpath.XPathExpressionException;
 
 import org.apache.xml.security.Init;
 import org.w3c.dom.Element;
@@ -61,48 +55,35 @@ public class XAdESProfileX extends XAdESProfileC {
         Init.init();
     }
 
-    private void extendSignatureTag(Element signatureEl, UnsignedPropertiesType unsigned,
-            SignatureFormat signatureFormat) throws IOException {
+    @Override
+    protected void extendSignature(XAdESExtensionContext context) throws IOException, JAXBException {
+
+        /* Go up to -C */
+        super.extendSignature(context);
 
         try {
 
             /* First we count the already existing timestamp */
-            List<Object> existingTimestamp = new ArrayList<Object>();
-            if (unsigned != null
-                    && unsigned.getUnsignedSignatureProperties() != null
-                    && unsigned.getUnsignedSignatureProperties()
-                            .getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs() != null) {
-                for (Object o : unsigned.getUnsignedSignatureProperties()
-                        .getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs()) {
-                    if (o instanceof JAXBElement) {
-                        JAXBElement e = (JAXBElement) o;
-                        if (e.getName().getLocalPart().equals("SigAndRefsTimeStamp")) {
-                            existingTimestamp.add(o);
-                        }
-                    }
-                }
-            }
+            List<Element> existingTimestamp = context.getUnsignedSignatureProperties("SigAndRefsTimeStamp");
 
+            SignatureFormat signatureFormat = context.getSignatureFormat();
             if (existingTimestamp.size() == 0 || signatureFormat == SignatureFormat.XAdES_X
                     || signatureFormat == SignatureFormat.XAdES_XL || signatureFormat == SignatureFormat.XAdES_A) {
-                XAdESSignature signature = new XAdESSignature(signatureEl);
 
                 if (signatureFormat == SignatureFormat.XAdES_XL || signatureFormat == SignatureFormat.XAdES_A) {
-                    for (Object o : existingTimestamp) {
-                        unsigned.getUnsignedSignatureProperties()
-                                .getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs().remove(o);
+                    for (Element e : existingTimestamp) {
+                        context.removeUnsignedSignatureProperty(e);
                     }
                 }
 
                 LOG.fine("creating XAdES-X time-stamp");
                 MessageDigest digest = MessageDigest.getInstance(DigestAlgorithm.SHA1.getName());
-                digest.update(signature.getTimestampX1Data());
+                digest.update(context.getSignature().getTimestampX1Data());
                 byte[] digestValue = digest.digest();
                 XAdESTimeStampType timeStampXadesX1 = createXAdESTimeStamp(DigestAlgorithm.SHA1, digestValue);
 
-                unsigned.getUnsignedSignatureProperties()
-                        .getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs()
-                        .add(xadesObjectFactory.createSigAndRefsTimeStamp(timeStampXadesX1));
+                context.addUnsignedSignatureProperty(getMarshaller(),
+                        xadesObjectFactory.createSigAndRefsTimeStamp(timeStampXadesX1));
             }
 
         } catch (NoSuchAlgorithmException e) {
@@ -111,41 +92,4 @@ public class XAdESProfileX extends XAdESProfileC {
 
     }
 
-    protected void extendSignatureTag(Element signatureEl, Document originalData, SignatureFormat signatureFormat) {
-
-        /* Go up to -C */
-        super.extendSignatureTag(signatureEl, originalData, signatureFormat);
-
-        try {
-
-            Element qualifyingProperties = XMLUtils
-                    .getElement(signatureEl, "./ds:Object/xades:QualifyingProperties");
-            Element unsignedPropertiesNode = XMLUtils.getElement(qualifyingProperties, "./xades:UnsignedProperties");
-
-            UnsignedPropertiesType unsignedPropertiesType = null;
-            if (unsignedPropertiesNode != null) {
-                unsignedPropertiesType = ((JAXBElement<UnsignedPropertiesType>) unmarshaller
-                        .unmarshal(unsignedPropertiesNode)).getValue();
-            } else {
-                unsignedPropertiesType = xadesObjectFactory.createUnsignedPropertiesType();
-            }
-
-            extendSignatureTag(signatureEl, unsignedPropertiesType, signatureFormat);
-
-            if (unsignedPropertiesNode != null) {
-                qualifyingProperties.removeChild(unsignedPropertiesNode);
-            }
-            marshaller.marshal(xadesObjectFactory.createUnsignedProperties(unsignedPropertiesType),
-                    qualifyingProperties);
-        } catch (JAXBException e) {
-            throw new RuntimeException("JAXB error: " + e.getMessage(), e);
-
-        } catch (XPathExpressionException e) {
-            throw new RuntimeException(e);
-
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
 }
@@ -20,35 +20,26 @@
 
 package eu.europa.ec.markt.dss.signature.xades;
 
-import eu.europa.ec.markt.dss.signature.Document;
 import eu.europa.ec.markt.dss.signature.SignatureFormat;
 import eu.europa.ec.markt.dss.validation.ValidationContext;
 import eu.europa.ec.markt.dss.validation.certificate.CertificateAndContext;
 import eu.europa.ec.markt.dss.validation.ocsp.OCSPUtils;
-import eu.europa.ec.markt.dss.validation.xades.XAdESCertificateSource;
-import eu.europa.ec.markt.dss.validation.xades.XAdESSignature;
 import eu.europa.ec.markt.tsl.jaxb.xades.CRLValuesType;
 import eu.europa.ec.markt.tsl.jaxb.xades.CertificateValuesType;
 import eu.europa.ec.markt.tsl.jaxb.xades.EncapsulatedPKIDataType;
 import eu.europa.ec.markt.tsl.jaxb.xades.OCSPValuesType;
 import eu.europa.ec.markt.tsl.jaxb.xades.RevocationValuesType;
-import eu.europa.ec.markt.tsl.jaxb.xades.UnsignedPropertiesType;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509CRL;
-import java.security.cert.X509Certificate;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Logger;
 
-import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
-import javax.xml.xpath.XPathExpressionException;
 
 import org.apache.xml.security.Init;
 import org.bouncycastle.ocsp.BasicOCSPResp;
@@ -74,40 +65,25 @@ public class XAdESProfileXL extends XAdESProfileX {
         Init.init();
     }
 
-    private void extendSignatureTag(Element signatureEl, UnsignedPropertiesType unsigned,
-            SignatureFormat signatureFormat) throws IOException {
+    @Override
+    protected void extendSignature(XAdESExtensionContext context) throws IOException, JAXBException {
+
+        /* Go up to -X */
+        super.extendSignature(context);
 
         try {
 
-            XAdESSignature signature = new XAdESSignature(signatureEl);
-            X509Certificate signingCertificate = signature.getSigningCertificate();
-            Date signingTime = signature.getSigningTime();
-
-            List<Object> toRemove = new ArrayList<Object>();
-            if (unsigned.getUnsignedSignatureProperties() != null
-                    && unsigned.getUnsignedSignatureProperties()
-                            .getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs() != null) {
-                Iterator<?> it = unsigned.getUnsignedSignatureProperties()
-                        .getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs().iterator();
-                while (it.hasNext()) {
-                    Object e = it.next();
-                    if (e instanceof RevocationValuesType || e instanceof CertificateValuesType) {
-                        toRemove.add(e);
-                    } else if (e instanceof JAXBElement) {
-                        e = ((JAXBElement<?>) e).getValue();
-                        if (e instanceof RevocationValuesType || e instanceof CertificateValuesType) {
-                            toRemove.add(e);
-                        }
-                    }
-                }
-            }
+            List<Element> toRemove = new ArrayList<Element>();
+            toRemove.addAll(context.getUnsignedSignatureProperties("CertificateValues"));
+            toRemove.addAll(context.getUnsignedSignatureProperties("RevocationValues"));
 
+            SignatureFormat signatureFormat = context.getSignatureFormat();
             if (toRemove.size() == 0 || signatureFormat == SignatureFormat.XAdES_XL
                     || signatureFormat == SignatureFormat.XAdES_A) {
 
+                /* The certificate source of the signature is unchanged since -C, the validation is reused */
                 LOG.info("Validation for XAdES-XL");
-                ValidationContext ctx = certificateVerifier.validateCertificate(signingCertificate, signingTime,
-                        new XAdESCertificateSource(signatureEl, false), null, null);
+                ValidationContext ctx = context.getValidationContext(certificateVerifier);
 
                 CertificateValuesType certificateValues = xadesObjectFactory.createCertificateValuesType();
                 List<Serializable> certificateValuesList = certificateValues
@@ -153,17 +129,14 @@ public class XAdESProfileXL extends XAdESProfileX {
                     }
                 }
 
-                for (Object o : toRemove) {
-                    unsigned.getUnsignedSignatureProperties()
-                            .getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs().remove(o);
+                for (Element e : toRemove) {
+                    context.removeUnsignedSignatureProperty(e);
                 }
 
-                unsigned.getUnsignedSignatureProperties()
-                        .getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs()
-                        .add(xadesObjectFactory.createCertificateValues(certificateValues));
-                unsigned.getUnsignedSignatureProperties()
-                        .getCounterSignatureOrSignatureTimeStampOrCompleteCertificateRefs()
-                        .add(xadesObjectFactory.createRevocationValues(revocationValues));
+                context.addUnsignedSignatureProperty(getMarshaller(),
+                        xadesObjectFactory.createCertificateValues(certificateValues));
+                context.addUnsignedSignatureProperty(getMarshaller(),
+                        xadesObjectFactory.createRevocationValues(revocationValues));
 
             }
 
@@ -173,41 +146,4 @@ public class XAdESProfileXL extends XAdESProfileX {
 
     }
 
-    protected void extendSignatureTag(Element signatureEl, Document originalData, SignatureFormat signatureFormat) {
-
-        /* Go up to -X */
-        super.extendSignatureTag(signatureEl, originalData, signatureFormat);
-
-        try {
-
-            Element qualifyingProperties = XMLUtils
-                    .getElement(signatureEl, "./ds:Object/xades:QualifyingProperties");
-            Element unsignedPropertiesNode = XMLUtils.getElement(qualifyingProperties, "./xades:UnsignedProperties");
-
-            UnsignedPropertiesType unsignedPropertiesType = null;
-            if (unsignedPropertiesNode != null) {
-                unsignedPropertiesType = ((JAXBElement<UnsignedPropertiesType>) unmarshaller
-                        .unmarshal(unsignedPropertiesNode)).getValue();
-            } else {
-                unsignedPropertiesType = xadesObjectFactory.createUnsignedPropertiesType();
-            }
-
-            extendSignatureTag(signatureEl, unsignedPropertiesType, signatureFormat);
-
-            if (unsignedPropertiesNode != null) {
-                qualifyingProperties.removeChild(unsignedPropertiesNode);
-            }
-            marshaller.marshal(xadesObjectFactory.createUnsignedProperties(unsignedPropertiesType),
-                    qualifyingProperties);
-        } catch (JAXBException e) {
-            throw new RuntimeException("JAXB error: " + e.getMessage(), e);
-
-        } catch (XPathExpressionException e) {
-            throw new RuntimeException(e);
-
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
 }
@@ -34,6 +34,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.commons.io.IOUtils;
 
@@ -50,6 +52,12 @@ public class XAdESService implements DocumentSignatureService {
 
     private CertificateVerifier certificateVerifier;
 
+    private SigningSessionStore signingSessionStore = SigningSessionStore.getSharedStore();
+
+    private boolean transparentSessions;
+
+    private ExecutorService executorService;
+
     /**
      * @param certificateVerifier the certificateVerifier to set
      */
@@ -64,17 +72,50 @@ public class XAdESService implements DocumentSignatureService {
         this.tspSource = tspSource;
     }
 
+    /**
+     * @param signingSessionStore the signingSessionStore to set
+     */
+    public void setSigningSessionStore(SigningSessionStore signingSessionStore) {
+        this.signingSessionStore = signingSessionStore;
+    }
+
+    /**
+     * When enabled, the signature prepared by toBeSigned is kept in the signing session store and reused by
+     * signDocument called with the same document and parameters. The content of a document is then only digested once
+     * per instance, so the document must not change between both calls. Disabled by default: the explicit sessions of
+     * {@link #openSigningSession(Document, SignatureParameters)} are still available.
+     * 
+     * @param transparentSessions the transparentSessions to set
+     */
+    public void setTransparentSessions(boolean transparentSessions) {
+        this.transparentSessions = transparentSessions;
+    }
+
+    /**
+     * Set the executor used to digest the documents of a detached signature in parallel. If not set, the documents are
+     * digested one after the other.
+     * 
+     * @param executorService the executorService to set
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
     private XAdESProfileBES getSigningProfile(SignatureParameters parameters) {
+        XAdESProfileBES profile;
         switch (parameters.getSignatureFormat()) {
         case XAdES_BES:
-            return new XAdESProfileBES();
+            profile = new XAdESProfileBES();
+            break;
         case XAdES_EPES:
         default:
-            return new XAdESProfileEPES();
+            profile = new XAdESProfileEPES();
         }
+        profile.setExecutorService(executorService);
+        return profile;
     }
 
-    private SignatureExtension getExtensionProfile(SignatureParameters parameters) {
+    private XAdESProfileT getExtensionProfile(SignatureParameters parameters) {
         switch (parameters.getSignatureFormat()) {
         case XAdES_BES:
         case XAdES_EPES:
@@ -122,9 +163,20 @@ public class XAdESService implements DocumentSignatureService {
         }
     }
 
+    /**
+     * With the transparent sessions, the prepared signature is kept in the signing session store, so that signDocument
+     * called with the same document and parameters does not need to build it again.
+     */
     @Override
     public InputStream toBeSigned(Document document, SignatureParameters parameters) throws IOException {
-        return getSigningProfile(parameters).getToBeSignedStream(document, parameters);
+        XAdESProfileBES profile = getSigningProfile(parameters);
+        if (!transparentSessions) {
+            return profile.prepareSigningSession(null, document, parameters, true).getToBeSigned();
+        }
+        XAdESSigningSession session = profile.prepareSigningSession(profile.computeSessionKey(document, parameters),
+                document, parameters, true);
+        signingSessionStore.put(session);
+        return session.getToBeSigned();
     }
 
     @Override
@@ -132,19 +184,70 @@ public class XAdESService implements DocumentSignatureService {
             throws IOException {
         XAdESProfileBES profile = getSigningProfile(parameters);
 
-        Document signedDoc = profile.signDocument(document, parameters, signatureValue);
+        XAdESSigningSession session = null;
+        if (transparentSessions) {
+            session = signingSessionStore.remove(profile.computeSessionKey(document, parameters));
+        }
+        if (session == null) {
+            session = profile.prepareSigningSession(null, document, parameters, false);
+        }
 
-        SignatureExtension extension = getExtensionProfile(parameters);
-        if (extension != null) {
-            if (parameters.getSignaturePackaging() == SignaturePackaging.ENVELOPED) {
-                String signatureId = "sigId-" + profile.computeDeterministicId(parameters);
-                return extension.extendSignature(signatureId, signedDoc, document, parameters);
-            } else {
-                return extension.extendSignatures(signedDoc, document, parameters);
-            }
-        } else {
-            return signedDoc;
+        return signAndExtend(profile, session, signatureValue);
+    }
+
+    /**
+     * Prepare the signature of the document and keep it in the signing session store until it expires. The data to be
+     * signed is available from the session, and the signature value is given back to {@link #signDocument(String,
+     * byte[])} with the id of the session.
+     * 
+     * @param document
+     * @param parameters
+     * @return the session
+     */
+    public XAdESSigningSession openSigningSession(Document document, SignatureParameters parameters) {
+        XAdESProfileBES profile = getSigningProfile(parameters);
+        XAdESSigningSession session = profile.prepareSigningSession(UUID.randomUUID().toString(), document,
+                parameters, true);
+        signingSessionStore.put(session);
+        return session;
+    }
+
+    /**
+     * Sign the document prepared by {@link #openSigningSession(Document, SignatureParameters)}: the signature value is
+     * inserted in the prepared DOM, which is then extended if needed and serialized.
+     * 
+     * @param sessionId
+     * @param signatureValue
+     * @return the signed document
+     * @throws IOException
+     */
+    public Document signDocument(String sessionId, byte[] signatureValue) throws IOException {
+        XAdESSigningSession session = signingSessionStore.remove(sessionId);
+        if (session == null) {
+            throw new IllegalArgumentException("Unknown or expired signing session " + sessionId);
+        }
+        return signAndExtend(getSigningProfile(session.getParameters()), session, signatureValue);
+    }
+
+    /**
+     * The levels above -BES are added to the signed DOM before it is serialized, so the signed document is neither
+     * written nor parsed again for the extension.
+     */
+    private Document signAndExtend(XAdESProfileBES profile, XAdESSigningSession session, byte[] signatureValue)
+            throws IOException {
+        SignatureParameters parameters = session.getParameters();
+        XAdESProfileT extension = getExtensionProfile(parameters);
+        if (extension == null) {
+            return profile.signDocument(session, signatureValue);
+        }
+
+        org.w3c.dom.Document signedDoc = profile.insertSignatureValue(session, signatureValue);
+        String signatureId = null;
+        if (parameters.getSignaturePackaging() == SignaturePackaging.ENVELOPED) {
+            signatureId = "sigId-" + profile.computeDeterministicId(parameters);
         }
+        extension.extendSignatures(signedDoc, signatureId, session.getOriginalDocument(), parameters);
+        return profile.toSignedDocument(session, extension.toByteArray(signedDoc));
     }
 
     @Override
@@ -0,0 +1,142 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.markt.dss.signature.xades;
+
+import eu.europa.ec.markt.dss.signature.Document;
+import eu.europa.ec.markt.dss.signature.SignatureParameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.apache.jcp.xml.dsig.internal.dom.DOMXMLSignature;
+
+/**
+ * State of a signature between the computation of the data to be signed and the insertion of the signature value:
+ * the DOM containing the ds:Signature, whose references are already digested, and the canonicalized SignedInfo. A
+ * session can only be used to sign once.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class XAdESSigningSession {
+
+    private final String id;
+
+    private final Document originalDocument;
+
+    private final SignatureParameters parameters;
+
+    private final org.w3c.dom.Document xmlDocument;
+
+    private final DOMXMLSignature signature;
+
+    private final String signatureValueId;
+
+    private final byte[] toBeSigned;
+
+    private final long creationTime;
+
+    private boolean signed;
+
+    /**
+     * The default constructor for XAdESSigningSession.
+     * 
+     * @param id
+     * @param originalDocument
+     * @param parameters
+     * @param xmlDocument
+     * @param signature
+     * @param signatureValueId
+     * @param toBeSigned the canonicalized SignedInfo, or null if it has not been computed
+     */
+    XAdESSigningSession(String id, Document originalDocument, SignatureParameters parameters,
+            org.w3c.dom.Document xmlDocument, DOMXMLSignature signature, String signatureValueId, byte[] toBeSigned) {
+        this.id = id;
+        this.originalDocument = originalDocument;
+        this.parameters = parameters;
+        this.xmlDocument = xmlDocument;
+        this.signature = signature;
+        this.signatureValueId = signatureValueId;
+        this.toBeSigned = toBeSigned;
+        this.creationTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the handle of the session
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the data to be signed
+     */
+    public InputStream getToBeSigned() {
+        if (toBeSigned == null) {
+            throw new IllegalStateException("The data to be signed of the session " + id + " has not been computed");
+        }
+        return new ByteArrayInputStream(toBeSigned);
+    }
+
+    /**
+     * @return the creation time of the session, in milliseconds
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * @return the document to be signed
+     */
+    public Document getOriginalDocument() {
+        return originalDocument;
+    }
+
+    /**
+     * @return the parameters of the signature
+     */
+    public SignatureParameters getParameters() {
+        return parameters;
+    }
+
+    org.w3c.dom.Document getXmlDocument() {
+        return xmlDocument;
+    }
+
+    DOMXMLSignature getSignature() {
+        return signature;
+    }
+
+    String getSignatureValueId() {
+        return signatureValueId;
+    }
+
+    /**
+     * The DOM of the session is modified by the signature, so it can only be used once.
+     */
+    synchronized void markSigned() {
+        if (signed) {
+            throw new IllegalStateException("The signing session " + id + " has already been used");
+        }
+        signed = true;
+    }
+
+}
@@ -0,0 +1,307 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.markt.dss.signature.xades;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Result;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSOutput;
+import org.w3c.dom.ls.LSSerializer;
+import org.xml.sax.SAXException;
+
+/**
+ * Shared XML infrastructure of the XAdES and ASiC classes. The factories are looked up once, the JAXBContexts are
+ * created once per ObjectFactory, and the parsers, identity transformers and (un)marshallers, which are not
+ * thread-safe, are kept per thread and reset after each use.
+ * 
+ * <p>
+ * The pooled objects returned by this class must only be used by the calling thread, and their configuration must
+ * not be changed. In a servlet container, {@link #release()} must be called at the end of each request, so the pooled
+ * objects don't keep the classloaders of the application on the threads of the container after a redeploy.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public abstract class XMLInfrastructure {
+
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+
+    private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+
+    private static final ConcurrentMap<Class<?>, JAXBContext> JAXB_CONTEXTS =
+            new ConcurrentHashMap<Class<?>, JAXBContext>();
+
+    private static volatile DOMImplementationLS domImplementationLS;
+
+    static {
+        DOCUMENT_BUILDER_FACTORY.setNamespaceAware(true);
+    }
+
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = new ThreadLocal<DocumentBuilder>() {
+
+        @Override
+        protected DocumentBuilder initialValue() {
+            /* The factories are not guaranteed to be thread-safe */
+            synchronized (DOCUMENT_BUILDER_FACTORY) {
+                try {
+                    return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+                } catch (ParserConfigurationException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+    };
+
+    private static final ThreadLocal<Transformer> TRANSFORMER = new ThreadLocal<Transformer>() {
+
+        @Override
+        protected Transformer initialValue() {
+            synchronized (TRANSFORMER_FACTORY) {
+                try {
+                    return TRANSFORMER_FACTORY.newTransformer();
+                } catch (TransformerConfigurationException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+    };
+
+    private static final ThreadLocal<Map<String, Marshaller>> MARSHALLERS =
+            new ThreadLocal<Map<String, Marshaller>>() {
+
+                @Override
+                protected Map<String, Marshaller> initialValue() {
+                    return new HashMap<String, Marshaller>();
+                }
+
+            };
+
+    private static final ThreadLocal<Map<Class<?>, Unmarshaller>> UNMARSHALLERS =
+            new ThreadLocal<Map<Class<?>, Unmarshaller>>() {
+
+                @Override
+                protected Map<Class<?>, Unmarshaller> initialValue() {
+                    return new HashMap<Class<?>, Unmarshaller>();
+                }
+
+            };
+
+    /**
+     * Create a new empty namespace aware document
+     * 
+     * @return the document
+     */
+    public static Document newDocument() {
+        return DOCUMENT_BUILDER.get().newDocument();
+    }
+
+    /**
+     * Parse the stream with the namespace aware parser of the current thread. The stream is not closed.
+     * 
+     * @param input
+     * @return the parsed document
+     * @throws IOException
+     * @throws SAXException
+     */
+    public static Document parse(InputStream input) throws IOException, SAXException {
+        DocumentBuilder builder = DOCUMENT_BUILDER.get();
+        try {
+            return builder.parse(input);
+        } finally {
+            builder.reset();
+        }
+    }
+
+    /**
+     * Copy the node to the result with the identity transformer of the current thread
+     * 
+     * @param node
+     * @param result
+     * @throws TransformerException
+     */
+    public static void transform(Node node, Result result) throws TransformerException {
+        Transformer transformer = TRANSFORMER.get();
+        try {
+            transformer.transform(new DOMSource(node), result);
+        } finally {
+            transformer.reset();
+        }
+    }
+
+    /**
+     * Return the bytes of the node, written by the identity transformer of the current thread
+     * 
+     * @param node
+     * @return the XML bytes
+     * @throws TransformerException
+     */
+    public static byte[] toByteArray(Node node) throws TransformerException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        transform(node, new StreamResult(buffer));
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Write the node with a DOM Level 3 serializer
+     * 
+     * @param node
+     * @param output
+     * @throws IOException if there is no DOM LS implementation
+     */
+    public static void serialize(Node node, OutputStream output) throws IOException {
+        DOMImplementationLS impl = getDOMImplementationLS();
+        LSSerializer writer = impl.createLSSerializer();
+        LSOutput lsOutput = impl.createLSOutput();
+        lsOutput.setByteStream(output);
+        writer.write(node, lsOutput);
+    }
+
+    private static DOMImplementationLS getDOMImplementationLS() throws IOException {
+        DOMImplementationLS impl = domImplementationLS;
+        if (impl == null) {
+            try {
+                DOMImplementationRegistry registry = DOMImplementationRegistry.newInstance();
+                impl = (DOMImplementationLS) registry.getDOMImplementation("LS");
+            } catch (ClassCastException e) {
+                throw new IOException("Cannot find a DOM LS implementation", e);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Cannot find a DOM LS implementation", e);
+            } catch (InstantiationException e) {
+                throw new IOException("Cannot find a DOM LS implementation", e);
+            } catch (IllegalAccessException e) {
+                throw new IOException("Cannot find a DOM LS implementation", e);
+            }
+            if (impl == null) {
+                throw new IOException("Cannot find a DOM LS implementation");
+            }
+            domImplementationLS = impl;
+        }
+        return impl;
+    }
+
+    /**
+     * Return the JAXBContext of the given ObjectFactory, which is created only once. JAXBContext is thread-safe.
+     * 
+     * @param objectFactory
+     * @return the context
+     * @throws JAXBException
+     */
+    public static JAXBContext getJAXBContext(Class<?> objectFactory) throws JAXBException {
+        JAXBContext context = JAXB_CONTEXTS.get(objectFactory);
+        if (context == null) {
+            context = JAXBContext.newInstance(objectFactory);
+            JAXBContext existing = JAXB_CONTEXTS.putIfAbsent(objectFactory, context);
+            if (existing != null) {
+                context = existing;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Return the marshaller of the given ObjectFactory for the current thread
+     * 
+     * @param objectFactory
+     * @return the marshaller
+     * @throws JAXBException
+     */
+    public static Marshaller getMarshaller(Class<?> objectFactory) throws JAXBException {
+        return getMarshaller(objectFactory, false);
+    }
+
+    /**
+     * Return the marshaller of the given ObjectFactory for the current thread
+     * 
+     * @param objectFactory
+     * @param formattedOutput value of the {@link Marshaller#JAXB_FORMATTED_OUTPUT} property
+     * @return the marshaller
+     * @throws JAXBException
+     */
+    public static Marshaller getMarshaller(Class<?> objectFactory, boolean formattedOutput) throws JAXBException {
+        Map<String, Marshaller> marshallers = MARSHALLERS.get();
+        String key = objectFactory.getName() + (formattedOutput ? "#formatted" : "");
+        Marshaller marshaller = marshallers.get(key);
+        if (marshaller == null) {
+            marshaller = getJAXBContext(objectFactory).createMarshaller();
+            if (formattedOutput) {
+                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            }
+            marshallers.put(key, marshaller);
+        }
+        return marshaller;
+    }
+
+    /**
+     * Return the unmarshaller of the given ObjectFactory for the current thread
+     * 
+     * @param objectFactory
+     * @return the unmarshaller
+     * @throws JAXBException
+     */
+    public static Unmarshaller getUnmarshaller(Class<?> objectFactory) throws JAXBException {
+        Map<Class<?>, Unmarshaller> unmarshallers = UNMARSHALLERS.get();
+        Unmarshaller unmarshaller = unmarshallers.get(objectFactory);
+        if (unmarshaller == null) {
+            unmarshaller = getJAXBContext(objectFactory).createUnmarshaller();
+            unmarshallers.put(objectFactory, unmarshaller);
+        }
+        return unmarshaller;
+    }
+
+    /**
+     * Drop the parser, transformer, marshallers and unmarshallers pooled for the current thread. Only the calling
+     * thread is affected: the pools of the other threads are released when they call this method.
+     */
+    public static void release() {
+        DOCUMENT_BUILDER.remove();
+        TRANSFORMER.remove();
+        MARSHALLERS.remove();
+        UNMARSHALLERS.remove();
+    }
+
+}
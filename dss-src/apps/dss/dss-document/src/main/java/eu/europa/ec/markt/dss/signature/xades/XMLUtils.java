@@ -21,7 +21,11 @@
 package eu.europa.ec.markt.dss.signature.xades;
 
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.xml.crypto.dsig.XMLSignature;
 import javax.xml.crypto.dsig.dom.DOMValidateContext;
@@ -35,10 +39,6 @@ import javax.xml.xpath.XPathFactory;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.w3c.dom.bootstrap.DOMImplementationRegistry;
-import org.w3c.dom.ls.DOMImplementationLS;
-import org.w3c.dom.ls.LSOutput;
-import org.w3c.dom.ls.LSSerializer;
 
 /**
  * Utility class that contains some XML related method.
@@ -49,43 +49,127 @@ import org.w3c.dom.ls.LSSerializer;
 
 public abstract class XMLUtils {
 
+    /* Maximum number of compiled expressions kept by each thread */
+    private static final int MAX_CACHED_EXPRESSIONS = 256;
+
+    private static final NamespaceContext NAMESPACE_CONTEXT = new NamespaceContext() {
+
+        @Override
+        public Iterator<?> getPrefixes(String namespaceURI) {
+            throw new RuntimeException();
+        }
+
+        @Override
+        public String getPrefix(String namespaceURI) {
+            throw new RuntimeException();
+        }
+
+        @Override
+        public String getNamespaceURI(String prefix) {
+            if ("ds".equals(prefix)) {
+                return XMLSignature.XMLNS;
+            } else if ("xades".equals(prefix)) {
+                return "http://uri.etsi.org/01903/v1.3.2#";
+            } else if ("xades141".equals(prefix)) {
+                return "http://uri.etsi.org/01903/v1.4.1#";
+            } else if ("xades111".equals(prefix)) {
+                return "http://uri.etsi.org/01903/v1.1.1#";
+            }
+            throw new RuntimeException("Prefix not recognized : " + prefix);
+        }
+    };
+
+    /*
+     * XPath and XPathExpression are not thread-safe, so each thread compiles the expressions once with its own XPath
+     * and keeps them in a small LRU cache.
+     */
+    private static final ThreadLocal<XPath> XPATH = new ThreadLocal<XPath>() {
+
+        @Override
+        protected XPath initialValue() {
+            XPath xpath = XPathFactory.newInstance().newXPath();
+            xpath.setNamespaceContext(NAMESPACE_CONTEXT);
+            return xpath;
+        }
+
+    };
+
+    private static final ThreadLocal<Map<String, XPathExpression>> EXPRESSIONS =
+            new ThreadLocal<Map<String, XPathExpression>>() {
+
+                @Override
+                protected Map<String, XPathExpression> initialValue() {
+                    return new LinkedHashMap<String, XPathExpression>(64, 0.75f, true) {
+
+                        private static final long serialVersionUID = 1L;
+
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+                            return size() > MAX_CACHED_EXPRESSIONS;
+                        }
+
+                    };
+                }
+
+            };
+
     private static XPathExpression createXPathExpression(String xpathString) {
-        /* XPath */
-        XPathFactory factory = XPathFactory.newInstance();
-        XPath xpath = factory.newXPath();
-        xpath.setNamespaceContext(new NamespaceContext() {
-
-            @Override
-            public Iterator<?> getPrefixes(String namespaceURI) {
-                throw new RuntimeException();
+        Map<String, XPathExpression> expressions = EXPRESSIONS.get();
+        XPathExpression expr = expressions.get(xpathString);
+        if (expr == null) {
+            try {
+                expr = XPATH.get().compile(xpathString);
+            } catch (XPathExpressionException ex) {
+                throw new RuntimeException(ex);
             }
+            expressions.put(xpathString, expr);
+        }
+        return expr;
+    }
 
-            @Override
-            public String getPrefix(String namespaceURI) {
-                throw new RuntimeException();
+    /**
+     * Return the first child element with the given name, without evaluating any XPath
+     * 
+     * @param parent
+     * @param namespaceURI
+     * @param localName
+     * @return the element or null if there is none
+     */
+    public static Element getChildElement(Node parent, String namespaceURI, String localName) {
+        if (parent == null) {
+            return null;
+        }
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (isElement(node, namespaceURI, localName)) {
+                return (Element) node;
             }
+        }
+        return null;
+    }
 
-            @Override
-            public String getNamespaceURI(String prefix) {
-                if ("ds".equals(prefix)) {
-                    return XMLSignature.XMLNS;
-                } else if ("xades".equals(prefix)) {
-                    return "http://uri.etsi.org/01903/v1.3.2#";
-                } else if ("xades141".equals(prefix)) {
-                    return "http://uri.etsi.org/01903/v1.4.1#";
-                } else if ("xades111".equals(prefix)) {
-                    return "http://uri.etsi.org/01903/v1.1.1#";
+    /**
+     * Return the child elements with the given name, in document order, without evaluating any XPath
+     * 
+     * @param parent
+     * @param namespaceURI
+     * @param localName
+     * @return the elements, never null
+     */
+    public static List<Element> getChildElements(Node parent, String namespaceURI, String localName) {
+        List<Element> elements = new ArrayList<Element>();
+        if (parent != null) {
+            for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+                if (isElement(node, namespaceURI, localName)) {
+                    elements.add((Element) node);
                 }
-                throw new RuntimeException("Prefix not recognized : " + prefix);
             }
-        });
-        try {
-            XPathExpression expr = xpath.compile(xpathString);
-            return expr;
-        } catch (XPathExpressionException ex) {
-            throw new RuntimeException(ex);
         }
+        return elements;
+    }
 
+    private static boolean isElement(Node node, String namespaceURI, String localName) {
+        return node.getNodeType() == Node.ELEMENT_NODE && localName.equals(node.getLocalName())
+                && namespaceURI.equals(node.getNamespaceURI());
     }
 
     /**
@@ -131,14 +215,8 @@ public abstract class XMLUtils {
     public static String serializeNode(Node xmlNode) {
 
         try {
-            DOMImplementationRegistry registry = DOMImplementationRegistry.newInstance();
-            DOMImplementationLS impl = (DOMImplementationLS) registry.getDOMImplementation("LS");
-            LSSerializer writer = impl.createLSSerializer();
-
             ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            LSOutput output = impl.createLSOutput();
-            output.setByteStream(buffer);
-            writer.write(xmlNode, output);
+            XMLInfrastructure.serialize(xmlNode, buffer);
 
             return new String(buffer.toByteArray());
         } catch (Exception e) {
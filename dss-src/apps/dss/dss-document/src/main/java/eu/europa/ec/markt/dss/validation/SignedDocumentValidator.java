@@ -23,6 +23,7 @@ package eu.europa.ec.markt.dss.validation;
 import eu.europa.ec.markt.dss.NotETSICompliantException;
 import eu.europa.ec.markt.dss.NotETSICompliantException.MSG;
 import eu.europa.ec.markt.dss.signature.Document;
+import eu.europa.ec.markt.dss.signature.DocumentFactory;
 import eu.europa.ec.markt.dss.signature.InMemoryDocument;
 import eu.europa.ec.markt.dss.signature.ProfileException;
 import eu.europa.ec.markt.dss.validation.asic.ASiCXMLDocumentValidator;
@@ -69,6 +70,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -101,6 +103,8 @@ public abstract class SignedDocumentValidator {
 
     private CertificateVerifier certificateVerifier;
 
+    private ExecutorService executorService;
+
     private Condition qcp = new PolicyIdCondition("0.4.0.1456.1.2");
     private Condition qcpplus = new PolicyIdCondition("0.4.0.1456.1.1");
     private Condition qccompliance = new QcStatementCondition(ETSIQCObjectIdentifiers.id_etsi_qcs_QcCompliance);
@@ -108,6 +112,8 @@ public abstract class SignedDocumentValidator {
 
     private static final String MIMETYPE = "mimetype";
     private static final String MIMETYPE_ASIC_S = "application/vnd.etsi.asic-s+zip";
+    private static final String MIMETYPE_ASIC_E = "application/vnd.etsi.asic-e+zip";
+    private static final String META_INF = "META-INF/";
     private static final String SIGNATURES_XML = "META-INF/signatures.xml";
     private static final String SIGNATURES_P7S = "META-INF/signatures.p7s";
 
@@ -187,11 +193,13 @@ public abstract class SignedDocumentValidator {
         try {
 
             ByteArrayOutputStream datafile = null;
+            List<Document> datafiles = new ArrayList<Document>();
             ByteArrayOutputStream signatures = null;
             ZipEntry entry;
 
             boolean cadesSigned = false;
             boolean xadesSigned = false;
+            boolean asice = false;
 
             while ((entry = asics.getNextEntry()) != null) {
                 if (entry.getName().equalsIgnoreCase(SIGNATURES_P7S)) {
@@ -214,9 +222,17 @@ public abstract class SignedDocumentValidator {
                     ByteArrayOutputStream mimetype = new ByteArrayOutputStream();
                     IOUtils.copy(asics, mimetype);
                     mimetype.close();
-                    if (!Arrays.equals(mimetype.toByteArray(), MIMETYPE_ASIC_S.getBytes())) {
+                    if (Arrays.equals(mimetype.toByteArray(), MIMETYPE_ASIC_E.getBytes())) {
+                        asice = true;
+                    } else if (!Arrays.equals(mimetype.toByteArray(), MIMETYPE_ASIC_S.getBytes())) {
                         throw new NotETSICompliantException(MSG.UNRECOGNIZED_TAG);
                     }
+                } else if (asice && !entry.isDirectory() && !entry.getName().startsWith(META_INF)) {
+                    /* ASiC-E: every data object is kept with its name, which is the URI of its reference */
+                    ByteArrayOutputStream data = new ByteArrayOutputStream();
+                    IOUtils.copy(asics, data);
+                    data.close();
+                    datafiles.add(new InMemoryDocument(data.toByteArray(), entry.getName()));
                 } else if (entry.getName().indexOf("/") == -1) {
                     if (datafile == null) {
                         datafile = new ByteArrayOutputStream();
@@ -228,7 +244,16 @@ public abstract class SignedDocumentValidator {
                 }
             }
 
-            if (xadesSigned) {
+            if (asice) {
+                if (!xadesSigned) {
+                    throw new ProfileException("ASiC-E profile is supported only with XAdES signatures");
+                }
+                if (datafiles.isEmpty()) {
+                    throw new ProfileException("ASiC-E container without data object");
+                }
+                return new ASiCXMLDocumentValidator(new InMemoryDocument(signatures.toByteArray()),
+                        DocumentFactory.newDocumentFolder(datafiles.get(0), datafiles.subList(1, datafiles.size())));
+            } else if (xadesSigned) {
                 ASiCXMLDocumentValidator xmlValidator = new ASiCXMLDocumentValidator(new InMemoryDocument(
                         signatures.toByteArray()), datafile.toByteArray());
                 return xmlValidator;
@@ -281,6 +306,23 @@ public abstract class SignedDocumentValidator {
         this.certificateVerifier = certificateVerifier;
     }
 
+    /**
+     * @return the executorService
+     */
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Set the executor used to digest the data objects of a multi-file detached signature (ASiC-E) in parallel. If not
+     * set, the data objects are digested one after the other.
+     * 
+     * @param executorService the executorService to set
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
     /**
      * Sets the Document containing the original content to sign, for detached signature scenarios
      * 
@@ -885,7 +927,8 @@ public abstract class SignedDocumentValidator {
                     referenceTime, signature.getCertificateSource(), signature.getCRLSource(),
                     signature.getOCSPSource());
 
-            TrustedListInformation info = new TrustedListInformation(ctx.getRelevantServiceInfo());
+            TrustedListInformation info = new TrustedListInformation(ctx.getRelevantServiceInfo(),
+                    ctx.getTrustAnchorSnapshot(), new Date());
 
             CertPathRevocationAnalysis path = new CertPathRevocationAnalysis(ctx, info);
 
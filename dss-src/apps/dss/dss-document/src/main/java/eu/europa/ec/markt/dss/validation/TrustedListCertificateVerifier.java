@@ -24,10 +24,14 @@ import eu.europa.ec.markt.dss.validation.certificate.CertificateSource;
 import eu.europa.ec.markt.dss.validation.certificate.CertificateSourceFactory;
 import eu.europa.ec.markt.dss.validation.crl.CRLSource;
 import eu.europa.ec.markt.dss.validation.ocsp.OCSPSource;
+import eu.europa.ec.markt.dss.validation.tsl.TrustAnchorSnapshot;
+import eu.europa.ec.markt.dss.validation.tsl.TrustAnchorSource;
 
 import java.io.IOException;
 import java.security.cert.X509Certificate;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 /**
@@ -50,6 +54,13 @@ public class TrustedListCertificateVerifier implements CertificateVerifier {
 
     private CRLSource crlSource;
 
+    private ExecutorService executorService;
+
+    private ValidationContextCache validationContextCache = new ValidationContextCache();
+
+    /* Version of the trust anchors the cached ValidationContext were built with */
+    private final AtomicLong trustAnchorVersion = new AtomicLong(-1);
+
     /**
      * Define the AiaCertificateSourceFactory that permits the retrieval of the certificate linked in the AIA field.
      * 
@@ -78,7 +89,27 @@ public class TrustedListCertificateVerifier implements CertificateVerifier {
     }
 
     /**
-     * Define how the certificate from the Trusted Lists are retrived.
+     * Define the executor used to fetch the status of the certificates of a chain in parallel. If not set, the status
+     * are fetched sequentially. The CRLSource and OCSPSource must be thread-safe when an executor is used.
+     * 
+     * @param executorService the executorService to set
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Define the cache of ValidationContext shared by every validation done with this verifier.
+     * 
+     * @param validationContextCache the validationContextCache to set
+     */
+    public void setValidationContextCache(ValidationContextCache validationContextCache) {
+        this.validationContextCache = validationContextCache;
+    }
+
+    /**
+     * Define how the certificate from the Trusted Lists are retrived. When the source is a TrustAnchorSource, each
+     * validation uses the snapshot current when it starts.
      * 
      * @param trustedListCertificatesSource the trustedListCertificatesSource to set
      */
@@ -95,24 +126,55 @@ public class TrustedListCertificateVerifier implements CertificateVerifier {
             throw new NullPointerException("A validation context must contains a cert and a validation date");
         }
 
-        ValidationContext previous = validationContextThreadLocal.get();
-        if (previous != null && previous.getCertificate().equals(cert)
-                && previous.getValidationDate().equals(validationDate)) {
-            LOG.info("We don't need to check twice for the same");
-            return previous;
+        CertificateSource trustAnchors = getTrustAnchors();
+
+        if (validationContextCache != null) {
+            ValidationContext cached = validationContextCache.get(cert, validationDate, optionalCertificateSource,
+                    optionalCRLSource, optionalOCSPSource);
+            if (cached != null) {
+                LOG.info("We don't need to check twice for the same");
+                return cached;
+            }
         }
 
         ValidationContext context = new ValidationContext(cert, validationDate);
         context.setCrlSource(crlSource);
         context.setOcspSource(ocspSource);
-        context.setTrustedListCertificatesSource(trustedListCertificatesSource);
+        context.setTrustedListCertificatesSource(trustAnchors);
+        context.setExecutorService(executorService);
         context.validate(validationDate, optionalCertificateSource, optionalCRLSource, optionalOCSPSource);
 
-        validationContextThreadLocal.set(context);
+        /* A context built with trust anchors replaced in the meantime is not cached */
+        TrustAnchorSnapshot snapshot = context.getTrustAnchorSnapshot();
+        if (validationContextCache != null
+                && (snapshot == null || snapshot.getVersion() == trustAnchorVersion.get())) {
+            validationContextCache.put(context, optionalCertificateSource, optionalCRLSource, optionalOCSPSource);
+        }
 
         return context;
     }
 
-    private ThreadLocal<ValidationContext> validationContextThreadLocal = new ThreadLocal<ValidationContext>();
+    /**
+     * Return the trust anchors to use for one validation: the current snapshot of a TrustAnchorSource, so that a reload
+     * during the validation cannot mix two generations. The cached ValidationContext are dropped when a new generation
+     * is published.
+     * 
+     * @return
+     */
+    private CertificateSource getTrustAnchors() {
+        if (!(trustedListCertificatesSource instanceof TrustAnchorSource)) {
+            return trustedListCertificatesSource;
+        }
+        TrustAnchorSnapshot snapshot = ((TrustAnchorSource) trustedListCertificatesSource).getSnapshot();
+        if (snapshot == null) {
+            return trustedListCertificatesSource;
+        }
+        long previous = trustAnchorVersion.getAndSet(snapshot.getVersion());
+        if (previous != snapshot.getVersion() && previous != -1 && validationContextCache != null) {
+            LOG.info("Trust anchors version " + snapshot.getVersion() + " published, the cached contexts are dropped");
+            validationContextCache.clear();
+        }
+        return snapshot;
+    }
 
 }
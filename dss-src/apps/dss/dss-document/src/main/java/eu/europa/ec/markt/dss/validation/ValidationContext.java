@@ -23,14 +23,18 @@ package eu.europa.ec.markt.dss.validation;
 import eu.europa.ec.markt.dss.signature.SignatureEventDelegate;
 import eu.europa.ec.markt.dss.signature.SignatureEventListener;
 import eu.europa.ec.markt.dss.validation.certificate.CertificateAndContext;
+import eu.europa.ec.markt.dss.validation.certificate.CertificateIndex;
 import eu.europa.ec.markt.dss.validation.certificate.CertificateSource;
 import eu.europa.ec.markt.dss.validation.certificate.CertificateSourceType;
 import eu.europa.ec.markt.dss.validation.certificate.CompositeCertificateSource;
+import eu.europa.ec.markt.dss.validation.certificate.IndexedCertificateSource;
+import eu.europa.ec.markt.dss.validation.certificate.PooledCertificate;
 import eu.europa.ec.markt.dss.validation.crl.CRLSource;
 import eu.europa.ec.markt.dss.validation.crl.ListCRLSource;
 import eu.europa.ec.markt.dss.validation.ocsp.ListOCSPSource;
 import eu.europa.ec.markt.dss.validation.ocsp.OCSPSource;
 import eu.europa.ec.markt.dss.validation.tsl.ServiceInfo;
+import eu.europa.ec.markt.dss.validation.tsl.TrustAnchorSnapshot;
 import eu.europa.ec.markt.dss.validation.x509.CRLToken;
 import eu.europa.ec.markt.dss.validation.x509.CertificateToken;
 import eu.europa.ec.markt.dss.validation.x509.OCSPRespToken;
@@ -44,13 +48,23 @@ import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.security.auth.x500.X500Principal;
+
 import org.bouncycastle.ocsp.BasicOCSPResp;
 import org.bouncycastle.ocsp.CertificateID;
 import org.bouncycastle.ocsp.OCSPException;
@@ -74,9 +88,25 @@ public class ValidationContext {
 
     private List<CertificateAndContext> neededCertificates = new ArrayList<CertificateAndContext>();
 
+    /* The certificates of neededCertificates, to check in constant time if a certificate is already needed */
+    private Set<PooledCertificate> neededCertificateKeys = new HashSet<PooledCertificate>();
+
     private X509Certificate certificate;
 
-    private Map<SignedToken, RevocationData> revocationInfo = new HashMap<SignedToken, RevocationData>();
+    /* Tokens already verified, with the RevocationData found for each of them */
+    private Map<SignedToken, RevocationData> revocationInfo = new LinkedHashMap<SignedToken, RevocationData>();
+
+    /* Tokens waiting to be verified, in the order they have been discovered */
+    private Set<SignedToken> pendingTokens = new LinkedHashSet<SignedToken>();
+
+    /* Certificate tokens whose status is being fetched by the executorService */
+    private Map<SignedToken, StatusTask> inFlightTokens = new LinkedHashMap<SignedToken, StatusTask>();
+
+    /* Fetches of tokens verified otherwise while in flight, still joined for the tokens their status reveals */
+    private List<StatusTask> supersededTasks = new ArrayList<StatusTask>();
+
+    /* Time (in milliseconds) spent to verify each token */
+    private Map<SignedToken, Long> tokenValidationTimes = new LinkedHashMap<SignedToken, Long>();
 
     private CertificateSource trustedListCertificatesSource;
 
@@ -86,6 +116,8 @@ public class ValidationContext {
 
     private Date validationDate;
 
+    private ExecutorService executorService;
+
     private SignatureEventDelegate signatureEventDelegate = new SignatureEventDelegate();
 
     /**
@@ -103,6 +135,29 @@ public class ValidationContext {
         this.validationDate = validationDate;
     }
 
+    /**
+     * Create a copy of an already built ValidationContext for another (close) validation date. The collected tokens
+     * and revocation data are copied, so the copy can be enriched without modifying the original.
+     * 
+     * @param other The context to copy
+     * @param validationDate The validation date of the copy
+     */
+    ValidationContext(ValidationContext other, Date validationDate) {
+        this.certificate = other.certificate;
+        this.validationDate = validationDate;
+        this.neededOCSPResp.addAll(other.neededOCSPResp);
+        this.neededCRL.addAll(other.neededCRL);
+        this.neededCertificates.addAll(other.neededCertificates);
+        this.neededCertificateKeys.addAll(other.neededCertificateKeys);
+        this.revocationInfo.putAll(other.revocationInfo);
+        this.pendingTokens.addAll(other.pendingTokens);
+        this.tokenValidationTimes.putAll(other.tokenValidationTimes);
+        this.trustedListCertificatesSource = other.trustedListCertificatesSource;
+        this.ocspSource = other.ocspSource;
+        this.crlSource = other.crlSource;
+        this.executorService = other.executorService;
+    }
+
     /**
      * Return the certificate for which this ValidationContext has been created
      * 
@@ -126,6 +181,16 @@ public class ValidationContext {
         this.trustedListCertificatesSource = trustedListCertificatesSource;
     }
 
+    /**
+     * @return the generation of trust anchors used by this context, or null if the Trusted Lists are not versioned
+     */
+    public TrustAnchorSnapshot getTrustAnchorSnapshot() {
+        if (trustedListCertificatesSource instanceof TrustAnchorSnapshot) {
+            return (TrustAnchorSnapshot) trustedListCertificatesSource;
+        }
+        return null;
+    }
+
     /**
      * @param crlSource the crlSource to set
      */
@@ -140,17 +205,31 @@ public class ValidationContext {
         this.ocspSource = ocspSource;
     }
 
+    /**
+     * Set the executor used to fetch the status (OCSP, CRL) of independent certificates in parallel. When no executor
+     * is set, the status are fetched one after the other. The CRLSource and OCSPSource used by this context must be
+     * thread-safe when an executor is set.
+     * 
+     * @param executorService the executorService to set
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
     SignedToken getOneNotYetVerifiedToken() {
-        for (Entry<SignedToken, RevocationData> e : revocationInfo.entrySet()) {
-            if (e.getValue() == null) {
-                LOG.info("=== Get token to validate " + e.getKey());
-                return e.getKey();
-            }
+        if (pendingTokens.isEmpty()) {
+            return null;
         }
-        return null;
+        SignedToken signedToken = pendingTokens.iterator().next();
+        LOG.info("=== Get token to validate " + signedToken);
+        return signedToken;
     }
 
     /**
+     * Find the issuer of a token. When the token gives the key identifier of its issuer, the certificates with this
+     * SubjectKeyIdentifier are tried first, so that the signature is usually verified once, even when several keys of
+     * the CA share the same subject name. Otherwise the certificates with the subject name of the issuer are tried. The
+     * trusted source is searched before the optional one, and the lists returned by the sources are read without copy.
      * 
      * @param signedToken
      * @param optionalSource
@@ -160,74 +239,155 @@ public class ValidationContext {
      */
     CertificateAndContext getIssuerCertificate(SignedToken signedToken, CertificateSource optionalSource,
             Date validationDate) throws IOException {
-        if (signedToken.getSignerSubjectName() == null) {
+        X500Principal issuerName = signedToken.getSignerSubjectName();
+        if (issuerName == null) {
             return null;
         }
-        List<CertificateAndContext> list = new CompositeCertificateSource(trustedListCertificatesSource,
-                optionalSource).getCertificateBySubjectName(signedToken.getSignerSubjectName());
-        if (list != null) {
-            for (CertificateAndContext cert : list) {
+
+        List<CertificateAndContext> trustedByKey = Collections.emptyList();
+        List<CertificateAndContext> optionalByKey = Collections.emptyList();
+        byte[] keyIdentifier = getAuthorityKeyIdentifier(signedToken);
+        if (keyIdentifier != null) {
+            trustedByKey = getCertificateBySubjectKeyIdentifier(trustedListCertificatesSource, keyIdentifier);
+            CertificateAndContext issuer = selectIssuer(signedToken, issuerName, trustedByKey, null, null,
+                    validationDate);
+            if (issuer != null) {
+                return issuer;
+            }
+            optionalByKey = getCertificateBySubjectKeyIdentifier(optionalSource, keyIdentifier);
+            issuer = selectIssuer(signedToken, issuerName, optionalByKey, null, null, validationDate);
+            if (issuer != null) {
+                return issuer;
+            }
+        }
+
+        CertificateAndContext issuer = selectIssuer(signedToken, issuerName,
+                getCertificateBySubjectName(trustedListCertificatesSource, issuerName), trustedByKey, optionalByKey,
+                validationDate);
+        if (issuer != null) {
+            return issuer;
+        }
+        return selectIssuer(signedToken, issuerName, getCertificateBySubjectName(optionalSource, issuerName),
+                trustedByKey, optionalByKey, validationDate);
+    }
+
+    private static List<CertificateAndContext> getCertificateBySubjectName(CertificateSource source,
+            X500Principal subjectName) throws IOException {
+        if (source == null) {
+            return null;
+        }
+        return source.getCertificateBySubjectName(subjectName);
+    }
+
+    private static List<CertificateAndContext> getCertificateBySubjectKeyIdentifier(CertificateSource source,
+            byte[] keyIdentifier) throws IOException {
+        if (!(source instanceof IndexedCertificateSource)) {
+            return Collections.emptyList();
+        }
+        return ((IndexedCertificateSource) source).getCertificateBySubjectKeyIdentifier(keyIdentifier);
+    }
+
+    /**
+     * @param alreadyTried candidates already rejected by a previous call, may be null
+     * @param alsoTried candidates already rejected by a previous call, may be null
+     * @return the first candidate with the subject name of the issuer, valid at the validation date, that signed the
+     *         token, or null
+     */
+    private CertificateAndContext selectIssuer(SignedToken signedToken, X500Principal issuerName,
+            List<CertificateAndContext> candidates, List<CertificateAndContext> alreadyTried,
+            List<CertificateAndContext> alsoTried, Date validationDate) {
+        if (candidates == null) {
+            return null;
+        }
+        for (CertificateAndContext cert : candidates) {
+            if (!issuerName.equals(cert.getCertificate().getSubjectX500Principal())
+                    || contains(alreadyTried, cert) || contains(alsoTried, cert)) {
+                continue;
+            }
+            if (LOG.isLoggable(Level.INFO)) {
                 LOG.info(cert.toString());
-                /* If there is a validation date, we skip the issuer */
-                if (validationDate != null) {
-                    try {
-                        cert.getCertificate().checkValidity(validationDate);
-                    } catch (CertificateExpiredException e) {
-                        LOG.info("Was expired");
+            }
+            /* If there is a validation date, we skip the issuer */
+            if (validationDate != null) {
+                try {
+                    cert.getCertificate().checkValidity(validationDate);
+                } catch (CertificateExpiredException e) {
+                    LOG.info("Was expired");
+                    continue;
+                } catch (CertificateNotYetValidException e) {
+                    LOG.info("Was not yet valid");
+                    continue;
+                }
+                if (cert.getCertificateSource() == CertificateSourceType.TRUSTED_LIST
+                        && cert.getContext() != null) {
+                    ServiceInfo info = (ServiceInfo) cert.getContext();
+                    if (info.getStatusStartingDateAtReferenceTime() != null
+                            && validationDate.before(info.getStatusStartingDateAtReferenceTime())) {
+                        LOG.info("Was not valid in the TSL");
                         continue;
-                    } catch (CertificateNotYetValidException e) {
-                        LOG.info("Was not yet valid");
+                    } else if (info.getStatusEndingDateAtReferenceTime() != null
+                            && validationDate.after(info.getStatusEndingDateAtReferenceTime())) {
+                        LOG.info("Was not valid in the TSL");
                         continue;
                     }
-                    if (cert.getCertificateSource() == CertificateSourceType.TRUSTED_LIST
-                            && cert.getContext() != null) {
-                        ServiceInfo info = (ServiceInfo) cert.getContext();
-                        if (info.getStatusStartingDateAtReferenceTime() != null
-                                && validationDate.before(info.getStatusStartingDateAtReferenceTime())) {
-                            LOG.info("Was not valid in the TSL");
-                            continue;
-                        } else if (info.getStatusEndingDateAtReferenceTime() != null
-                                && validationDate.after(info.getStatusEndingDateAtReferenceTime())) {
-                            LOG.info("Was not valid in the TSL");
-                            continue;
-                        }
-                    }
-                }
-                /* We keep the first issuer that sign the certificate */
-                if (signedToken.isSignedBy(cert.getCertificate())) {
-                    return cert;
                 }
             }
+            /* We keep the first issuer that sign the certificate */
+            if (signedToken.isSignedBy(cert.getCertificate())) {
+                return cert;
+            }
+        }
+        return null;
+    }
+
+    private static boolean contains(List<CertificateAndContext> list, CertificateAndContext cert) {
+        if (list == null) {
+            return false;
+        }
+        for (CertificateAndContext c : list) {
+            if (c.equals(cert)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the AuthorityKeyIdentifier of the token, or null if it is unknown
+     */
+    private static byte[] getAuthorityKeyIdentifier(SignedToken signedToken) {
+        if (signedToken instanceof CertificateToken) {
+            return ((CertificateToken) signedToken).getCertificateAndContext().getPooledCertificate()
+                    .getAuthorityKeyIdentifier();
+        } else if (signedToken instanceof CRLToken) {
+            return CertificateIndex.getAuthorityKeyIdentifier(((CRLToken) signedToken).getX509crl());
         }
         return null;
     }
 
     void addNotYetVerifiedToken(SignedToken signedToken) {
 
-        if (!revocationInfo.containsKey(signedToken)) {
-            LOG.info("New token to validate " + signedToken + " hashCode " + signedToken.hashCode());
-            revocationInfo.put(signedToken, null);
+        if (!revocationInfo.containsKey(signedToken) && !inFlightTokens.containsKey(signedToken)
+                && pendingTokens.add(signedToken)) {
+            if (LOG.isLoggable(Level.INFO)) {
+                LOG.info("New token to validate " + signedToken + " hashCode " + signedToken.hashCode());
+            }
 
             if (signedToken instanceof CRLToken) {
                 neededCRL.add(((CRLToken) signedToken).getX509crl());
             } else if (signedToken instanceof OCSPRespToken) {
                 neededOCSPResp.add(((OCSPRespToken) signedToken).getOcspResp());
             } else if (signedToken instanceof CertificateToken) {
-                boolean found = false;
                 CertificateAndContext newCert = ((CertificateToken) signedToken).getCertificateAndContext();
-                for (CertificateAndContext c : neededCertificates) {
-                    if (c.getCertificate().equals(newCert.getCertificate())) {
-                        found = true;
-                        break;
-                    }
-                }
-                if (!found) {
+                if (neededCertificateKeys.add(newCert.getPooledCertificate())) {
                     neededCertificates.add(newCert);
                 }
             }
 
         } else {
-            LOG.info("Token was already in list " + signedToken);
+            if (LOG.isLoggable(Level.INFO)) {
+                LOG.info("Token was already in list " + signedToken);
+            }
         }
 
     }
@@ -236,7 +396,11 @@ public class ValidationContext {
         if (data == null) {
             throw new IllegalArgumentException("data cannot be null");
         }
-        if (!revocationInfo.containsKey(signedToken)) {
+        StatusTask task = inFlightTokens.remove(signedToken);
+        if (task != null) {
+            /* The sequential validation would have recorded the status first, then replaced it with this data */
+            supersededTasks.add(task);
+        } else if (!pendingTokens.remove(signedToken) && !revocationInfo.containsKey(signedToken)) {
             throw new IllegalArgumentException(signedToken + " must be a key of revocationInfo");
         }
 
@@ -260,7 +424,10 @@ public class ValidationContext {
     }
 
     /**
-     * Build the validation context for the specific date
+     * Build the validation context for the specific date. The tokens are taken one by one from the list of pending
+     * tokens until every token discovered during the validation (issuers, CRL, OCSP responses) has been verified.
+     * When an ExecutorService is set, the status of the certificates are fetched in background while the issuers of
+     * the other tokens are resolved.
      * 
      * @param validationDate
      * @param optionalSource
@@ -268,115 +435,227 @@ public class ValidationContext {
     public void validate(Date validationDate, CertificateSource optionalSource, CRLSource optionalCRLSource,
             OCSPSource optionalOCPSSource) throws IOException {
 
-        int previousSize = revocationInfo.size();
-        int previousVerified = verifiedTokenCount();
+        /*
+         * The issuer of a token is searched in its own wrapped certificates, then in those of the tokens processed
+         * before it (the most recent first), then in the optional source.
+         */
+        List<CertificateSource> wrappedSources = new ArrayList<CertificateSource>();
+        CertificateSource otherSource = optionalSource;
+
+        while (true) {
+
+            SignedToken signedToken = getOneNotYetVerifiedToken();
+            if (signedToken == null) {
+                if (inFlightTokens.isEmpty() && supersededTasks.isEmpty()) {
+                    break;
+                }
+                /* The status fetched in background may reveal new tokens (CRL, OCSP response) to validate */
+                joinInFlightTokens();
+                continue;
+            }
 
-        SignedToken signedToken = getOneNotYetVerifiedToken();
-        if (signedToken != null) {
+            long start = System.currentTimeMillis();
 
-            CertificateSource otherSource = optionalSource;
-            if (signedToken != null) {
-                otherSource = new CompositeCertificateSource(signedToken.getWrappedCertificateSource(),
-                        optionalSource);
+            CertificateSource wrappedSource = signedToken.getWrappedCertificateSource();
+            if (wrappedSource != null && (wrappedSources.isEmpty() || wrappedSources.get(0) != wrappedSource)) {
+                otherSource = getOtherSource(wrappedSources, wrappedSource, optionalSource);
             }
 
-            CertificateAndContext issuer = getIssuerCertificate(signedToken, otherSource, validationDate);
+            CertificateAndContext issuer = resolveIssuer(signedToken, otherSource, validationDate);
 
-            RevocationData data = null;
+            if (executorService != null && issuer != null && signedToken instanceof CertificateToken) {
+
+                pendingTokens.remove(signedToken);
+                StatusTask task = new StatusTask((CertificateToken) signedToken, issuer, validationDate,
+                        optionalCRLSource, optionalOCPSSource, start);
+                task.future = executorService.submit(task);
+                inFlightTokens.put(signedToken, task);
 
-            if (issuer == null) {
-                /* We don't find an issuer, so the RevocationData cannot be retrieved. */
-                LOG.warning("Don't found any issuer for token " + signedToken);
-                data = new RevocationData(signedToken);
             } else {
 
-                addNotYetVerifiedToken(new CertificateToken(issuer));
+                RevocationData data = getRevocationData(signedToken, issuer, validationDate, optionalCRLSource,
+                        optionalOCPSSource);
+                validate(signedToken, data);
+                tokenValidationTimes.put(signedToken, System.currentTimeMillis() - start);
 
-                if (issuer.getCertificate().getSubjectX500Principal()
-                        .equals(issuer.getCertificate().getIssuerX500Principal())) {
-                    SignedToken trustedToken = new CertificateToken(issuer);
-                    RevocationData noNeedToValidate = new RevocationData();
-                    // noNeedToValidate.setRevocationData(CertificateSourceType.TRUSTED_LIST);
-                    validate(trustedToken, noNeedToValidate);
-                }
+            }
 
-                if (issuer.getCertificateSource() == CertificateSourceType.TRUSTED_LIST) {
-                    SignedToken trustedToken = new CertificateToken(issuer);
-                    RevocationData noNeedToValidate = new RevocationData();
-                    noNeedToValidate.setRevocationData(CertificateSourceType.TRUSTED_LIST);
-                    validate(trustedToken, noNeedToValidate);
-                }
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.fine(this.toString());
+            }
+        }
 
-                if (signedToken instanceof CertificateToken) {
+    }
 
-                    CertificateToken ct = (CertificateToken) signedToken;
-                    CertificateStatus status = getCertificateValidity(ct.getCertificateAndContext(), issuer,
-                            validationDate, optionalCRLSource, optionalOCPSSource);
-                    data = new RevocationData(signedToken);
-                    if (status != null) {
-                        data.setRevocationData(status.getStatusSource());
+    /**
+     * Wait for the status fetched in background and record them in the context, as the sequential validation would
+     * have done. The status of a token that has been verified otherwise in the meantime (e.g. recognized as a trusted
+     * issuer) is not recorded, since the sequential validation would have replaced it, but the CRL or OCSP response it
+     * reveals is still validated. If a fetch fails, the other ones are cancelled.
+     * 
+     * @throws IOException
+     */
+    private void joinInFlightTokens() throws IOException {
+        try {
+            while (!supersededTasks.isEmpty()) {
+                StatusTask task = supersededTasks.remove(0);
+                getRevocationData(task.token, getStatus(task));
+                tokenValidationTimes.put(task.token, task.end - task.start);
+            }
+            List<StatusTask> tasks = new ArrayList<StatusTask>(inFlightTokens.values());
+            for (StatusTask task : tasks) {
+                RevocationData data = getRevocationData(task.token, getStatus(task));
+                inFlightTokens.remove(task.token);
+                revocationInfo.put(task.token, data);
+                tokenValidationTimes.put(task.token, task.end - task.start);
+            }
+        } finally {
+            for (StatusTask task : supersededTasks) {
+                task.future.cancel(true);
+            }
+            for (StatusTask task : inFlightTokens.values()) {
+                task.future.cancel(true);
+            }
+        }
+    }
 
-                        if (status.getStatusSource() instanceof X509CRL) {
-                            addNotYetVerifiedToken(new CRLToken((X509CRL) status.getStatusSource()));
-                        } else if (status.getStatusSource() instanceof BasicOCSPResp) {
-                            addNotYetVerifiedToken(new OCSPRespToken((BasicOCSPResp) status.getStatusSource()));
-                        }
+    private CertificateStatus getStatus(StatusTask task) throws IOException {
+        try {
+            return task.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching the status of " + task.token, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Cannot fetch the status of " + task.token, e.getCause());
+        }
+    }
 
-                    } else {
-                        LOG.warning("No status for " + signedToken);
-                    }
+    /**
+     * Move the wrapped source in front of the sources of the tokens already processed and return their composite with
+     * the optional source. The composite is only built again when a token wraps another source than the previous one.
+     */
+    private static CertificateSource getOtherSource(List<CertificateSource> wrappedSources,
+            CertificateSource wrappedSource, CertificateSource optionalSource) {
+        for (int i = 0; i < wrappedSources.size(); i++) {
+            if (wrappedSources.get(i) == wrappedSource) {
+                wrappedSources.remove(i);
+                break;
+            }
+        }
+        wrappedSources.add(0, wrappedSource);
+        CertificateSource[] sources = wrappedSources.toArray(new CertificateSource[wrappedSources.size() + 1]);
+        sources[wrappedSources.size()] = optionalSource;
+        return new CompositeCertificateSource(sources);
+    }
+
+    /**
+     * Find the issuer of the token and register it in the context.
+     * 
+     * @return the issuer or null if none can be found
+     */
+    private CertificateAndContext resolveIssuer(SignedToken signedToken, CertificateSource otherSource,
+            Date validationDate) throws IOException {
 
-                } else if (signedToken instanceof CRLToken || signedToken instanceof OCSPRespToken
-                        || signedToken instanceof TimestampToken) {
+        CertificateAndContext issuer = getIssuerCertificate(signedToken, otherSource, validationDate);
 
-                    data = new RevocationData(signedToken);
-                    data.setRevocationData(issuer);
+        if (issuer == null) {
+            /* We don't find an issuer, so the RevocationData cannot be retrieved. */
+            LOG.warning("Don't found any issuer for token " + signedToken);
+        } else {
 
-                } else {
-                    throw new RuntimeException("Not supported token type " + signedToken.getClass().getSimpleName());
-                }
+            SignedToken issuerToken = new CertificateToken(issuer);
+            addNotYetVerifiedToken(issuerToken);
 
+            if (issuer.getCertificate().getSubjectX500Principal()
+                    .equals(issuer.getCertificate().getIssuerX500Principal())) {
+                RevocationData noNeedToValidate = new RevocationData();
+                // noNeedToValidate.setRevocationData(CertificateSourceType.TRUSTED_LIST);
+                validate(issuerToken, noNeedToValidate);
             }
 
-            validate(signedToken, data);
+            if (issuer.getCertificateSource() == CertificateSourceType.TRUSTED_LIST) {
+                RevocationData noNeedToValidate = new RevocationData();
+                noNeedToValidate.setRevocationData(CertificateSourceType.TRUSTED_LIST);
+                validate(issuerToken, noNeedToValidate);
+            }
 
-            LOG.info(this.toString());
+        }
 
-            int newSize = revocationInfo.size();
-            int newVerified = verifiedTokenCount();
+        return issuer;
+    }
 
-            if (newSize != previousSize || newVerified != previousVerified) {
-                validate(validationDate, otherSource, optionalCRLSource, optionalOCPSSource);
-            }
+    private RevocationData getRevocationData(SignedToken signedToken, CertificateAndContext issuer,
+            Date validationDate, CRLSource optionalCRLSource, OCSPSource optionalOCPSSource) {
+
+        if (issuer == null) {
+            return new RevocationData(signedToken);
         }
 
+        if (signedToken instanceof CertificateToken) {
+
+            CertificateToken ct = (CertificateToken) signedToken;
+            CertificateStatus status = getCertificateValidity(ct.getCertificateAndContext(), issuer, validationDate,
+                    optionalCRLSource, optionalOCPSSource);
+            return getRevocationData(signedToken, status);
+
+        } else if (signedToken instanceof CRLToken || signedToken instanceof OCSPRespToken
+                || signedToken instanceof TimestampToken) {
+
+            RevocationData data = new RevocationData(signedToken);
+            data.setRevocationData(issuer);
+            return data;
+
+        } else {
+            throw new RuntimeException("Not supported token type " + signedToken.getClass().getSimpleName());
+        }
     }
 
-    int verifiedTokenCount() {
-        int count = 0;
-        for (Entry<SignedToken, RevocationData> e : revocationInfo.entrySet()) {
-            if (e.getValue() != null) {
-                count++;
+    private RevocationData getRevocationData(SignedToken signedToken, CertificateStatus status) {
+        RevocationData data = new RevocationData(signedToken);
+        if (status != null) {
+            data.setRevocationData(status.getStatusSource());
+
+            if (status.getStatusSource() instanceof X509CRL) {
+                addNotYetVerifiedToken(new CRLToken((X509CRL) status.getStatusSource()));
+            } else if (status.getStatusSource() instanceof BasicOCSPResp) {
+                addNotYetVerifiedToken(new OCSPRespToken((BasicOCSPResp) status.getStatusSource()));
             }
+
+        } else {
+            LOG.warning("No status for " + signedToken);
         }
-        return count;
+        return data;
+    }
+
+    int verifiedTokenCount() {
+        return revocationInfo.size();
+    }
+
+    /**
+     * Return the time (in milliseconds) spent to verify each token of this context, in the order of verification.
+     * 
+     * @return
+     */
+    public Map<SignedToken, Long> getTokenValidationTimes() {
+        return Collections.unmodifiableMap(tokenValidationTimes);
     }
 
     @Override
     public String toString() {
-        int count = 0;
         StringBuilder builder = new StringBuilder();
-        for (Entry<SignedToken, RevocationData> e : revocationInfo.entrySet()) {
-            if (e.getValue() != null) {
-                builder.append(e.getValue());
-                count++;
-            } else {
-                builder.append(e.getKey());
-            }
+        for (RevocationData data : revocationInfo.values()) {
+            builder.append(data);
+            builder.append(" ");
+        }
+        for (SignedToken token : pendingTokens) {
+            builder.append(token);
             builder.append(" ");
         }
-        return "ValidationContext contains " + revocationInfo.size() + " SignedToken and " + count
-                + " of them have been verified. List : " + builder.toString();
+        return "ValidationContext contains " + (revocationInfo.size() + pendingTokens.size()) + " SignedToken and "
+                + revocationInfo.size() + " of them have been verified. List : " + builder.toString();
     }
 
     private CertificateStatus getCertificateValidity(CertificateAndContext cert,
@@ -607,4 +886,47 @@ public class ValidationContext {
         signatureEventDelegate.removeListener(listener);
     }
 
+    /**
+     * Fetch the status of a certificate in background.
+     */
+    private class StatusTask implements Callable<CertificateStatus> {
+
+        private final CertificateToken token;
+
+        private final CertificateAndContext issuer;
+
+        private final Date validationDate;
+
+        private final CRLSource optionalCRLSource;
+
+        private final OCSPSource optionalOCSPSource;
+
+        private final long start;
+
+        private long end;
+
+        private Future<CertificateStatus> future;
+
+        StatusTask(CertificateToken token, CertificateAndContext issuer, Date validationDate,
+                CRLSource optionalCRLSource, OCSPSource optionalOCSPSource, long start) {
+            this.token = token;
+            this.issuer = issuer;
+            this.validationDate = validationDate;
+            this.optionalCRLSource = optionalCRLSource;
+            this.optionalOCSPSource = optionalOCSPSource;
+            this.start = start;
+        }
+
+        @Override
+        public CertificateStatus call() {
+            try {
+                return getCertificateValidity(token.getCertificateAndContext(), issuer, validationDate,
+                        optionalCRLSource, optionalOCSPSource);
+            } finally {
+                end = System.currentTimeMillis();
+            }
+        }
+
+    }
+
 }
@@ -0,0 +1,405 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation;
+
+import eu.europa.ec.markt.dss.validation.certificate.CertificateAndContext;
+import eu.europa.ec.markt.dss.validation.certificate.CertificateSource;
+import eu.europa.ec.markt.dss.validation.certificate.CertificateSourceType;
+import eu.europa.ec.markt.dss.validation.certificate.OfflineCertificateSource;
+import eu.europa.ec.markt.dss.validation.crl.CRLSource;
+import eu.europa.ec.markt.dss.validation.crl.OfflineCRLSource;
+import eu.europa.ec.markt.dss.validation.ocsp.OCSPSource;
+import eu.europa.ec.markt.dss.validation.ocsp.OfflineOCSPSource;
+import eu.europa.ec.markt.dss.validation.tsl.ServiceInfo;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.apache.commons.codec.binary.Hex;
+import org.bouncycastle.ocsp.BasicOCSPResp;
+import org.bouncycastle.ocsp.RevokedStatus;
+import org.bouncycastle.ocsp.SingleResp;
+
+/**
+ * Process-wide cache of the ValidationContext built for a certificate. The entries are keyed by the fingerprint of the
+ * certificate, a bucket of the validation date and the content of the optional sources of certificates, CRL and OCSP
+ * responses given by the signature, and expire at the first nextUpdate of the CRL and OCSP responses used to build
+ * the context (or after maxAge if none is known). A validation with an optional source that is not an offline source
+ * is not cached, since its content cannot be part of the key. The cache is bounded in size and the least recently used
+ * entries are evicted first.
+ * 
+ * A context is only reused for another date of its bucket when none of the dates its result depends on (validity of
+ * the certificates and of their TSL service, thisUpdate and nextUpdate of the revocation data, revocation dates) lies
+ * between both validation dates.
+ * 
+ * Every caller receives its own copy of the cached ValidationContext, since the context may be enriched afterwards
+ * (e.g. with timestamps).
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class ValidationContextCache {
+
+    private static final Logger LOG = Logger.getLogger(ValidationContextCache.class.getName());
+
+    private int maxEntries = 1000;
+
+    private long dateBucketMillis = 60 * 60 * 1000L;
+
+    private long maxAgeMillis = 10 * 60 * 1000L;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final Map<String, CachedContext> entries = new LinkedHashMap<String, CachedContext>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedContext> eldest) {
+            return size() > maxEntries;
+        }
+
+    };
+
+    /**
+     * Set the maximum number of ValidationContext kept in the cache
+     * 
+     * @param maxEntries the maxEntries to set
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Set the width (in milliseconds) of the validation date buckets. Two validations of the same certificate for
+     * dates in the same bucket share the same ValidationContext, as long as its result does not depend on a date
+     * between them.
+     * 
+     * @param dateBucketMillis the dateBucketMillis to set
+     */
+    public void setDateBucketMillis(long dateBucketMillis) {
+        this.dateBucketMillis = dateBucketMillis;
+    }
+
+    /**
+     * Set the maximum time (in milliseconds) a ValidationContext is kept, even if the revocation data it contains is
+     * still fresh.
+     * 
+     * @param maxAgeMillis the maxAgeMillis to set
+     */
+    public void setMaxAgeMillis(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Return a copy of the ValidationContext cached for the certificate at a date of the same bucket, with the same
+     * optional sources.
+     * 
+     * @param cert
+     * @param validationDate
+     * @param optionalCertificateSource
+     * @param optionalCRLSource
+     * @param optionalOCSPSource
+     * @return the copy, or null if nothing (fresh) is cached
+     */
+    public ValidationContext get(X509Certificate cert, Date validationDate,
+            CertificateSource optionalCertificateSource, CRLSource optionalCRLSource, OCSPSource optionalOCSPSource) {
+        String key = getKey(cert, validationDate, optionalCertificateSource, optionalCRLSource, optionalOCSPSource);
+        if (key == null) {
+            return null;
+        }
+
+        CachedContext cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+            if (cached != null && cached.expiration <= System.currentTimeMillis()) {
+                entries.remove(key);
+                cached = null;
+            }
+        }
+
+        if (cached != null && !cached.isValidFor(validationDate)) {
+            LOG.fine("ValidationContext cached for " + cert.getSubjectDN() + " depends on a date before "
+                    + validationDate);
+            cached = null;
+        }
+
+        if (cached == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        LOG.fine("ValidationContext found in cache for " + cert.getSubjectDN());
+        return new ValidationContext(cached.context, validationDate);
+    }
+
+    /**
+     * Store the ValidationContext in the cache. The context is copied, so it can still be modified by the caller.
+     * 
+     * @param context
+     * @param optionalCertificateSource the optional source of certificates the context has been built with
+     * @param optionalCRLSource the optional source of CRL the context has been built with
+     * @param optionalOCSPSource the optional source of OCSP responses the context has been built with
+     */
+    public void put(ValidationContext context, CertificateSource optionalCertificateSource,
+            CRLSource optionalCRLSource, OCSPSource optionalOCSPSource) {
+        String key = getKey(context.getCertificate(), context.getValidationDate(), optionalCertificateSource,
+                optionalCRLSource, optionalOCSPSource);
+        if (key == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long expiration = getExpiration(context, now);
+        if (expiration <= now) {
+            LOG.fine("Revocation data already expired, ValidationContext not cached");
+            return;
+        }
+
+        CachedContext cached = new CachedContext(new ValidationContext(context, context.getValidationDate()),
+                expiration, getBoundaries(context));
+        synchronized (entries) {
+            entries.put(key, cached);
+        }
+    }
+
+    /**
+     * Remove every entry of the cache
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return the number of requests answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of requests that were not in the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of entries currently in the cache
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private long getExpiration(ValidationContext context, long now) {
+        long expiration = now + maxAgeMillis;
+        for (X509CRL crl : context.getNeededCRL()) {
+            if (crl.getNextUpdate() != null) {
+                expiration = Math.min(expiration, crl.getNextUpdate().getTime());
+            }
+        }
+        for (BasicOCSPResp ocspResp : context.getNeededOCSPResp()) {
+            for (SingleResp singleResp : ocspResp.getResponses()) {
+                if (singleResp.getNextUpdate() != null) {
+                    expiration = Math.min(expiration, singleResp.getNextUpdate().getTime());
+                }
+            }
+        }
+        return expiration;
+    }
+
+    /**
+     * @return the dates at which the result of the context may change
+     */
+    private static long[] getBoundaries(ValidationContext context) {
+        List<Date> dates = new ArrayList<Date>();
+        List<X509Certificate> certificates = new ArrayList<X509Certificate>();
+        certificates.add(context.getCertificate());
+        for (CertificateAndContext c : context.getNeededCertificates()) {
+            certificates.add(c.getCertificate());
+            if (c.getCertificateSource() == CertificateSourceType.TRUSTED_LIST && c.getContext() != null) {
+                ServiceInfo info = (ServiceInfo) c.getContext();
+                dates.add(info.getStatusStartingDateAtReferenceTime());
+                dates.add(info.getStatusEndingDateAtReferenceTime());
+            }
+        }
+        for (X509Certificate c : certificates) {
+            dates.add(c.getNotBefore());
+            dates.add(c.getNotAfter());
+        }
+        for (X509CRL crl : context.getNeededCRL()) {
+            dates.add(crl.getThisUpdate());
+            dates.add(crl.getNextUpdate());
+            for (X509Certificate c : certificates) {
+                X509CRLEntry entry = crl.getRevokedCertificate(c);
+                if (entry != null) {
+                    dates.add(entry.getRevocationDate());
+                }
+            }
+        }
+        for (BasicOCSPResp ocspResp : context.getNeededOCSPResp()) {
+            for (SingleResp singleResp : ocspResp.getResponses()) {
+                dates.add(singleResp.getThisUpdate());
+                dates.add(singleResp.getNextUpdate());
+                if (singleResp.getCertStatus() instanceof RevokedStatus) {
+                    dates.add(((RevokedStatus) singleResp.getCertStatus()).getRevocationTime());
+                }
+            }
+        }
+
+        long[] boundaries = new long[dates.size()];
+        int count = 0;
+        for (Date date : dates) {
+            if (date != null) {
+                boundaries[count++] = date.getTime();
+            }
+        }
+        long[] result = new long[count];
+        System.arraycopy(boundaries, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * @return the key, or null if the validation cannot be cached
+     */
+    private String getKey(X509Certificate cert, Date validationDate, CertificateSource optionalCertificateSource,
+            CRLSource optionalCRLSource, OCSPSource optionalOCSPSource) {
+        if ((optionalCertificateSource != null && !(optionalCertificateSource instanceof OfflineCertificateSource))
+                || (optionalCRLSource != null && !(optionalCRLSource instanceof OfflineCRLSource))
+                || (optionalOCSPSource != null && !(optionalOCSPSource instanceof OfflineOCSPSource))) {
+            LOG.fine("Optional source with an unknown content, ValidationContext not cached");
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, cert.getEncoded());
+
+            /* Each source is preceded by its presence and its number of values */
+            if (optionalCertificateSource == null) {
+                digest.update((byte) 0);
+            } else {
+                OfflineCertificateSource source = (OfflineCertificateSource) optionalCertificateSource;
+                List<X509Certificate> certificates = source.getCertificates();
+                digest.update((byte) 1);
+                update(digest, String.valueOf(source.getSourceType()).getBytes("UTF-8"));
+                update(digest, certificates.size());
+                for (X509Certificate c : certificates) {
+                    update(digest, c.getEncoded());
+                }
+            }
+            if (optionalCRLSource == null) {
+                digest.update((byte) 0);
+            } else {
+                List<X509CRL> crls = ((OfflineCRLSource) optionalCRLSource).getCRLsFromSignature();
+                digest.update((byte) 1);
+                update(digest, crls.size());
+                for (X509CRL crl : crls) {
+                    update(digest, crl.getEncoded());
+                }
+            }
+            if (optionalOCSPSource == null) {
+                digest.update((byte) 0);
+            } else {
+                List<BasicOCSPResp> ocspResps = ((OfflineOCSPSource) optionalOCSPSource)
+                        .getOCSPResponsesFromSignature();
+                digest.update((byte) 1);
+                update(digest, ocspResps.size());
+                for (BasicOCSPResp ocspResp : ocspResps) {
+                    update(digest, ocspResp.getEncoded());
+                }
+            }
+
+            return Hex.encodeHexString(digest.digest()) + "/" + validationDate.getTime() / dateBucketMillis;
+        } catch (GeneralSecurityException e) {
+            LOG.warning("Cannot compute the cache key for " + cert.getSubjectDN() + ": " + e.getMessage());
+            return null;
+        } catch (IOException e) {
+            LOG.warning("Cannot compute the cache key for " + cert.getSubjectDN() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /* The length is digested first, so that the concatenation of the values is not ambiguous */
+    private static void update(MessageDigest digest, byte[] value) {
+        update(digest, value.length);
+        digest.update(value);
+    }
+
+    private static void update(MessageDigest digest, int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+
+    private static class CachedContext {
+
+        private final ValidationContext context;
+
+        private final long expiration;
+
+        private final long[] boundaries;
+
+        CachedContext(ValidationContext context, long expiration, long[] boundaries) {
+            this.context = context;
+            this.expiration = expiration;
+            this.boundaries = boundaries;
+        }
+
+        /**
+         * @return true if the context has the same result at the validation date as at the date it was built for
+         */
+        boolean isValidFor(Date validationDate) {
+            long built = context.getValidationDate().getTime();
+            long from = Math.min(built, validationDate.getTime());
+            long to = Math.max(built, validationDate.getTime());
+            if (from == to) {
+                return true;
+            }
+            for (long boundary : boundaries) {
+                if (boundary >= from && boundary <= to) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
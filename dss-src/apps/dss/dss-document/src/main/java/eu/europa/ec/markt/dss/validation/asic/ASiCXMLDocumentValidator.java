@@ -14,13 +14,13 @@ import eu.europa.ec.markt.dss.NotETSICompliantException.MSG;
 import eu.europa.ec.markt.dss.signature.Document;
 import eu.europa.ec.markt.dss.signature.InMemoryDocument;
 import eu.europa.ec.markt.dss.signature.ProfileException;
+import eu.europa.ec.markt.dss.signature.xades.XMLInfrastructure;
 import eu.europa.ec.markt.dss.validation.AdvancedSignature;
 import eu.europa.ec.markt.dss.validation.SignedDocumentValidator;
 import eu.europa.ec.markt.dss.validation.cades.CMSDocumentValidator;
 import eu.europa.ec.markt.dss.validation.xades.XAdESSignature;
 import eu.europa.ec.markt.dss.validation.xades.XMLDocumentValidator;
 
-import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,14 +31,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import javax.xml.crypto.dsig.XMLSignature;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.apache.commons.io.IOUtils;
 import org.bouncycastle.cms.CMSException;
@@ -63,14 +56,22 @@ public class ASiCXMLDocumentValidator extends SignedDocumentValidator {
      * The default constructor for ASiCXMLDocumentValidator.
      */
     public ASiCXMLDocumentValidator(Document doc, byte[] signedContent) throws Exception {
+        this(doc, new InMemoryDocument(signedContent));
+    }
+
+    /**
+     * Validator of an ASiC container whose data objects are given as a Document, or as a CompoundDocument for ASiC-E.
+     * 
+     * @param doc the signatures of the container
+     * @param signedContent the data objects
+     * @throws Exception
+     */
+    public ASiCXMLDocumentValidator(Document doc, Document signedContent) throws Exception {
         this.document = doc;
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setNamespaceAware(true);
-        DocumentBuilder db = dbf.newDocumentBuilder();
         InputStream input = this.document.openStream();
-        this.rootElement = db.parse(input);
+        this.rootElement = XMLInfrastructure.parse(input);
         
-        setExternalContent(new InMemoryDocument(signedContent));
+        setExternalContent(signedContent);
     }
     
     @Override
@@ -83,13 +84,14 @@ public class ASiCXMLDocumentValidator extends SignedDocumentValidator {
             
             try {
                 /* We cannot directly return the signature, we need to explicitely separate each one */
-                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-                Transformer xformer = TransformerFactory.newInstance().newTransformer();
-                Source source = new DOMSource(signatureEl);
-                xformer.transform(source, new StreamResult(buffer));
-                
-                XMLDocumentValidator validator = new XMLDocumentValidator(new InMemoryDocument(buffer.toByteArray()));
-                signatureInfos.add(validator.getSignatures().get(0));
+                byte[] signatureBytes = XMLInfrastructure.toByteArray(signatureEl);
+
+                XMLDocumentValidator validator = new XMLDocumentValidator(new InMemoryDocument(signatureBytes));
+                AdvancedSignature signature = validator.getSignatures().get(0);
+                if (signature instanceof XAdESSignature) {
+                    ((XAdESSignature) signature).setExecutorService(getExecutorService());
+                }
+                signatureInfos.add(signature);
             } catch(Exception ex) {
                 throw new RuntimeException();
             }
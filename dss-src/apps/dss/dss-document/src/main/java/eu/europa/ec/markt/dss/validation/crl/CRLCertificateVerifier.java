@@ -29,7 +29,6 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.security.cert.X509CRL;
-import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
 import java.util.Date;
 import java.util.logging.Level;
@@ -53,13 +52,26 @@ public class CRLCertificateVerifier implements CertificateStatusVerifier {
 
     private final CRLSource crlSource;
 
+    private final IndexedCRLStore crlStore;
+
     /**
      * Main constructor.
      * 
      * @param crlSource the CRL repository used by this CRL trust linker.
      */
     public CRLCertificateVerifier(CRLSource crlSource) {
+        this(crlSource, IndexedCRLStore.getSharedStore());
+    }
+
+    /**
+     * Build a verifier that looks up the revoked serial numbers in the given store.
+     * 
+     * @param crlSource the CRL repository used by this CRL trust linker.
+     * @param crlStore the store of the CRL indexes
+     */
+    public CRLCertificateVerifier(CRLSource crlSource, IndexedCRLStore crlStore) {
         this.crlSource = crlSource;
+        this.crlStore = crlStore;
     }
 
     @Override
@@ -83,10 +95,13 @@ public class CRLCertificateVerifier implements CertificateStatusVerifier {
                 return null;
             }
 
-            if (!isCRLValid(x509crl, certificate, validationDate)) {
+            IndexedCRL indexedCRL = crlStore.getIndex(x509crl);
+
+            if (!isCRLValid(x509crl, indexedCRL, certificate, validationDate)) {
                 LOG.warning("The CRL is not valid !");
                 return null;
             }
+            indexedCRL = crlStore.putIndex(x509crl, indexedCRL);
             report.setStatusSource(x509crl);
 
             /* by default, we claim that the certifate if invalid */
@@ -94,14 +109,15 @@ public class CRLCertificateVerifier implements CertificateStatusVerifier {
             report.setCertificate(childCertificate);
             report.setStatusSourceType(ValidatorSourceType.CRL);
             report.setValidationDate(validationDate);
-            X509CRLEntry crlEntry = x509crl.getRevokedCertificate(childCertificate.getSerialNumber());
-            if (null == crlEntry) {
+            Date revocationDate = indexedCRL.getRevocationDate(childCertificate.getIssuerX500Principal(),
+                    childCertificate.getSerialNumber());
+            if (null == revocationDate) {
                 LOG.fine("CRL OK for: " + childCertificate.getSubjectX500Principal());
                 /*
                  * If there is no entry in the CRL, the certificate is more likely to be valid
                  */
                 report.setValidity(CertificateValidity.VALID);
-            } else if (crlEntry.getRevocationDate().after(validationDate)) {
+            } else if (revocationDate.after(validationDate)) {
                 LOG.fine("CRL OK for: " + childCertificate.getSubjectX500Principal() + " at " + validationDate);
                 /*
                  * Even if there is an entry, the certificate can be valid at the time of the validation
@@ -110,10 +126,10 @@ public class CRLCertificateVerifier implements CertificateStatusVerifier {
                 report.setRevocationObjectIssuingTime(x509crl.getThisUpdate());
             } else {
                 LOG.fine("CRL reports certificate: " + childCertificate.getSubjectX500Principal()
-                        + " as revoked since " + crlEntry.getRevocationDate());
+                        + " as revoked since " + revocationDate);
                 report.setValidity(CertificateValidity.REVOKED);
                 report.setRevocationObjectIssuingTime(x509crl.getThisUpdate());
-                report.setRevocationDate(crlEntry.getRevocationDate());
+                report.setRevocationDate(revocationDate);
             }
 
             return report;
@@ -125,22 +141,27 @@ public class CRLCertificateVerifier implements CertificateStatusVerifier {
 
     }
 
-    private boolean isCRLValid(X509CRL x509crl, X509Certificate issuerCertificate, Date validationDate) {
+    private boolean isCRLValid(X509CRL x509crl, IndexedCRL indexedCRL, X509Certificate issuerCertificate,
+            Date validationDate) {
 
-        if (!isCRLOK(x509crl, issuerCertificate, validationDate)) {
+        if (!isCRLOK(x509crl, indexedCRL, issuerCertificate, validationDate)) {
 
             return false;
 
         } else {
 
-            LOG.fine("CRL number: " + getCrlNumber(x509crl));
+            /* Reading the CRL number decodes the extensions, so only done when logged */
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.fine("CRL number: " + getCrlNumber(x509crl));
+            }
 
             return true;
         }
 
     }
 
-    private boolean isCRLOK(X509CRL x509crl, X509Certificate issuerCertificate, Date validationDate) {
+    private boolean isCRLOK(X509CRL x509crl, IndexedCRL indexedCRL, X509Certificate issuerCertificate,
+            Date validationDate) {
 
         if (issuerCertificate == null) {
             throw new NullPointerException("Must provide a issuer certificate to validate the signature");
@@ -153,10 +174,8 @@ public class CRLCertificateVerifier implements CertificateStatusVerifier {
             return false;
         }
 
-        try {
-            x509crl.verify(issuerCertificate.getPublicKey());
-        } catch (Exception e) {
-            LOG.warning("The signature verification for CRL cannot be performed : " + e.getMessage());
+        /* The signature of a given CRL version is verified only once */
+        if (!indexedCRL.isSignedBy(x509crl, issuerCertificate.getPublicKey())) {
             return false;
         }
 
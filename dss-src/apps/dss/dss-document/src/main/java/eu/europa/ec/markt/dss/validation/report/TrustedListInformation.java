@@ -23,6 +23,7 @@ package eu.europa.ec.markt.dss.validation.report;
 import eu.europa.ec.markt.dss.validation.tsl.Condition;
 import eu.europa.ec.markt.dss.validation.tsl.QualificationElement;
 import eu.europa.ec.markt.dss.validation.tsl.ServiceInfo;
+import eu.europa.ec.markt.dss.validation.tsl.TrustAnchorSnapshot;
 
 import java.util.ArrayList;
 import java.util.Date;
@@ -40,6 +41,14 @@ public class TrustedListInformation {
 
     private ServiceInfo trustService;
 
+    private Long trustedListsVersion;
+
+    private Date trustedListsLoadingTime;
+
+    private Long trustedListsAge;
+
+    private boolean trustedListsRestored;
+
     /**
      * 
      * The default constructor for TrustedListInformation.
@@ -50,6 +59,52 @@ public class TrustedListInformation {
         this.trustService = ts;
     }
 
+    /**
+     * 
+     * The constructor for TrustedListInformation recording the generation of the Trusted Lists used.
+     * 
+     * @param ts
+     * @param snapshot the trust anchors used for the validation, or null if unknown
+     * @param verificationTime
+     */
+    public TrustedListInformation(ServiceInfo ts, TrustAnchorSnapshot snapshot, Date verificationTime) {
+        this.trustService = ts;
+        if (snapshot != null) {
+            this.trustedListsVersion = snapshot.getVersion();
+            this.trustedListsLoadingTime = snapshot.getLoadingTime();
+            this.trustedListsAge = snapshot.getAge(verificationTime);
+            this.trustedListsRestored = snapshot.isRestored();
+        }
+    }
+
+    /**
+     * @return the version of the Trusted Lists used for the validation, or null if unknown
+     */
+    public Long getTrustedListsVersion() {
+        return trustedListsVersion;
+    }
+
+    /**
+     * @return the time the Trusted Lists used for the validation were loaded, or null if unknown
+     */
+    public Date getTrustedListsLoadingTime() {
+        return trustedListsLoadingTime;
+    }
+
+    /**
+     * @return the age in milliseconds of the Trusted Lists at the time of the validation, or null if unknown
+     */
+    public Long getTrustedListsAge() {
+        return trustedListsAge;
+    }
+
+    /**
+     * @return true if the Trusted Lists used were restored from a previous run and not loaded yet
+     */
+    public boolean isTrustedListsRestored() {
+        return trustedListsRestored;
+    }
+
     /**
      * @return the serviceWasFound
      */
@@ -20,13 +20,11 @@
 
 package eu.europa.ec.markt.dss.validation.x509;
 
+import eu.europa.ec.markt.dss.validation.certificate.CertificatePool;
 import eu.europa.ec.markt.dss.validation.certificate.CertificateSource;
+import eu.europa.ec.markt.dss.validation.crl.IndexedCRL;
+import eu.europa.ec.markt.dss.validation.crl.IndexedCRLStore;
 
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
-import java.security.SignatureException;
-import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 
@@ -65,26 +63,32 @@ public class CRLToken implements SignedToken {
         return x509crl.getIssuerX500Principal();
     }
 
+    /**
+     * The outcome is kept in the shared SignatureVerificationCache, so a CRL is verified only once per issuer
+     * certificate. The digest of the CRL is taken from the shared IndexedCRLStore, which computes it once per CRL
+     * instance, and the issuer is identified by its fingerprint in the certificate pool.
+     */
     @Override
-    public boolean isSignedBy(X509Certificate potentialIssuer) {
+    public boolean isSignedBy(final X509Certificate potentialIssuer) {
+        byte[] digest;
         try {
-            x509crl.verify(potentialIssuer.getPublicKey());
-            return true;
-        } catch (InvalidKeyException e) {
-            return false;
-        } catch (CRLException e) {
-            return false;
-        } catch (NoSuchAlgorithmException e) {
-            return false;
-        } catch (NoSuchProviderException e) {
-            /*
-             * This should never happens. The provider BouncyCastle is supposed to be installed. No special treatment
-             * for this exception
-             */
-            throw new RuntimeException(e);
-        } catch (SignatureException e) {
+            digest = IndexedCRLStore.getSharedStore().getDigest(x509crl);
+        } catch (IllegalArgumentException e) {
             return false;
         }
+        SignatureVerificationCache.Verification verification = new SignatureVerificationCache.Verification() {
+
+            @Override
+            public Boolean verify() {
+                return IndexedCRL.verify(x509crl, potentialIssuer.getPublicKey());
+            }
+
+        };
+        byte[] issuerFingerprint = CertificatePool.getSharedPool().intern(potentialIssuer).getFingerprint();
+        if (issuerFingerprint == null) {
+            return Boolean.TRUE.equals(verification.verify());
+        }
+        return SignatureVerificationCache.getSharedCache().isVerified(digest, issuerFingerprint, verification);
     }
 
     @Override
@@ -22,6 +22,7 @@ package eu.europa.ec.markt.dss.validation.x509;
 
 import eu.europa.ec.markt.dss.validation.CertificateStatus;
 import eu.europa.ec.markt.dss.validation.certificate.CertificateAndContext;
+import eu.europa.ec.markt.dss.validation.certificate.CertificatePool;
 import eu.europa.ec.markt.dss.validation.certificate.CertificateSource;
 import eu.europa.ec.markt.dss.validation.certificate.CertificateSourceFactory;
 
@@ -29,9 +30,9 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SignatureException;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.util.Arrays;
 
 import javax.security.auth.x500.X500Principal;
 
@@ -50,6 +51,8 @@ public class CertificateToken implements SignedToken {
 
     private CertificateStatus status;
 
+    private CertificateSource wrappedSource;
+
     /**
      * Create a CertificateToken
      * 
@@ -89,17 +92,54 @@ public class CertificateToken implements SignedToken {
         return cert.getCertificate();
     }
 
+    /**
+     * The outcome is kept in the shared SignatureVerificationCache, so a certificate is verified only once per issuer
+     * certificate. Both are identified by the fingerprints of the certificate pool, which are not computed again.
+     */
     @Override
-    public boolean isSignedBy(X509Certificate potentialIssuer) {
+    public boolean isSignedBy(final X509Certificate potentialIssuer) {
+        byte[] fingerprint = cert.getPooledCertificate().getFingerprint();
+        byte[] issuerFingerprint = CertificatePool.getSharedPool().intern(potentialIssuer).getFingerprint();
+        SignatureVerificationCache.Verification verification = new SignatureVerificationCache.Verification() {
+
+            @Override
+            public Boolean verify() {
+                return verifySignature(potentialIssuer);
+            }
+
+        };
+        if (fingerprint == null || issuerFingerprint == null) {
+            return Boolean.TRUE.equals(verification.verify());
+        }
+        return SignatureVerificationCache.getSharedCache().isVerified(fingerprint, issuerFingerprint, verification);
+    }
+
+    /**
+     * @return the outcome of the verification, or null if it could not be performed
+     */
+    private Boolean verifySignature(X509Certificate potentialIssuer) {
+        X509Certificate certificate = getCertificate();
+        if (certificate.getSigAlgParams() == null) {
+            try {
+                Boolean outcome = SignatureVerificationCache.verify(certificate.getSigAlgName(),
+                        certificate.getTBSCertificate(), certificate.getSignature(), potentialIssuer.getPublicKey());
+                if (outcome != null) {
+                    return outcome;
+                }
+            } catch (CertificateEncodingException e) {
+                return Boolean.FALSE;
+            }
+        }
+        /* The signature algorithm has parameters, or is not known under its name */
         try {
-            getCertificate().verify(potentialIssuer.getPublicKey());
-            return true;
+            certificate.verify(potentialIssuer.getPublicKey());
+            return Boolean.TRUE;
         } catch (InvalidKeyException e) {
-            return false;
+            return Boolean.FALSE;
         } catch (CertificateException e) {
-            return false;
+            return Boolean.FALSE;
         } catch (NoSuchAlgorithmException e) {
-            return false;
+            return null;
         } catch (NoSuchProviderException e) {
             /*
              * This should never happens. The provider BouncyCastle is supposed to be installed. No special treatment
@@ -107,7 +147,8 @@ public class CertificateToken implements SignedToken {
              */
             throw new RuntimeException(e);
         } catch (SignatureException e) {
-            return false;
+            /* Either an invalid signature or a failure of the provider, both are reported the same way */
+            return null;
         }
     }
 
@@ -126,27 +167,22 @@ public class CertificateToken implements SignedToken {
     }
 
     /**
-     * An X509Certificate may contain information about his issuer in the AIA attribute.
+     * An X509Certificate may contain information about his issuer in the AIA attribute. The source is created once for
+     * this token.
      */
     @Override
     public CertificateSource getWrappedCertificateSource() {
-        if (sourceFactory != null) {
-            CertificateSource source = sourceFactory.createAIACertificateSource(getCertificate());
-            return source;
-        } else {
-            return null;
+        if (wrappedSource == null && sourceFactory != null) {
+            wrappedSource = sourceFactory.createAIACertificateSource(getCertificate());
         }
+        return wrappedSource;
     }
 
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        try {
-            result = prime * result + ((cert == null) ? 0 : Arrays.hashCode(getCertificate().getEncoded()));
-        } catch (CertificateException ex) {
-            return prime;
-        }
+        result = prime * result + ((cert == null) ? 0 : cert.getPooledCertificate().hashCode());
         return result;
     }
 
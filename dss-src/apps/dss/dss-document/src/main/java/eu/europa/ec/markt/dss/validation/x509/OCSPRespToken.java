@@ -22,6 +22,7 @@ package eu.europa.ec.markt.dss.validation.x509;
 
 import eu.europa.ec.markt.dss.validation.certificate.OCSPRespCertificateSource;
 
+import java.io.IOException;
 import java.security.NoSuchProviderException;
 import java.security.cert.X509Certificate;
 import java.util.List;
@@ -45,6 +46,10 @@ public class OCSPRespToken implements SignedToken {
 
     private BasicOCSPResp ocspResp;
 
+    private OCSPRespCertificateSource wrappedSource;
+
+    private X500Principal signerSubjectName;
+
     /**
      * 
      * The default constructor for OCSPRespToken.
@@ -64,6 +69,13 @@ public class OCSPRespToken implements SignedToken {
 
     @Override
     public X500Principal getSignerSubjectName() {
+        if (signerSubjectName == null) {
+            signerSubjectName = findSignerSubjectName();
+        }
+        return signerSubjectName;
+    }
+
+    private X500Principal findSignerSubjectName() {
         if (ocspResp.getResponderId().toASN1Object().getName() != null) {
             return new X500Principal(ocspResp.getResponderId().toASN1Object().getName().getDEREncoded());
         } else {
@@ -79,8 +91,33 @@ public class OCSPRespToken implements SignedToken {
         }
     }
 
+    /**
+     * The outcome is kept in the shared SignatureVerificationCache, so a response is verified only once per responder
+     * key, even when the signer is searched among every certificate of the response.
+     */
     @Override
-    public boolean isSignedBy(X509Certificate potentialIssuer) {
+    public boolean isSignedBy(final X509Certificate potentialIssuer) {
+        byte[] encoded;
+        try {
+            encoded = ocspResp.getEncoded();
+        } catch (IOException e) {
+            return false;
+        }
+        return SignatureVerificationCache.getSharedCache().isSignedBy(encoded,
+                potentialIssuer.getPublicKey().getEncoded(), new SignatureVerificationCache.Verification() {
+
+                    @Override
+                    public Boolean verify() {
+                        return verifySignature(potentialIssuer);
+                    }
+
+                });
+    }
+
+    /**
+     * @return the outcome of the verification, or null if it could not be performed
+     */
+    private Boolean verifySignature(X509Certificate potentialIssuer) {
         try {
             return ocspResp.verify(potentialIssuer.getPublicKey(), "BC");
         } catch (NoSuchProviderException e) {
@@ -90,13 +127,20 @@ public class OCSPRespToken implements SignedToken {
              */
             throw new RuntimeException(e);
         } catch (OCSPException e) {
-            return false;
+            /* The verification itself failed, e.g. the algorithm is not available */
+            return null;
         }
     }
 
+    /**
+     * The source is created once, so its certificates are parsed and indexed only once for this token.
+     */
     @Override
     public OCSPRespCertificateSource getWrappedCertificateSource() {
-        return new OCSPRespCertificateSource(ocspResp);
+        if (wrappedSource == null) {
+            wrappedSource = new OCSPRespCertificateSource(ocspResp);
+        }
+        return wrappedSource;
     }
 
     @Override
@@ -22,9 +22,11 @@ package eu.europa.ec.markt.dss.validation.x509;
 
 import eu.europa.ec.markt.dss.validation.cades.CAdESCertificateSource;
 
+import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
@@ -71,6 +73,10 @@ public class TimestampToken implements SignedToken {
 
     private TimestampType timeStampType;
 
+    private CAdESCertificateSource wrappedSource;
+
+    private X500Principal signerSubjectName;
+
     /**
      * 
      * The default constructor for TimestampToken.
@@ -91,27 +97,59 @@ public class TimestampToken implements SignedToken {
 
     @Override
     public X500Principal getSignerSubjectName() {
-        Collection<X509Certificate> certs = getWrappedCertificateSource().getCertificates();
-        for (X509Certificate cert : certs) {
-            if (timeStamp.getSID().match(cert)) {
-                return cert.getSubjectX500Principal();
+        if (signerSubjectName == null) {
+            Collection<X509Certificate> certs = getWrappedCertificateSource().getCertificates();
+            for (X509Certificate cert : certs) {
+                if (timeStamp.getSID().match(cert)) {
+                    signerSubjectName = cert.getSubjectX500Principal();
+                    break;
+                }
             }
         }
-        return null;
+        return signerSubjectName;
     }
 
-    @SuppressWarnings("deprecation")
+    /**
+     * The validation also checks the certificate of the TSA, so the outcome is kept in the shared
+     * SignatureVerificationCache for the whole certificate and not only its public key.
+     */
     @Override
-    public boolean isSignedBy(X509Certificate potentialIssuer) {
+    public boolean isSignedBy(final X509Certificate potentialIssuer) {
+        byte[] encoded;
+        byte[] signer;
+        try {
+            encoded = timeStamp.getEncoded();
+            signer = potentialIssuer.getEncoded();
+        } catch (IOException e) {
+            return false;
+        } catch (CertificateEncodingException e) {
+            return false;
+        }
+        return SignatureVerificationCache.getSharedCache().isSignedBy(encoded, signer,
+                new SignatureVerificationCache.Verification() {
+
+                    @Override
+                    public Boolean verify() {
+                        return verifySignature(potentialIssuer);
+                    }
+
+                });
+    }
+
+    /**
+     * @return the outcome of the verification, or null if it could not be performed
+     */
+    @SuppressWarnings("deprecation")
+    private Boolean verifySignature(X509Certificate potentialIssuer) {
         try {
             timeStamp.validate(potentialIssuer, "BC");
-            return true;
+            return Boolean.TRUE;
         } catch (CertificateExpiredException e) {
-            return false;
+            return Boolean.FALSE;
         } catch (CertificateNotYetValidException e) {
-            return false;
+            return Boolean.FALSE;
         } catch (TSPValidationException e) {
-            return false;
+            return Boolean.FALSE;
         } catch (NoSuchProviderException e) {
             /*
              * This should never happens. The provider BouncyCastle is supposed to be installed. No special treatment
@@ -119,13 +157,20 @@ public class TimestampToken implements SignedToken {
              */
             throw new RuntimeException(e);
         } catch (TSPException e) {
-            return false;
+            /* The verification itself failed, e.g. the algorithm is not available */
+            return null;
         }
     }
 
+    /**
+     * The source is created once, so its certificates are parsed and indexed only once for this token.
+     */
     @Override
     public CAdESCertificateSource getWrappedCertificateSource() {
-        return new CAdESCertificateSource(timeStamp.toCMSSignedData());
+        if (wrappedSource == null) {
+            wrappedSource = new CAdESCertificateSource(timeStamp.toCMSSignedData());
+        }
+        return wrappedSource;
     }
 
     /**
@@ -0,0 +1,220 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.xades;
+
+import eu.europa.ec.markt.dss.signature.xades.XMLUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.namespace.QName;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Index of the elements of an XAdES signature, built by walking the ds:Signature element once. The children of
+ * SignedSignatureProperties and UnsignedSignatureProperties are indexed by name, so the XAdESSignature does not need to
+ * evaluate an XPath for each property. The index reflects the DOM at the time it is built.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class XAdESProperties {
+
+    /** Namespace of XAdES 1.3.2 */
+    public static final String XADES_NAMESPACE = "http://uri.etsi.org/01903/v1.3.2#";
+
+    /** Namespace of XAdES 1.4.1 */
+    public static final String XADES141_NAMESPACE = "http://uri.etsi.org/01903/v1.4.1#";
+
+    private final Element signatureElement;
+
+    private Element signedInfo;
+
+    private Element signatureValue;
+
+    private Element keyInfo;
+
+    private Element qualifyingProperties;
+
+    private Element signedSignatureProperties;
+
+    private Element unsignedProperties;
+
+    private Element unsignedSignatureProperties;
+
+    private final Map<QName, List<Element>> signedSignaturePropertiesByName = new HashMap<QName, List<Element>>();
+
+    private final Map<QName, List<Element>> unsignedSignaturePropertiesByName = new HashMap<QName, List<Element>>();
+
+    private final List<Element> unsignedSignaturePropertiesInOrder = new ArrayList<Element>();
+
+    /**
+     * 
+     * The default constructor for XAdESProperties.
+     * 
+     * @param signatureElement the ds:Signature element
+     */
+    public XAdESProperties(Element signatureElement) {
+        this.signatureElement = signatureElement;
+        for (Node node = signatureElement.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() != Node.ELEMENT_NODE || !XMLSignature.XMLNS.equals(node.getNamespaceURI())) {
+                continue;
+            }
+            String name = node.getLocalName();
+            if ("SignedInfo".equals(name)) {
+                signedInfo = (Element) node;
+            } else if ("SignatureValue".equals(name)) {
+                signatureValue = (Element) node;
+            } else if ("KeyInfo".equals(name)) {
+                keyInfo = (Element) node;
+            } else if ("Object".equals(name) && qualifyingProperties == null) {
+                qualifyingProperties = XMLUtils.getChildElement(node, XADES_NAMESPACE, "QualifyingProperties");
+            }
+        }
+
+        if (qualifyingProperties != null) {
+            Element signedProperties = XMLUtils.getChildElement(qualifyingProperties, XADES_NAMESPACE,
+                    "SignedProperties");
+            signedSignatureProperties = XMLUtils.getChildElement(signedProperties, XADES_NAMESPACE,
+                    "SignedSignatureProperties");
+            index(signedSignatureProperties, signedSignaturePropertiesByName, null);
+
+            unsignedProperties = XMLUtils.getChildElement(qualifyingProperties, XADES_NAMESPACE,
+                    "UnsignedProperties");
+            unsignedSignatureProperties = XMLUtils.getChildElement(unsignedProperties, XADES_NAMESPACE,
+                    "UnsignedSignatureProperties");
+            index(unsignedSignatureProperties, unsignedSignaturePropertiesByName, unsignedSignaturePropertiesInOrder);
+        }
+    }
+
+    private static void index(Element parent, Map<QName, List<Element>> byName, List<Element> inOrder) {
+        if (parent == null) {
+            return;
+        }
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            QName name = new QName(node.getNamespaceURI(), node.getLocalName());
+            List<Element> elements = byName.get(name);
+            if (elements == null) {
+                elements = new ArrayList<Element>(1);
+                byName.put(name, elements);
+            }
+            elements.add((Element) node);
+            if (inOrder != null) {
+                inOrder.add((Element) node);
+            }
+        }
+    }
+
+    /**
+     * @return the ds:Signature element
+     */
+    public Element getSignatureElement() {
+        return signatureElement;
+    }
+
+    /**
+     * @return the ds:SignedInfo element
+     */
+    public Element getSignedInfo() {
+        return signedInfo;
+    }
+
+    /**
+     * @return the ds:SignatureValue element
+     */
+    public Element getSignatureValue() {
+        return signatureValue;
+    }
+
+    /**
+     * @return the ds:KeyInfo element, or null
+     */
+    public Element getKeyInfo() {
+        return keyInfo;
+    }
+
+    /**
+     * @return the xades:QualifyingProperties element, or null
+     */
+    public Element getQualifyingProperties() {
+        return qualifyingProperties;
+    }
+
+    /**
+     * @return the xades:UnsignedProperties element, or null
+     */
+    public Element getUnsignedProperties() {
+        return unsignedProperties;
+    }
+
+    /**
+     * @return the xades:UnsignedSignatureProperties element, or null
+     */
+    public Element getUnsignedSignatureProperties() {
+        return unsignedSignatureProperties;
+    }
+
+    /**
+     * @param localName the name of the property in the XAdES 1.3.2 namespace
+     * @return the first such child of SignedSignatureProperties, or null
+     */
+    public Element getSignedSignatureProperty(String localName) {
+        List<Element> elements = signedSignaturePropertiesByName.get(new QName(XADES_NAMESPACE, localName));
+        return elements == null ? null : elements.get(0);
+    }
+
+    /**
+     * @param localName the name of the property in the XAdES 1.3.2 namespace
+     * @return the first such child of UnsignedSignatureProperties, or null
+     */
+    public Element getUnsignedSignatureProperty(String localName) {
+        List<Element> elements = getUnsignedSignatureProperties(XADES_NAMESPACE, localName);
+        return elements.isEmpty() ? null : elements.get(0);
+    }
+
+    /**
+     * @param namespaceURI
+     * @param localName
+     * @return the children of UnsignedSignatureProperties with this name, in document order, never null
+     */
+    public List<Element> getUnsignedSignatureProperties(String namespaceURI, String localName) {
+        List<Element> elements = unsignedSignaturePropertiesByName.get(new QName(namespaceURI, localName));
+        return elements == null ? Collections.<Element> emptyList() : Collections.unmodifiableList(elements);
+    }
+
+    /**
+     * @return every child of UnsignedSignatureProperties, in document order, never null
+     */
+    public List<Element> getUnsignedSignaturePropertyList() {
+        return Collections.unmodifiableList(unsignedSignaturePropertiesInOrder);
+    }
+
+}
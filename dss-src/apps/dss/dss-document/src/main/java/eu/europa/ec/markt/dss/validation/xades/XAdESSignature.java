@@ -20,11 +20,15 @@
 
 package eu.europa.ec.markt.dss.validation.xades;
 
+import eu.europa.ec.markt.dss.DigestAlgorithm;
 import eu.europa.ec.markt.dss.EncodingException;
 import eu.europa.ec.markt.dss.EncodingException.MSG;
 import eu.europa.ec.markt.dss.NotETSICompliantException;
+import eu.europa.ec.markt.dss.signature.CompoundDocument;
 import eu.europa.ec.markt.dss.signature.Document;
 import eu.europa.ec.markt.dss.signature.provider.SpecialPrivateKey;
+import eu.europa.ec.markt.dss.signature.xades.DocumentDigester;
+import eu.europa.ec.markt.dss.signature.xades.NameBasedDocumentRepository;
 import eu.europa.ec.markt.dss.signature.xades.OneExternalFileURIDereferencer;
 import eu.europa.ec.markt.dss.signature.xades.XMLUtils;
 import eu.europa.ec.markt.dss.validation.AdvancedSignature;
@@ -40,12 +44,14 @@ import eu.europa.ec.markt.dss.validation.x509.TimestampToken.TimestampType;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Logger;
 
 import javax.security.auth.x500.X500Principal;
@@ -66,7 +72,6 @@ import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPathExpressionException;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.IOUtils;
@@ -84,7 +89,6 @@ import org.bouncycastle.tsp.TimeStampToken;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * 
@@ -102,6 +106,10 @@ public class XAdESSignature implements AdvancedSignature {
 
     private Element signatureElement;
 
+    private XAdESProperties properties;
+
+    private ExecutorService executorService;
+
     /**
      * @return the signatureElement
      */
@@ -123,6 +131,45 @@ public class XAdESSignature implements AdvancedSignature {
         this.signatureElement = signatureElement;
     }
 
+    /**
+     * Set the executor used by {@link #checkIntegrity(Document)} to digest the documents of a multi-file detached
+     * signature in parallel. If not set, the documents are digested one after the other.
+     * 
+     * @param executorService the executorService to set
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * The index of the elements of the signature, built the first time it is needed. It must be refreshed when the
+     * signature element is modified.
+     * 
+     * @return the properties of the signature
+     */
+    public XAdESProperties getProperties() {
+        if (properties == null) {
+            properties = new XAdESProperties(signatureElement);
+        }
+        return properties;
+    }
+
+    /**
+     * Forget the index of the elements of the signature, so that the next access reflects the modifications of the
+     * signature element.
+     */
+    public void refreshProperties() {
+        properties = null;
+    }
+
+    private static Element getXAdESChild(Element parent, String localName) {
+        return XMLUtils.getChildElement(parent, XADES_NAMESPACE, localName);
+    }
+
+    private static Element getDsChild(Element parent, String localName) {
+        return XMLUtils.getChildElement(parent, XMLSignature.XMLNS, localName);
+    }
+
     @Override
     public SignatureFormat getSignatureFormat() {
         return SignatureFormat.XAdES;
@@ -130,12 +177,11 @@ public class XAdESSignature implements AdvancedSignature {
 
     @Override
     public String getSignatureAlgorithm() {
-        try {
-            return XMLUtils.getElement(signatureElement, "./ds:SignedInfo/ds:SignatureMethod").getAttribute(
-                    "Algorithm");
-        } catch (XPathExpressionException e) {
+        Element signatureMethod = getDsChild(getProperties().getSignedInfo(), "SignatureMethod");
+        if (signatureMethod == null) {
             throw new EncodingException(MSG.SIGNATURE_METHOD_ERROR);
         }
+        return signatureMethod.getAttribute("Algorithm");
     }
 
     @Override
@@ -160,36 +206,33 @@ public class XAdESSignature implements AdvancedSignature {
 
     @Override
     public X509Certificate getSigningCertificate() {
-        try {
-            NodeList list = XMLUtils.getNodeList(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:SignedProperties/xades:SignedSignatureProperties/"
-                            + "xades:SigningCertificate/xades:Cert");
-
-            for (int i = 0; i < list.getLength(); i++) {
-                Element el = (Element) list.item(i);
-                Element issuerSubjectNameEl = XMLUtils.getElement(el, "./xades:IssuerSerial/ds:X509IssuerName");
-                X500Name issuerName = new X500Name(issuerSubjectNameEl.getTextContent());
-                for (X509Certificate c :  getCertificateSource().getCertificates()) {
-                    X500Name cIssuer = new X500Name(c.getIssuerX500Principal().getName());
-                    if (cIssuer.equals(issuerName)) {
-                        return c;
-                    }
+        Element signingCertificate = getProperties().getSignedSignatureProperty("SigningCertificate");
+        List<X509Certificate> certificates = null;
+        for (Element el : XMLUtils.getChildElements(signingCertificate, XADES_NAMESPACE, "Cert")) {
+            Element issuerSubjectNameEl = getDsChild(getXAdESChild(el, "IssuerSerial"), "X509IssuerName");
+            if (issuerSubjectNameEl == null) {
+                throw new EncodingException(MSG.SIGNING_CERTIFICATE_ENCODING);
+            }
+            X500Name issuerName = new X500Name(issuerSubjectNameEl.getTextContent());
+            if (certificates == null) {
+                certificates = getCertificateSource().getCertificates();
+            }
+            for (X509Certificate c : certificates) {
+                X500Name cIssuer = new X500Name(c.getIssuerX500Principal().getName());
+                if (cIssuer.equals(issuerName)) {
+                    return c;
                 }
             }
-
-            return null;
-        } catch (XPathExpressionException e) {
-            throw new EncodingException(MSG.SIGNING_CERTIFICATE_ENCODING);
         }
+
+        return null;
     }
 
     @Override
     public Date getSigningTime() {
         try {
 
-            Element signingTimeEl = XMLUtils.getElement(signatureElement,
-                    "ds:Object/xades:QualifyingProperties/xades:SignedProperties/xades:SignedSignatureProperties/"
-                            + "./xades:SigningTime");
+            Element signingTimeEl = getProperties().getSignedSignatureProperty("SigningTime");
             if (signingTimeEl == null) {
                 return null;
             }
@@ -201,33 +244,27 @@ public class XAdESSignature implements AdvancedSignature {
             throw new RuntimeException(e);
         } catch (DatatypeConfigurationException e) {
             throw new RuntimeException(e);
-        } catch (XPathExpressionException e) {
+        } catch (IllegalArgumentException e) {
             throw new EncodingException(MSG.SIGNING_TIME_ENCODING);
         }
     }
 
     @Override
     public PolicyValue getPolicyId() {
-        try {
-            Element policyId = XMLUtils.getElement(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:SignedProperties/xades:SignedSignatureProperties/"
-                            + "xades:SignaturePolicyIdentifier");
-            if (policyId != null) {
-                /* There is a policy */
-                Element el = XMLUtils.getElement(policyId,
-                        "./xades:SignaturePolicyId/xades:SigPolicyId/xades:Identifier");
-                if (el != null) {
-                    /* Explicit policy */
-                    return new PolicyValue(el.getTextContent());
-                } else {
-                    /* Implicit policy */
-                    return new PolicyValue();
-                }
+        Element policyId = getProperties().getSignedSignatureProperty("SignaturePolicyIdentifier");
+        if (policyId != null) {
+            /* There is a policy */
+            Element el = getXAdESChild(getXAdESChild(getXAdESChild(policyId, "SignaturePolicyId"), "SigPolicyId"),
+                    "Identifier");
+            if (el != null) {
+                /* Explicit policy */
+                return new PolicyValue(el.getTextContent());
             } else {
-                return null;
+                /* Implicit policy */
+                return new PolicyValue();
             }
-        } catch (XPathExpressionException e) {
-            throw new EncodingException(MSG.SIGNATURE_POLICY_ENCODING);
+        } else {
+            return null;
         }
     }
 
@@ -239,17 +276,17 @@ public class XAdESSignature implements AdvancedSignature {
     @Override
     public String[] getClaimedSignerRoles() {
 
-        NodeList list = XMLUtils.getNodeList(signatureElement,
-                "ds:Object/xades:QualifyingProperties/xades:SignedProperties/xades:SignedSignatureProperties/"
-                        + "xades:SignerRole/xades:ClaimedRoles/xades:ClaimedRole");
+        Element claimedRoles = getXAdESChild(getProperties().getSignedSignatureProperty("SignerRole"),
+                "ClaimedRoles");
+        List<Element> list = XMLUtils.getChildElements(claimedRoles, XADES_NAMESPACE, "ClaimedRole");
 
-        if (list.getLength() == 0) {
+        if (list.isEmpty()) {
             return null;
         }
 
-        String[] roles = new String[list.getLength()];
-        for (int i = 0; i < list.getLength(); i++) {
-            roles[i] = ((Element) list.item(i)).getTextContent();
+        String[] roles = new String[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            roles[i] = list.get(i).getTextContent();
         }
 
         return roles;
@@ -261,9 +298,8 @@ public class XAdESSignature implements AdvancedSignature {
         return "text/xml";
     }
 
-    private TimestampToken makeTimestampToken(Element el, TimestampToken.TimestampType timestampType)
-            throws XPathExpressionException {
-        Element timestampTokenNode = XMLUtils.getElement(el, "./xades:EncapsulatedTimeStamp");
+    private TimestampToken makeTimestampToken(Element el, TimestampToken.TimestampType timestampType) {
+        Element timestampTokenNode = getXAdESChild(el, "EncapsulatedTimeStamp");
         try {
             byte[] tokenbytes = Base64.decodeBase64(timestampTokenNode.getTextContent());
             TimeStampToken tstoken = new TimeStampToken(new CMSSignedData(tokenbytes));
@@ -273,105 +309,39 @@ public class XAdESSignature implements AdvancedSignature {
         }
     }
 
-    private List<TimestampToken> findTimestampTokens(String elementName, TimestampToken.TimestampType timestampType)
-            throws XPathExpressionException {
-        NodeList timestampsNodes = this.signatureElement.getElementsByTagName(elementName);
+    private List<TimestampToken> findTimestampTokens(String namespaceURI, String elementName,
+            TimestampToken.TimestampType timestampType) {
         List<TimestampToken> signatureTimestamps = new ArrayList<TimestampToken>();
-
-        for (int i = 0; i < timestampsNodes.getLength(); i++) {
-            TimestampToken tstoken = makeTimestampToken((Element) timestampsNodes.item(i), timestampType);
+        for (Element timestamp : getProperties().getUnsignedSignatureProperties(namespaceURI, elementName)) {
+            TimestampToken tstoken = makeTimestampToken(timestamp, timestampType);
             if (tstoken != null) {
                 signatureTimestamps.add(tstoken);
             }
         }
-
         return signatureTimestamps;
     }
 
     @Override
     public List<TimestampToken> getSignatureTimestamps() {
-        try {
-
-            List<TimestampToken> signatureTimestamps = new ArrayList<TimestampToken>();
-            NodeList timestampsNodes = XMLUtils.getNodeList(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties/xades:UnsignedSignatureProperties"
-                            + "/xades:SignatureTimeStamp");
-            for (int i = 0; i < timestampsNodes.getLength(); i++) {
-                TimestampToken tstoken = makeTimestampToken((Element) timestampsNodes.item(i),
-                        TimestampType.SIGNATURE_TIMESTAMP);
-                if (tstoken != null) {
-                    signatureTimestamps.add(tstoken);
-                }
-            }
-
-            return signatureTimestamps;
-
-        } catch (XPathExpressionException e) {
-            throw new EncodingException(MSG.SIGNATURE_TIMESTAMP_ENCODING);
-        }
+        return findTimestampTokens(XADES_NAMESPACE, "SignatureTimeStamp", TimestampType.SIGNATURE_TIMESTAMP);
     }
 
     @Override
     public List<TimestampToken> getTimestampsX1() {
-        try {
-            List<TimestampToken> signatureTimestamps = new ArrayList<TimestampToken>();
-            NodeList timestampsNodes = XMLUtils.getNodeList(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties/xades:UnsignedSignatureProperties"
-                            + "/xades:SigAndRefsTimeStamp");
-            for (int i = 0; i < timestampsNodes.getLength(); i++) {
-                TimestampToken tstoken = makeTimestampToken((Element) timestampsNodes.item(i),
-                        TimestampToken.TimestampType.VALIDATION_DATA_TIMESTAMP);
-                if (tstoken != null) {
-                    signatureTimestamps.add(tstoken);
-                }
-            }
-
-            return signatureTimestamps;
-        } catch (XPathExpressionException e) {
-            throw new EncodingException(MSG.TIMESTAMP_X1_ENCODING);
-        }
+        return findTimestampTokens(XADES_NAMESPACE, "SigAndRefsTimeStamp",
+                TimestampToken.TimestampType.VALIDATION_DATA_TIMESTAMP);
     }
 
     @Override
     public List<TimestampToken> getTimestampsX2() {
-        try {
-            List<TimestampToken> signatureTimestamps = new ArrayList<TimestampToken>();
-            NodeList timestampsNodes = XMLUtils.getNodeList(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties/xades:UnsignedSignatureProperties"
-                            + "/xades:RefsOnlyTimeStamp");
-            for (int i = 0; i < timestampsNodes.getLength(); i++) {
-                TimestampToken tstoken = makeTimestampToken((Element) timestampsNodes.item(i),
-                        TimestampToken.TimestampType.VALIDATION_DATA_REFSONLY_TIMESTAMP);
-                if (tstoken != null) {
-                    signatureTimestamps.add(tstoken);
-                }
-            }
-
-            return signatureTimestamps;
-        } catch (XPathExpressionException e) {
-            throw new EncodingException(MSG.TIMESTAMP_X2_ENCODING);
-        }
+        return findTimestampTokens(XADES_NAMESPACE, "RefsOnlyTimeStamp",
+                TimestampToken.TimestampType.VALIDATION_DATA_REFSONLY_TIMESTAMP);
     }
 
     @Override
     public List<TimestampToken> getArchiveTimestamps() {
-        try {
-            List<TimestampToken> signatureTimestamps = new ArrayList<TimestampToken>();
-            NodeList timestampsNodes = XMLUtils.getNodeList(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties/xades:UnsignedSignatureProperties"
-                            + "/xades141:ArchiveTimeStamp");
-            for (int i = 0; i < timestampsNodes.getLength(); i++) {
-                TimestampToken tstoken = makeTimestampToken((Element) timestampsNodes.item(i),
-                        TimestampToken.TimestampType.ARCHIVE_TIMESTAMP);
-                if (tstoken != null) {
-                    signatureTimestamps.add(tstoken);
-                }
-            }
-
-            return signatureTimestamps;
-        } catch (XPathExpressionException e) {
-            throw new EncodingException(MSG.ARCHIVE_TIMESTAMP_ENCODING);
-        }
+        return findTimestampTokens(XAdESProperties.XADES141_NAMESPACE, "ArchiveTimeStamp",
+                TimestampToken.TimestampType.ARCHIVE_TIMESTAMP);
     }
 
     @Override
@@ -385,22 +355,85 @@ public class XAdESSignature implements AdvancedSignature {
         DOMValidateContext valContext = new DOMValidateContext(
                 KeySelector.singletonKeySelector(getSigningCertificate().getPublicKey()), this.signatureElement);
         
-        if (detachedDocument != null) {
+        XMLSignatureFactory factory = XMLSignatureFactory.getInstance("DOM", new XMLDSigRI());
+
+        NameBasedDocumentRepository repository = null;
+        if (detachedDocument instanceof CompoundDocument) {
+            /* Multi-file detached signature (ASiC-E): each reference targets a document by its name */
+            repository = new NameBasedDocumentRepository(detachedDocument, factory);
+            valContext.setURIDereferencer(repository);
+        } else if (detachedDocument != null) {
             valContext.setURIDereferencer(new OneExternalFileURIDereferencer("detached-file", detachedDocument));
         }
-        XMLSignatureFactory factory = XMLSignatureFactory.getInstance("DOM", new XMLDSigRI());
 
         try {
             XMLSignature signature = factory.unmarshalXMLSignature(valContext);
             recursiveIdBrowse(valContext, signatureElement);
+            if (repository != null) {
+                return validate(signature, valContext, repository);
+            }
             boolean r = signature.validate(valContext);
             return r;
         } catch (MarshalException e) {
             throw new RuntimeException(e);
         } catch (XMLSignatureException e) {
             throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Same result as {@link XMLSignature#validate(javax.xml.crypto.dsig.XMLValidateContext)}, except that the
+     * references to the documents of the repository without transform are digested together, in parallel when an
+     * executor is set.
+     */
+    private boolean validate(XMLSignature signature, DOMValidateContext valContext,
+            NameBasedDocumentRepository repository) throws XMLSignatureException, IOException {
+
+        if (!signature.getSignatureValue().validate(valContext)) {
+            return false;
+        }
+
+        boolean valid = true;
+        List<Reference> digestedReferences = new ArrayList<Reference>();
+        List<Document> documents = new ArrayList<Document>();
+        List<DigestAlgorithm> digestAlgorithms = new ArrayList<DigestAlgorithm>();
+        for (Object o : signature.getSignedInfo().getReferences()) {
+            Reference reference = (Reference) o;
+            Document document = null;
+            if (reference.getTransforms().isEmpty()) {
+                document = repository.findDocument(reference.getURI());
+            }
+            DigestAlgorithm digestAlgorithm = getDigestAlgorithm(reference.getDigestMethod().getAlgorithm());
+            if (document != null && digestAlgorithm != null) {
+                digestedReferences.add(reference);
+                documents.add(document);
+                digestAlgorithms.add(digestAlgorithm);
+            } else {
+                valid &= reference.validate(valContext);
+            }
+        }
+
+        List<byte[]> digests = DocumentDigester.digest(documents, digestAlgorithms, executorService);
+        for (int i = 0; i < digests.size(); i++) {
+            Reference reference = digestedReferences.get(i);
+            if (!MessageDigest.isEqual(digests.get(i), reference.getDigestValue())) {
+                LOG.warning("Invalid digest for the reference " + reference.getURI());
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    private static DigestAlgorithm getDigestAlgorithm(String xmlId) {
+        for (DigestAlgorithm digestAlgorithm : DigestAlgorithm.values()) {
+            if (digestAlgorithm.getXmlId().equals(xmlId)) {
+                return digestAlgorithm;
+            }
+        }
+        return null;
+    }
     
     private void recursiveIdBrowse(DOMValidateContext context, Element element) {
         for(int i = 0 ; i < element.getChildNodes().getLength() ; i++) {
@@ -420,18 +453,11 @@ public class XAdESSignature implements AdvancedSignature {
         // see ETSI TS 101 903 V1.4.2 (2010-12) pp. 38/39/40
         
         try {
-            NodeList counterSigs = XMLUtils.getNodeList(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties/xades:UnsignedSignatureProperties"
-                    + "/xades:CounterSignature");
-            if (counterSigs == null) {
-                return null;
-            }
-            
             List<AdvancedSignature> xadesList = new ArrayList<AdvancedSignature>();
             
-            for (int i = 0; i < counterSigs.getLength(); i++) {
-                Element counterSigEl = (Element) counterSigs.item(i);
-                Element signatureEl = XMLUtils.getElement(counterSigEl, "./ds:Signature");
+            for (Element counterSigEl : getProperties().getUnsignedSignatureProperties(XADES_NAMESPACE,
+                    "CounterSignature")) {
+                Element signatureEl = getDsChild(counterSigEl, "Signature");
 
                 // Verify that the element is a proper signature by trying to build a XAdESSignature out of it
                 XAdESSignature xCounterSig = new XAdESSignature(signatureEl);
@@ -449,7 +475,7 @@ public class XAdESSignature implements AdvancedSignature {
 
                         // Verify that the digest is that of the signature value
                         if (ref.validate(new DOMValidateContext(xCounterSig.getSigningCertificate().getPublicKey(),
-                          XMLUtils.getElement(signatureElement, "./ds:SignatureValue")))) {
+                          getProperties().getSignatureValue()))) {
 
                             LOG.info("Reference verification succeeded, adding countersignature");
                             xadesList.add(xCounterSig);
@@ -463,8 +489,6 @@ public class XAdESSignature implements AdvancedSignature {
             }
             
             return xadesList;
-        } catch (XPathExpressionException e) {
-            throw new EncodingException(MSG.COUNTERSIGNATURE_ENCODING);
         } catch (MarshalException e) {
             throw new EncodingException(MSG.COUNTERSIGNATURE_ENCODING);
         } catch (XMLSignatureException e) {
@@ -476,42 +500,38 @@ public class XAdESSignature implements AdvancedSignature {
     @Override
     public List<CertificateRef> getCertificateRefs() {
 
-        try {
+        Element signingCertEl = getXAdESChild(getProperties().getUnsignedSignatureProperty("CompleteCertificateRefs"),
+                "CertRefs");
+        if (signingCertEl == null) {
+            return null;
+        }
 
-            Element signingCertEl = XMLUtils.getElement(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties/xades:UnsignedSignatureProperties"
-                            + "/xades:CompleteCertificateRefs/xades:CertRefs");
-            if (signingCertEl == null) {
-                return null;
+        List<CertificateRef> certIds = new ArrayList<CertificateRef>();
+        for (Element certId : XMLUtils.getChildElements(signingCertEl, XADES_NAMESPACE, "Cert")) {
+            Element issuerSerial = getXAdESChild(certId, "IssuerSerial");
+            Element issuerNameEl = getDsChild(issuerSerial, "X509IssuerName");
+            Element issuerSerialEl = getDsChild(issuerSerial, "X509SerialNumber");
+            Element certDigest = getXAdESChild(certId, "CertDigest");
+            Element digestAlgorithmEl = getDsChild(certDigest, "DigestMethod");
+            Element digestValueEl = getDsChild(certDigest, "DigestValue");
+            if (digestAlgorithmEl == null || digestValueEl == null) {
+                throw new EncodingException(MSG.CERTIFICATE_REF_ENCODING);
             }
 
-            List<CertificateRef> certIds = new ArrayList<CertificateRef>();
-            NodeList certIdnodes = XMLUtils.getNodeList(signingCertEl, "./xades:Cert");
-            for (int i = 0; i < certIdnodes.getLength(); i++) {
-                Element certId = (Element) certIdnodes.item(i);
-                Element issuerNameEl = XMLUtils.getElement(certId, "./xades:IssuerSerial/ds:X509IssuerName");
-                Element issuerSerialEl = XMLUtils.getElement(certId, "./xades:IssuerSerial/ds:X509SerialNumber");
-                Element digestAlgorithmEl = XMLUtils.getElement(certId, "./xades:CertDigest/ds:DigestMethod");
-                Element digestValueEl = XMLUtils.getElement(certId, "./xades:CertDigest/ds:DigestValue");
-
-                CertificateRef genericCertId = new CertificateRef();
-                if (issuerNameEl != null && issuerSerialEl != null) {
-                    genericCertId.setIssuerName(issuerNameEl.getTextContent());
-                    genericCertId.setIssuerSerial(issuerSerialEl.getTextContent());
-                }
-
-                String algorithm = digestAlgorithmEl.getAttribute("Algorithm");
-                genericCertId.setDigestAlgorithm(getShortAlgoName(algorithm));
-
-                genericCertId.setDigestValue(Base64.decodeBase64(digestValueEl.getTextContent()));
-                certIds.add(genericCertId);
+            CertificateRef genericCertId = new CertificateRef();
+            if (issuerNameEl != null && issuerSerialEl != null) {
+                genericCertId.setIssuerName(issuerNameEl.getTextContent());
+                genericCertId.setIssuerSerial(issuerSerialEl.getTextContent());
             }
 
-            return certIds;
+            String algorithm = digestAlgorithmEl.getAttribute("Algorithm");
+            genericCertId.setDigestAlgorithm(getShortAlgoName(algorithm));
 
-        } catch (XPathExpressionException e) {
-            throw new EncodingException(MSG.CERTIFICATE_REF_ENCODING);
+            genericCertId.setDigestValue(Base64.decodeBase64(digestValueEl.getTextContent()));
+            certIds.add(genericCertId);
         }
+
+        return certIds;
     }
 
     private String getShortAlgoName(String longAlgoName) {
@@ -529,70 +549,52 @@ public class XAdESSignature implements AdvancedSignature {
     @Override
     public List<CRLRef> getCRLRefs() {
 
-        try {
-            List<CRLRef> certIds = new ArrayList<CRLRef>();
-
-            Element signingCertEl = XMLUtils.getElement(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties/xades:UnsignedSignatureProperties"
-                            + "/xades:CompleteRevocationRefs/xades:CRLRefs");
-            if (signingCertEl != null) {
-
-                NodeList certIdnodes = XMLUtils.getNodeList(signingCertEl, "./xades:CRLRef");
-                for (int i = 0; i < certIdnodes.getLength(); i++) {
-                    Element certId = (Element) certIdnodes.item(i);
-                    Element digestAlgorithmEl = XMLUtils.getElement(certId,
-                            "./xades:DigestAlgAndValue/ds:DigestMethod");
-                    Element digestValueEl = XMLUtils.getElement(certId, "./xades:DigestAlgAndValue/ds:DigestValue");
-
-                    String algorithm = digestAlgorithmEl.getAttribute("Algorithm");
-                    String digestAlgo = getShortAlgoName(algorithm);
-
-                    CRLRef ref = new CRLRef();
-                    ref.setAlgorithm(digestAlgo);
-                    ref.setDigestValue(Base64.decodeBase64(digestValueEl.getTextContent()));
-                    certIds.add(ref);
-                }
+        List<CRLRef> certIds = new ArrayList<CRLRef>();
 
+        Element signingCertEl = getXAdESChild(getProperties().getUnsignedSignatureProperty("CompleteRevocationRefs"),
+                "CRLRefs");
+        for (Element certId : XMLUtils.getChildElements(signingCertEl, XADES_NAMESPACE, "CRLRef")) {
+            Element digestAlgAndValue = getXAdESChild(certId, "DigestAlgAndValue");
+            Element digestAlgorithmEl = getDsChild(digestAlgAndValue, "DigestMethod");
+            Element digestValueEl = getDsChild(digestAlgAndValue, "DigestValue");
+            if (digestAlgorithmEl == null || digestValueEl == null) {
+                throw new EncodingException(MSG.CRL_REF_ENCODING);
             }
-            return certIds;
 
-        } catch (XPathExpressionException e) {
-            throw new EncodingException(MSG.CRL_REF_ENCODING);
+            String algorithm = digestAlgorithmEl.getAttribute("Algorithm");
+            String digestAlgo = getShortAlgoName(algorithm);
+
+            CRLRef ref = new CRLRef();
+            ref.setAlgorithm(digestAlgo);
+            ref.setDigestValue(Base64.decodeBase64(digestValueEl.getTextContent()));
+            certIds.add(ref);
         }
+
+        return certIds;
     }
 
     @Override
     public List<OCSPRef> getOCSPRefs() {
 
-        try {
-            List<OCSPRef> certIds = new ArrayList<OCSPRef>();
-            Element signingCertEl = XMLUtils.getElement(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties/xades:UnsignedSignatureProperties"
-                            + "/xades:CompleteRevocationRefs/xades:OCSPRefs");
-            if (signingCertEl != null) {
-
-                NodeList certIdnodes = XMLUtils.getNodeList(signingCertEl, "./xades:OCSPRef");
-                for (int i = 0; i < certIdnodes.getLength(); i++) {
-                    Element certId = (Element) certIdnodes.item(i);
-                    Element digestAlgorithmEl = XMLUtils.getElement(certId,
-                            "./xades:DigestAlgAndValue/ds:DigestMethod");
-                    Element digestValueEl = XMLUtils.getElement(certId, "./xades:DigestAlgAndValue/ds:DigestValue");
-
-                    if (digestAlgorithmEl == null || digestValueEl == null) {
-                        throw new NotETSICompliantException(
-                                eu.europa.ec.markt.dss.NotETSICompliantException.MSG.XADES_DIGEST_ALG_AND_VALUE_ENCODING);
-                    }
+        List<OCSPRef> certIds = new ArrayList<OCSPRef>();
+        Element signingCertEl = getXAdESChild(getProperties().getUnsignedSignatureProperty("CompleteRevocationRefs"),
+                "OCSPRefs");
+        for (Element certId : XMLUtils.getChildElements(signingCertEl, XADES_NAMESPACE, "OCSPRef")) {
+            Element digestAlgAndValue = getXAdESChild(certId, "DigestAlgAndValue");
+            Element digestAlgorithmEl = getDsChild(digestAlgAndValue, "DigestMethod");
+            Element digestValueEl = getDsChild(digestAlgAndValue, "DigestValue");
+
+            if (digestAlgorithmEl == null || digestValueEl == null) {
+                throw new NotETSICompliantException(
+                        eu.europa.ec.markt.dss.NotETSICompliantException.MSG.XADES_DIGEST_ALG_AND_VALUE_ENCODING);
+            }
 
-                    String algorithm = digestAlgorithmEl.getAttribute("Algorithm");
-                    String digestAlgo = getShortAlgoName(algorithm);
+            String algorithm = digestAlgorithmEl.getAttribute("Algorithm");
+            String digestAlgo = getShortAlgoName(algorithm);
 
-                    certIds.add(new OCSPRef(digestAlgo, Base64.decodeBase64(digestValueEl.getTextContent()), false));
-                }
-            }
-            return certIds;
-        } catch (XPathExpressionException e) {
-            throw new EncodingException(MSG.OCSP_REF_ENCODING);
+            certIds.add(new OCSPRef(digestAlgo, Base64.decodeBase64(digestValueEl.getTextContent()), false));
         }
+        return certIds;
 
     }
 
@@ -636,69 +638,40 @@ public class XAdESSignature implements AdvancedSignature {
 
     @Override
     public byte[] getSignatureTimestampData() {
-        try {
-            Element signatureValue = XMLUtils.getElement(signatureElement, "./ds:SignatureValue");
-            return getC14nValue(signatureValue);
-        } catch (XPathExpressionException e) {
-            throw new EncodingException(MSG.SIGNATURE_TIMESTAMP_DATA_ENCODING);
-        }
-
+        return getC14nValue(getProperties().getSignatureValue());
     }
 
     @Override
     public byte[] getTimestampX1Data() {
-        try {
-            List<Node> timeStampNodesXadesX1 = new ArrayList<Node>();
-            Element signatureValue = XMLUtils.getElement(signatureElement, "./ds:SignatureValue");
-            timeStampNodesXadesX1.add(signatureValue);
-
-            NodeList signatureTimeStampNode = XMLUtils.getNodeList(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties/xades:UnsignedSignatureProperties"
-                            + "/xades:SignatureTimeStamp");
-            if (signatureTimeStampNode != null) {
-                for (int i = 0; i < signatureTimeStampNode.getLength(); i++) {
-                    timeStampNodesXadesX1.add(signatureTimeStampNode.item(i));
-                }
-            }
-            Node completeCertificateRefsNode = XMLUtils.getElement(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties/xades:UnsignedSignatureProperties"
-                            + "/xades:CompleteCertificateRefs");
-            if (completeCertificateRefsNode != null) {
-                timeStampNodesXadesX1.add(completeCertificateRefsNode);
-            }
-            Node completeRevocationRefsNode = XMLUtils.getElement(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties/xades:UnsignedSignatureProperties"
-                            + "/xades:CompleteRevocationRefs");
-            if (completeRevocationRefsNode != null) {
-                timeStampNodesXadesX1.add(completeRevocationRefsNode);
-            }
-
-            return getC14nValue(timeStampNodesXadesX1);
-        } catch (XPathExpressionException e) {
-            throw new EncodingException(MSG.TIMESTAMP_X1_DATA_ENCODING);
+        XAdESProperties properties = getProperties();
+        List<Node> timeStampNodesXadesX1 = new ArrayList<Node>();
+        timeStampNodesXadesX1.add(properties.getSignatureValue());
+        timeStampNodesXadesX1.addAll(properties.getUnsignedSignatureProperties(XADES_NAMESPACE, "SignatureTimeStamp"));
+        Node completeCertificateRefsNode = properties.getUnsignedSignatureProperty("CompleteCertificateRefs");
+        if (completeCertificateRefsNode != null) {
+            timeStampNodesXadesX1.add(completeCertificateRefsNode);
         }
+        Node completeRevocationRefsNode = properties.getUnsignedSignatureProperty("CompleteRevocationRefs");
+        if (completeRevocationRefsNode != null) {
+            timeStampNodesXadesX1.add(completeRevocationRefsNode);
+        }
+
+        return getC14nValue(timeStampNodesXadesX1);
     }
 
     @Override
     public byte[] getTimestampX2Data() {
-        try {
-            List<Node> timeStampNodesXadesX1 = new ArrayList<Node>();
-            Node completeCertificateRefsNode = XMLUtils.getElement(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties/xades:UnsignedSignatureProperties"
-                            + "/xades:CompleteCertificateRefs");
-            if (completeCertificateRefsNode != null) {
-                timeStampNodesXadesX1.add(completeCertificateRefsNode);
-            }
-            Node completeRevocationRefsNode = XMLUtils.getElement(signatureElement,
-                    "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties/xades:UnsignedSignatureProperties"
-                            + "xades:CompleteRevocationRefs");
-            if (completeRevocationRefsNode != null) {
-                timeStampNodesXadesX1.add(completeRevocationRefsNode);
-            }
-            return getC14nValue(timeStampNodesXadesX1);
-        } catch (XPathExpressionException e) {
-            throw new EncodingException(MSG.TIMESTAMP_X2_DATA_ENCODING);
+        XAdESProperties properties = getProperties();
+        List<Node> timeStampNodesXadesX1 = new ArrayList<Node>();
+        Node completeCertificateRefsNode = properties.getUnsignedSignatureProperty("CompleteCertificateRefs");
+        if (completeCertificateRefsNode != null) {
+            timeStampNodesXadesX1.add(completeCertificateRefsNode);
+        }
+        Node completeRevocationRefsNode = properties.getUnsignedSignatureProperty("CompleteRevocationRefs");
+        if (completeRevocationRefsNode != null) {
+            timeStampNodesXadesX1.add(completeRevocationRefsNode);
         }
+        return getC14nValue(timeStampNodesXadesX1);
     }
 
     @Override
@@ -732,31 +705,23 @@ public class XAdESSignature implements AdvancedSignature {
 
             List<Node> timeStampNodesXadesA = new LinkedList<Node>();
 
-            Element signedInfo = XMLUtils.getElement(signatureElement, "./ds:SignedInfo");
-            timeStampNodesXadesA.add(signedInfo);
-
-            Element signatureValue = XMLUtils.getElement(signatureElement, "./ds:SignatureValue");
-            timeStampNodesXadesA.add(signatureValue);
-
-            Element keyInfo = XMLUtils.getElement(signatureElement, "./ds:KeyInfo");
-            timeStampNodesXadesA.add(keyInfo);
+            XAdESProperties properties = getProperties();
+            timeStampNodesXadesA.add(properties.getSignedInfo());
+            timeStampNodesXadesA.add(properties.getSignatureValue());
+            timeStampNodesXadesA.add(properties.getKeyInfo());
 
-            Element unsignedSignaturePropertiesNode = getUnsignedSignatureProperties(signatureElement);
+            getOrCreateUnsignedSignatureProperties();
 
-            NodeList unsignedProperties = unsignedSignaturePropertiesNode.getChildNodes();
             int count = 0;
-            for (int i = 0; i < unsignedProperties.getLength(); i++) {
-                if (unsignedProperties.item(i).getNodeType() == Node.ELEMENT_NODE) {
-                    Element unsignedProperty = (Element) unsignedProperties.item(i);
-                    if ("ArchiveTimeStamp".equals(unsignedProperty.getLocalName())) {
-                        if (count == index) {
-                            LOG.info("We only need data up to ArchiveTimeStamp index " + index);
-                            break;
-                        }
-                        count++;
+            for (Element unsignedProperty : getProperties().getUnsignedSignaturePropertyList()) {
+                if ("ArchiveTimeStamp".equals(unsignedProperty.getLocalName())) {
+                    if (count == index) {
+                        LOG.info("We only need data up to ArchiveTimeStamp index " + index);
+                        break;
                     }
-                    timeStampNodesXadesA.add(unsignedProperty);
+                    count++;
                 }
+                timeStampNodesXadesA.add(unsignedProperty);
             }
 
             buffer.write(getC14nValue(timeStampNodesXadesA));
@@ -766,36 +731,35 @@ public class XAdESSignature implements AdvancedSignature {
 //            throw new IOException("Error when computing the archive data", e);
         } catch (MarshalException e) {
             throw new IOException("Error when computing the archive data", e);
-        } catch (XPathExpressionException e) {
-            throw new EncodingException(MSG.ARCHIVE_TIMESTAMP_DATA_ENCODING);
         }
     }
 
-    private Element getUnsignedSignatureProperties(Element signatureEl) {
-        try {
-            Element unsignedSignaturePropertiesNode = XMLUtils
-                    .getElement(signatureEl,
-                            "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties/xades:UnsignedSignatureProperties");
-            if (unsignedSignaturePropertiesNode == null) {
-                Element qualifyingProperties = XMLUtils.getElement(signatureEl,
-                        "./ds:Object/xades:QualifyingProperties");
-                Element unsignedProperties = XMLUtils.getElement(qualifyingProperties,
-                        "./ds:Object/xades:QualifyingProperties/xades:UnsignedProperties");
-                if (unsignedProperties == null) {
-                    unsignedProperties = qualifyingProperties.getOwnerDocument().createElementNS(XADES_NAMESPACE,
-                            "UnsignedProperties");
-                    qualifyingProperties.appendChild(unsignedProperties);
-                }
-                unsignedSignaturePropertiesNode = unsignedProperties.getOwnerDocument().createElementNS(
-                        XADES_NAMESPACE, "UnsignedSignatureProperties");
-                unsignedProperties.appendChild(unsignedSignaturePropertiesNode);
+    /**
+     * Return the xades:UnsignedSignatureProperties element, after creating it and its xades:UnsignedProperties parent
+     * if they are missing. The new elements use the prefix of xades:QualifyingProperties, which is already declared,
+     * so that the DOM can be canonicalized without being serialized first.
+     * 
+     * @return the element
+     */
+    public Element getOrCreateUnsignedSignatureProperties() {
+        XAdESProperties properties = getProperties();
+        Element unsignedSignaturePropertiesNode = properties.getUnsignedSignatureProperties();
+        if (unsignedSignaturePropertiesNode == null) {
+            Element qualifyingProperties = properties.getQualifyingProperties();
+            String prefix = qualifyingProperties.getPrefix();
+            String qualifier = prefix == null ? "" : prefix + ":";
+            Element unsignedProperties = properties.getUnsignedProperties();
+            if (unsignedProperties == null) {
+                unsignedProperties = qualifyingProperties.getOwnerDocument().createElementNS(XADES_NAMESPACE,
+                        qualifier + "UnsignedProperties");
+                qualifyingProperties.appendChild(unsignedProperties);
             }
-            return unsignedSignaturePropertiesNode;
-        } catch (XPathExpressionException e) {
-            // Should never happens
-            throw new RuntimeException("Cannot build unsigned signature properties");
+            unsignedSignaturePropertiesNode = unsignedProperties.getOwnerDocument().createElementNS(XADES_NAMESPACE,
+                    qualifier + "UnsignedSignatureProperties");
+            unsignedProperties.appendChild(unsignedSignaturePropertiesNode);
+            refreshProperties();
         }
-
+        return unsignedSignaturePropertiesNode;
     }
 
 }
@@ -21,6 +21,7 @@
 package eu.europa.ec.markt.dss.validation.xades;
 
 import eu.europa.ec.markt.dss.signature.Document;
+import eu.europa.ec.markt.dss.signature.xades.XMLInfrastructure;
 import eu.europa.ec.markt.dss.validation.AdvancedSignature;
 import eu.europa.ec.markt.dss.validation.SignedDocumentValidator;
 
@@ -30,8 +31,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import javax.xml.crypto.dsig.XMLSignature;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.w3c.dom.Element;
@@ -58,11 +57,8 @@ public class XMLDocumentValidator extends SignedDocumentValidator {
      */
     public XMLDocumentValidator(Document document) throws ParserConfigurationException, IOException, SAXException {
         this.document = document;
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setNamespaceAware(true);
-        DocumentBuilder db = dbf.newDocumentBuilder();
         InputStream input = this.document.openStream();
-        this.rootElement = db.parse(input);
+        this.rootElement = XMLInfrastructure.parse(input);
     }
     
     @Override
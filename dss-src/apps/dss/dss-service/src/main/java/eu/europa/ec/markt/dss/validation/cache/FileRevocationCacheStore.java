@@ -0,0 +1,271 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * RevocationCacheStore that keeps each revocation data in its own file of a directory. A file contains a small header
+ * with the description of the entry followed by the encoded data. Files are written in a temporary file first and then
+ * renamed, so a reader never sees a partially written entry.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class FileRevocationCacheStore implements RevocationCacheStore {
+
+    private static final Logger LOG = Logger.getLogger(FileRevocationCacheStore.class.getName());
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String SUFFIX = ".rev";
+
+    private File directory;
+
+    /**
+     * The default constructor for FileRevocationCacheStore.
+     */
+    public FileRevocationCacheStore() {
+    }
+
+    /**
+     * The default constructor for FileRevocationCacheStore.
+     * 
+     * @param directory
+     */
+    public FileRevocationCacheStore(File directory) {
+        setDirectory(directory);
+    }
+
+    /**
+     * Set the directory where the entries are stored. The directory is created if it doesn't exist, and is then only
+     * accessible to the owner of the process.
+     * 
+     * @param directory the directory to set
+     */
+    public void setDirectory(File directory) {
+        if (!directory.isDirectory()) {
+            if (!directory.mkdirs()) {
+                throw new IllegalArgumentException("Cannot create the revocation cache directory " + directory);
+            }
+            directory.setReadable(false, false);
+            directory.setWritable(false, false);
+            directory.setExecutable(false, false);
+            directory.setReadable(true, true);
+            directory.setWritable(true, true);
+            directory.setExecutable(true, true);
+        }
+        this.directory = directory;
+    }
+
+    @Override
+    public RevocationCacheEntry getEntry(String key) throws IOException {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            return readEntry(key, input);
+        } catch (FileNotFoundException e) {
+            /* Removed in the meantime */
+            return null;
+        } finally {
+            if (input != null) {
+                input.close();
+            }
+        }
+    }
+
+    @Override
+    public InputStream openData(String key) throws IOException {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        final DataInputStream input;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            readEntry(key, input);
+            final long length = input.readLong();
+            /* Limit the stream to the data, skipping the header */
+            return new FilterInputStream(input) {
+
+                private long remaining = length;
+
+                @Override
+                public int read() throws IOException {
+                    if (remaining <= 0) {
+                        return -1;
+                    }
+                    int b = super.read();
+                    if (b >= 0) {
+                        remaining--;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (remaining <= 0) {
+                        return -1;
+                    }
+                    int count = super.read(b, off, (int) Math.min(len, remaining));
+                    if (count > 0) {
+                        remaining -= count;
+                    }
+                    return count;
+                }
+
+            };
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void put(RevocationCacheEntry entry, InputStream data, long length) throws IOException {
+        File temp = File.createTempFile("entry", ".tmp", directory);
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                output.writeInt(FORMAT_VERSION);
+                output.writeUTF(entry.getType().name());
+                writeDate(output, entry.getThisUpdate());
+                writeDate(output, entry.getNextUpdate());
+                writeDate(output, entry.getProducedAt());
+                output.writeLong(length);
+                byte[] buffer = new byte[8192];
+                long remaining = length;
+                while (remaining > 0) {
+                    int count = data.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (count < 0) {
+                        throw new IOException("Unexpected end of revocation data");
+                    }
+                    output.write(buffer, 0, count);
+                    remaining -= count;
+                }
+            } finally {
+                output.close();
+            }
+            File file = getFile(entry.getKey());
+            if (!temp.renameTo(file)) {
+                /* Some platforms cannot rename over an existing file */
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Cannot write revocation cache entry " + file);
+                }
+            }
+        } finally {
+            if (temp.exists()) {
+                temp.delete();
+            }
+        }
+    }
+
+    @Override
+    public void remove(String key) throws IOException {
+        File file = getFile(key);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot remove revocation cache entry " + file);
+        }
+    }
+
+    @Override
+    public List<RevocationCacheEntry> getEntries() throws IOException {
+        List<RevocationCacheEntry> entries = new ArrayList<RevocationCacheEntry>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return entries;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(SUFFIX)) {
+                continue;
+            }
+            try {
+                RevocationCacheEntry entry = getEntry(name.substring(0, name.length() - SUFFIX.length()));
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            } catch (IOException e) {
+                LOG.warning("Ignoring unreadable revocation cache entry " + file + ": " + e.getMessage());
+            }
+        }
+        return entries;
+    }
+
+    private File getFile(String key) {
+        if (key.indexOf('/') >= 0 || key.indexOf('\\') >= 0 || key.startsWith(".")) {
+            throw new IllegalArgumentException("Invalid revocation cache key " + key);
+        }
+        return new File(directory, key + SUFFIX);
+    }
+
+    private static RevocationCacheEntry readEntry(String key, DataInputStream input) throws IOException {
+        int version = input.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported revocation cache format " + version);
+        }
+        RevocationCacheEntry entry = new RevocationCacheEntry();
+        entry.setKey(key);
+        try {
+            entry.setType(RevocationCacheEntry.Type.valueOf(input.readUTF()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown revocation cache entry type", e);
+        }
+        entry.setThisUpdate(readDate(input));
+        entry.setNextUpdate(readDate(input));
+        entry.setProducedAt(readDate(input));
+        return entry;
+    }
+
+    private static void writeDate(DataOutputStream output, Date date) throws IOException {
+        output.writeLong(date == null ? Long.MIN_VALUE : date.getTime());
+    }
+
+    private static Date readDate(DataInputStream input) throws IOException {
+        long time = input.readLong();
+        return time == Long.MIN_VALUE ? null : new Date(time);
+    }
+
+}
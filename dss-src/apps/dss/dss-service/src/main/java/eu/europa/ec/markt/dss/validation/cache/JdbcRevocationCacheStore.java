@@ -0,0 +1,203 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.support.JdbcDaoSupport;
+
+/**
+ * RevocationCacheStore that keeps the revocation data in a JDBC datasource. The table REVOCATION_CACHE is created if it
+ * doesn't exist.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class JdbcRevocationCacheStore extends JdbcDaoSupport implements RevocationCacheStore {
+
+    private static final String ENTRY_COLUMNS = "ID, TYPE, THIS_UPDATE, NEXT_UPDATE, PRODUCED_AT";
+
+    private static final RowMapper<RevocationCacheEntry> ENTRY_MAPPER = new RowMapper<RevocationCacheEntry>() {
+        @Override
+        public RevocationCacheEntry mapRow(ResultSet rs, int rowNum) throws SQLException {
+            RevocationCacheEntry entry = new RevocationCacheEntry();
+            entry.setKey(rs.getString("ID"));
+            entry.setType(RevocationCacheEntry.Type.valueOf(rs.getString("TYPE")));
+            entry.setThisUpdate(toDate(rs.getTimestamp("THIS_UPDATE")));
+            entry.setNextUpdate(toDate(rs.getTimestamp("NEXT_UPDATE")));
+            entry.setProducedAt(toDate(rs.getTimestamp("PRODUCED_AT")));
+            return entry;
+        }
+    };
+
+    /**
+     * The default constructor for JdbcRevocationCacheStore.
+     */
+    public JdbcRevocationCacheStore() {
+    }
+
+    @Override
+    protected void initDao() throws Exception {
+        super.initDao();
+        /* Create the table if it doesn't exist. */
+        try {
+            getJdbcTemplate().queryForInt("SELECT COUNT(*) FROM REVOCATION_CACHE");
+        } catch (BadSqlGrammarException ex) {
+            getJdbcTemplate().update(
+                    "CREATE TABLE REVOCATION_CACHE ( ID VARCHAR(64) PRIMARY KEY, TYPE VARCHAR(4), DATA LONGVARBINARY,"
+                            + " THIS_UPDATE TIMESTAMP, NEXT_UPDATE TIMESTAMP, PRODUCED_AT TIMESTAMP)");
+            getConnection().commit();
+        }
+    }
+
+    @Override
+    public RevocationCacheEntry getEntry(String key) throws IOException {
+        try {
+            List<RevocationCacheEntry> entries = getJdbcTemplate().query(
+                    "SELECT " + ENTRY_COLUMNS + " FROM REVOCATION_CACHE WHERE ID = ?", new Object[] { key },
+                    ENTRY_MAPPER);
+            return entries.isEmpty() ? null : entries.get(0);
+        } catch (DataAccessException e) {
+            throw new IOException("Cannot read revocation cache entry " + key, e);
+        }
+    }
+
+    @Override
+    public InputStream openData(String key) throws IOException {
+        try {
+            List<byte[]> data = getJdbcTemplate().query("SELECT DATA FROM REVOCATION_CACHE WHERE ID = ?",
+                    new Object[] { key }, new RowMapper<byte[]>() {
+                        @Override
+                        public byte[] mapRow(ResultSet rs, int rowNum) throws SQLException {
+                            return rs.getBytes("DATA");
+                        }
+                    });
+            return data.isEmpty() || data.get(0) == null ? null : new ByteArrayInputStream(data.get(0));
+        } catch (DataAccessException e) {
+            throw new IOException("Cannot read revocation cache data " + key, e);
+        }
+    }
+
+    @Override
+    public void put(final RevocationCacheEntry entry, InputStream data, long length) throws IOException {
+        /* The stream is consumed by the first statement, so read it only once */
+        final byte[] bytes = readFully(data, length);
+        try {
+            int updated = getJdbcTemplate().update(
+                    "UPDATE REVOCATION_CACHE SET TYPE = ?, DATA = ?, THIS_UPDATE = ?, NEXT_UPDATE = ?, PRODUCED_AT = ?"
+                            + " WHERE ID = ?", new EntrySetter(entry, bytes));
+            if (updated == 0) {
+                try {
+                    getJdbcTemplate().update(
+                            "INSERT INTO REVOCATION_CACHE (TYPE, DATA, THIS_UPDATE, NEXT_UPDATE, PRODUCED_AT, ID)"
+                                    + " VALUES (?,?,?,?,?,?)", new EntrySetter(entry, bytes));
+                } catch (DataIntegrityViolationException e) {
+                    /* Inserted concurrently by another thread or node */
+                    getJdbcTemplate().update(
+                            "UPDATE REVOCATION_CACHE SET TYPE = ?, DATA = ?, THIS_UPDATE = ?, NEXT_UPDATE = ?,"
+                                    + " PRODUCED_AT = ? WHERE ID = ?", new EntrySetter(entry, bytes));
+                }
+            }
+        } catch (DataAccessException e) {
+            throw new IOException("Cannot store revocation cache entry " + entry.getKey(), e);
+        }
+    }
+
+    @Override
+    public void remove(String key) throws IOException {
+        try {
+            getJdbcTemplate().update("DELETE FROM REVOCATION_CACHE WHERE ID = ?", new Object[] { key });
+        } catch (DataAccessException e) {
+            throw new IOException("Cannot remove revocation cache entry " + key, e);
+        }
+    }
+
+    @Override
+    public List<RevocationCacheEntry> getEntries() throws IOException {
+        try {
+            return getJdbcTemplate().query("SELECT " + ENTRY_COLUMNS + " FROM REVOCATION_CACHE", ENTRY_MAPPER);
+        } catch (DataAccessException e) {
+            throw new IOException("Cannot list revocation cache entries", e);
+        }
+    }
+
+    private static byte[] readFully(InputStream data, long length) throws IOException {
+        byte[] bytes = new byte[(int) length];
+        int offset = 0;
+        while (offset < bytes.length) {
+            int count = data.read(bytes, offset, bytes.length - offset);
+            if (count < 0) {
+                throw new IOException("Unexpected end of revocation data");
+            }
+            offset += count;
+        }
+        return bytes;
+    }
+
+    private static Date toDate(Timestamp timestamp) {
+        return timestamp == null ? null : new Date(timestamp.getTime());
+    }
+
+    private static Timestamp toTimestamp(Date date) {
+        return date == null ? null : new Timestamp(date.getTime());
+    }
+
+    /**
+     * Set the parameters TYPE, DATA, THIS_UPDATE, NEXT_UPDATE, PRODUCED_AT and ID, in this order.
+     */
+    private static class EntrySetter implements PreparedStatementSetter {
+
+        private final RevocationCacheEntry entry;
+
+        private final byte[] data;
+
+        EntrySetter(RevocationCacheEntry entry, byte[] data) {
+            this.entry = entry;
+            this.data = data;
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps) throws SQLException {
+            ps.setString(1, entry.getType().name());
+            ps.setBytes(2, data);
+            ps.setTimestamp(3, toTimestamp(entry.getThisUpdate()));
+            ps.setTimestamp(4, toTimestamp(entry.getNextUpdate()));
+            ps.setTimestamp(5, toTimestamp(entry.getProducedAt()));
+            ps.setString(6, entry.getKey());
+        }
+
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.cache;
+
+import java.util.Date;
+
+/**
+ * Description of a revocation data (CRL or OCSP response) stored in a RevocationCacheStore. The encoded data itself is
+ * read and written through the store, so a large CRL does not have to be loaded in memory to know if it is still fresh.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class RevocationCacheEntry {
+
+    /**
+     * Kind of revocation data stored in the cache
+     */
+    public static enum Type {
+        CRL, OCSP
+    }
+
+    private String key;
+
+    private Type type;
+
+    private Date thisUpdate;
+
+    private Date nextUpdate;
+
+    private Date producedAt;
+
+    /**
+     * The default constructor for RevocationCacheEntry.
+     */
+    public RevocationCacheEntry() {
+    }
+
+    /**
+     * The default constructor for RevocationCacheEntry.
+     * 
+     * @param key
+     * @param type
+     * @param thisUpdate
+     * @param nextUpdate
+     * @param producedAt
+     */
+    public RevocationCacheEntry(String key, Type type, Date thisUpdate, Date nextUpdate, Date producedAt) {
+        this.key = key;
+        this.type = type;
+        this.thisUpdate = thisUpdate;
+        this.nextUpdate = nextUpdate;
+        this.producedAt = producedAt;
+    }
+
+    /**
+     * @return the key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @param key the key to set
+     */
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @param type the type to set
+     */
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * @return the thisUpdate
+     */
+    public Date getThisUpdate() {
+        return thisUpdate;
+    }
+
+    /**
+     * @param thisUpdate the thisUpdate to set
+     */
+    public void setThisUpdate(Date thisUpdate) {
+        this.thisUpdate = thisUpdate;
+    }
+
+    /**
+     * @return the nextUpdate, or null if the issuer did not specify one
+     */
+    public Date getNextUpdate() {
+        return nextUpdate;
+    }
+
+    /**
+     * @param nextUpdate the nextUpdate to set
+     */
+    public void setNextUpdate(Date nextUpdate) {
+        this.nextUpdate = nextUpdate;
+    }
+
+    /**
+     * @return the producedAt of an OCSP response, or null for a CRL
+     */
+    public Date getProducedAt() {
+        return producedAt;
+    }
+
+    /**
+     * @param producedAt the producedAt to set
+     */
+    public void setProducedAt(Date producedAt) {
+        this.producedAt = producedAt;
+    }
+
+    /**
+     * Check if the data can still be used at the given date. When the issuer did not specify a nextUpdate, the data is
+     * considered fresh for maxAgeMillis after it was produced (or after thisUpdate for a CRL).
+     * 
+     * @param now
+     * @param maxAgeMillis maximum age of a data without nextUpdate, 0 to never use such data
+     * @return
+     */
+    public boolean isFresh(Date now, long maxAgeMillis) {
+        if (nextUpdate != null) {
+            return nextUpdate.after(now);
+        }
+        Date reference = producedAt != null ? producedAt : thisUpdate;
+        return maxAgeMillis > 0 && reference != null && reference.getTime() + maxAgeMillis > now.getTime();
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + key + " thisUpdate=" + thisUpdate + " nextUpdate=" + nextUpdate + " producedAt="
+                + producedAt;
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Persistent storage of revocation data (CRL and OCSP responses). The store survives a restart of the application, so
+ * the revocation data downloaded before can be used again as long as they are fresh, instead of contacting every CA
+ * again after a deploy.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public interface RevocationCacheStore {
+
+    /**
+     * Return the description of the stored data with the given key.
+     * 
+     * @param key
+     * @return the entry, or null if nothing is stored with this key
+     * @throws IOException
+     */
+    RevocationCacheEntry getEntry(String key) throws IOException;
+
+    /**
+     * Open the encoded data stored with the given key. The caller must close the stream.
+     * 
+     * @param key
+     * @return the data, or null if nothing is stored with this key
+     * @throws IOException
+     */
+    InputStream openData(String key) throws IOException;
+
+    /**
+     * Store the data, replacing what was stored with the same key.
+     * 
+     * @param entry the description of the data
+     * @param data the encoded data
+     * @param length the number of bytes of data
+     * @throws IOException
+     */
+    void put(RevocationCacheEntry entry, InputStream data, long length) throws IOException;
+
+    /**
+     * Remove the data stored with the given key, if any.
+     * 
+     * @param key
+     * @throws IOException
+     */
+    void remove(String key) throws IOException;
+
+    /**
+     * Return the description of all the stored data, without the data themselves. Used to warm up an application.
+     * 
+     * @return
+     * @throws IOException
+     */
+    List<RevocationCacheEntry> getEntries() throws IOException;
+
+}
@@ -22,31 +22,21 @@ package eu.europa.ec.markt.dss.validation.certificate;
 
 import eu.europa.ec.markt.dss.CannotFetchDataException;
 import eu.europa.ec.markt.dss.validation.https.HTTPDataLoader;
+import eu.europa.ec.markt.dss.validation.https.RequestCoalescer;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 import javax.security.auth.x500.X500Principal;
 
-import org.bouncycastle.asn1.ASN1InputStream;
-import org.bouncycastle.asn1.ASN1Sequence;
-import org.bouncycastle.asn1.DERIA5String;
-import org.bouncycastle.asn1.DERObjectIdentifier;
-import org.bouncycastle.asn1.DEROctetString;
-import org.bouncycastle.asn1.DERTaggedObject;
-import org.bouncycastle.asn1.x509.AccessDescription;
-import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
-import org.bouncycastle.asn1.x509.GeneralName;
-import org.bouncycastle.asn1.x509.X509Extensions;
-import org.bouncycastle.asn1.x509.X509ObjectIdentifiers;
-
 /**
  *
  * Use the AIA attribute of a certificate to retrieve the issuer
@@ -58,6 +48,10 @@ public class AIACertificateSource implements CertificateSource {
 
     private static final Logger LOG = Logger.getLogger(AIACertificateSource.class.getName());
 
+    /* A source is created for each certificate, so the concurrent downloads are shared between all the sources */
+    private static final RequestCoalescer<String, X509Certificate> IN_FLIGHT_CERTIFICATES =
+            new RequestCoalescer<String, X509Certificate>();
+
     private X509Certificate certificate;
 
     private HTTPDataLoader httpDataLoader;
@@ -82,67 +76,44 @@ public class AIACertificateSource implements CertificateSource {
         List<CertificateAndContext> list = new ArrayList<CertificateAndContext>();
 
         try {
-            String url = getAccessLocation(certificate, X509ObjectIdentifiers.id_ad_caIssuers);
+            final String url = getAccessLocation(certificate);
 
             if (url != null) {
-                CertificateFactory factory = CertificateFactory.getInstance("X.509");
-                X509Certificate cert = (X509Certificate) factory.generateCertificate(httpDataLoader.get(url));
+                X509Certificate cert = IN_FLIGHT_CERTIFICATES.fetch(url, new Callable<X509Certificate>() {
+                    @Override
+                    public X509Certificate call() throws CertificateException, IOException {
+                        CertificateFactory factory = CertificateFactory.getInstance("X.509");
+                        InputStream input = httpDataLoader.get(url);
+                        try {
+                            return (X509Certificate) factory.generateCertificate(input);
+                        } finally {
+                            input.close();
+                        }
+                    }
+                });
                 
                 if (cert.getSubjectX500Principal().equals(subjectName)) {
-                    list.add(new CertificateAndContext());
+                    list.add(new CertificateAndContext(cert));
                 } 
 
             }
         } catch (CannotFetchDataException e) {
             return Collections.emptyList();
-        } catch (CertificateException e) {
+        } catch (IOException e) {
+            /* Contains the CertificateException of the download */
             return Collections.emptyList();
         }
 
         return list;
     }
 
-    @SuppressWarnings("deprecation")
-    private String getAccessLocation(X509Certificate certificate, DERObjectIdentifier accessMethod) {
-        try {
-
-            byte[] authInfoAccessExtensionValue = certificate.getExtensionValue(X509Extensions.AuthorityInfoAccess
-                    .getId());
-
-            /* If the extension is not there, then return null */
-            if (null == authInfoAccessExtensionValue) {
-                return null;
-            }
-
-            /* Parse the extension */
-            AuthorityInformationAccess authorityInformationAccess;
-            DEROctetString oct = (DEROctetString) (new ASN1InputStream(new ByteArrayInputStream(
-                    authInfoAccessExtensionValue)).readObject());
-            authorityInformationAccess = new AuthorityInformationAccess((ASN1Sequence) new ASN1InputStream(
-                    oct.getOctets()).readObject());
-
-            AccessDescription[] accessDescriptions = authorityInformationAccess.getAccessDescriptions();
-            for (AccessDescription accessDescription : accessDescriptions) {
-                LOG.fine("access method: " + accessDescription.getAccessMethod());
-                boolean correctAccessMethod = accessDescription.getAccessMethod().equals(accessMethod);
-                if (!correctAccessMethod) {
-                    continue;
-                }
-                GeneralName gn = accessDescription.getAccessLocation();
-                if (gn.getTagNo() != GeneralName.uniformResourceIdentifier) {
-                    LOG.fine("not a uniform resource identifier");
-                    continue;
-                }
-                DERIA5String str = (DERIA5String) ((DERTaggedObject) gn.getDERObject()).getObject();
-                String accessLocation = str.getString();
-                LOG.fine("access location: " + accessLocation);
-                return accessLocation;
-            }
+    private String getAccessLocation(X509Certificate certificate) {
+        List<String> accessLocations = CertificatePool.getSharedPool().intern(certificate).getCaIssuersUris();
+        if (accessLocations.isEmpty()) {
             return null;
-
-        } catch (IOException e) {
-            throw new RuntimeException("IO error: " + e.getMessage(), e);
         }
+        LOG.fine("access location: " + accessLocations.get(0));
+        return accessLocations.get(0);
     }
 
 }
@@ -0,0 +1,95 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.crl;
+
+import eu.europa.ec.markt.dss.validation.certificate.CertificateAndContext;
+import eu.europa.ec.markt.dss.validation.tsl.ReloadableTrustListCertificateSource;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Keep the CRL of a RevocationCacheCRLSource up to date in the background. Each call to refresh registers the CRL
+ * distribution points of the certificates of the TrustedList, then downloads the CRL that reached refreshFraction of
+ * their validity. This method is meant to be called periodically by a scheduler.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class CRLPrefetcher {
+
+    private static final Logger LOG = Logger.getLogger(CRLPrefetcher.class.getName());
+
+    private RevocationCacheCRLSource crlSource;
+
+    private ReloadableTrustListCertificateSource trustedListSource;
+
+    private double refreshFraction = 0.8;
+
+    /**
+     * @param crlSource the crlSource to set
+     */
+    public void setCrlSource(RevocationCacheCRLSource crlSource) {
+        this.crlSource = crlSource;
+    }
+
+    /**
+     * @param trustedListSource the trustedListSource to set
+     */
+    public void setTrustedListSource(ReloadableTrustListCertificateSource trustedListSource) {
+        this.trustedListSource = trustedListSource;
+    }
+
+    /**
+     * Set the fraction of the validity of a CRL (from thisUpdate to nextUpdate) after which it is downloaded again. The
+     * default is 0.8.
+     * 
+     * @param refreshFraction the refreshFraction to set
+     */
+    public void setRefreshFraction(double refreshFraction) {
+        if (refreshFraction <= 0 || refreshFraction > 1) {
+            throw new IllegalArgumentException("The refresh fraction must be in ]0, 1]");
+        }
+        this.refreshFraction = refreshFraction;
+    }
+
+    /**
+     * Register the CRL of the TrustedList certificates and download the CRL that are about to expire.
+     */
+    public void refresh() {
+        if (trustedListSource != null) {
+            for (List<CertificateAndContext> list : trustedListSource.getCertificates().values()) {
+                for (CertificateAndContext cert : list) {
+                    try {
+                        crlSource.register(cert.getCertificate());
+                    } catch (IOException e) {
+                        LOG.warning("Cannot read the CRL distribution point of " + cert + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+        int refreshed = crlSource.refreshAhead(refreshFraction);
+        LOG.info(refreshed + " CRL refreshed ahead of expiry");
+    }
+
+}
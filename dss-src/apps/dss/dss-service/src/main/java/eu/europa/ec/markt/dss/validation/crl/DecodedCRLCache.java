@@ -0,0 +1,98 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.crl;
+
+import java.security.cert.X509CRL;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The last decoded CRL of each key, kept in front of a persistent cache so a cache hit does not decode the CRL again.
+ * A CRL is returned only until its nextUpdate; the least recently used CRL are evicted first.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+class DecodedCRLCache {
+
+    private int maxEntries = 16;
+
+    private final Map<String, X509CRL> crls = new LinkedHashMap<String, X509CRL>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, X509CRL> eldest) {
+            return size() > maxEntries;
+        }
+
+    };
+
+    /**
+     * @return the maximum number of decoded CRL kept in memory
+     */
+    int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @param maxEntries the maximum number of decoded CRL kept in memory
+     */
+    void setMaxEntries(int maxEntries) {
+        synchronized (crls) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    /**
+     * Return the decoded CRL of the key if it is still fresh
+     * 
+     * @param key
+     * @return the CRL or null
+     */
+    X509CRL get(String key) {
+        synchronized (crls) {
+            X509CRL crl = crls.get(key);
+            if (crl != null && crl.getNextUpdate() != null && crl.getNextUpdate().after(new Date())) {
+                return crl;
+            }
+            crls.remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Keep the decoded CRL of the key
+     * 
+     * @param key
+     * @param crl the CRL, ignored if null
+     */
+    void put(String key, X509CRL crl) {
+        if (crl != null) {
+            synchronized (crls) {
+                crls.put(key, crl);
+            }
+        }
+    }
+
+}
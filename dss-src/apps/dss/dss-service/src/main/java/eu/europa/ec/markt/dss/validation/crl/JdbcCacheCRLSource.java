@@ -21,9 +21,11 @@
 package eu.europa.ec.markt.dss.validation.crl;
 
 import eu.europa.ec.markt.dss.DigestAlgorithm;
+import eu.europa.ec.markt.dss.validation.https.RequestCoalescer;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CRLException;
@@ -31,14 +33,17 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 import org.apache.commons.codec.binary.Hex;
 import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.support.JdbcDaoSupport;
 
@@ -55,6 +60,12 @@ public class JdbcCacheCRLSource extends JdbcDaoSupport implements CRLSource {
 
     private OnlineCRLSource cachedSource;
 
+    /* The last decoded CRL of each key, so a cache hit does not decode the CRL again */
+    private final DecodedCRLCache decodedCRLs = new DecodedCRLCache();
+
+    /* Concurrent requests for the same CRL share one database lookup and one download */
+    private final RequestCoalescer<String, X509CRL> inFlightCrls = new RequestCoalescer<String, X509CRL>();
+
     /**
      * The default constructor for JdbcCRLSource.
      */
@@ -68,6 +79,15 @@ public class JdbcCacheCRLSource extends JdbcDaoSupport implements CRLSource {
         this.cachedSource = cachedSource;
     }
 
+    /**
+     * Set the maximum number of decoded CRL kept in memory in front of the database
+     * 
+     * @param maxDecodedCRLs the maxDecodedCRLs to set
+     */
+    public void setMaxDecodedCRLs(int maxDecodedCRLs) {
+        decodedCRLs.setMaxEntries(maxDecodedCRLs);
+    }
+
     @Override
     protected void initDao() throws Exception {
         super.initDao();
@@ -81,7 +101,8 @@ public class JdbcCacheCRLSource extends JdbcDaoSupport implements CRLSource {
     }
 
     @Override
-    public X509CRL findCrl(X509Certificate certificate, X509Certificate issuerCertificate) throws IOException {
+    public X509CRL findCrl(final X509Certificate certificate, final X509Certificate issuerCertificate)
+            throws IOException {
 
         OnlineCRLSource source = new OnlineCRLSource();
         String crlUrl = source.getCrlUri(certificate);
@@ -89,56 +110,111 @@ public class JdbcCacheCRLSource extends JdbcDaoSupport implements CRLSource {
         if (crlUrl != null) {
             try {
                 MessageDigest digest = MessageDigest.getInstance(DigestAlgorithm.SHA1.getName());
-                String key = Hex.encodeHexString(digest.digest(crlUrl.getBytes()));
-
-                List<CachedCRL> crls = getJdbcTemplate().query("SELECT * FROM CACHED_CRL WHERE ID = ?",
-                        new Object[] { key }, new RowMapper<CachedCRL>() {
-                            @Override
-                            public CachedCRL mapRow(ResultSet rs, int rowNum) throws SQLException {
-                                CachedCRL cached = new CachedCRL();
-                                cached.setKey(rs.getString("ID"));
-                                cached.setCrl(rs.getBytes("DATA"));
-                                return cached;
-                            }
-                        });
-
-                if (crls.size() == 0) {
-                    LOG.info("CRL not in cache");
-                    X509CRL originalCRL = cachedSource.findCrl(certificate, issuerCertificate);
-                    if (originalCRL != null) {
-                        getJdbcTemplate().update("INSERT INTO CACHED_CRL (ID, DATA) VALUES (?,?) ", key,
-                                originalCRL.getEncoded());
-                        return originalCRL;
-                    } else {
-                        return null;
-                    }
-                }
+                final String key = Hex.encodeHexString(digest.digest(crlUrl.getBytes()));
 
-                CachedCRL crl = crls.get(0);
-
-                CertificateFactory factory = CertificateFactory.getInstance("X509");
-                X509CRL x509crl = (X509CRL) factory.generateCRL(new ByteArrayInputStream(crl.getCrl()));
-                if (x509crl.getNextUpdate().after(new Date())) {
-                    LOG.fine("CRL in cache");
-                    return x509crl;
-                } else {
-                    LOG.info("CRL expired");
-                    X509CRL originalCRL = cachedSource.findCrl(certificate, issuerCertificate);
-                    getJdbcTemplate().update("UPDATE CACHED_CRL SET DATA = ?  WHERE ID = ? ",
-                            originalCRL.getEncoded(), key);
-                    return originalCRL;
+                X509CRL decoded = decodedCRLs.get(key);
+                if (decoded != null) {
+                    LOG.fine("CRL in memory");
+                    return decoded;
                 }
 
+                return inFlightCrls.fetch(key, new Callable<X509CRL>() {
+                    @Override
+                    public X509CRL call() throws IOException {
+                        return loadCrl(certificate, issuerCertificate, key);
+                    }
+                });
+
             } catch (NoSuchAlgorithmException e) {
                 LOG.info("Cannot instantiate digest for algorithm SHA1 !?");
-            } catch (CRLException e) {
-                LOG.info("Cannot serialize CRL");
-            } catch (CertificateException e) {
-                LOG.info("Cannot instanciate X509 Factory");
             }
         }
 
         return null;
     }
 
+    /**
+     * Read the CRL from the database, or download it if it is missing or expired.
+     */
+    private X509CRL loadCrl(X509Certificate certificate, X509Certificate issuerCertificate, String key)
+            throws IOException {
+        try {
+            X509CRL decoded = decodedCRLs.get(key);
+            if (decoded != null) {
+                /* Loaded by a concurrent request that just finished */
+                return decoded;
+            }
+
+            List<CachedCRL> crls = getJdbcTemplate().query("SELECT * FROM CACHED_CRL WHERE ID = ?",
+                    new Object[] { key }, new RowMapper<CachedCRL>() {
+                        @Override
+                        public CachedCRL mapRow(ResultSet rs, int rowNum) throws SQLException {
+                            CachedCRL cached = new CachedCRL();
+                            cached.setKey(rs.getString("ID"));
+                            cached.setCrl(rs.getBytes("DATA"));
+                            return cached;
+                        }
+                    });
+
+            if (crls.size() == 0) {
+                LOG.info("CRL not in cache");
+                return fetchCrl(certificate, issuerCertificate, key,
+                        "INSERT INTO CACHED_CRL (DATA, ID) VALUES (?,?) ");
+            }
+
+            CachedCRL crl = crls.get(0);
+
+            CertificateFactory factory = CertificateFactory.getInstance("X509");
+            X509CRL x509crl = (X509CRL) factory.generateCRL(new ByteArrayInputStream(crl.getCrl()));
+            if (x509crl.getNextUpdate().after(new Date())) {
+                LOG.fine("CRL in cache");
+                decodedCRLs.put(key, x509crl);
+                return x509crl;
+            } else {
+                LOG.info("CRL expired");
+                return fetchCrl(certificate, issuerCertificate, key,
+                        "UPDATE CACHED_CRL SET DATA = ?  WHERE ID = ? ");
+            }
+        } catch (CRLException e) {
+            LOG.info("Cannot serialize CRL");
+        } catch (CertificateException e) {
+            LOG.info("Cannot instanciate X509 Factory");
+        }
+
+        return null;
+    }
+
+    /**
+     * Download the CRL and store it in the database directly from the spooled bytes, without encoding the X509CRL.
+     * 
+     * @param sql The INSERT or UPDATE statement, with DATA and ID parameters
+     */
+    private X509CRL fetchCrl(X509Certificate certificate, X509Certificate issuerCertificate, final String key,
+            String sql) throws IOException, CRLException {
+
+        final StreamedCRL streamed = cachedSource.findStreamedCrl(certificate, issuerCertificate);
+        if (streamed == null) {
+            return null;
+        }
+        try {
+            final InputStream data = streamed.openStream();
+            try {
+                getJdbcTemplate().update(sql, new PreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps) throws SQLException {
+                        ps.setBinaryStream(1, data, (int) streamed.getLength());
+                        ps.setString(2, key);
+                    }
+                });
+            } finally {
+                data.close();
+            }
+            X509CRL crl = streamed.toX509CRL();
+            decodedCRLs.put(key, crl);
+            return crl;
+        } finally {
+            streamed.delete();
+        }
+    }
+
 }
@@ -21,34 +21,20 @@
 package eu.europa.ec.markt.dss.validation.crl;
 
 import eu.europa.ec.markt.dss.CannotFetchDataException;
+import eu.europa.ec.markt.dss.validation.certificate.CertificatePool;
 import eu.europa.ec.markt.dss.validation.https.HTTPDataLoader;
+import eu.europa.ec.markt.dss.validation.https.RequestCoalescer;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
-import java.security.NoSuchProviderException;
 import java.security.cert.CRLException;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
-import org.bouncycastle.asn1.ASN1InputStream;
-import org.bouncycastle.asn1.ASN1Sequence;
-import org.bouncycastle.asn1.DERIA5String;
-import org.bouncycastle.asn1.DEROctetString;
-import org.bouncycastle.asn1.DERTaggedObject;
-import org.bouncycastle.asn1.x509.CRLDistPoint;
-import org.bouncycastle.asn1.x509.DistributionPoint;
-import org.bouncycastle.asn1.x509.DistributionPointName;
-import org.bouncycastle.asn1.x509.GeneralName;
-import org.bouncycastle.asn1.x509.GeneralNames;
-import org.bouncycastle.asn1.x509.X509Extensions;
-import org.bouncycastle.x509.NoSuchParserException;
-import org.bouncycastle.x509.util.StreamParsingException;
-
 /**
  * Online CRL repository. This CRL repository implementation will download the CRLs from the given CRL URIs.
  * 
@@ -62,6 +48,11 @@ public class OnlineCRLSource implements CRLSource {
 
     private HTTPDataLoader urlDataLoader;
 
+    private StreamingCRLReader crlReader = new StreamingCRLReader();
+
+    /* Concurrent requests for the same CRL URL share one download */
+    private final RequestCoalescer<String, X509CRL> inFlightCrls = new RequestCoalescer<String, X509CRL>();
+
     /**
      * Set the HTTPDataLoader to use for query the CRL server
      * 
@@ -71,8 +62,61 @@ public class OnlineCRLSource implements CRLSource {
         this.urlDataLoader = urlDataLoader;
     }
 
+    /**
+     * Set the directory where the downloaded CRL are spooled while they are parsed
+     * 
+     * @param spoolDirectory
+     */
+    public void setSpoolDirectory(File spoolDirectory) {
+        crlReader.setSpoolDirectory(spoolDirectory);
+    }
+
     @Override
-    public X509CRL findCrl(X509Certificate certificate, X509Certificate issuerCertificate) {
+    public X509CRL findCrl(final X509Certificate certificate, final X509Certificate issuerCertificate) {
+        try {
+            String crlURL = getCrlUri(certificate);
+            if (crlURL == null) {
+                return null;
+            }
+            return inFlightCrls.fetch(crlURL, new Callable<X509CRL>() {
+                @Override
+                public X509CRL call() {
+                    return downloadCrl(certificate, issuerCertificate);
+                }
+            });
+        } catch (IOException e) {
+            LOG.severe("error parsing CRL: " + e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
+
+    private X509CRL downloadCrl(X509Certificate certificate, X509Certificate issuerCertificate) {
+        StreamedCRL streamed = findStreamedCrl(certificate, issuerCertificate);
+        if (streamed == null) {
+            return null;
+        }
+        try {
+            return streamed.toX509CRL();
+        } catch (CRLException e) {
+            LOG.severe("error parsing CRL: " + e.getMessage());
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            LOG.severe("error parsing CRL: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            streamed.delete();
+        }
+    }
+
+    /**
+     * Download the CRL of the certificate. The CRL is parsed while it is spooled to disk. The caller must delete the
+     * returned StreamedCRL once it has been used.
+     * 
+     * @param certificate
+     * @param issuerCertificate
+     * @return the CRL or null if it cannot be downloaded
+     */
+    public StreamedCRL findStreamedCrl(X509Certificate certificate, X509Certificate issuerCertificate) {
         try {
             String crlURL = getCrlUri(certificate);
             LOG.info("CRL's URL for " + certificate.getSubjectDN() + " : " + crlURL);
@@ -85,42 +129,27 @@ public class OnlineCRLSource implements CRLSource {
                 LOG.warning("We support only HTTP and HTTPS CRL's url, this url is " + crlURL);
                 return null;
             }
-        } catch (CRLException e) {
-            LOG.severe("error parsing CRL: " + e.getMessage());
-            throw new RuntimeException(e);
         } catch (MalformedURLException e) {
             LOG.severe("error parsing CRL: " + e.getMessage());
             throw new RuntimeException(e);
-        } catch (CertificateException e) {
-            LOG.severe("error parsing CRL: " + e.getMessage());
-            throw new RuntimeException(e);
-        } catch (NoSuchProviderException e) {
-            /*
-             * This should never happens. The provider BouncyCastle is supposed to be installed. No special treatment
-             * for this exception
-             */
-            LOG.severe("error parsing CRL: " + e.getMessage());
-            throw new RuntimeException(e);
-        } catch (NoSuchParserException e) {
-            LOG.severe("error parsing CRL: " + e.getMessage());
-            throw new RuntimeException(e);
-        } catch (StreamParsingException e) {
+        } catch (IOException e) {
             LOG.severe("error parsing CRL: " + e.getMessage());
             throw new RuntimeException(e);
         }
     }
 
-    private X509CRL getCrl(String downloadUrl) throws CertificateException, CRLException, NoSuchProviderException,
-            NoSuchParserException, StreamParsingException {
+    private StreamedCRL getCrl(String downloadUrl) throws IOException {
 
         if (downloadUrl != null) {
             try {
                 InputStream input = urlDataLoader.get(downloadUrl);
-
-                CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
-                X509CRL crl = (X509CRL) certificateFactory.generateCRL(input);
-                LOG.fine("CRL size: " + crl.getEncoded().length + " bytes");
-                return crl;
+                try {
+                    StreamedCRL crl = crlReader.read(input);
+                    LOG.fine("CRL size: " + crl.getLength() + " bytes");
+                    return crl;
+                } finally {
+                    input.close();
+                }
             } catch (CannotFetchDataException ioe) {
                 return null;
             }
@@ -136,50 +165,12 @@ public class OnlineCRLSource implements CRLSource {
      * @return the CRL URI, or <code>null</code> if the extension is not present.
      * @throws MalformedURLException
      */
-    @SuppressWarnings("deprecation")
     public String getCrlUri(X509Certificate certificate) throws MalformedURLException {
-        byte[] crlDistributionPointsValue = certificate.getExtensionValue(X509Extensions.CRLDistributionPoints
-                .getId());
-        if (null == crlDistributionPointsValue) {
-            return null;
-        }
-        ASN1Sequence seq;
-        try {
-            DEROctetString oct;
-            oct = (DEROctetString) (new ASN1InputStream(new ByteArrayInputStream(crlDistributionPointsValue))
-                    .readObject());
-            seq = (ASN1Sequence) new ASN1InputStream(oct.getOctets()).readObject();
-        } catch (IOException e) {
-            throw new RuntimeException("IO error: " + e.getMessage(), e);
-        }
-        CRLDistPoint distPoint = CRLDistPoint.getInstance(seq);
-        DistributionPoint[] distributionPoints = distPoint.getDistributionPoints();
-        for (DistributionPoint distributionPoint : distributionPoints) {
-            DistributionPointName distributionPointName = distributionPoint.getDistributionPoint();
-            if (DistributionPointName.FULL_NAME != distributionPointName.getType()) {
-                continue;
-            }
-            GeneralNames generalNames = (GeneralNames) distributionPointName.getName();
-            GeneralName[] names = generalNames.getNames();
-            for (GeneralName name : names) {
-                if (name.getTagNo() != GeneralName.uniformResourceIdentifier) {
-                    LOG.fine("not a uniform resource identifier");
-                    continue;
-                }
-                String str = null;
-                if (name.getDERObject() instanceof DERTaggedObject) {
-                    DERTaggedObject taggedObject = (DERTaggedObject) name.getDERObject();
-                    DERIA5String derStr = DERIA5String.getInstance(taggedObject.getObject());
-                    str = derStr.getString();
-                } else {
-                    DERIA5String derStr = DERIA5String.getInstance(name.getDERObject());
-                    str = derStr.getString();
-                }
-                if (str != null && (str.startsWith("http://") || str.startsWith("https://"))) {
-                    return str;
-                } else {
-                    LOG.info("Supports only http:// and https:// protocol for CRL");
-                }
+        for (String str : CertificatePool.getSharedPool().intern(certificate).getCrlUris()) {
+            if (str.startsWith("http://") || str.startsWith("https://")) {
+                return str;
+            } else {
+                LOG.info("Supports only http:// and https:// protocol for CRL");
             }
         }
         return null;
@@ -0,0 +1,339 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.crl;
+
+import eu.europa.ec.markt.dss.DigestAlgorithm;
+import eu.europa.ec.markt.dss.validation.cache.RevocationCacheEntry;
+import eu.europa.ec.markt.dss.validation.cache.RevocationCacheStore;
+import eu.europa.ec.markt.dss.validation.https.RequestCoalescer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * CRLSource that keeps the downloaded CRL in a RevocationCacheStore. A stored CRL is used as long as its nextUpdate is
+ * not reached, also after a restart of the application. The last decoded CRL are kept in memory in front of the store.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class RevocationCacheCRLSource implements CRLSource {
+
+    private static final Logger LOG = Logger.getLogger(RevocationCacheCRLSource.class.getName());
+
+    private OnlineCRLSource cachedSource;
+
+    private RevocationCacheStore store;
+
+    /* The last decoded CRL of each key, so a cache hit does not decode the CRL again */
+    private final DecodedCRLCache decodedCRLs = new DecodedCRLCache();
+
+    /* Concurrent requests for the same CRL share one read of the store and one download */
+    private final RequestCoalescer<String, X509CRL> inFlightCrls = new RequestCoalescer<String, X509CRL>();
+
+    /* A certificate pointing to each CRL requested or registered so far, used to refresh the CRL ahead of expiry */
+    private final ConcurrentMap<String, X509Certificate> crlCertificates =
+            new ConcurrentHashMap<String, X509Certificate>();
+
+    /* The time of the last refresh attempt of each CRL, for the CRL whose validity is unknown */
+    private final ConcurrentMap<String, Long> refreshAttempts = new ConcurrentHashMap<String, Long>();
+
+    private long minRefreshInterval = 3600000;
+
+    /**
+     * The default constructor for RevocationCacheCRLSource.
+     */
+    public RevocationCacheCRLSource() {
+    }
+
+    /**
+     * @param cachedSource the cachedSource to set
+     */
+    public void setCachedSource(OnlineCRLSource cachedSource) {
+        this.cachedSource = cachedSource;
+    }
+
+    /**
+     * @param store the store to set
+     */
+    public void setStore(RevocationCacheStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Set the maximum number of decoded CRL kept in memory in front of the store
+     * 
+     * @param maxDecodedCRLs the maxDecodedCRLs to set
+     */
+    public void setMaxDecodedCRLs(int maxDecodedCRLs) {
+        decodedCRLs.setMaxEntries(maxDecodedCRLs);
+    }
+
+    /**
+     * Set the minimum interval in milliseconds between two refreshes of a CRL whose validity is unknown, either because
+     * it has no nextUpdate or because it is not in the store after a failed download. The default is one hour.
+     * 
+     * @param minRefreshInterval the minRefreshInterval to set
+     */
+    public void setMinRefreshInterval(long minRefreshInterval) {
+        this.minRefreshInterval = minRefreshInterval;
+    }
+
+    /**
+     * Load the fresh CRL of the store in memory, so the first validations after a restart neither contact the CA nor
+     * decode the CRL. At most maxDecodedCRLs CRL are loaded.
+     */
+    public void warmUp() {
+        Date now = new Date();
+        int loaded = 0;
+        try {
+            List<RevocationCacheEntry> entries = store.getEntries();
+            for (RevocationCacheEntry entry : entries) {
+                if (loaded >= decodedCRLs.getMaxEntries()) {
+                    break;
+                }
+                if (entry.getType() != RevocationCacheEntry.Type.CRL || !entry.isFresh(now, 0)) {
+                    continue;
+                }
+                X509CRL crl = readCrl(entry.getKey());
+                if (crl != null) {
+                    decodedCRLs.put(entry.getKey(), crl);
+                    loaded++;
+                }
+            }
+            LOG.info("Revocation cache warmed up with " + loaded + " CRL out of " + entries.size() + " entries");
+        } catch (IOException e) {
+            LOG.warning("Cannot warm up the CRL cache: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public X509CRL findCrl(final X509Certificate certificate, final X509Certificate issuerCertificate)
+            throws IOException {
+
+        String crlUrl = cachedSource.getCrlUri(certificate);
+        if (crlUrl == null) {
+            return null;
+        }
+
+        final String key = getKey(crlUrl);
+        crlCertificates.putIfAbsent(key, certificate);
+        X509CRL decoded = decodedCRLs.get(key);
+        if (decoded != null) {
+            LOG.fine("CRL in memory");
+            return decoded;
+        }
+
+        return inFlightCrls.fetch(key, new Callable<X509CRL>() {
+            @Override
+            public X509CRL call() throws IOException {
+                return loadCrl(certificate, issuerCertificate, key);
+            }
+        });
+    }
+
+    /**
+     * Read the CRL from the store, or download it if it is missing or expired.
+     */
+    private X509CRL loadCrl(X509Certificate certificate, X509Certificate issuerCertificate, String key)
+            throws IOException {
+
+        X509CRL decoded = decodedCRLs.get(key);
+        if (decoded != null) {
+            /* Loaded by a concurrent request that just finished */
+            return decoded;
+        }
+
+        RevocationCacheEntry entry = null;
+        try {
+            entry = store.getEntry(key);
+        } catch (IOException e) {
+            LOG.warning("Cannot read the CRL cache: " + e.getMessage());
+        }
+        if (entry != null && entry.isFresh(new Date(), 0)) {
+            X509CRL crl = readCrl(key);
+            if (crl != null) {
+                LOG.fine("CRL in cache");
+                decodedCRLs.put(key, crl);
+                return crl;
+            }
+        }
+
+        LOG.info(entry == null ? "CRL not in cache" : "CRL expired");
+        return fetchCrl(certificate, issuerCertificate, key);
+    }
+
+    /**
+     * Register the CRL of the certificate, so it is kept up to date by refreshAhead even before it is requested.
+     * 
+     * @param certificate
+     * @return true if the certificate has a CRL distribution point
+     * @throws IOException
+     */
+    public boolean register(X509Certificate certificate) throws IOException {
+        String crlUrl = cachedSource.getCrlUri(certificate);
+        if (crlUrl == null) {
+            return false;
+        }
+        crlCertificates.putIfAbsent(getKey(crlUrl), certificate);
+        return true;
+    }
+
+    /**
+     * Download again every requested or registered CRL which is missing from the store or which has reached the given
+     * fraction of its validity (from thisUpdate to nextUpdate). The new CRL replaces the previous one in the store and
+     * in memory, so the validations never wait for the download of a CRL that is about to expire. A CRL whose validity
+     * is unknown is downloaded again at most every minRefreshInterval.
+     * 
+     * @param refreshFraction the fraction of the validity after which the CRL is downloaded again, between 0 and 1
+     * @return the number of CRL downloaded
+     */
+    public int refreshAhead(double refreshFraction) {
+        long now = System.currentTimeMillis();
+        int refreshed = 0;
+        for (Map.Entry<String, X509Certificate> registered : crlCertificates.entrySet()) {
+            final String key = registered.getKey();
+            final X509Certificate certificate = registered.getValue();
+            if (!isRefreshDue(key, refreshFraction, now)) {
+                continue;
+            }
+            refreshAttempts.put(key, now);
+            try {
+                X509CRL crl = inFlightCrls.fetch(key, new Callable<X509CRL>() {
+                    @Override
+                    public X509CRL call() throws IOException {
+                        return fetchCrl(certificate, null, key);
+                    }
+                });
+                if (crl != null) {
+                    refreshed++;
+                }
+            } catch (IOException e) {
+                LOG.warning("Cannot refresh CRL " + key + ": " + e.getMessage());
+            } catch (RuntimeException e) {
+                LOG.warning("Cannot refresh CRL " + key + ": " + e.getMessage());
+            }
+        }
+        return refreshed;
+    }
+
+    private boolean isRefreshDue(String key, double refreshFraction, long now) {
+        RevocationCacheEntry entry;
+        try {
+            entry = store.getEntry(key);
+        } catch (IOException e) {
+            entry = null;
+        }
+        if (entry == null || entry.getThisUpdate() == null || entry.getNextUpdate() == null) {
+            Long lastAttempt = refreshAttempts.get(key);
+            long reference = lastAttempt != null ? lastAttempt : 0;
+            if (entry != null && entry.getThisUpdate() != null) {
+                reference = Math.max(reference, entry.getThisUpdate().getTime());
+            }
+            return now >= reference + minRefreshInterval;
+        }
+        long thisUpdate = entry.getThisUpdate().getTime();
+        long validity = entry.getNextUpdate().getTime() - thisUpdate;
+        return now >= thisUpdate + (long) (validity * refreshFraction);
+    }
+
+    /**
+     * Download the CRL and store it directly from the spooled bytes, without encoding the X509CRL.
+     */
+    private X509CRL fetchCrl(X509Certificate certificate, X509Certificate issuerCertificate, String key)
+            throws IOException {
+
+        StreamedCRL streamed = cachedSource.findStreamedCrl(certificate, issuerCertificate);
+        if (streamed == null) {
+            return null;
+        }
+        try {
+            IndexedCRL index = streamed.getIndex();
+            RevocationCacheEntry entry = new RevocationCacheEntry(key, RevocationCacheEntry.Type.CRL,
+                    index.getThisUpdate(), index.getNextUpdate(), null);
+            InputStream data = streamed.openStream();
+            try {
+                store.put(entry, data, streamed.getLength());
+            } catch (IOException e) {
+                LOG.warning("Cannot store the CRL in cache: " + e.getMessage());
+            } finally {
+                data.close();
+            }
+            X509CRL crl = streamed.toX509CRL();
+            decodedCRLs.put(key, crl);
+            return crl;
+        } catch (CRLException e) {
+            LOG.info("Cannot decode CRL");
+            return null;
+        } finally {
+            streamed.delete();
+        }
+    }
+
+    private X509CRL readCrl(String key) {
+        try {
+            InputStream data = store.openData(key);
+            if (data == null) {
+                return null;
+            }
+            try {
+                CertificateFactory factory = CertificateFactory.getInstance("X509");
+                return (X509CRL) factory.generateCRL(data);
+            } finally {
+                data.close();
+            }
+        } catch (IOException e) {
+            LOG.warning("Cannot read the CRL cache: " + e.getMessage());
+        } catch (CRLException e) {
+            LOG.info("Cannot decode cached CRL " + key);
+        } catch (CertificateException e) {
+            LOG.info("Cannot instanciate X509 Factory");
+        }
+        return null;
+    }
+
+    private static String getKey(String crlUrl) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DigestAlgorithm.SHA1.getName());
+            return Hex.encodeHexString(digest.digest(crlUrl.getBytes()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Cannot instantiate digest for algorithm SHA1 !?", e);
+        }
+    }
+
+}
@@ -23,15 +23,27 @@ package eu.europa.ec.markt.dss.validation.https;
 import eu.europa.ec.markt.dss.CannotFetchDataException;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Date;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.logging.Logger;
 
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HostConfiguration;
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.URI;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.protocol.Protocol;
 import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
 
@@ -39,17 +51,31 @@ import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
  * 
  * Implementation of HTTPDataLoader using HttpClient. More flexible for HTTPS without having to add the certificate to
  * the JVM TrustStore.
+ * <p>
+ * The connections are pooled and kept alive between the requests, so one loader can be shared by all the threads of the
+ * application. The pool and the timeouts are configured when the first request is made; they must be set before.
+ * <p>
+ * The redirects of a GET are followed by the loader itself, so the redirected requests also use the https protocol of
+ * this loader.
  * 
  * 
  * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
  */
 
-public class CommonsHttpDataLoader implements HTTPDataLoader {
+public class CommonsHttpDataLoader implements ConditionalHTTPDataLoader {
 
     private static final Logger LOG = Logger.getLogger(CommonsHttpDataLoader.class.getName());
 
+    private static final int MAX_REDIRECTS = 5;
+
+    /* Aborts the requests that exceed their totalTimeout, also while a read is blocked */
+    private static final Timer TIMEOUT_TIMER = new Timer("CommonsHttpDataLoader timeout", true);
+
     private HttpClient client;
 
+    /* Used for the https URL of this loader only, instead of registering a global protocol */
+    private Protocol httpsProtocol;
+
     private ProtocolSocketFactory protocolSocketFactory;
 
     private String contentType;
@@ -58,6 +84,18 @@ public class CommonsHttpDataLoader implements HTTPDataLoader {
     
     private int proxyPort = -1;
 
+    private int connectionTimeout = 15000;
+
+    private int readTimeout = 15000;
+
+    private long totalTimeout = 0;
+
+    private long maxResponseSize = 0;
+
+    private int maxConnectionsPerHost = 10;
+
+    private int maxTotalConnections = 50;
+
     /**
      * 
      * The default constructor for CommonsHttpDataLoader.
@@ -90,58 +128,278 @@ public class CommonsHttpDataLoader implements HTTPDataLoader {
         this.protocolSocketFactory = protocolSocketFactory;
     }
 
-    private HttpClient getClient() throws IOException {
-        if (protocolSocketFactory == null) {
-            LOG.warning("HTTPS TrustStore undefined, unsing default");
-            protocolSocketFactory = new SimpleProtocolSocketFactory();
-        }
+    /**
+     * Set the maximum time (in milliseconds) to establish a connection, and to wait for a free connection of the pool.
+     * Default is 15 seconds.
+     * 
+     * @param connectionTimeout the connectionTimeout to set
+     */
+    public void setConnectionTimeout(int connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    /**
+     * Set the maximum time (in milliseconds) to wait for data on an established connection. Default is 15 seconds.
+     * 
+     * @param readTimeout the readTimeout to set
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Set the maximum time (in milliseconds) from the start of a request until its response is completely read. Default
+     * is 0, no limit.
+     * 
+     * @param totalTimeout the totalTimeout to set
+     */
+    public void setTotalTimeout(long totalTimeout) {
+        this.totalTimeout = totalTimeout;
+    }
+
+    /**
+     * Set the maximum number of bytes of a response. Default is 0, no limit.
+     * 
+     * @param maxResponseSize the maxResponseSize to set
+     */
+    public void setMaxResponseSize(long maxResponseSize) {
+        this.maxResponseSize = maxResponseSize;
+    }
+
+    /**
+     * Set the maximum number of connections opened to the same host. Default is 10.
+     * 
+     * @param maxConnectionsPerHost the maxConnectionsPerHost to set
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * Set the maximum number of connections opened by this loader. Default is 50.
+     * 
+     * @param maxTotalConnections the maxTotalConnections to set
+     */
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        this.maxTotalConnections = maxTotalConnections;
+    }
 
+    private synchronized HttpClient getClient() {
         if (client == null) {
-            client = new HttpClient();
-            Protocol myhttps = new Protocol("https", protocolSocketFactory, 443);
-            Protocol.registerProtocol("https", myhttps);
-        }
+            if (protocolSocketFactory == null) {
+                LOG.warning("HTTPS TrustStore undefined, unsing default");
+                protocolSocketFactory = new SimpleProtocolSocketFactory();
+            }
+            httpsProtocol = new Protocol("https", protocolSocketFactory, 443);
 
-        client.getHttpConnectionManager().getParams().setSoTimeout(15000);
-        client.getHttpConnectionManager().getParams().setConnectionTimeout(15000);
+            MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+            HttpConnectionManagerParams params = connectionManager.getParams();
+            params.setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+            params.setMaxTotalConnections(maxTotalConnections);
+            params.setConnectionTimeout(connectionTimeout);
+            params.setSoTimeout(readTimeout);
+            params.setStaleCheckingEnabled(true);
 
-        if(proxyHost != null && proxyPort != -1) {
-            client.getHostConfiguration().setProxy(proxyHost, proxyPort);
+            client = new HttpClient(connectionManager);
+            client.getParams().setConnectionManagerTimeout(connectionTimeout);
         }
-        
         return client;
     }
 
+    /**
+     * Execute the method on the host of the URL. The https protocol of this loader is passed with the host, so nothing
+     * is registered globally. The redirects of a GET are followed here with the same protocol; HttpClient would resolve
+     * them with the global protocol registry.
+     */
+    private void execute(String url, HttpMethodBase method) throws IOException {
+        HttpClient httpClient = getClient();
+        URI uri = new URI(url, true);
+        method.setFollowRedirects(false);
+        for (int redirects = 0;; redirects++) {
+            method.setPath(uri.getEscapedPath() == null ? "/" : uri.getEscapedPath());
+            method.setQueryString(uri.getEscapedQuery());
+            httpClient.executeMethod(getHostConfiguration(uri), method);
+            if (!(method instanceof GetMethod) || !isRedirect(method.getStatusCode())) {
+                return;
+            }
+            Header location = method.getResponseHeader("Location");
+            if (location == null) {
+                return;
+            }
+            if (redirects >= MAX_REDIRECTS) {
+                LOG.warning("Too many redirects from " + url);
+                return;
+            }
+            uri = new URI(uri, new URI(location.getValue(), true));
+            LOG.fine("Redirected to " + uri);
+            method.releaseConnection();
+        }
+    }
+
+    private static boolean isRedirect(int statusCode) {
+        return statusCode == HttpStatus.SC_MOVED_PERMANENTLY || statusCode == HttpStatus.SC_MOVED_TEMPORARILY
+                || statusCode == HttpStatus.SC_SEE_OTHER || statusCode == HttpStatus.SC_TEMPORARY_REDIRECT;
+    }
+
+    private HostConfiguration getHostConfiguration(URI uri) throws IOException {
+        HostConfiguration hostConfiguration = new HostConfiguration();
+        if ("https".equalsIgnoreCase(uri.getScheme())) {
+            hostConfiguration.setHost(uri.getHost(), uri.getPort(), httpsProtocol);
+        } else {
+            hostConfiguration.setHost(uri.getHost(), uri.getPort(), uri.getScheme());
+        }
+        if (proxyHost != null && proxyPort != -1) {
+            hostConfiguration.setProxy(proxyHost, proxyPort);
+        }
+        return hostConfiguration;
+    }
+
     @Override
     public InputStream get(String URL) throws CannotFetchDataException {
+        LOG.fine("Fetching data from url " + URL);
+        long deadline = getDeadline();
+        GetMethod get = new GetMethod();
+        TimerTask timeout = scheduleAbort(get, deadline);
+        boolean streaming = false;
         try {
-            LOG.fine("Fetching data from url " + URL);
-            GetMethod get = new GetMethod(URL);
-            getClient().executeMethod(get);
+            execute(URL, get);
             if (get.getStatusCode() == 200) {
-                return get.getResponseBodyAsStream();
-            } else {
-                return new ByteArrayInputStream(new byte[0]);
+                checkContentLength(get, URL);
+                InputStream body = get.getResponseBodyAsStream();
+                if (body != null) {
+                    /* The connection is released when the caller closes the stream or reads it until the end */
+                    streaming = true;
+                    return new ResponseInputStream(get, body, URL, deadline, timeout);
+                }
+            }
+            return new ByteArrayInputStream(new byte[0]);
+        } catch (IOException ex) {
+            throw toException(ex, URL, deadline);
+        } finally {
+            if (!streaming) {
+                release(get, timeout);
+            }
+        }
+    }
+
+    @Override
+    public ConditionalResponse getIfModified(String URL, String eTag, String lastModified)
+            throws CannotFetchDataException {
+        LOG.fine("Fetching data from url " + URL + " if modified");
+        long deadline = getDeadline();
+        GetMethod get = new GetMethod();
+        TimerTask timeout = scheduleAbort(get, deadline);
+        boolean streaming = false;
+        try {
+            if (eTag != null) {
+                get.setRequestHeader("If-None-Match", eTag);
+            }
+            if (lastModified != null) {
+                get.setRequestHeader("If-Modified-Since", lastModified);
+            }
+            execute(URL, get);
+            if (get.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                return new ConditionalResponse(true, null, eTag, lastModified);
+            }
+            InputStream content = new ByteArrayInputStream(new byte[0]);
+            if (get.getStatusCode() == HttpStatus.SC_OK) {
+                checkContentLength(get, URL);
+                InputStream body = get.getResponseBodyAsStream();
+                if (body != null) {
+                    streaming = true;
+                    content = new ResponseInputStream(get, body, URL, deadline, timeout);
+                }
             }
+            return new ConditionalResponse(false, content, getHeader(get, "ETag"), getHeader(get, "Last-Modified"));
         } catch (IOException ex) {
-            throw new CannotFetchDataException(ex, URL);
+            throw toException(ex, URL, deadline);
+        } finally {
+            if (!streaming) {
+                release(get, timeout);
+            }
         }
     }
 
+    private static String getHeader(HttpMethodBase method, String name) {
+        Header header = method.getResponseHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
     @Override
     public InputStream post(String URL, InputStream content) throws CannotFetchDataException {
+        LOG.fine("Post data to url " + URL);
+        long deadline = getDeadline();
+        PostMethod post = new PostMethod();
+        TimerTask timeout = scheduleAbort(post, deadline);
         try {
-            LOG.fine("Post data to url " + URL);
-            PostMethod post = new PostMethod(URL);
             RequestEntity requestEntity = new InputStreamRequestEntity(content);
             post.setRequestEntity(requestEntity);
             if (contentType != null) {
                 post.setRequestHeader("Content-Type", contentType);
             }
-            getClient().executeMethod(post);
-            return post.getResponseBodyAsStream();
+            execute(URL, post);
+            checkContentLength(post, URL);
+            InputStream body = post.getResponseBodyAsStream();
+            if (body == null) {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+            /* Responses to a POST are small (OCSP, timestamp), read them now to release the connection */
+            InputStream response = new ResponseInputStream(post, body, URL, deadline, null);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] data = new byte[4096];
+            int count;
+            while ((count = response.read(data)) >= 0) {
+                buffer.write(data, 0, count);
+            }
+            return new ByteArrayInputStream(buffer.toByteArray());
         } catch (IOException ex) {
-            throw new CannotFetchDataException(ex, URL);
+            throw toException(ex, URL, deadline);
+        } finally {
+            release(post, timeout);
+        }
+    }
+
+    private long getDeadline() {
+        return totalTimeout > 0 ? System.currentTimeMillis() + totalTimeout : Long.MAX_VALUE;
+    }
+
+    /**
+     * Abort the method at the deadline. Aborting closes the connection, so a read blocked on a slow server fails at
+     * once instead of waiting for the read timeout.
+     */
+    private static TimerTask scheduleAbort(final HttpMethodBase method, long deadline) {
+        if (deadline == Long.MAX_VALUE) {
+            return null;
+        }
+        TimerTask task = new TimerTask() {
+            @Override
+            public void run() {
+                method.abort();
+            }
+        };
+        TIMEOUT_TIMER.schedule(task, new Date(deadline));
+        return task;
+    }
+
+    private static void release(HttpMethodBase method, TimerTask timeout) {
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        method.releaseConnection();
+    }
+
+    private CannotFetchDataException toException(IOException ex, String url, long deadline) {
+        if (System.currentTimeMillis() >= deadline) {
+            LOG.warning("Response of " + url + " not received after " + totalTimeout + " ms");
+            return new CannotFetchDataException(CannotFetchDataException.MSG.TIMOUT_EXCEPTION, url);
+        }
+        return new CannotFetchDataException(ex, url);
+    }
+
+    private void checkContentLength(HttpMethodBase method, String url) {
+        if (maxResponseSize > 0 && method.getResponseContentLength() > maxResponseSize) {
+            LOG.warning("Response of " + url + " is larger than " + maxResponseSize + " bytes");
+            throw new CannotFetchDataException(CannotFetchDataException.MSG.SIZE_LIMIT_EXCEPTION, url);
         }
     }
 
@@ -159,4 +417,106 @@ public class CommonsHttpDataLoader implements HTTPDataLoader {
         this.proxyPort = proxyPort;
     }
 
+    /**
+     * Body of a response. Enforce the size limit and the total timeout while the body is read, and release the
+     * connection to the pool at the end of the body or when the stream is closed.
+     */
+    private class ResponseInputStream extends FilterInputStream {
+
+        private final HttpMethodBase method;
+
+        private final String url;
+
+        private final long deadline;
+
+        private final TimerTask timeout;
+
+        private long size;
+
+        private boolean released;
+
+        ResponseInputStream(HttpMethodBase method, InputStream body, String url, long deadline, TimerTask timeout) {
+            super(body);
+            this.method = method;
+            this.url = url;
+            this.deadline = deadline;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeadline();
+            int b;
+            try {
+                b = super.read();
+            } catch (IOException e) {
+                release();
+                throw toException(e, url, deadline);
+            }
+            if (b < 0) {
+                release();
+            } else {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkDeadline();
+            int count;
+            try {
+                count = super.read(b, off, len);
+            } catch (IOException e) {
+                release();
+                throw toException(e, url, deadline);
+            }
+            if (count < 0) {
+                release();
+            } else {
+                count(count);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                release();
+            }
+        }
+
+        private void checkDeadline() {
+            if (System.currentTimeMillis() > deadline) {
+                abort();
+                LOG.warning("Response of " + url + " not received after " + totalTimeout + " ms");
+                throw new CannotFetchDataException(CannotFetchDataException.MSG.TIMOUT_EXCEPTION, url);
+            }
+        }
+
+        private void count(int count) {
+            size += count;
+            if (maxResponseSize > 0 && size > maxResponseSize) {
+                abort();
+                LOG.warning("Response of " + url + " is larger than " + maxResponseSize + " bytes");
+                throw new CannotFetchDataException(CannotFetchDataException.MSG.SIZE_LIMIT_EXCEPTION, url);
+            }
+        }
+
+        private void abort() {
+            method.abort();
+            release();
+        }
+
+        private void release() {
+            if (!released) {
+                released = true;
+                CommonsHttpDataLoader.release(method, timeout);
+            }
+        }
+
+    }
+
 }
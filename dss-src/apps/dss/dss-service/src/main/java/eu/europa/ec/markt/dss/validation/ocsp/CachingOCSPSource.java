@@ -0,0 +1,229 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.ocsp;
+
+import eu.europa.ec.markt.dss.validation.https.RequestCoalescer;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.bouncycastle.ocsp.BasicOCSPResp;
+import org.bouncycastle.ocsp.CertificateID;
+import org.bouncycastle.ocsp.OCSPException;
+import org.bouncycastle.ocsp.SingleResp;
+
+/**
+ * OCSPSource that keeps the OCSP responses of another OCSPSource in memory. The responses are identified by their
+ * CertificateID (hash of the issuer name and key, and serial number) and reused until their nextUpdate. A response
+ * without nextUpdate is reused for maxAgeWithoutNextUpdate milliseconds after it was produced; by default such responses
+ * are not reused.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class CachingOCSPSource implements OCSPSource {
+
+    private static final Logger LOG = Logger.getLogger(CachingOCSPSource.class.getName());
+
+    private OCSPSource cachedSource;
+
+    private long maxAgeWithoutNextUpdate = 0;
+
+    private int maxEntries = 1000;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final Map<String, CachedResponse> responses = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+            return size() > maxEntries;
+        }
+
+    };
+
+    /* Concurrent misses for the same certificate share one call to the cached source */
+    private final RequestCoalescer<String, BasicOCSPResp> inFlightResponses =
+            new RequestCoalescer<String, BasicOCSPResp>();
+
+    /**
+     * The default constructor for CachingOCSPSource.
+     */
+    public CachingOCSPSource() {
+    }
+
+    /**
+     * The default constructor for CachingOCSPSource.
+     * 
+     * @param cachedSource
+     */
+    public CachingOCSPSource(OCSPSource cachedSource) {
+        this.cachedSource = cachedSource;
+    }
+
+    /**
+     * @param cachedSource the cachedSource to set
+     */
+    public void setCachedSource(OCSPSource cachedSource) {
+        this.cachedSource = cachedSource;
+    }
+
+    /**
+     * Set how long (in milliseconds) a response without nextUpdate can be reused after it was produced
+     * 
+     * @param maxAgeWithoutNextUpdate the maxAgeWithoutNextUpdate to set
+     */
+    public void setMaxAgeWithoutNextUpdate(long maxAgeWithoutNextUpdate) {
+        this.maxAgeWithoutNextUpdate = maxAgeWithoutNextUpdate;
+    }
+
+    /**
+     * Set the maximum number of responses kept in memory
+     * 
+     * @param maxEntries the maxEntries to set
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public BasicOCSPResp getOCSPResponse(final X509Certificate certificate, final X509Certificate issuerCertificate)
+            throws IOException {
+
+        final CertificateID certId;
+        try {
+            certId = new CertificateID(CertificateID.HASH_SHA1, issuerCertificate, certificate.getSerialNumber());
+        } catch (OCSPException e) {
+            LOG.severe("OCSP error: " + e.getMessage());
+            return cachedSource.getOCSPResponse(certificate, issuerCertificate);
+        }
+        final String key = OCSPCacheKey.getKey(certId);
+
+        BasicOCSPResp cached = getCachedResponse(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+
+        return inFlightResponses.fetch(key, new Callable<BasicOCSPResp>() {
+            @Override
+            public BasicOCSPResp call() throws IOException {
+                BasicOCSPResp response = cachedSource.getOCSPResponse(certificate, issuerCertificate);
+                if (response != null) {
+                    long expiry = getExpiry(response, certId);
+                    if (expiry > System.currentTimeMillis()) {
+                        synchronized (responses) {
+                            responses.put(key, new CachedResponse(response, expiry));
+                        }
+                    }
+                }
+                return response;
+            }
+        });
+    }
+
+    private BasicOCSPResp getCachedResponse(String key) {
+        synchronized (responses) {
+            CachedResponse cached = responses.get(key);
+            if (cached != null) {
+                if (cached.expiry > System.currentTimeMillis()) {
+                    return cached.response;
+                }
+                responses.remove(key);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of responses served from memory
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of responses requested to the cached source
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of responses currently kept in memory
+     */
+    public int size() {
+        synchronized (responses) {
+            return responses.size();
+        }
+    }
+
+    /**
+     * Remove all the responses kept in memory.
+     */
+    public void clear() {
+        synchronized (responses) {
+            responses.clear();
+        }
+    }
+
+    private long getExpiry(BasicOCSPResp response, CertificateID certId) {
+        for (SingleResp single : response.getResponses()) {
+            if (single.getCertID().equals(certId)) {
+                Date nextUpdate = single.getNextUpdate();
+                if (nextUpdate != null) {
+                    return nextUpdate.getTime();
+                }
+                if (maxAgeWithoutNextUpdate > 0 && response.getProducedAt() != null) {
+                    return response.getProducedAt().getTime() + maxAgeWithoutNextUpdate;
+                }
+                return Long.MIN_VALUE;
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    private static class CachedResponse {
+
+        private final BasicOCSPResp response;
+
+        private final long expiry;
+
+        CachedResponse(BasicOCSPResp response, long expiry) {
+            this.response = response;
+            this.expiry = expiry;
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.ocsp;
+
+import eu.europa.ec.markt.dss.DigestAlgorithm;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.codec.binary.Hex;
+import org.bouncycastle.ocsp.CertificateID;
+
+/**
+ * Key of the OCSP responses kept by the caching OCSPSource. The key identifies the certificate the same way the OCSP
+ * request does: the hash of the issuer name and key, and the serial number.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+final class OCSPCacheKey {
+
+    private OCSPCacheKey() {
+    }
+
+    /**
+     * Return the key of the certificate identified by certId
+     * 
+     * @param certId
+     * @return the hex encoded key
+     */
+    static String getKey(CertificateID certId) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DigestAlgorithm.SHA1.getName());
+            digest.update(certId.getIssuerNameHash());
+            digest.update(certId.getIssuerKeyHash());
+            digest.update(certId.getSerialNumber().toByteArray());
+            return Hex.encodeHexString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Cannot instantiate digest for algorithm SHA1 !?", e);
+        }
+    }
+
+}
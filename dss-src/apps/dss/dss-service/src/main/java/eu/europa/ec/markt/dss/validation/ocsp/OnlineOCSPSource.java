@@ -21,25 +21,18 @@
 package eu.europa.ec.markt.dss.validation.ocsp;
 
 import eu.europa.ec.markt.dss.CannotFetchDataException;
+import eu.europa.ec.markt.dss.validation.certificate.CertificatePool;
 import eu.europa.ec.markt.dss.validation.https.HTTPDataLoader;
+import eu.europa.ec.markt.dss.validation.https.RequestCoalescer;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.security.Security;
 import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
-import org.bouncycastle.asn1.ASN1InputStream;
-import org.bouncycastle.asn1.ASN1Sequence;
-import org.bouncycastle.asn1.DERIA5String;
-import org.bouncycastle.asn1.DERObjectIdentifier;
-import org.bouncycastle.asn1.DEROctetString;
-import org.bouncycastle.asn1.DERTaggedObject;
-import org.bouncycastle.asn1.x509.AccessDescription;
-import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
-import org.bouncycastle.asn1.x509.GeneralName;
-import org.bouncycastle.asn1.x509.X509Extensions;
-import org.bouncycastle.asn1.x509.X509ObjectIdentifiers;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.ocsp.BasicOCSPResp;
 import org.bouncycastle.ocsp.CertificateID;
@@ -61,6 +54,10 @@ public class OnlineOCSPSource implements OCSPSource {
 
     private HTTPDataLoader httpDataLoader;
 
+    /* Concurrent requests for the status of the same certificate share one OCSP request */
+    private final RequestCoalescer<String, BasicOCSPResp> inFlightResponses =
+            new RequestCoalescer<String, BasicOCSPResp>();
+
     /**
      * Create an OCSP source The default constructor for OnlineOCSPSource.
      */
@@ -81,15 +78,32 @@ public class OnlineOCSPSource implements OCSPSource {
     public BasicOCSPResp getOCSPResponse(X509Certificate certificate, X509Certificate issuerCertificate)
             throws IOException {
         try {
-            String ocspUri = getAccessLocation(certificate, X509ObjectIdentifiers.ocspAccessMethod);
+            final String ocspUri = getAccessLocation(certificate);
             LOG.fine("OCSP URI: " + ocspUri);
             if (ocspUri == null) {
                 return null;
             }
 
-            OCSPReqGenerator ocspReqGenerator = new OCSPReqGenerator();
-            CertificateID certId = new CertificateID(CertificateID.HASH_SHA1, issuerCertificate,
+            final CertificateID certId = new CertificateID(CertificateID.HASH_SHA1, issuerCertificate,
                     certificate.getSerialNumber());
+            return inFlightResponses.fetch(ocspUri + " " + OCSPCacheKey.getKey(certId),
+                    new Callable<BasicOCSPResp>() {
+                        @Override
+                        public BasicOCSPResp call() throws IOException {
+                            return requestResponse(ocspUri, certId);
+                        }
+                    });
+        } catch (CannotFetchDataException e) {
+            return null;
+        } catch (OCSPException e) {
+            LOG.severe("OCSP error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private BasicOCSPResp requestResponse(String ocspUri, CertificateID certId) throws IOException {
+        try {
+            OCSPReqGenerator ocspReqGenerator = new OCSPReqGenerator();
             ocspReqGenerator.addRequest(certId);
             OCSPReq ocspReq = ocspReqGenerator.generate();
             byte[] ocspReqData = ocspReq.getEncoded();
@@ -110,40 +124,13 @@ public class OnlineOCSPSource implements OCSPSource {
         }
     }
 
-    @SuppressWarnings("deprecation")
-    private String getAccessLocation(X509Certificate certificate, DERObjectIdentifier accessMethod)
-            throws IOException {
-        byte[] authInfoAccessExtensionValue = certificate.getExtensionValue(X509Extensions.AuthorityInfoAccess
-                .getId());
-        if (null == authInfoAccessExtensionValue) {
+    private String getAccessLocation(X509Certificate certificate) {
+        List<String> accessLocations = CertificatePool.getSharedPool().intern(certificate).getOcspUris();
+        if (accessLocations.isEmpty()) {
             return null;
         }
-        AuthorityInformationAccess authorityInformationAccess;
-
-        DEROctetString oct = (DEROctetString) (new ASN1InputStream(new ByteArrayInputStream(
-                authInfoAccessExtensionValue)).readObject());
-        authorityInformationAccess = new AuthorityInformationAccess((ASN1Sequence) new ASN1InputStream(
-                oct.getOctets()).readObject());
-
-        AccessDescription[] accessDescriptions = authorityInformationAccess.getAccessDescriptions();
-        for (AccessDescription accessDescription : accessDescriptions) {
-            LOG.fine("access method: " + accessDescription.getAccessMethod());
-            boolean correctAccessMethod = accessDescription.getAccessMethod().equals(accessMethod);
-            if (!correctAccessMethod) {
-                continue;
-            }
-            GeneralName gn = accessDescription.getAccessLocation();
-            if (gn.getTagNo() != GeneralName.uniformResourceIdentifier) {
-                LOG.fine("not a uniform resource identifier");
-                continue;
-            }
-            DERIA5String str = (DERIA5String) ((DERTaggedObject) gn.getDERObject()).getObject();
-            String accessLocation = str.getString();
-            LOG.fine("access location: " + accessLocation);
-            return accessLocation;
-        }
-        return null;
-
+        LOG.fine("access location: " + accessLocations.get(0));
+        return accessLocations.get(0);
     }
 
 }
@@ -0,0 +1,174 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.ocsp;
+
+import eu.europa.ec.markt.dss.validation.cache.RevocationCacheEntry;
+import eu.europa.ec.markt.dss.validation.cache.RevocationCacheStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.logging.Logger;
+
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ocsp.BasicOCSPResponse;
+import org.bouncycastle.ocsp.BasicOCSPResp;
+import org.bouncycastle.ocsp.CertificateID;
+import org.bouncycastle.ocsp.OCSPException;
+import org.bouncycastle.ocsp.SingleResp;
+
+/**
+ * OCSPSource that keeps the OCSP responses in a RevocationCacheStore. A stored response is used until its nextUpdate,
+ * also after a restart of the application. A response without nextUpdate is used for maxAgeWithoutNextUpdate
+ * milliseconds after it was produced; by default such responses are not reused.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class RevocationCacheOCSPSource implements OCSPSource {
+
+    private static final Logger LOG = Logger.getLogger(RevocationCacheOCSPSource.class.getName());
+
+    private OCSPSource cachedSource;
+
+    private RevocationCacheStore store;
+
+    private long maxAgeWithoutNextUpdate = 0;
+
+    /**
+     * The default constructor for RevocationCacheOCSPSource.
+     */
+    public RevocationCacheOCSPSource() {
+    }
+
+    /**
+     * @param cachedSource the cachedSource to set
+     */
+    public void setCachedSource(OCSPSource cachedSource) {
+        this.cachedSource = cachedSource;
+    }
+
+    /**
+     * @param store the store to set
+     */
+    public void setStore(RevocationCacheStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Set how long (in milliseconds) a response without nextUpdate can be reused after it was produced
+     * 
+     * @param maxAgeWithoutNextUpdate the maxAgeWithoutNextUpdate to set
+     */
+    public void setMaxAgeWithoutNextUpdate(long maxAgeWithoutNextUpdate) {
+        this.maxAgeWithoutNextUpdate = maxAgeWithoutNextUpdate;
+    }
+
+    @Override
+    public BasicOCSPResp getOCSPResponse(X509Certificate certificate, X509Certificate issuerCertificate)
+            throws IOException {
+
+        CertificateID certId;
+        try {
+            certId = new CertificateID(CertificateID.HASH_SHA1, issuerCertificate, certificate.getSerialNumber());
+        } catch (OCSPException e) {
+            LOG.severe("OCSP error: " + e.getMessage());
+            return cachedSource.getOCSPResponse(certificate, issuerCertificate);
+        }
+        String key = OCSPCacheKey.getKey(certId);
+
+        RevocationCacheEntry entry = null;
+        try {
+            entry = store.getEntry(key);
+        } catch (IOException e) {
+            LOG.warning("Cannot read the OCSP cache: " + e.getMessage());
+        }
+        if (entry != null && entry.isFresh(new Date(), maxAgeWithoutNextUpdate)) {
+            BasicOCSPResp cached = readResponse(key);
+            if (cached != null) {
+                LOG.fine("OCSP response in cache");
+                return cached;
+            }
+        }
+
+        BasicOCSPResp response = cachedSource.getOCSPResponse(certificate, issuerCertificate);
+        if (response != null) {
+            storeResponse(key, certId, response);
+        }
+        return response;
+    }
+
+    private void storeResponse(String key, CertificateID certId, BasicOCSPResp response) {
+        SingleResp single = null;
+        for (SingleResp candidate : response.getResponses()) {
+            if (candidate.getCertID().equals(certId)) {
+                single = candidate;
+                break;
+            }
+        }
+        if (single == null) {
+            LOG.fine("OCSP response does not contain the requested certificate, not cached");
+            return;
+        }
+        RevocationCacheEntry entry = new RevocationCacheEntry(key, RevocationCacheEntry.Type.OCSP,
+                single.getThisUpdate(), single.getNextUpdate(), response.getProducedAt());
+        if (entry.getNextUpdate() == null && maxAgeWithoutNextUpdate <= 0) {
+            return;
+        }
+        try {
+            byte[] encoded = response.getEncoded();
+            store.put(entry, new ByteArrayInputStream(encoded), encoded.length);
+        } catch (IOException e) {
+            LOG.warning("Cannot store the OCSP response in cache: " + e.getMessage());
+        }
+    }
+
+    private BasicOCSPResp readResponse(String key) {
+        try {
+            InputStream data = store.openData(key);
+            if (data == null) {
+                return null;
+            }
+            try {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int count;
+                while ((count = data.read(buffer)) >= 0) {
+                    output.write(buffer, 0, count);
+                }
+                return new BasicOCSPResp(BasicOCSPResponse.getInstance(new ASN1InputStream(output.toByteArray())
+                        .readObject()));
+            } finally {
+                data.close();
+            }
+        } catch (IOException e) {
+            LOG.warning("Cannot read the OCSP cache: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            LOG.info("Cannot decode cached OCSP response " + key);
+        }
+        return null;
+    }
+
+}
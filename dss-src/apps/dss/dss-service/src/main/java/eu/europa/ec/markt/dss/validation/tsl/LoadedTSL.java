@@ -0,0 +1,180 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.tsl;
+
+import eu.europa.ec.markt.dss.validation.certificate.CertificateAndContext;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * 
+ * A trusted list as it was loaded, with what is needed to detect if it changed since: the HTTP validators, the digest
+ * of the document and its sequence number. The certificates of an unchanged trusted list are shared by the successive
+ * TrustedListsCertificateSource, and never modified once loaded.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+class LoadedTSL {
+
+    private final String url;
+
+    private final X509Certificate signer;
+
+    private final String eTag;
+
+    private final String lastModified;
+
+    private final String digest;
+
+    private final BigInteger sequenceNumber;
+
+    private TrustStatusList tsl;
+
+    private List<PointerToOtherTSL> pointers;
+
+    private Map<X500Principal, List<CertificateAndContext>> certificates;
+
+    private boolean restored;
+
+    /**
+     * 
+     * The default constructor for LoadedTSL.
+     * 
+     * @param url
+     * @param signer
+     * @param eTag
+     * @param lastModified
+     * @param digest
+     * @param sequenceNumber
+     */
+    LoadedTSL(String url, X509Certificate signer, String eTag, String lastModified, String digest,
+            BigInteger sequenceNumber) {
+        this.url = url;
+        this.signer = signer;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.digest = digest;
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    /**
+     * Return a copy with other HTTP validators, sharing the content of this one.
+     * 
+     * @param eTag
+     * @param lastModified
+     * @return
+     */
+    LoadedTSL withValidators(String eTag, String lastModified) {
+        LoadedTSL copy = new LoadedTSL(url, signer, eTag, lastModified, digest, sequenceNumber);
+        copy.tsl = tsl;
+        copy.pointers = pointers;
+        copy.certificates = certificates;
+        return copy;
+    }
+
+    /**
+     * Check if this trusted list was loaded from the same location and verified with the same certificate. A trusted
+     * list restored from a snapshot is never the same source, so it is always downloaded and verified again.
+     * 
+     * @param url
+     * @param signer
+     * @return
+     */
+    boolean isSameSource(String url, X509Certificate signer) {
+        return !restored && this.url.equals(url) && (this.signer == null ? signer == null : this.signer.equals(signer));
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    X509Certificate getSigner() {
+        return signer;
+    }
+
+    String getETag() {
+        return eTag;
+    }
+
+    String getLastModified() {
+        return lastModified;
+    }
+
+    String getDigest() {
+        return digest;
+    }
+
+    BigInteger getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * @return the parsed trusted list, only until its content is extracted
+     */
+    TrustStatusList getTsl() {
+        return tsl;
+    }
+
+    void setTsl(TrustStatusList tsl) {
+        this.tsl = tsl;
+    }
+
+    /**
+     * @return the pointers to the other trusted lists (for a LOTL)
+     */
+    List<PointerToOtherTSL> getPointers() {
+        return pointers;
+    }
+
+    void setPointers(List<PointerToOtherTSL> pointers) {
+        this.pointers = pointers;
+    }
+
+    /**
+     * @return the certificates of the trusted list (for a territory)
+     */
+    Map<X500Principal, List<CertificateAndContext>> getCertificates() {
+        return certificates;
+    }
+
+    void setCertificates(Map<X500Principal, List<CertificateAndContext>> certificates) {
+        this.certificates = certificates;
+    }
+
+    /**
+     * @return true if this trusted list was read from a snapshot instead of downloaded and verified
+     */
+    boolean isRestored() {
+        return restored;
+    }
+
+    void setRestored(boolean restored) {
+        this.restored = restored;
+    }
+
+}
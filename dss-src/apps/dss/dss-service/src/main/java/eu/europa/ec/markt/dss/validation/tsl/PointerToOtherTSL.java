@@ -17,30 +17,17 @@
  * You should have received a copy of the GNU Lesser General Public License along with
  * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package eu.europa.ec.markt.dss.validation.tsl;
 
-import eu.europa.ec.markt.tsl.jaxb.tsl.AnyType;
-import eu.europa.ec.markt.tsl.jaxb.tsl.DigitalIdentityListType;
-import eu.europa.ec.markt.tsl.jaxb.tsl.DigitalIdentityType;
-import eu.europa.ec.markt.tsl.jaxb.tsl.OtherTSLPointerType;
-
 import java.io.ByteArrayInputStream;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.bind.JAXBElement;
-
-import org.w3c.dom.Element;
-
 /**
- * Wrapper for the tag OtherTSLPointer
+ * Content of the tag OtherTSLPointer
  *
  * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
  */
@@ -49,24 +36,28 @@ class PointerToOtherTSL {
 
     private static final Logger LOG = Logger.getLogger(PointerToOtherTSL.class.getName());
 
-    private OtherTSLPointerType pointer;
+    private final String tslLocation;
+
+    private final String mimeType;
+
+    private final String territory;
+
+    private final byte[] x509Certificate;
 
     /**
      * 
      * The default constructor for PointerToOtherTSL.
      * 
-     * @param pointer
+     * @param tslLocation
+     * @param mimeType
+     * @param territory
+     * @param x509Certificate the encoded certificate of the first digital identity, or null
      */
-    public PointerToOtherTSL(OtherTSLPointerType pointer) {
-        this.pointer = pointer;
-    }
-
-    private List<DigitalIdentityListType> getServiceDigitalIdentities() {
-        if (pointer.getServiceDigitalIdentities() != null) {
-            return pointer.getServiceDigitalIdentities().getServiceDigitalIdentity();
-        } else {
-            return null;
-        }
+    public PointerToOtherTSL(String tslLocation, String mimeType, String territory, byte[] x509Certificate) {
+        this.tslLocation = tslLocation;
+        this.mimeType = mimeType;
+        this.territory = territory;
+        this.x509Certificate = x509Certificate;
     }
 
     /**
@@ -74,36 +65,7 @@ class PointerToOtherTSL {
      * @return
      */
     public String getTslLocation() {
-        return pointer.getTSLLocation();
-    }
-
-    private Map<String, String> getProperties() {
-        Map<String, String> properties = new HashMap<String, String>();
-
-        for (Object info : pointer.getAdditionalInformation().getTextualInformationOrOtherInformation()) {
-            if (info instanceof AnyType) {
-                AnyType any = (AnyType) info;
-                for (Object content : any.getContent()) {
-                    if (content instanceof String) {
-                        if (((String) content).trim().length() > 0) {
-                            throw new RuntimeException("Unexpected String : " + content);
-                        }
-                    } else if (content instanceof JAXBElement) {
-                        @SuppressWarnings("rawtypes")
-                        JAXBElement el = (JAXBElement) content;
-                        properties.put(el.getName().toString(), el.getValue().toString());
-                    } else if (content instanceof Element) {
-                        Element el = (Element) content;
-                        properties.put("{" + el.getNamespaceURI() + "}" + el.getLocalName(), el.getTextContent());
-                    } else {
-                        throw new RuntimeException("Unknown element : " + content.getClass());
-                    }
-                }
-            } else {
-                throw new RuntimeException("Unknown type : " + info.getClass());
-            }
-        }
-        return properties;
+        return tslLocation;
     }
 
     /**
@@ -111,7 +73,7 @@ class PointerToOtherTSL {
      * @return
      */
     public String getMimeType() {
-        return getProperties().get("{http://uri.etsi.org/02231/v2/additionaltypes#}MimeType");
+        return mimeType;
     }
 
     /**
@@ -119,7 +81,7 @@ class PointerToOtherTSL {
      * @return
      */
     public String getTerritory() {
-        return getProperties().get("{http://uri.etsi.org/02231/v2#}SchemeTerritory");
+        return territory;
     }
 
     /**
@@ -128,36 +90,15 @@ class PointerToOtherTSL {
      */
     public X509Certificate getDigitalId() throws CertificateException {
 
-        if (getServiceDigitalIdentities() == null) {
-            return null;
-        }
-
-        if (getServiceDigitalIdentities().size() > 1) {
-            LOG.warning("More than one digital-id, this is not supported yet");
-        }
-
-        DigitalIdentityType x509id = getServiceDigitalIdentities().get(0).getDigitalId().get(0);
-        for(DigitalIdentityType t : getServiceDigitalIdentities().get(0).getDigitalId()) {
-            if(t.getX509Certificate() != null) {
-                x509id = t;
-                break;
-            }
-        }
-        
-        if(x509id == null) {
-            return null;
-        }
-
-        if (x509id.getX509Certificate() == null) {
+        if (x509Certificate == null) {
             LOG.log(Level.WARNING, "X509 Certificate entry empty");
-        } else {
-            CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
-            X509Certificate cert = (X509Certificate) certFactory.generateCertificate(new ByteArrayInputStream(x509id
-                    .getX509Certificate()));
-            LOG.log(Level.INFO, "Territory {0} signed by {1}", new Object[] { getTerritory(), cert.getSubjectDN() });
-            return cert;
+            return null;
         }
 
-        return null;
+        CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
+        X509Certificate cert = (X509Certificate) certFactory.generateCertificate(new ByteArrayInputStream(
+                x509Certificate));
+        LOG.log(Level.INFO, "Territory {0} signed by {1}", new Object[] { getTerritory(), cert.getSubjectDN() });
+        return cert;
     }
 }
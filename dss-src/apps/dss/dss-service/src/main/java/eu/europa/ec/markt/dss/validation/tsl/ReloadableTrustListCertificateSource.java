@@ -20,14 +20,21 @@
 
 package eu.europa.ec.markt.dss.validation.tsl;
 
-import eu.europa.ec.markt.dss.CannotFetchDataException;
 import eu.europa.ec.markt.dss.validation.certificate.CertificateAndContext;
-import eu.europa.ec.markt.dss.validation.certificate.CertificateSource;
 import eu.europa.ec.markt.dss.validation.https.HTTPDataLoader;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,16 +45,28 @@ import org.springframework.core.io.Resource;
 
 /**
  * This CertificateSource reload the list of TrustedList when the method refresh is called.
+ * <p>
+ * Each reload publishes a new immutable TrustAnchorSnapshot with a greater version. Only one reload runs at a time: a
+ * call to refresh while a reload is running does nothing.
+ * <p>
+ * When a snapshot file is defined, the last loaded TrustedList are saved in it after each reload, and the first call to
+ * refresh reads it before starting the reload, so the certificates are available immediately after a restart. They are
+ * marked stale until the reload succeeds. The snapshot is authenticated with an HMAC, and the reload downloads and
+ * verifies all its territories again.
  * 
  * 
  * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
  */
 
-public class ReloadableTrustListCertificateSource implements CertificateSource {
+public class ReloadableTrustListCertificateSource implements TrustAnchorSource {
 
     private static final Logger LOG = Logger.getLogger(ReloadableTrustListCertificateSource.class.getName());
 
-    private TrustedListsCertificateSource currentSource;
+    private volatile TrustAnchorSnapshot snapshot;
+
+    private final AtomicLong lastVersion = new AtomicLong();
+
+    private final AtomicBoolean reloading = new AtomicBoolean();
 
     private HTTPDataLoader tslLoader;
 
@@ -57,6 +76,15 @@ public class ReloadableTrustListCertificateSource implements CertificateSource {
 
     private String lotlUrl;
 
+    private File snapshotFile;
+
+    private long maxAge = 0;
+
+    private int loadThreads = 8;
+
+    /* Loads the TSL of the territories for every reload; its threads stop when idle */
+    private ExecutorService loadExecutor;
+
     /**
      * @param tslLoader the tslLoader to set
      */
@@ -86,46 +114,194 @@ public class ReloadableTrustListCertificateSource implements CertificateSource {
     }
 
     /**
-     * Reload the TrustedList
+     * Set the file where the last loaded TrustedList are saved. Its HMAC key is kept next to it, in a file with the
+     * ".key" suffix. The directory must be accessible by the application only.
+     * 
+     * @param snapshotFile the snapshotFile to set
      */
-    private Thread reload;
+    public void setSnapshotFile(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
 
+    /**
+     * Set the age (in milliseconds) after which the loaded TrustedList are considered stale. 0 means they never become
+     * stale.
+     * 
+     * @param maxAge the maxAge to set
+     */
+    public void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Set the number of TSL loaded at the same time. Default is 8.
+     * 
+     * @param loadThreads the loadThreads to set
+     */
+    public void setLoadThreads(int loadThreads) {
+        this.loadThreads = loadThreads;
+    }
+
+    private synchronized ExecutorService getLoadExecutor() {
+        if (loadExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(loadThreads, loadThreads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+            loadExecutor = executor;
+        }
+        return loadExecutor;
+    }
+
+    @Override
+    public TrustAnchorSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    @Override
+    public boolean isStale() {
+        TrustAnchorSnapshot current = snapshot;
+        if (current == null || current.isRestored()) {
+            return true;
+        }
+        return maxAge > 0 && current.getAge(new Date()) > maxAge;
+    }
+
+    /**
+     * @return true while a reload of the TrustedList is running
+     */
+    public boolean isReloading() {
+        return reloading.get();
+    }
+
+    /**
+     * Start a reload of the TrustedList in the background, unless one is already running
+     */
     public synchronized void refresh() {
+        if (snapshot == null && snapshotFile != null) {
+            try {
+                TrustedListsCertificateSource restored = TrustedListSnapshot.read(snapshotFile);
+                if (restored != null) {
+                    publish(restored, new Date(snapshotFile.lastModified()), true);
+                }
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Cannot read the TSL snapshot " + snapshotFile, e);
+            }
+        }
+
+        if (!reloading.compareAndSet(false, true)) {
+            LOG.info("Reload of the Trusted List already running");
+            return;
+        }
         try {
-            reload = new Thread(new Runnable() {
+            Thread reload = new Thread(new Runnable() {
 
                 @Override
                 public void run() {
                     try {
-                        LOG.info("Reload Trusted List");
-                        TrustedListsCertificateSource newSource = new TrustedListsCertificateSource();
-                        newSource.setTslLoader(tslLoader);
-                        newSource.setCheckSignature(checkSignature);
-                        newSource.setLotlCertificate(lotlCertificate);
-                        newSource.setLotlUrl(lotlUrl);
-                        newSource.init();
-                        currentSource = newSource;
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        LOG.log(Level.SEVERE, "", e);
-                    } catch (ConfigurationException e) {
-                        e.printStackTrace();
-                        LOG.log(Level.SEVERE, "", e);
+                        reload();
+                    } finally {
+                        reloading.set(false);
                     }
                 }
-            });
+            }, "TSL reload");
+            reload.setDaemon(true);
             reload.start();
-        } catch (CannotFetchDataException e) {
-            e.printStackTrace();
+        } catch (RuntimeException e) {
+            reloading.set(false);
+            LOG.log(Level.SEVERE, "Cannot start the reload of the Trusted List", e);
+        }
+    }
+
+    private void reload() {
+        try {
+            LOG.info("Reload Trusted List");
+            TrustAnchorSnapshot current = snapshot;
+            TrustedListsCertificateSource currentSource = current == null ? null : getTrustedLists(current);
+            TrustedListsCertificateSource newSource = new TrustedListsCertificateSource();
+            newSource.setTslLoader(tslLoader);
+            newSource.setCheckSignature(checkSignature);
+            newSource.setLotlCertificate(lotlCertificate);
+            newSource.setLotlUrl(lotlUrl);
+            newSource.setExecutorService(getLoadExecutor());
+            /* Only the TSL that changed are loaded again, the others are shared with the current source */
+            newSource.init(currentSource);
+            if (newSource.getLoadedTerritories().isEmpty() && currentSource != null) {
+                LOG.severe("No TSL loaded, the current TrustedList are kept");
+                return;
+            }
+            TrustAnchorSnapshot published = publish(newSource, new Date(), false);
+            LOG.info("Trusted List version " + published.getVersion() + " published");
+            saveSnapshot(newSource);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "", e);
+        } catch (ConfigurationException e) {
+            LOG.log(Level.SEVERE, "", e);
+        } catch (RuntimeException e) {
             LOG.log(Level.SEVERE, "", e);
         }
     }
 
+    private TrustAnchorSnapshot publish(TrustedListsCertificateSource source, Date loadingTime, boolean restored) {
+        TrustAnchorSnapshot published = new TrustAnchorSnapshot(lastVersion.incrementAndGet(), loadingTime, restored,
+                source);
+        snapshot = published;
+        return published;
+    }
+
+    private static TrustedListsCertificateSource getTrustedLists(TrustAnchorSnapshot snapshot) {
+        return (TrustedListsCertificateSource) snapshot.getCertificateSource();
+    }
+
+    private void saveSnapshot(TrustedListsCertificateSource source) {
+        if (snapshotFile != null) {
+            try {
+                TrustedListSnapshot.write(snapshotFile, source);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Cannot write the TSL snapshot " + snapshotFile, e);
+            }
+        }
+    }
+
+    /**
+     * @return the certificates of the last loaded TrustedList, or an empty map if none is loaded yet
+     */
+    public Map<X500Principal, List<CertificateAndContext>> getCertificates() {
+        TrustAnchorSnapshot current = snapshot;
+        if (current == null || getTrustedLists(current).getCertificates() == null) {
+            return Collections.emptyMap();
+        }
+        return getTrustedLists(current).getCertificates();
+    }
+
     @Override
     public List<CertificateAndContext> getCertificateBySubjectName(X500Principal subjectName) {
-        if (currentSource == null) {
+        TrustAnchorSnapshot current = snapshot;
+        if (current == null) {
+            return Collections.emptyList();
+        }
+        return getTrustedLists(current).getCertificateBySubjectName(subjectName);
+    }
+
+    @Override
+    public List<CertificateAndContext> getCertificateBySubjectKeyIdentifier(byte[] subjectKeyIdentifier) {
+        TrustAnchorSnapshot current = snapshot;
+        if (current == null) {
+            return Collections.emptyList();
+        }
+        return getTrustedLists(current).getCertificateBySubjectKeyIdentifier(subjectKeyIdentifier);
+    }
+
+    @Override
+    public List<CertificateAndContext> getCertificateByFingerprint(byte[] fingerprint) {
+        TrustAnchorSnapshot current = snapshot;
+        if (current == null) {
             return Collections.emptyList();
         }
-        return currentSource.getCertificateBySubjectName(subjectName);
+        return getTrustedLists(current).getCertificateByFingerprint(fingerprint);
     }
 }
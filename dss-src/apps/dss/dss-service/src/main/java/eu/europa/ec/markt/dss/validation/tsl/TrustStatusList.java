@@ -17,19 +17,22 @@
  * You should have received a copy of the GNU Lesser General Public License along with
  * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package eu.europa.ec.markt.dss.validation.tsl;
 
-import eu.europa.ec.markt.tsl.jaxb.tsl.OtherTSLPointerType;
-import eu.europa.ec.markt.tsl.jaxb.tsl.TSPType;
-import eu.europa.ec.markt.tsl.jaxb.tsl.TrustStatusListType;
+import eu.europa.ec.markt.dss.validation.certificate.CertificateAndContext;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
 
 /**
  * 
- * Represents a Trusted List
+ * Represents a Trusted List, reduced to what is needed to trust its services: the pointers to the other TSL and the
+ * certificates of the services with their context.
  * 
  *
  * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
@@ -37,20 +40,15 @@ import java.util.List;
 
 class TrustStatusList {
 
-    private TrustStatusListType trustStatusListType;
-    
+    private BigInteger sequenceNumber;
+
+    private final List<PointerToOtherTSL> otherTSLPointers = new ArrayList<PointerToOtherTSL>();
+
+    private final Map<X500Principal, List<CertificateAndContext>> certificates =
+            new HashMap<X500Principal, List<CertificateAndContext>>();
+
     private boolean wellSigned = false;
 
-    /**
-     * 
-     * The default constructor for TrustStatusList.
-     * 
-     * @param trustStatusListType
-     */
-    public TrustStatusList(TrustStatusListType trustStatusListType) {
-        this.trustStatusListType = trustStatusListType;
-    }
-    
     /**
      * @param wellSigned the wellSigned to set
      */
@@ -66,19 +64,17 @@ class TrustStatusList {
     }
 
     /**
-     * Return the list of provider in this trusted list
-     * 
-     * @return
+     * @return the TSLSequenceNumber, incremented by the scheme operator at each new version of the list
+     */
+    public BigInteger getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * @param sequenceNumber the sequenceNumber to set
      */
-    public List<TrustServiceProvider> getTrustServicesProvider() {
-        List<TrustServiceProvider> list = new ArrayList<TrustServiceProvider>();
-        if (trustStatusListType.getTrustServiceProviderList() != null
-                && trustStatusListType.getTrustServiceProviderList().getTrustServiceProvider() != null) {
-            for (TSPType tsp : trustStatusListType.getTrustServiceProviderList().getTrustServiceProvider()) {
-                list.add(new TrustServiceProvider(tsp));
-            }
-        }
-        return list;
+    void setSequenceNumber(BigInteger sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
     }
 
     /**
@@ -87,18 +83,16 @@ class TrustStatusList {
      * @return
      */
     public List<PointerToOtherTSL> getOtherTSLPointers() {
-        List<PointerToOtherTSL> list = new ArrayList<PointerToOtherTSL>();
+        return otherTSLPointers;
+    }
 
-        if (trustStatusListType.getSchemeInformation().getPointersToOtherTSL() != null) {
-            for (OtherTSLPointerType p : trustStatusListType.getSchemeInformation().getPointersToOtherTSL()
-                    .getOtherTSLPointer()) {
-                PointerToOtherTSL pointer = new PointerToOtherTSL(p);
-                if (pointer.getMimeType().equals("application/vnd.etsi.tsl+xml")) {
-                    list.add(pointer);
-                }
-            }
-        }
-        return list;
+    /**
+     * Return the certificates of all the services (current and history) of all the providers, by subject
+     * 
+     * @return
+     */
+    public Map<X500Principal, List<CertificateAndContext>> getCertificates() {
+        return certificates;
     }
 
 }
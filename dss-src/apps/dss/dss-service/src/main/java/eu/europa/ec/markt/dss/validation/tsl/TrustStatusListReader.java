@@ -0,0 +1,709 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.markt.dss.validation.tsl;
+
+import eu.europa.ec.markt.dss.NotETSICompliantException;
+import eu.europa.ec.markt.dss.NotETSICompliantException.MSG;
+import eu.europa.ec.markt.dss.validation.certificate.CertificateAndContext;
+import eu.europa.ec.markt.dss.validation.certificate.CertificateSourceType;
+import eu.europa.ec.markt.dss.validation.tsl.CompositeCriteriaList.Composition;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.security.auth.x500.X500Principal;
+import javax.xml.XMLConstants;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Read a Trusted List in one pass with a StAX parser, keeping only what is needed to trust its services: the sequence
+ * number, the pointers to the other TSL and, for each service entry (current and history), its certificates with their
+ * ServiceInfo. Nothing else of the document is kept in memory.
+ * 
+ * 
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+class TrustStatusListReader {
+
+    private static final Logger LOG = Logger.getLogger(TrustStatusListReader.class.getName());
+
+    private static final String TSL = "http://uri.etsi.org/02231/v2#";
+
+    private static final String TSLX = "http://uri.etsi.org/02231/v2/additionaltypes#";
+
+    private static final String ECC = "http://uri.etsi.org/TrstSvc/SvcInfoExt/eSigDir-1999-93-EC-TrustedList/#";
+
+    private static final String XADES = "http://uri.etsi.org/01903/v1.3.2#";
+
+    private static final String TSL_MIME_TYPE = "application/vnd.etsi.tsl+xml";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final boolean wellSigned;
+
+    private final CertificateFactory certificateFactory;
+
+    private final DatatypeFactory datatypeFactory;
+
+    private XMLStreamReader reader;
+
+    /**
+     * 
+     * The default constructor for TrustStatusListReader.
+     * 
+     * @param wellSigned true if the services of the list must be flagged as coming from a well signed list
+     */
+    TrustStatusListReader(boolean wellSigned) {
+        this.wellSigned = wellSigned;
+        try {
+            certificateFactory = CertificateFactory.getInstance("X509");
+            datatypeFactory = DatatypeFactory.newInstance();
+        } catch (CertificateException e) {
+            throw new RuntimeException("Platform don't support X509 certificate", e);
+        } catch (DatatypeConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Read the Trusted List. The input is not closed.
+     * 
+     * @param input
+     * @return
+     */
+    TrustStatusList read(InputStream input) {
+        TrustStatusList tsl = new TrustStatusList();
+        try {
+            synchronized (INPUT_FACTORY) {
+                reader = INPUT_FACTORY.createXMLStreamReader(input);
+            }
+            try {
+                reader.nextTag();
+                if (!isElement(TSL, "TrustServiceStatusList")) {
+                    throw new NotETSICompliantException(MSG.NOT_A_VALID_XML);
+                }
+                while (nextChild()) {
+                    if (isElement(TSL, "SchemeInformation")) {
+                        readSchemeInformation(tsl);
+                    } else if (isElement(TSL, "TrustServiceProviderList")) {
+                        while (nextChild()) {
+                            if (isElement(TSL, "TrustServiceProvider")) {
+                                readTrustServiceProvider(tsl);
+                            } else {
+                                skipElement();
+                            }
+                        }
+                    } else {
+                        skipElement();
+                    }
+                }
+            } finally {
+                reader.close();
+                reader = null;
+            }
+        } catch (XMLStreamException e) {
+            LOG.log(Level.SEVERE, "Error in TSL parsing " + e.getMessage());
+            throw new NotETSICompliantException(MSG.NOT_A_VALID_XML);
+        }
+        return tsl;
+    }
+
+    private void readSchemeInformation(TrustStatusList tsl) throws XMLStreamException {
+        while (nextChild()) {
+            if (isElement(TSL, "TSLSequenceNumber")) {
+                try {
+                    tsl.setSequenceNumber(new BigInteger(reader.getElementText().trim()));
+                } catch (NumberFormatException e) {
+                    throw new NotETSICompliantException(MSG.NOT_A_VALID_XML);
+                }
+            } else if (isElement(TSL, "PointersToOtherTSL")) {
+                while (nextChild()) {
+                    if (isElement(TSL, "OtherTSLPointer")) {
+                        PointerToOtherTSL pointer = readOtherTSLPointer();
+                        if (TSL_MIME_TYPE.equals(pointer.getMimeType())) {
+                            tsl.getOtherTSLPointers().add(pointer);
+                        }
+                    } else {
+                        skipElement();
+                    }
+                }
+            } else {
+                skipElement();
+            }
+        }
+    }
+
+    private PointerToOtherTSL readOtherTSLPointer() throws XMLStreamException {
+        String location = null;
+        String mimeType = null;
+        String territory = null;
+        byte[] certificate = null;
+        while (nextChild()) {
+            if (isElement(TSL, "ServiceDigitalIdentities")) {
+                boolean first = true;
+                while (nextChild()) {
+                    if (isElement(TSL, "ServiceDigitalIdentity") && first) {
+                        certificate = readFirstX509Certificate();
+                        first = false;
+                    } else {
+                        if (isElement(TSL, "ServiceDigitalIdentity")) {
+                            LOG.warning("More than one digital-id, this is not supported yet");
+                        }
+                        skipElement();
+                    }
+                }
+            } else if (isElement(TSL, "TSLLocation")) {
+                location = reader.getElementText().trim();
+            } else if (isElement(TSL, "AdditionalInformation")) {
+                while (nextChild()) {
+                    if (isElement(TSL, "OtherInformation")) {
+                        while (nextChild()) {
+                            if (isElement(TSL, "SchemeTerritory")) {
+                                territory = reader.getElementText().trim();
+                            } else if (isElement(TSLX, "MimeType")) {
+                                mimeType = reader.getElementText().trim();
+                            } else {
+                                skipElement();
+                            }
+                        }
+                    } else {
+                        skipElement();
+                    }
+                }
+            } else {
+                skipElement();
+            }
+        }
+        return new PointerToOtherTSL(location, mimeType, territory, certificate);
+    }
+
+    /**
+     * Read a ServiceDigitalIdentity and return the first X509Certificate of its DigitalId
+     */
+    private byte[] readFirstX509Certificate() throws XMLStreamException {
+        byte[] certificate = null;
+        while (nextChild()) {
+            if (isElement(TSL, "DigitalId")) {
+                while (nextChild()) {
+                    if (isElement(TSL, "X509Certificate") && certificate == null) {
+                        certificate = Base64.decodeBase64(reader.getElementText());
+                    } else {
+                        skipElement();
+                    }
+                }
+            } else {
+                skipElement();
+            }
+        }
+        return certificate;
+    }
+
+    private void readTrustServiceProvider(TrustStatusList tsl) throws XMLStreamException {
+        Provider provider = new Provider();
+        while (nextChild()) {
+            if (isElement(TSL, "TSPInformation")) {
+                readTSPInformation(provider);
+            } else if (isElement(TSL, "TSPServices")) {
+                while (nextChild()) {
+                    if (isElement(TSL, "TSPService")) {
+                        readTSPService(tsl, provider);
+                    } else {
+                        skipElement();
+                    }
+                }
+            } else {
+                skipElement();
+            }
+        }
+    }
+
+    private void readTSPInformation(Provider provider) throws XMLStreamException {
+        while (nextChild()) {
+            if (isElement(TSL, "TSPName")) {
+                provider.name = readEnglishOrFirstName();
+            } else if (isElement(TSL, "TSPTradeName")) {
+                provider.tradeName = readEnglishOrFirstName();
+            } else if (isElement(TSL, "TSPAddress")) {
+                while (nextChild()) {
+                    if (isElement(TSL, "PostalAddresses")) {
+                        provider.postalAddress = readPostalAddresses();
+                    } else if (isElement(TSL, "ElectronicAddress")) {
+                        while (nextChild()) {
+                            if (isElement(TSL, "URI") && provider.electronicAddress == null) {
+                                provider.electronicAddress = reader.getElementText();
+                            } else {
+                                skipElement();
+                            }
+                        }
+                    } else {
+                        skipElement();
+                    }
+                }
+            } else {
+                skipElement();
+            }
+        }
+    }
+
+    private String readPostalAddresses() throws XMLStreamException {
+        String first = null;
+        String english = null;
+        while (nextChild()) {
+            if (isElement(TSL, "PostalAddress")) {
+                boolean isEnglish = "en".equalsIgnoreCase(reader.getAttributeValue(XMLConstants.XML_NS_URI, "lang"));
+                String street = null;
+                String locality = null;
+                String stateOrProvince = null;
+                String postalCode = null;
+                String countryName = null;
+                while (nextChild()) {
+                    if (isElement(TSL, "StreetAddress")) {
+                        street = reader.getElementText();
+                    } else if (isElement(TSL, "Locality")) {
+                        locality = reader.getElementText();
+                    } else if (isElement(TSL, "StateOrProvince")) {
+                        stateOrProvince = reader.getElementText();
+                    } else if (isElement(TSL, "PostalCode")) {
+                        postalCode = reader.getElementText();
+                    } else if (isElement(TSL, "CountryName")) {
+                        countryName = reader.getElementText();
+                    } else {
+                        skipElement();
+                    }
+                }
+                String address = street + ", " + postalCode + " " + locality + ", " + stateOrProvince + countryName;
+                if (first == null) {
+                    first = address;
+                }
+                if (isEnglish && english == null) {
+                    english = address;
+                }
+            } else {
+                skipElement();
+            }
+        }
+        return english != null ? english : first;
+    }
+
+    /**
+     * Read a list of Name in several languages, and return the english name or the first name
+     */
+    private String readEnglishOrFirstName() throws XMLStreamException {
+        String first = null;
+        String english = null;
+        while (nextChild()) {
+            if (isElement(TSL, "Name")) {
+                boolean isEnglish = "en".equalsIgnoreCase(reader.getAttributeValue(XMLConstants.XML_NS_URI, "lang"));
+                String name = reader.getElementText();
+                if (first == null) {
+                    first = name;
+                }
+                if (isEnglish && english == null) {
+                    english = name;
+                }
+            } else {
+                skipElement();
+            }
+        }
+        return english != null ? english : first;
+    }
+
+    /**
+     * Read a service with its history, and add the certificates of its current digital identity with the context of
+     * each entry.
+     */
+    private void readTSPService(TrustStatusList tsl, Provider provider) throws XMLStreamException {
+        ServiceEntry current = null;
+        List<ServiceEntry> entries = new ArrayList<ServiceEntry>();
+        while (nextChild()) {
+            if (isElement(TSL, "ServiceInformation")) {
+                current = readServiceEntry(true);
+                entries.add(current);
+            } else if (isElement(TSL, "ServiceHistory")) {
+                while (nextChild()) {
+                    if (isElement(TSL, "ServiceHistoryInstance")) {
+                        entries.add(readServiceEntry(false));
+                    } else {
+                        skipElement();
+                    }
+                }
+            } else {
+                skipElement();
+            }
+        }
+        if (current == null) {
+            throw new NotETSICompliantException(MSG.NOT_A_VALID_XML);
+        }
+
+        /* The Services must be sorted in descending order CROBIES 2.2.15 */
+        Collections.sort(entries, new Comparator<ServiceEntry>() {
+            @Override
+            public int compare(ServiceEntry o1, ServiceEntry o2) {
+                if (o1.statusStartDate == null || o2.statusStartDate == null) {
+                    return o1.statusStartDate == null ? (o2.statusStartDate == null ? 0 : 1) : -1;
+                }
+                return -o1.statusStartDate.compareTo(o2.statusStartDate);
+            }
+        });
+
+        /* An historical entry ends when the following one starts */
+        ServiceEntry previous = current;
+        for (ServiceEntry entry : entries) {
+            if (entry != current) {
+                entry.statusEndDate = previous.statusStartDate;
+            }
+            previous = entry;
+        }
+
+        for (ServiceEntry entry : entries) {
+            if (entry.notCompliant != null) {
+                LOG.log(Level.SEVERE, "The entry for " + entry.serviceName + " don't respect ESTI specification "
+                        + entry.notCompliant.getMessage());
+                continue;
+            }
+            for (X509Certificate cert : current.certificates) {
+                addCertificate(tsl.getCertificates(), cert, entry, current, provider);
+            }
+        }
+    }
+
+    /**
+     * Add a service entry (current or history) to the list of CertificateAndContext
+     */
+    private void addCertificate(Map<X500Principal, List<CertificateAndContext>> target, X509Certificate cert,
+            ServiceEntry entry, ServiceEntry current, Provider provider) {
+        List<CertificateAndContext> list = target.get(cert.getSubjectX500Principal());
+        if (list == null) {
+            list = new ArrayList<CertificateAndContext>();
+            target.put(cert.getSubjectX500Principal(), list);
+        }
+        CertificateAndContext ctx = new CertificateAndContext();
+        ctx.setCertificate(cert);
+        ctx.setCertificateSource(CertificateSourceType.TRUSTED_LIST);
+
+        ServiceInfo info = new ServiceInfo();
+        for (Map.Entry<String, Condition> q : entry.qualifiers.entrySet()) {
+            info.addQualifier(q.getKey(), q.getValue());
+        }
+        info.setCurrentStatus(current.status);
+        info.setCurrentStatusStartingDate(current.statusStartDate);
+        info.setServiceName(entry.serviceName);
+        info.setStatusAtReferenceTime(entry.status);
+        info.setStatusStartingDateAtReferenceTime(entry.statusStartDate);
+        info.setStatusEndingDateAtReferenceTime(entry.statusEndDate);
+        info.setTspElectronicAddress(provider.electronicAddress);
+        info.setTspName(provider.name);
+        info.setTspPostalAddress(provider.postalAddress);
+        info.setTspTradeName(provider.tradeName);
+        info.setType(entry.type);
+        info.setTlWellSigned(wellSigned);
+        ctx.setContext(info);
+        list.add(ctx);
+    }
+
+    /**
+     * Read a ServiceInformation or a ServiceHistoryInstance. The certificates are kept only for the current entry: the
+     * X509Certificate is saved on the current instance only.
+     */
+    private ServiceEntry readServiceEntry(boolean current) throws XMLStreamException {
+        ServiceEntry entry = new ServiceEntry();
+        while (nextChild()) {
+            if (isElement(TSL, "ServiceTypeIdentifier")) {
+                entry.type = reader.getElementText().trim();
+            } else if (isElement(TSL, "ServiceName")) {
+                entry.serviceName = readEnglishOrFirstName();
+            } else if (isElement(TSL, "ServiceDigitalIdentity") && current) {
+                readCertificates(entry.certificates);
+            } else if (isElement(TSL, "ServiceStatus")) {
+                entry.status = reader.getElementText().trim();
+            } else if (isElement(TSL, "StatusStartingTime")) {
+                entry.statusStartDate = readDate();
+            } else if (isElement(TSL, "ServiceInformationExtensions")) {
+                while (nextChild()) {
+                    if (isElement(TSL, "Extension")) {
+                        readExtension(entry);
+                    } else {
+                        skipElement();
+                    }
+                }
+            } else {
+                skipElement();
+            }
+        }
+        return entry;
+    }
+
+    private void readCertificates(List<X509Certificate> certificates) throws XMLStreamException {
+        while (nextChild()) {
+            if (isElement(TSL, "DigitalId")) {
+                while (nextChild()) {
+                    if (isElement(TSL, "X509Certificate")) {
+                        byte[] encoded = Base64.decodeBase64(reader.getElementText());
+                        try {
+                            certificates.add((X509Certificate) certificateFactory
+                                    .generateCertificate(new ByteArrayInputStream(encoded)));
+                        } catch (CertificateException ex) {
+                            LOG.log(Level.WARNING, ex.getMessage());
+                        }
+                    } else {
+                        skipElement();
+                    }
+                }
+            } else {
+                skipElement();
+            }
+        }
+    }
+
+    private Date readDate() throws XMLStreamException {
+        String text = reader.getElementText().trim();
+        try {
+            return datatypeFactory.newXMLGregorianCalendar(text).toGregorianCalendar().getTime();
+        } catch (IllegalArgumentException e) {
+            LOG.severe("Invalid date in TSL: " + text);
+            throw new NotETSICompliantException(MSG.NOT_A_VALID_XML);
+        }
+    }
+
+    /**
+     * Read an Extension of a service entry. Only the Qualifications are used, an unknown extension makes the entry not
+     * compliant.
+     */
+    private void readExtension(ServiceEntry entry) throws XMLStreamException {
+        while (nextChild()) {
+            if (isElement(ECC, "Qualifications")) {
+                if (entry.qualificationsCount++ == 1) {
+                    LOG.warning("There is more than one QualificationsType in the service");
+                }
+                while (nextChild()) {
+                    if (isElement(ECC, "QualificationElement")) {
+                        readQualificationElement(entry);
+                    } else {
+                        skipElement();
+                    }
+                }
+            } else if (TSL.equals(reader.getNamespaceURI()) || TSLX.equals(reader.getNamespaceURI())) {
+                /* TakenOverBy, AdditionalServiceInformation, ExpiredCertsRevocationInfo */
+                skipElement();
+            } else {
+                if (entry.notCompliant == null) {
+                    entry.notCompliant = new NotETSICompliantException(MSG.UNRECOGNIZED_TAG);
+                }
+                skipElement();
+            }
+        }
+    }
+
+    private void readQualificationElement(ServiceEntry entry) throws XMLStreamException {
+        List<String> qualifiers = new ArrayList<String>();
+        Condition composite = null;
+        while (nextChild()) {
+            if (isElement(ECC, "Qualifiers")) {
+                while (nextChild()) {
+                    if (isElement(ECC, "Qualifier")) {
+                        qualifiers.add(reader.getAttributeValue(null, "uri"));
+                    }
+                    skipElement();
+                }
+            } else if (isElement(ECC, "CriteriaList")) {
+                composite = readCriteriaList(entry);
+            } else {
+                skipElement();
+            }
+        }
+        if (composite != null) {
+            for (String qualifier : qualifiers) {
+                entry.qualifiers.put(qualifier, composite);
+            }
+        }
+    }
+
+    /**
+     * @return the condition of the CriteriaList, or null if it is empty
+     */
+    private Condition readCriteriaList(ServiceEntry entry) throws XMLStreamException {
+        String assertValue = reader.getAttributeValue(null, "assert");
+        if (assertValue == null) {
+            /* Default value of the attribute in the schema */
+            assertValue = "all";
+        }
+        boolean empty = true;
+        List<Condition> conditions = new ArrayList<Condition>();
+        while (nextChild()) {
+            if (isElement(ECC, "PolicySet")) {
+                empty = false;
+                while (nextChild()) {
+                    if (isElement(ECC, "PolicyIdentifier")) {
+                        readPolicyIdentifier(conditions);
+                    } else {
+                        skipElement();
+                    }
+                }
+            } else if (isElement(ECC, "KeyUsage")) {
+                empty = false;
+                while (nextChild()) {
+                    if (isElement(ECC, "KeyUsageBit")) {
+                        conditions.add(new KeyUsageCondition(reader.getAttributeValue(null, "name")));
+                    }
+                    skipElement();
+                }
+            } else {
+                if (isElement(ECC, "CriteriaList")) {
+                    LOG.severe("No support for nested CriteriaList");
+                }
+                skipElement();
+            }
+        }
+
+        if (empty) {
+            LOG.fine("CriteriaList for service is empty, we skip the QualificationElement");
+            return null;
+        }
+        if (!"all".equals(assertValue) && !"atLeastOne".equals(assertValue) && !"none".equals(assertValue)) {
+            if (entry.notCompliant == null) {
+                entry.notCompliant = new NotETSICompliantException(MSG.UNSUPPORTED_ASSERT);
+            }
+            return null;
+        }
+        return new CompositeCriteriaList(Composition.valueOf(assertValue), conditions);
+    }
+
+    private void readPolicyIdentifier(List<Condition> conditions) throws XMLStreamException {
+        while (nextChild()) {
+            if (isElement(XADES, "Identifier")) {
+                String qualifier = reader.getAttributeValue(null, "Qualifier");
+                String id = reader.getElementText().trim();
+                if (qualifier != null && id.indexOf(':') >= 0) {
+                    id = id.substring(id.lastIndexOf(':') + 1);
+                }
+                conditions.add(new PolicyIdCondition(id));
+            } else {
+                skipElement();
+            }
+        }
+    }
+
+    private boolean isElement(String namespace, String localName) {
+        return localName.equals(reader.getLocalName()) && namespace.equals(reader.getNamespaceURI());
+    }
+
+    /**
+     * Move to the next child element of the current element.
+     * 
+     * @return false when the end of the current element is reached
+     */
+    private boolean nextChild() throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skip the current element and all its content
+     */
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * The information of a TrustServiceProvider used in the context of its services
+     */
+    private static class Provider {
+
+        private String name;
+
+        private String tradeName;
+
+        private String postalAddress;
+
+        private String electronicAddress;
+
+    }
+
+    /**
+     * A service entry, current or historical
+     */
+    private static class ServiceEntry {
+
+        private String type;
+
+        private String serviceName;
+
+        private String status;
+
+        private Date statusStartDate;
+
+        private Date statusEndDate;
+
+        private final List<X509Certificate> certificates = new ArrayList<X509Certificate>();
+
+        private final Map<String, Condition> qualifiers = new LinkedHashMap<String, Condition>();
+
+        private int qualificationsCount;
+
+        private NotETSICompliantException notCompliant;
+
+    }
+
+}
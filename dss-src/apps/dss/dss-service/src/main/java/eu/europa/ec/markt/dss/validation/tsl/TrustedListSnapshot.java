@@ -0,0 +1,540 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.markt.dss.validation.tsl;
+
+import eu.europa.ec.markt.dss.validation.certificate.CertificateAndContext;
+import eu.europa.ec.markt.dss.validation.certificate.CertificateSourceType;
+import eu.europa.ec.markt.dss.validation.tsl.CompositeCriteriaList.Composition;
+import eu.europa.ec.markt.dss.validation.tsl.KeyUsageCondition.KeyUsageBit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * 
+ * Binary snapshot of the trusted lists loaded by a TrustedListsCertificateSource, so the trust anchors are available
+ * immediately after a restart. For each territory, the snapshot contains the URL of its TSL, and the DER encoding and
+ * the ServiceInfo fields of its certificates. No Java serialization is used.
+ * <p>
+ * The snapshot ends with an HMAC-SHA256 of its content, computed with a random key kept in a separate file readable by
+ * the owner only. A snapshot whose HMAC doesn't match is rejected. The territories read from a snapshot are marked
+ * restored: the next refresh downloads and verifies them again, it never reuses them as unchanged.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+class TrustedListSnapshot {
+
+    private static final Logger LOG = Logger.getLogger(TrustedListSnapshot.class.getName());
+
+    private static final int MAGIC = 0x44535354;
+
+    private static final int FORMAT_VERSION = 3;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final int KEY_LENGTH = 32;
+
+    private static final int MAC_LENGTH = 32;
+
+    /* A key file shorter than the key is read again, in case it is still being written by an older version */
+    private static final int KEY_READ_ATTEMPTS = 5;
+
+    private static final long KEY_READ_DELAY = 100;
+
+    /* Tags of the conditions of the qualifiers */
+    private static final int NO_CONDITION = 0;
+
+    private static final int POLICY_ID = 1;
+
+    private static final int QC_STATEMENT = 2;
+
+    private static final int KEY_USAGE = 3;
+
+    private static final int COMPOSITE = 4;
+
+    private TrustedListSnapshot() {
+    }
+
+    /**
+     * Write the territories of the source in the file. The file is replaced atomically, and readable by the owner only.
+     * 
+     * @param file
+     * @param source
+     * @throws IOException
+     */
+    static void write(File file, TrustedListsCertificateSource source) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory()) {
+            if (!directory.mkdirs()) {
+                throw new IOException("Cannot create the directory of " + file);
+            }
+            restrictToOwner(directory, true);
+        }
+        byte[] key = getKey(getKeyFile(file));
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(content);
+        try {
+            Map<String, LoadedTSL> territories = source.getLoadedTerritories();
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(System.currentTimeMillis());
+            output.writeInt(territories.size());
+            for (Map.Entry<String, LoadedTSL> e : territories.entrySet()) {
+                writeTerritory(output, e.getKey(), e.getValue());
+            }
+            output.flush();
+        } catch (CertificateException e) {
+            throw new IOException("Cannot encode the TSL snapshot", e);
+        }
+        byte[] data = content.toByteArray();
+        Mac mac = newMac(key);
+        mac.update(data);
+
+        File temp = File.createTempFile("tsl", ".tmp", directory);
+        try {
+            restrictToOwner(temp, false);
+            OutputStream stream = new FileOutputStream(temp);
+            try {
+                stream.write(data);
+                stream.write(mac.doFinal());
+            } finally {
+                stream.close();
+            }
+            if (!temp.renameTo(file)) {
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Cannot write the TSL snapshot " + file);
+                }
+            }
+        } finally {
+            if (temp.exists()) {
+                temp.delete();
+            }
+        }
+    }
+
+    private static void writeTerritory(DataOutputStream output, String territory, LoadedTSL loaded)
+            throws IOException, CertificateException {
+        writeUTF8(output, territory);
+        writeUTF8(output, loaded.getUrl());
+
+        List<CertificateAndContext> all = new ArrayList<CertificateAndContext>();
+        for (List<CertificateAndContext> list : loaded.getCertificates().values()) {
+            all.addAll(list);
+        }
+        output.writeInt(all.size());
+        for (CertificateAndContext ctx : all) {
+            writeBytes(output, ctx.getCertificate().getEncoded());
+            writeString(output, ctx.getCertificateSource() == null ? null : ctx.getCertificateSource().name());
+            if (ctx.getContext() != null && !(ctx.getContext() instanceof ServiceInfo)) {
+                throw new IOException("Unsupported context " + ctx.getContext().getClass());
+            }
+            writeServiceInfo(output, (ServiceInfo) ctx.getContext());
+        }
+    }
+
+    private static void writeServiceInfo(DataOutputStream output, ServiceInfo info) throws IOException {
+        output.writeBoolean(info != null);
+        if (info == null) {
+            return;
+        }
+        writeString(output, info.getType());
+        writeString(output, info.getTspName());
+        writeString(output, info.getTspTradeName());
+        writeString(output, info.getTspPostalAddress());
+        writeString(output, info.getTspElectronicAddress());
+        writeString(output, info.getServiceName());
+        writeString(output, info.getCurrentStatus());
+        writeDate(output, info.getCurrentStatusStartingDate());
+        writeString(output, info.getStatusAtReferenceTime());
+        writeDate(output, info.getStatusStartingDateAtReferenceTime());
+        writeDate(output, info.getStatusEndingDateAtReferenceTime());
+        output.writeBoolean(info.isTlWellSigned());
+        Map<String, Condition> qualifiers = info.getQualifiersAndConditions();
+        output.writeInt(qualifiers.size());
+        for (Map.Entry<String, Condition> q : qualifiers.entrySet()) {
+            writeUTF8(output, q.getKey());
+            writeCondition(output, q.getValue());
+        }
+    }
+
+    private static void writeCondition(DataOutputStream output, Condition condition) throws IOException {
+        if (condition == null) {
+            output.writeByte(NO_CONDITION);
+        } else if (condition instanceof PolicyIdCondition) {
+            output.writeByte(POLICY_ID);
+            writeString(output, ((PolicyIdCondition) condition).getPolicyOid());
+        } else if (condition instanceof QcStatementCondition) {
+            output.writeByte(QC_STATEMENT);
+            writeString(output, ((QcStatementCondition) condition).getQcStatementId());
+        } else if (condition instanceof KeyUsageCondition) {
+            output.writeByte(KEY_USAGE);
+            KeyUsageBit bit = ((KeyUsageCondition) condition).getBit();
+            writeString(output, bit == null ? null : bit.name());
+        } else if (condition instanceof CompositeCriteriaList) {
+            CompositeCriteriaList composite = (CompositeCriteriaList) condition;
+            output.writeByte(COMPOSITE);
+            writeString(output, composite.getComposition() == null ? null : composite.getComposition().name());
+            Condition[] conditions = composite.getConditions();
+            output.writeInt(conditions == null ? -1 : conditions.length);
+            if (conditions != null) {
+                for (Condition c : conditions) {
+                    writeCondition(output, c);
+                }
+            }
+        } else {
+            throw new IOException("Unsupported condition " + condition.getClass());
+        }
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] data) throws IOException {
+        output.writeInt(data.length);
+        output.write(data);
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            writeUTF8(output, value);
+        }
+    }
+
+    /* Length-prefixed, writeUTF is limited to 64 KB */
+    private static void writeUTF8(DataOutputStream output, String value) throws IOException {
+        writeBytes(output, value.getBytes("UTF-8"));
+    }
+
+    private static void writeDate(DataOutputStream output, Date value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeLong(value.getTime());
+        }
+    }
+
+    /**
+     * Read a snapshot written by write. The file is memory-mapped while it is read.
+     * 
+     * @param file
+     * @return a source with the certificates of the snapshot, or null if the file or its key doesn't exist
+     * @throws IOException if the file cannot be read or its HMAC doesn't match
+     */
+    static TrustedListsCertificateSource read(File file) throws IOException {
+        File keyFile = getKeyFile(file);
+        if (!file.isFile() || !keyFile.isFile()) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        byte[] key = getKey(keyFile);
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < MAC_LENGTH) {
+                throw new IOException("Corrupted TSL snapshot " + file);
+            }
+            int length = buffer.remaining() - MAC_LENGTH;
+            ByteBuffer content = buffer.duplicate();
+            content.limit(length);
+            Mac mac = newMac(key);
+            mac.update(content.duplicate());
+            byte[] expected = new byte[MAC_LENGTH];
+            buffer.position(length);
+            buffer.get(expected);
+            if (!MessageDigest.isEqual(expected, mac.doFinal())) {
+                throw new IOException("The HMAC of the TSL snapshot " + file + " doesn't match");
+            }
+
+            DataInputStream data = new DataInputStream(new ByteBufferInputStream(content));
+            if (data.readInt() != MAGIC) {
+                throw new IOException("Not a TSL snapshot " + file);
+            }
+            int version = data.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported TSL snapshot format " + version);
+            }
+            long savedAt = data.readLong();
+            int count = data.readInt();
+
+            CertificateFactory factory = CertificateFactory.getInstance("X509");
+            Map<String, LoadedTSL> territories = new LinkedHashMap<String, LoadedTSL>();
+            for (int i = 0; i < count; i++) {
+                String territory = readUTF8(data);
+                territories.put(territory, readTerritory(data, factory));
+            }
+
+            TrustedListsCertificateSource source = new TrustedListsCertificateSource();
+            source.initFromSnapshot(territories);
+            LOG.info("TSL snapshot of " + new Date(savedAt) + " with " + count + " territories read in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            return source;
+        } catch (CertificateException e) {
+            throw new IOException("Cannot read the TSL snapshot " + file, e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupted TSL snapshot " + file, e);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static LoadedTSL readTerritory(DataInputStream data, CertificateFactory factory) throws IOException,
+            CertificateException {
+        String url = readUTF8(data);
+
+        Map<X500Principal, List<CertificateAndContext>> certificates =
+                new HashMap<X500Principal, List<CertificateAndContext>>();
+        int count = data.readInt();
+        for (int i = 0; i < count; i++) {
+            byte[] encoded = readBytes(data);
+            X509Certificate cert = (X509Certificate) factory.generateCertificate(new ByteArrayInputStream(encoded));
+            CertificateAndContext ctx = new CertificateAndContext(cert);
+            String sourceType = readString(data);
+            ctx.setCertificateSource(sourceType == null ? null : CertificateSourceType.valueOf(sourceType));
+            ctx.setContext(readServiceInfo(data));
+            List<CertificateAndContext> list = certificates.get(cert.getSubjectX500Principal());
+            if (list == null) {
+                list = new ArrayList<CertificateAndContext>();
+                certificates.put(cert.getSubjectX500Principal(), list);
+            }
+            list.add(ctx);
+        }
+
+        LoadedTSL loaded = new LoadedTSL(url, null, null, null, null, null);
+        loaded.setCertificates(certificates);
+        loaded.setRestored(true);
+        return loaded;
+    }
+
+    private static ServiceInfo readServiceInfo(DataInputStream data) throws IOException {
+        if (!data.readBoolean()) {
+            return null;
+        }
+        ServiceInfo info = new ServiceInfo();
+        info.setType(readString(data));
+        info.setTspName(readString(data));
+        info.setTspTradeName(readString(data));
+        info.setTspPostalAddress(readString(data));
+        info.setTspElectronicAddress(readString(data));
+        info.setServiceName(readString(data));
+        info.setCurrentStatus(readString(data));
+        info.setCurrentStatusStartingDate(readDate(data));
+        info.setStatusAtReferenceTime(readString(data));
+        info.setStatusStartingDateAtReferenceTime(readDate(data));
+        info.setStatusEndingDateAtReferenceTime(readDate(data));
+        info.setTlWellSigned(data.readBoolean());
+        int count = data.readInt();
+        for (int i = 0; i < count; i++) {
+            String qualifier = readUTF8(data);
+            info.addQualifier(qualifier, readCondition(data));
+        }
+        return info;
+    }
+
+    private static Condition readCondition(DataInputStream data) throws IOException {
+        int tag = data.readByte();
+        switch (tag) {
+        case NO_CONDITION:
+            return null;
+        case POLICY_ID:
+            return new PolicyIdCondition(readString(data));
+        case QC_STATEMENT:
+            return new QcStatementCondition(readString(data));
+        case KEY_USAGE:
+            String bit = readString(data);
+            return new KeyUsageCondition(bit == null ? null : KeyUsageBit.valueOf(bit));
+        case COMPOSITE:
+            String composition = readString(data);
+            int count = data.readInt();
+            Condition[] conditions = null;
+            if (count >= 0) {
+                conditions = new Condition[count];
+                for (int i = 0; i < count; i++) {
+                    conditions[i] = readCondition(data);
+                }
+            }
+            return new CompositeCriteriaList(composition == null ? null : Composition.valueOf(composition),
+                    conditions);
+        default:
+            throw new IOException("Unknown condition " + tag);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length < 0 || length > data.available()) {
+            throw new IOException("Corrupted TSL snapshot");
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return bytes;
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        return data.readBoolean() ? readUTF8(data) : null;
+    }
+
+    private static String readUTF8(DataInputStream data) throws IOException {
+        return new String(readBytes(data), "UTF-8");
+    }
+
+    private static Date readDate(DataInputStream data) throws IOException {
+        return data.readBoolean() ? new Date(data.readLong()) : null;
+    }
+
+    private static File getKeyFile(File file) {
+        return new File(file.getPath() + ".key");
+    }
+
+    /**
+     * Read the HMAC key of the snapshot, or create it if it doesn't exist yet. The key is written in a temporary file
+     * readable by the owner only, and renamed once complete, so a concurrent reader never sees a partial key. If
+     * another thread or process has created the key in the meantime, the key in the file is used.
+     */
+    private static byte[] getKey(File keyFile) throws IOException {
+        if (!keyFile.isFile()) {
+            byte[] key = new byte[KEY_LENGTH];
+            new SecureRandom().nextBytes(key);
+            File temp = File.createTempFile("tsl", ".key", keyFile.getAbsoluteFile().getParentFile());
+            try {
+                restrictToOwner(temp, false);
+                OutputStream output = new FileOutputStream(temp);
+                try {
+                    output.write(key);
+                } finally {
+                    output.close();
+                }
+                if (!keyFile.exists() && !temp.renameTo(keyFile) && !keyFile.exists()) {
+                    throw new IOException("Cannot create the TSL snapshot key " + keyFile);
+                }
+            } finally {
+                if (temp.exists()) {
+                    temp.delete();
+                }
+            }
+        }
+        return readKey(keyFile);
+    }
+
+    private static byte[] readKey(File keyFile) throws IOException {
+        for (int attempt = 1; keyFile.length() < KEY_LENGTH; attempt++) {
+            if (attempt == KEY_READ_ATTEMPTS) {
+                throw new IOException("Incomplete TSL snapshot key " + keyFile);
+            }
+            try {
+                Thread.sleep(KEY_READ_DELAY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading the TSL snapshot key " + keyFile);
+            }
+        }
+        DataInputStream input = new DataInputStream(new FileInputStream(keyFile));
+        try {
+            byte[] key = new byte[KEY_LENGTH];
+            input.readFully(key);
+            return key;
+        } finally {
+            input.close();
+        }
+    }
+
+    private static Mac newMac(byte[] key) throws IOException {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot instantiate " + MAC_ALGORITHM, e);
+        }
+    }
+
+    private static void restrictToOwner(File file, boolean executable) {
+        file.setReadable(false, false);
+        file.setWritable(false, false);
+        file.setExecutable(false, false);
+        file.setReadable(true, true);
+        file.setWritable(true, true);
+        if (executable) {
+            file.setExecutable(true, true);
+        }
+    }
+
+    /**
+     * InputStream reading a memory-mapped file
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+    }
+
+}
@@ -25,22 +25,38 @@ import eu.europa.ec.markt.dss.EncodingException;
 import eu.europa.ec.markt.dss.EncodingException.MSG;
 import eu.europa.ec.markt.dss.NotETSICompliantException;
 import eu.europa.ec.markt.dss.validation.certificate.CertificateAndContext;
-import eu.europa.ec.markt.dss.validation.certificate.CertificateSource;
-import eu.europa.ec.markt.dss.validation.certificate.CertificateSourceType;
+import eu.europa.ec.markt.dss.validation.certificate.CertificateIndex;
+import eu.europa.ec.markt.dss.validation.certificate.IndexedCertificateSource;
+import eu.europa.ec.markt.dss.validation.https.ConditionalHTTPDataLoader;
+import eu.europa.ec.markt.dss.validation.https.ConditionalResponse;
 import eu.europa.ec.markt.dss.validation.https.HTTPDataLoader;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.Security;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -68,6 +84,7 @@ import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
+import org.apache.commons.codec.binary.Hex;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.jcp.xml.dsig.internal.dom.XMLDSigRI;
 import org.springframework.core.io.Resource;
@@ -85,7 +102,7 @@ import org.xml.sax.SAXException;
  * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
  */
 
-public class TrustedListsCertificateSource implements CertificateSource {
+public class TrustedListsCertificateSource implements IndexedCertificateSource {
 
     private static final Logger LOG = Logger.getLogger(TrustedListsCertificateSource.class.getName());
 
@@ -93,12 +110,33 @@ public class TrustedListsCertificateSource implements CertificateSource {
 
     private HTTPDataLoader tslLoader;
 
-    private Map<X500Principal, List<CertificateAndContext>> certificates;
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+
+    static {
+        DOCUMENT_BUILDER_FACTORY.setNamespaceAware(true);
+    }
+
+    /* The certificates and their index are replaced together, once the loading is complete */
+    private volatile LoadedCertificates loadedCertificates = new LoadedCertificates(
+            new HashMap<X500Principal, List<CertificateAndContext>>());
 
     private boolean checkSignature = true;
 
     private Resource lotlCertificate;
 
+    private ExecutorService executorService;
+
+    private int loadThreads = 8;
+
+    private long territoryTimeout = 120000;
+
+    private Map<String, Long> territoryLoadTimes = Collections.emptyMap();
+
+    /* The LOTL and the TSL of each territory as loaded by init, reused by the next refresh */
+    private LoadedTSL loadedLotl;
+
+    private Map<String, LoadedTSL> loadedTerritories = Collections.emptyMap();
+
     /**
      * The default constructor for TrustedListsCertificateSource.
      */
@@ -124,13 +162,24 @@ public class TrustedListsCertificateSource implements CertificateSource {
      * @return the certificates
      */
     public Map<X500Principal, List<CertificateAndContext>> getCertificates() {
-        return certificates;
+        return loadedCertificates.certificates;
     }
 
     @Override
     public List<CertificateAndContext> getCertificateBySubjectName(X500Principal subjectName) {
-        LOG.log(Level.FINE, "Looking for {0} in {1}", new Object[] { subjectName, certificates.values() });
-        return certificates.get(subjectName);
+        LoadedCertificates loaded = loadedCertificates;
+        LOG.log(Level.FINE, "Looking for {0} in {1}", new Object[] { subjectName, loaded.certificates.values() });
+        return loaded.index.getBySubjectName(subjectName);
+    }
+
+    @Override
+    public List<CertificateAndContext> getCertificateBySubjectKeyIdentifier(byte[] subjectKeyIdentifier) {
+        return loadedCertificates.index.getBySubjectKeyIdentifier(subjectKeyIdentifier);
+    }
+
+    @Override
+    public List<CertificateAndContext> getCertificateByFingerprint(byte[] fingerprint) {
+        return loadedCertificates.index.getByFingerprint(fingerprint);
     }
 
     /**
@@ -151,13 +200,74 @@ public class TrustedListsCertificateSource implements CertificateSource {
         this.lotlUrl = lotlUrl;
     }
 
+    /**
+     * Set the executor loading the TSL of the territories. The executor is not shut down by this source, so it can be
+     * reused by the next sources. When no executor is set, init creates a pool of loadThreads threads and shuts it down
+     * at the end.
+     * 
+     * @param executorService the executorService to set
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Set the number of TSL loaded at the same time when no executor is set. Default is 8.
+     * 
+     * @param loadThreads the loadThreads to set
+     */
+    public void setLoadThreads(int loadThreads) {
+        this.loadThreads = loadThreads;
+    }
+
+    /**
+     * Set the maximum time (in milliseconds) to load the TSL of one territory, from the start of its loading. A
+     * territory that takes longer is skipped. Default is 2 minutes.
+     * 
+     * @param territoryTimeout the territoryTimeout to set
+     */
+    public void setTerritoryTimeout(long territoryTimeout) {
+        this.territoryTimeout = territoryTimeout;
+    }
+
+    /**
+     * @return the time (in milliseconds) spent loading the TSL of each territory during the last init, for the
+     *         territories loaded successfully
+     */
+    public Map<String, Long> getTerritoryLoadTimes() {
+        return territoryLoadTimes;
+    }
+
     /**
      * Load the certificates contained in all the TSL referenced by the LOTL
      * 
      * @throws IOException
      */
     public void init() throws IOException, ConfigurationException, CannotFetchDataException {
-        certificates = new HashMap<X500Principal, List<CertificateAndContext>>();
+        init(null);
+    }
+
+    /**
+     * Load the certificates contained in all the TSL referenced by the LOTL, reusing what did not change since the
+     * previous source was loaded. A TSL is requested with the HTTP validators of the previous response, and is parsed
+     * and verified again only if its content changed; the certificates of the unchanged territories are shared with the
+     * previous source. When the TSL of a territory cannot be loaded, its previous certificates are kept, unless they
+     * were restored from a snapshot.
+     * 
+     * @param previous the source loaded before, or null
+     * @throws IOException
+     */
+    public void init(TrustedListsCertificateSource previous) throws IOException, ConfigurationException,
+            CannotFetchDataException {
+        Map<X500Principal, List<CertificateAndContext>> merged =
+                new HashMap<X500Principal, List<CertificateAndContext>>();
+
+        LoadedTSL previousLotl = null;
+        Map<String, LoadedTSL> previousTerritories = Collections.emptyMap();
+        if (previous != null) {
+            previousLotl = previous.loadedLotl;
+            previousTerritories = previous.loadedTerritories;
+        }
 
         X509Certificate lotlCert = null;
         if (checkSignature) {
@@ -182,185 +292,323 @@ public class TrustedListsCertificateSource implements CertificateSource {
         }
 
         LOG.log(Level.INFO, "Loading LOTL from " + lotlUrl);
-        TrustStatusList lotl = null;
+        LoadedTSL lotl = null;
         try {
-            lotl = getTrustStatusList(lotlUrl, lotlCert);
+            lotl = loadTSL(lotlUrl, lotlCert, previousLotl);
+            if (lotl.getPointers() == null) {
+                lotl.setPointers(lotl.getTsl().getOtherTSLPointers());
+                lotl.setTsl(null);
+            }
         } catch (NotETSICompliantException e) {
             LOG.severe("TSL not compliant with ETSI " + e.getMessage());
         }
 
-        for (PointerToOtherTSL p : lotl.getOtherTSLPointers()) {
+        if (lotl == null) {
+            return;
+        }
+        loadedLotl = lotl;
 
-            try {
+        ExecutorService executor = executorService;
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(loadThreads);
+        }
+        try {
+            /* Each territory is loaded in its own map, so a failing territory cannot affect the others */
+            List<TerritoryLoader> loaders = new ArrayList<TerritoryLoader>();
+            for (PointerToOtherTSL p : lotl.getPointers()) {
+                TerritoryLoader loader = new TerritoryLoader(p, previousTerritories.get(p.getTerritory()));
+                loader.future = executor.submit(loader);
+                loaders.add(loader);
+            }
 
-                X509Certificate cert = p.getDigitalId();
-                boolean wellSigned = true; 
-                if (cert == null) {
-                    LOG.severe("No certificate for TSL of territory " + p.getTerritory());
-                    wellSigned = false;
+            Map<String, Long> loadTimes = new LinkedHashMap<String, Long>();
+            Map<String, LoadedTSL> territories = new LinkedHashMap<String, LoadedTSL>();
+            int reloaded = 0;
+            for (TerritoryLoader loader : loaders) {
+                LoadedTSL territory = loader.await();
+                if (territory != null) {
+                    loadTimes.put(loader.pointer.getTerritory(), loader.endTime - loader.startTime);
+                } else if (loader.previous != null && !loader.previous.isRestored()) {
+                    territory = loader.previous;
+                    LOG.warning("Keeping the previous TSL of territory " + loader.pointer.getTerritory());
                 }
-
-                LOG.info("Loading TrustStatusList from " + p.getTerritory() + " url= " + p.getTslLocation());
-                TrustStatusList countryTSL = getTrustStatusList(p.getTslLocation(), cert);
-                loadAllCertificatesFromOneTSL(countryTSL, wellSigned);
-
-            } catch (CannotFetchDataException ex) {
-                LOG.log(Level.SEVERE, "Error when reading TSL", ex);
-            } catch (CertificateException ex) {
-                LOG.log(Level.SEVERE, "Cannot read certificate from pointer to " + p.getTerritory(), ex);
-            } catch (IOException ex) {
-                LOG.log(Level.SEVERE, "Error when reading TSL", ex);
-            } catch (NotETSICompliantException e) {
-                LOG.severe("TSL not compliant with ETSI " + e.getMessage());
+                if (territory != null) {
+                    if (territory != loader.previous) {
+                        reloaded++;
+                    }
+                    territories.put(loader.pointer.getTerritory(), territory);
+                    mergeCertificates(merged, territory.getCertificates());
+                }
+            }
+            loadedTerritories = territories;
+            loadedCertificates = new LoadedCertificates(merged);
+            territoryLoadTimes = Collections.unmodifiableMap(loadTimes);
+            LOG.info("TSL loaded in " + loadTimes + ", " + reloaded + " territories reloaded out of "
+                    + territories.size());
+        } finally {
+            if (executor != executorService) {
+                executor.shutdownNow();
             }
         }
 
     }
 
     /**
-     * Add all the service entry (current and history) of all the providers of the trusted list to the list of
-     * CertificateSource
+     * Initialize the source with the territories read from a snapshot, without downloading anything.
      * 
-     * @param tsl
+     * @param territories
      */
-    private void loadAllCertificatesFromOneTSL(TrustStatusList tsl, boolean wellSigned) {
-        for (TrustServiceProvider p : tsl.getTrustServicesProvider()) {
-            for (AbstractTrustService s : p.getTrustServiceList()) {
-                for (X509Certificate c : s.getDigitalIdentity()) {
-                    addCertificate(c, s, p, wellSigned);
-                }
+    void initFromSnapshot(Map<String, LoadedTSL> territories) {
+        Map<X500Principal, List<CertificateAndContext>> merged =
+                new HashMap<X500Principal, List<CertificateAndContext>>();
+        for (LoadedTSL territory : territories.values()) {
+            mergeCertificates(merged, territory.getCertificates());
+        }
+        loadedTerritories = territories;
+        loadedCertificates = new LoadedCertificates(merged);
+    }
+
+    /**
+     * @return the TSL of each territory as loaded by the last init
+     */
+    Map<String, LoadedTSL> getLoadedTerritories() {
+        return loadedTerritories;
+    }
+
+    /**
+     * Load the certificates of the TSL of one territory
+     * 
+     * @param p
+     * @param previous the TSL of the territory loaded by the previous source, or null
+     * @return the loaded TSL with its certificates, or null if the TSL cannot be loaded
+     */
+    private LoadedTSL loadTerritory(PointerToOtherTSL p, LoadedTSL previous) {
+        try {
+
+            X509Certificate cert = p.getDigitalId();
+            if (cert == null) {
+                LOG.severe("No certificate for TSL of territory " + p.getTerritory());
             }
+
+            LOG.info("Loading TrustStatusList from " + p.getTerritory() + " url= " + p.getTslLocation());
+            LoadedTSL countryTSL = loadTSL(p.getTslLocation(), cert, previous);
+            if (countryTSL.getCertificates() == null) {
+                countryTSL.setCertificates(countryTSL.getTsl().getCertificates());
+                countryTSL.setTsl(null);
+            }
+            return countryTSL;
+
+        } catch (CannotFetchDataException ex) {
+            LOG.log(Level.SEVERE, "Error when reading TSL", ex);
+        } catch (CertificateException ex) {
+            LOG.log(Level.SEVERE, "Cannot read certificate from pointer to " + p.getTerritory(), ex);
+        } catch (IOException ex) {
+            LOG.log(Level.SEVERE, "Error when reading TSL", ex);
+        } catch (NotETSICompliantException e) {
+            LOG.severe("TSL not compliant with ETSI " + e.getMessage());
         }
+        return null;
     }
 
     /**
-     * Add a service entry (current or history) to the list of CertificateAndContext
+     * Add the certificates of one territory to the merged certificates. The lists of the territory are shared, not
+     * copied, so they are never modified: a subject present in several territories gets a new list.
      * 
-     * @param cert
-     * @param s
-     * @param provider
+     * @param merged
+     * @param territoryCertificates
      */
-    private void addCertificate(X509Certificate cert, AbstractTrustService s, TrustServiceProvider provider, boolean wellsigned) {
-        List<CertificateAndContext> list = certificates.get(cert.getSubjectX500Principal());
-        if (list == null) {
-            list = new ArrayList<CertificateAndContext>();
-            certificates.put(cert.getSubjectX500Principal(), list);
+    private static void mergeCertificates(Map<X500Principal, List<CertificateAndContext>> merged,
+            Map<X500Principal, List<CertificateAndContext>> territoryCertificates) {
+        for (Map.Entry<X500Principal, List<CertificateAndContext>> e : territoryCertificates.entrySet()) {
+            List<CertificateAndContext> list = merged.get(e.getKey());
+            if (list == null) {
+                merged.put(e.getKey(), e.getValue());
+            } else {
+                List<CertificateAndContext> union = new ArrayList<CertificateAndContext>(list);
+                union.addAll(e.getValue());
+                merged.put(e.getKey(), union);
+            }
         }
-        CertificateAndContext ctx = new CertificateAndContext();
-        ctx.setCertificate(cert);
-        ctx.setCertificateSource(CertificateSourceType.TRUSTED_LIST);
+    }
 
+    /**
+     * Load a trusted list, unless it did not change since the previous one: same HTTP validators, or same digest. A
+     * trusted list whose sequence number is lower than the previous one is ignored.
+     * 
+     * @param url
+     * @param signerIdentity
+     * @param previous the same trusted list loaded before, or null
+     * @return the previous trusted list if it did not change, or a new one with the parsed TrustStatusList
+     * @throws IOException
+     */
+    private LoadedTSL loadTSL(String url, X509Certificate signerIdentity, LoadedTSL previous) throws IOException,
+            CannotFetchDataException {
+        boolean samePrevious = previous != null && previous.isSameSource(url, signerIdentity);
+
+        byte[] data;
+        String eTag = null;
+        String lastModified = null;
+        if (samePrevious && tslLoader instanceof ConditionalHTTPDataLoader) {
+            ConditionalResponse response = ((ConditionalHTTPDataLoader) tslLoader).getIfModified(url,
+                    previous.getETag(), previous.getLastModified());
+            if (response.isNotModified()) {
+                LOG.fine("TSL " + url + " not modified");
+                return previous;
+            }
+            data = readFully(response.getContent());
+            eTag = response.getETag();
+            lastModified = response.getLastModified();
+        } else {
+            data = readFully(tslLoader.get(url));
+        }
+
+        String digest = getDigest(data);
+        if (samePrevious && digest.equals(previous.getDigest())) {
+            LOG.fine("TSL " + url + " unchanged");
+            return previous.withValidators(eTag, lastModified);
+        }
+
+        TrustStatusList tsl = getTrustStatusList(url, data, signerIdentity);
+        BigInteger sequenceNumber = tsl.getSequenceNumber();
+        if (samePrevious && sequenceNumber != null && previous.getSequenceNumber() != null
+                && sequenceNumber.compareTo(previous.getSequenceNumber()) < 0) {
+            LOG.warning("TSL " + url + " has the sequence number " + sequenceNumber + ", older than "
+                    + previous.getSequenceNumber() + ", the previous one is kept");
+            return previous;
+        }
+
+        LoadedTSL loaded = new LoadedTSL(url, signerIdentity, eTag, lastModified, digest, sequenceNumber);
+        loaded.setTsl(tsl);
+        return loaded;
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = input.read(buffer)) >= 0) {
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static String getDigest(byte[] data) {
         try {
-            ServiceInfo info = s.createServiceInfo();
-            info.setCurrentStatus(s.getCurrentServiceInfo().getStatus());
-            info.setCurrentStatusStartingDate(s.getCurrentServiceInfo().getStatusStartDate());
-            info.setServiceName(s.getServiceName());
-            info.setStatusAtReferenceTime(s.getStatus());
-            info.setStatusStartingDateAtReferenceTime(s.getStatusStartDate());
-            info.setStatusEndingDateAtReferenceTime(s.getStatusEndDate());
-            info.setTspElectronicAddress(provider.getElectronicAddress());
-            info.setTspName(provider.getName());
-            info.setTspPostalAddress(provider.getPostalAddress());
-            info.setTspTradeName(provider.getTradeName());
-            info.setType(s.getType());
-            info.setTlWellSigned(wellsigned);
-            ctx.setContext(info);
-            list.add(ctx);
-        } catch (NotETSICompliantException ex) {
-            LOG.log(Level.SEVERE,
-                    "The entry for " + s.getServiceName() + " don't respect ESTI specification " + ex.getMessage());
+            return Hex.encodeHexString(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Cannot instantiate digest for algorithm SHA-256", e);
         }
     }
 
     /**
-     * Load a trusted list for the specified URL
+     * Parse and verify a trusted list downloaded from the specified URL. The services are read in one pass with a
+     * streaming parser; a DOM is built only to verify the signature, and released before the services are read. The
+     * services of a trusted list are flagged as well signed when the certificate of its signer is known.
      * 
      * @param url
+     * @param data
      * @param signerIdentity
      * @return
      * @throws IOException
      */
-    private TrustStatusList getTrustStatusList(String url, X509Certificate signerIdentity) throws IOException, CannotFetchDataException {
+    private TrustStatusList getTrustStatusList(String url, byte[] data, X509Certificate signerIdentity)
+            throws IOException {
+        boolean coreValidity = false;
+        if (signerIdentity != null && checkSignature) {
+            coreValidity = isSignatureValid(url, data, signerIdentity);
+        }
+
+        TrustStatusList tsl = new TrustStatusListReader(signerIdentity != null).read(new ByteArrayInputStream(data));
+        tsl.setWellSigned(coreValidity);
+        return tsl;
+    }
+
+    /**
+     * Verify the enveloped signature of a trusted list
+     * 
+     * @param url
+     * @param data
+     * @param signerIdentity
+     * @return the core validity of the signature
+     * @throws IOException
+     */
+    private boolean isSignatureValid(String url, byte[] data, X509Certificate signerIdentity) throws IOException {
         try {
-            InputStream input = tslLoader.get(url);
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.parse(input);
-            input.close();
+            DocumentBuilder db;
+            /* The factory is not guaranteed to be thread-safe */
+            synchronized (DOCUMENT_BUILDER_FACTORY) {
+                db = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+            }
+            Document doc = db.parse(new ByteArrayInputStream(data));
 
-            boolean coreValidity = false; 
-                
-            if (signerIdentity != null && checkSignature) {
-                NodeList signatureNodeList = doc.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature");
+            NodeList signatureNodeList = doc.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature");
 
-                if (signatureNodeList.getLength() == 0) {
-                    throw new NotETSICompliantException(
-                            eu.europa.ec.markt.dss.NotETSICompliantException.MSG.TSL_NOT_SIGNED);
-                }
-                if (signatureNodeList.getLength() > 1) {
-                    throw new NotETSICompliantException(
-                            eu.europa.ec.markt.dss.NotETSICompliantException.MSG.MORE_THAN_ONE_SIGNATURE);
-                }
+            if (signatureNodeList.getLength() == 0) {
+                throw new NotETSICompliantException(
+                        eu.europa.ec.markt.dss.NotETSICompliantException.MSG.TSL_NOT_SIGNED);
+            }
+            if (signatureNodeList.getLength() > 1) {
+                throw new NotETSICompliantException(
+                        eu.europa.ec.markt.dss.NotETSICompliantException.MSG.MORE_THAN_ONE_SIGNATURE);
+            }
 
-                final Element signatureEl = (Element) signatureNodeList.item(0);
-
-                try {
-                    DOMValidateContext valContext = new DOMValidateContext(
-                            KeySelector.singletonKeySelector(signerIdentity.getPublicKey()), signatureEl);
-                    valContext.setURIDereferencer(new URIDereferencer() {
-
-                        @Override
-                        public Data dereference(URIReference uriReference, XMLCryptoContext context)
-                                throws URIReferenceException {
-                            try {
-                                final XMLSignatureFactory fac = XMLSignatureFactory.getInstance("DOM",
-                                        new XMLDSigRI());
-                                return fac.getURIDereferencer().dereference(uriReference, context);
-                            } catch (URIReferenceException ex) {
-                                if (uriReference.getType().equals(
-                                        "http://uri.etsi.org/01903/v1.1.1#SignedProperties")) {
-                                    final Element signedProperties = getElement(signatureEl,
-                                            "./ds:Object/xades:QualifyingProperties/xades:SignedProperties");
-                                    if (signedProperties != null) {
-                                        return new NodeSetData() {
-                                            @Override
-                                            public Iterator<?> iterator() {
-                                                return Arrays.asList(signedProperties).iterator();
-                                            }
-                                        };
-                                    }
-                                    final Element signedProperties111 = getElement(signatureEl,
-                                            "./ds:Object/etsi:QualifyingProperties/etsi:SignedProperties");
-                                    if (signedProperties111 != null) {
-                                        return new NodeSetData() {
-                                            @Override
-                                            public Iterator<?> iterator() {
-                                                return Arrays.asList(signedProperties111).iterator();
-                                            }
-                                        };
-                                    }
+            final Element signatureEl = (Element) signatureNodeList.item(0);
+
+            try {
+                DOMValidateContext valContext = new DOMValidateContext(
+                        KeySelector.singletonKeySelector(signerIdentity.getPublicKey()), signatureEl);
+                valContext.setURIDereferencer(new URIDereferencer() {
+
+                    @Override
+                    public Data dereference(URIReference uriReference, XMLCryptoContext context)
+                            throws URIReferenceException {
+                        try {
+                            final XMLSignatureFactory fac = XMLSignatureFactory.getInstance("DOM",
+                                    new XMLDSigRI());
+                            return fac.getURIDereferencer().dereference(uriReference, context);
+                        } catch (URIReferenceException ex) {
+                            if (uriReference.getType().equals(
+                                    "http://uri.etsi.org/01903/v1.1.1#SignedProperties")) {
+                                final Element signedProperties = getElement(signatureEl,
+                                        "./ds:Object/xades:QualifyingProperties/xades:SignedProperties");
+                                if (signedProperties != null) {
+                                    return new NodeSetData() {
+                                        @Override
+                                        public Iterator<?> iterator() {
+                                            return Arrays.asList(signedProperties).iterator();
+                                        }
+                                    };
+                                }
+                                final Element signedProperties111 = getElement(signatureEl,
+                                        "./ds:Object/etsi:QualifyingProperties/etsi:SignedProperties");
+                                if (signedProperties111 != null) {
+                                    return new NodeSetData() {
+                                        @Override
+                                        public Iterator<?> iterator() {
+                                            return Arrays.asList(signedProperties111).iterator();
+                                        }
+                                    };
                                 }
-                                throw ex;
                             }
+                            throw ex;
                         }
-                    });
-                    XMLSignatureFactory factory = XMLSignatureFactory.getInstance("DOM");
-                    XMLSignature signature = factory.unmarshalXMLSignature(valContext);
-                    coreValidity = signature.validate(valContext);
-
-                    LOG.fine("TSL " + url + " well signed");
-                } catch (XMLSignatureException ex) {
-                    throw new RuntimeException("Problem validating signature of " + url, ex);
-                } catch (MarshalException e) {
-                    throw new RuntimeException("Problem validating signature of " + url, e);
-                }
-
+                    }
+                });
+                XMLSignatureFactory factory = XMLSignatureFactory.getInstance("DOM");
+                XMLSignature signature = factory.unmarshalXMLSignature(valContext);
+                boolean coreValidity = signature.validate(valContext);
+
+                LOG.fine("TSL " + url + " well signed");
+                return coreValidity;
+            } catch (XMLSignatureException ex) {
+                throw new RuntimeException("Problem validating signature of " + url, ex);
+            } catch (MarshalException e) {
+                throw new RuntimeException("Problem validating signature of " + url, e);
             }
-
-            TrustStatusList tsl = TrustServiceListFactory.newInstance(doc);
-            tsl.setWellSigned(coreValidity);
-            return tsl;
         } catch (ParserConfigurationException ex) {
             LOG.log(Level.SEVERE, "Error in TSL parsing " + ex.getMessage(), ex);
             throw new RuntimeException(ex);
@@ -369,6 +617,92 @@ public class TrustedListsCertificateSource implements CertificateSource {
         }
     }
 
+    /**
+     * The merged certificates of the loaded TrustedList with their index
+     */
+    private static class LoadedCertificates {
+
+        private final Map<X500Principal, List<CertificateAndContext>> certificates;
+
+        private final CertificateIndex index;
+
+        LoadedCertificates(Map<X500Principal, List<CertificateAndContext>> merged) {
+            List<CertificateAndContext> all = new ArrayList<CertificateAndContext>();
+            for (List<CertificateAndContext> list : merged.values()) {
+                all.addAll(list);
+            }
+            this.certificates = Collections.unmodifiableMap(merged);
+            this.index = new CertificateIndex(all);
+        }
+
+    }
+
+    /**
+     * Load the TSL of one territory in a thread of the executor, and record the time spent
+     */
+    private class TerritoryLoader implements Callable<LoadedTSL> {
+
+        private final PointerToOtherTSL pointer;
+
+        private final LoadedTSL previous;
+
+        private Future<LoadedTSL> future;
+
+        private volatile long startTime;
+
+        private volatile long endTime;
+
+        TerritoryLoader(PointerToOtherTSL pointer, LoadedTSL previous) {
+            this.pointer = pointer;
+            this.previous = previous;
+        }
+
+        @Override
+        public LoadedTSL call() {
+            startTime = System.currentTimeMillis();
+            try {
+                return loadTerritory(pointer, previous);
+            } finally {
+                endTime = System.currentTimeMillis();
+            }
+        }
+
+        /**
+         * Wait until the territory is loaded, at most territoryTimeout after its loading started.
+         * 
+         * @return the loaded TSL, or null if the territory cannot be loaded in time
+         */
+        LoadedTSL await() {
+            try {
+                while (true) {
+                    long started = startTime;
+                    long wait = started == 0 ? territoryTimeout : started + territoryTimeout
+                            - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        future.cancel(true);
+                        LOG.severe("Loading of TSL of territory " + pointer.getTerritory() + " timed out after "
+                                + territoryTimeout + " ms");
+                        return null;
+                    }
+                    try {
+                        return future.get(wait, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        /* Check again the deadline, the loading may have started late because of the queue */
+                    }
+                }
+            } catch (ExecutionException e) {
+                LOG.log(Level.SEVERE, "Error when loading TSL of territory " + pointer.getTerritory(), e.getCause());
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                LOG.severe("Interrupted while loading TSL of territory " + pointer.getTerritory());
+                return null;
+            }
+        }
+
+    }
+
     private XPathExpression createXPathExpression(String xpathString) {
         /* XPath */
         XPathFactory factory = XPathFactory.newInstance();
@@ -34,6 +34,8 @@ public class CertificateAndContext {
 
     private X509Certificate certificate;
 
+    private PooledCertificate pooledCertificate;
+
     private CertificateSourceType certificateSource;
 
     private Serializable context;
@@ -83,6 +85,23 @@ public class CertificateAndContext {
      */
     public void setCertificate(X509Certificate certificate) {
         this.certificate = certificate;
+        this.pooledCertificate = null;
+    }
+
+    /**
+     * Get the canonical instance of the certificate from the shared CertificatePool. The first call interns the
+     * certificate, and this object then refers to the canonical X509Certificate.
+     * 
+     * @return the pooled certificate, or null if there is no certificate
+     */
+    public PooledCertificate getPooledCertificate() {
+        PooledCertificate pooled = pooledCertificate;
+        if (pooled == null && certificate != null) {
+            pooled = CertificatePool.getSharedPool().intern(certificate);
+            certificate = pooled.getCertificate();
+            pooledCertificate = pooled;
+        }
+        return pooled;
     }
 
     /**
@@ -132,7 +151,7 @@ public class CertificateAndContext {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((certificate == null) ? 0 : certificate.hashCode());
+        result = prime * result + ((certificate == null) ? 0 : getPooledCertificate().hashCode());
         return result;
     }
 
@@ -152,7 +171,8 @@ public class CertificateAndContext {
             if (other.certificate != null) {
                 return false;
             }
-        } else if (!certificate.equals(other.certificate)) {
+        } else if (other.certificate == null
+                || !getPooledCertificate().isSameCertificate(other.getPooledCertificate())) {
             return false;
         }
         return true;
@@ -0,0 +1,194 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.markt.dss.validation.certificate;
+
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.x509.X509Extensions;
+
+/**
+ * Immutable index of certificates by subject name, SubjectKeyIdentifier and SHA-256 fingerprint, read from the
+ * PooledCertificate of each certificate. Also provides the helpers to read the key identifiers of a certificate or a
+ * CRL.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class CertificateIndex {
+
+    private final Map<X500Principal, List<CertificateAndContext>> bySubjectName =
+            new HashMap<X500Principal, List<CertificateAndContext>>();
+
+    private final Map<KeyIdentifier, List<CertificateAndContext>> bySubjectKeyIdentifier =
+            new HashMap<KeyIdentifier, List<CertificateAndContext>>();
+
+    private final Map<KeyIdentifier, List<CertificateAndContext>> byFingerprint =
+            new HashMap<KeyIdentifier, List<CertificateAndContext>>();
+
+    private final int size;
+
+    /**
+     * 
+     * The default constructor for CertificateIndex.
+     * 
+     * @param certificates the certificates to index
+     */
+    public CertificateIndex(Collection<CertificateAndContext> certificates) {
+        for (CertificateAndContext cert : certificates) {
+            PooledCertificate pooled = cert.getPooledCertificate();
+            add(bySubjectName, pooled.getCertificate().getSubjectX500Principal(), cert);
+            byte[] ski = pooled.getSubjectKeyIdentifier();
+            if (ski != null) {
+                add(bySubjectKeyIdentifier, new KeyIdentifier(ski), cert);
+            }
+            byte[] fingerprint = pooled.getFingerprint();
+            if (fingerprint != null) {
+                add(byFingerprint, new KeyIdentifier(fingerprint), cert);
+            }
+        }
+        size = certificates.size();
+    }
+
+    private static <K> void add(Map<K, List<CertificateAndContext>> map, K key, CertificateAndContext cert) {
+        List<CertificateAndContext> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<CertificateAndContext>(1);
+            map.put(key, list);
+        }
+        list.add(cert);
+    }
+
+    private static List<CertificateAndContext> get(Map<KeyIdentifier, List<CertificateAndContext>> map,
+            byte[] key) {
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        return unmodifiable(map.get(new KeyIdentifier(key)));
+    }
+
+    private static List<CertificateAndContext> unmodifiable(List<CertificateAndContext> list) {
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * @param subjectName
+     * @return the certificates with this subject name, never null
+     */
+    public List<CertificateAndContext> getBySubjectName(X500Principal subjectName) {
+        return unmodifiable(bySubjectName.get(subjectName));
+    }
+
+    /**
+     * @param subjectKeyIdentifier
+     * @return the certificates with this SubjectKeyIdentifier, never null
+     */
+    public List<CertificateAndContext> getBySubjectKeyIdentifier(byte[] subjectKeyIdentifier) {
+        return get(bySubjectKeyIdentifier, subjectKeyIdentifier);
+    }
+
+    /**
+     * @param fingerprint
+     * @return the certificates with this SHA-256 fingerprint, never null
+     */
+    public List<CertificateAndContext> getByFingerprint(byte[] fingerprint) {
+        return get(byFingerprint, fingerprint);
+    }
+
+    /**
+     * @return the number of certificates indexed
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param cert
+     * @return the SHA-256 digest of the encoded certificate, or null if it cannot be encoded
+     */
+    public static byte[] getFingerprint(X509Certificate cert) {
+        return CertificatePool.getSharedPool().intern(cert).getFingerprint();
+    }
+
+    /**
+     * @param cert
+     * @return the keyIdentifier of the SubjectKeyIdentifier extension, or null if there is none
+     */
+    public static byte[] getSubjectKeyIdentifier(X509Certificate cert) {
+        return CertificatePool.getSharedPool().intern(cert).getSubjectKeyIdentifier();
+    }
+
+    /**
+     * @param cert
+     * @return the keyIdentifier of the AuthorityKeyIdentifier extension, or null if there is none
+     */
+    public static byte[] getAuthorityKeyIdentifier(X509Certificate cert) {
+        return CertificatePool.getSharedPool().intern(cert).getAuthorityKeyIdentifier();
+    }
+
+    /**
+     * @param crl
+     * @return the keyIdentifier of the AuthorityKeyIdentifier extension, or null if there is none
+     */
+    public static byte[] getAuthorityKeyIdentifier(X509CRL crl) {
+        return PooledCertificate.readAuthorityKeyIdentifier(crl.getExtensionValue(X509Extensions.AuthorityKeyIdentifier
+                .getId()));
+    }
+
+    /**
+     * Key of the maps indexed by an array of bytes
+     */
+    static final class KeyIdentifier {
+
+        private final byte[] value;
+
+        private final int hashCode;
+
+        KeyIdentifier(byte[] value) {
+            this.value = value;
+            this.hashCode = Arrays.hashCode(value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof KeyIdentifier && Arrays.equals(value, ((KeyIdentifier) obj).value);
+        }
+
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.certificate;
+
+import eu.europa.ec.markt.dss.validation.x509.InstanceCache;
+
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory pool of the certificates seen by the application. A certificate is identified by its SHA-256 fingerprint,
+ * so the same certificate coming from the trusted lists, a key store, a signature or an AIA download is represented
+ * by a single PooledCertificate, whose extensions are parsed only once. The PooledCertificate of each X509Certificate
+ * instance is also remembered, so interning an instance already seen costs neither an encoding nor a digest. The pool
+ * is bounded and the least recently used certificates are evicted first.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class CertificatePool {
+
+    private static final CertificatePool SHARED_POOL = new CertificatePool();
+
+    private int maxEntries = 16384;
+
+    private final Map<CertificateIndex.KeyIdentifier, PooledCertificate> entries =
+            new LinkedHashMap<CertificateIndex.KeyIdentifier, PooledCertificate>(1024, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<CertificateIndex.KeyIdentifier, PooledCertificate> eldest) {
+                    return size() > maxEntries;
+                }
+
+            };
+
+    private final InstanceCache<X509Certificate, PooledCertificate> instances =
+            new InstanceCache<X509Certificate, PooledCertificate>(maxEntries);
+
+    /**
+     * Return the pool shared by every component of the application.
+     * 
+     * @return
+     */
+    public static CertificatePool getSharedPool() {
+        return SHARED_POOL;
+    }
+
+    /**
+     * Set the maximum number of certificates kept in the pool
+     * 
+     * @param maxEntries the maxEntries to set
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.instances.setMaxEntries(maxEntries);
+    }
+
+    /**
+     * Return the canonical instance of the certificate, adding it to the pool if it has not been seen before. A
+     * certificate that cannot be encoded is returned without being pooled.
+     * 
+     * @param certificate
+     * @return
+     */
+    public PooledCertificate intern(X509Certificate certificate) {
+        PooledCertificate pooled = instances.get(certificate);
+        if (pooled != null) {
+            return pooled;
+        }
+
+        byte[] fingerprint = PooledCertificate.computeFingerprint(certificate);
+        if (fingerprint == null) {
+            return new PooledCertificate(certificate, null);
+        }
+        CertificateIndex.KeyIdentifier key = new CertificateIndex.KeyIdentifier(fingerprint);
+        synchronized (entries) {
+            pooled = entries.get(key);
+        }
+        if (pooled == null) {
+            /* Parsed outside of the lock, two threads may parse the same certificate but only one instance is kept */
+            PooledCertificate parsed = new PooledCertificate(certificate, fingerprint);
+            synchronized (entries) {
+                pooled = entries.get(key);
+                if (pooled == null) {
+                    entries.put(key, parsed);
+                    pooled = parsed;
+                }
+            }
+        }
+        instances.put(certificate, pooled);
+        return pooled;
+    }
+
+    /**
+     * @return the number of certificates in the pool
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Remove every certificate from the pool
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        instances.clear();
+    }
+
+}
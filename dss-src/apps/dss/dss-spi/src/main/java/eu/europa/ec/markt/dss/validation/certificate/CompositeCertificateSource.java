@@ -22,20 +22,23 @@ package eu.europa.ec.markt.dss.validation.certificate;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import javax.security.auth.x500.X500Principal;
 
 /**
- * CertificateSource that wrap multiple CertificateSource
+ * CertificateSource that wrap multiple CertificateSource. The lookups by SubjectKeyIdentifier and fingerprint are answered
+ * by the wrapped sources that are indexed only. When a single source has matching certificates its own list is
+ * returned without copy, so the result must not be modified.
  * 
  *
  * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
  */
 
-public class CompositeCertificateSource implements CertificateSource {
+public class CompositeCertificateSource implements IndexedCertificateSource {
 
-    private CertificateSource[] sources;
+    private final List<CertificateSource> sources = new ArrayList<CertificateSource>();
 
     /**
      * 
@@ -44,21 +47,77 @@ public class CompositeCertificateSource implements CertificateSource {
      * @param sources
      */
     public CompositeCertificateSource(CertificateSource... sources) {
-        this.sources = sources;
+        for (CertificateSource source : sources) {
+            addSource(source);
+        }
+    }
+
+    /**
+     * Add a source at the end of the sources of this composite. Null values and sources already present are ignored.
+     * 
+     * @param source
+     */
+    private void addSource(CertificateSource source) {
+        if (source == null) {
+            return;
+        }
+        for (CertificateSource s : sources) {
+            if (s == source) {
+                return;
+            }
+        }
+        sources.add(source);
     }
 
     @Override
     public List<CertificateAndContext> getCertificateBySubjectName(X500Principal subjectName) throws IOException {
-        List<CertificateAndContext> list = new ArrayList<CertificateAndContext>();
-        for (CertificateSource source : sources) {
-            if (source != null) {
-                List<CertificateAndContext> internal = source.getCertificateBySubjectName(subjectName);
-                if (internal != null) {
-                    list.addAll(internal);
-                }
+        List<CertificateAndContext> result = Collections.emptyList();
+        for (int i = 0; i < sources.size(); i++) {
+            result = merge(result, sources.get(i).getCertificateBySubjectName(subjectName));
+        }
+        return result;
+    }
+
+    @Override
+    public List<CertificateAndContext> getCertificateBySubjectKeyIdentifier(byte[] subjectKeyIdentifier)
+            throws IOException {
+        List<CertificateAndContext> result = Collections.emptyList();
+        for (int i = 0; i < sources.size(); i++) {
+            CertificateSource source = sources.get(i);
+            if (source instanceof IndexedCertificateSource) {
+                result = merge(result, ((IndexedCertificateSource) source)
+                        .getCertificateBySubjectKeyIdentifier(subjectKeyIdentifier));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<CertificateAndContext> getCertificateByFingerprint(byte[] fingerprint) throws IOException {
+        List<CertificateAndContext> result = Collections.emptyList();
+        for (int i = 0; i < sources.size(); i++) {
+            CertificateSource source = sources.get(i);
+            if (source instanceof IndexedCertificateSource) {
+                result = merge(result, ((IndexedCertificateSource) source).getCertificateByFingerprint(fingerprint));
             }
         }
-        return list;
+        return result;
+    }
+
+    /**
+     * A new list is only allocated when a second source has matching certificates.
+     */
+    private List<CertificateAndContext> merge(List<CertificateAndContext> result, List<CertificateAndContext> other) {
+        if (other == null || other.isEmpty()) {
+            return result;
+        }
+        if (result.isEmpty()) {
+            return other;
+        }
+        List<CertificateAndContext> merged = new ArrayList<CertificateAndContext>(result.size() + other.size());
+        merged.addAll(result);
+        merged.addAll(other);
+        return merged;
     }
 
 }
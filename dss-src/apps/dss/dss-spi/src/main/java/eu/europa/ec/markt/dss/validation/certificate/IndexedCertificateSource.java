@@ -0,0 +1,54 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.markt.dss.validation.certificate;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A CertificateSource that can also find its certificates by SubjectKeyIdentifier and by SHA-256 fingerprint, without
+ * scanning them. Looking up the issuer of a certificate by its AuthorityKeyIdentifier picks the right key among the
+ * certificates of a CA that was re-keyed with the same subject name.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public interface IndexedCertificateSource extends CertificateSource {
+
+    /**
+     * Give all certificate with the specified SubjectKeyIdentifier.
+     * 
+     * @param subjectKeyIdentifier the keyIdentifier of the SubjectKeyIdentifier extension
+     * @return A list of certificates (and their respective context). Never return null.
+     * @throws IOException
+     */
+    List<CertificateAndContext> getCertificateBySubjectKeyIdentifier(byte[] subjectKeyIdentifier) throws IOException;
+
+    /**
+     * Give all certificate with the specified fingerprint.
+     * 
+     * @param fingerprint the SHA-256 digest of the encoded certificate
+     * @return A list of certificates (and their respective context). Never return null.
+     * @throws IOException
+     */
+    List<CertificateAndContext> getCertificateByFingerprint(byte[] fingerprint) throws IOException;
+
+}
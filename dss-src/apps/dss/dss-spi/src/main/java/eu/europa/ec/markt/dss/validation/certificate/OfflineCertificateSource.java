@@ -28,34 +28,63 @@ import javax.security.auth.x500.X500Principal;
 
 /**
  * Some certificate source are "offline", that means that the set of certificate is availaible and the software only
- * needs to find the certificate on base of the subjectName
+ * needs to find the certificate on base of the subjectName. The certificates are indexed the first time they are
+ * looked up, so getCertificates must always return the same certificates. The lookups return read-only views of the
+ * index, shared by every caller: the CertificateAndContext they contain must not be modified.
  * 
  *
  * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
  */
 
-public abstract class OfflineCertificateSource implements CertificateSource {
+public abstract class OfflineCertificateSource implements IndexedCertificateSource {
 
     private CertificateSourceType sourceType;
 
+    private volatile CertificateIndex index;
+
     /**
      * @param sourceType the sourceType to set
      */
     public void setSourceType(CertificateSourceType sourceType) {
         this.sourceType = sourceType;
+        this.index = null;
+    }
+
+    /**
+     * @return the sourceType given to the certificates of this source
+     */
+    public CertificateSourceType getSourceType() {
+        return sourceType;
     }
 
     @Override
     final public List<CertificateAndContext> getCertificateBySubjectName(X500Principal subjectName) {
-        List<CertificateAndContext> list = new ArrayList<CertificateAndContext>();
-        for (X509Certificate cert : getCertificates()) {
-            if (subjectName.equals(cert.getSubjectX500Principal())) {
+        return getIndex().getBySubjectName(subjectName);
+    }
+
+    @Override
+    final public List<CertificateAndContext> getCertificateBySubjectKeyIdentifier(byte[] subjectKeyIdentifier) {
+        return getIndex().getBySubjectKeyIdentifier(subjectKeyIdentifier);
+    }
+
+    @Override
+    final public List<CertificateAndContext> getCertificateByFingerprint(byte[] fingerprint) {
+        return getIndex().getByFingerprint(fingerprint);
+    }
+
+    private CertificateIndex getIndex() {
+        CertificateIndex current = index;
+        if (current == null) {
+            List<CertificateAndContext> certificates = new ArrayList<CertificateAndContext>();
+            for (X509Certificate cert : getCertificates()) {
                 CertificateAndContext cc = new CertificateAndContext(cert);
                 cc.setCertificateSource(sourceType);
-                list.add(cc);
+                certificates.add(cc);
             }
+            current = new CertificateIndex(certificates);
+            index = current;
         }
-        return list;
+        return current;
     }
 
     /**
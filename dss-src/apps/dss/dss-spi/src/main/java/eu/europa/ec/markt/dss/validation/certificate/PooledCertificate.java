@@ -0,0 +1,322 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.certificate;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.DERObject;
+import org.bouncycastle.asn1.DERObjectIdentifier;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.asn1.x509.X509ObjectIdentifiers;
+
+/**
+ * Canonical instance of a certificate, with what the validation needs from it computed once: the SHA-256
+ * fingerprint, the key identifiers and the URI of the CRL, of the OCSP responder and of the issuer certificate. The
+ * instances are obtained from the CertificatePool and are immutable.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public final class PooledCertificate {
+
+    private static final Logger LOG = Logger.getLogger(PooledCertificate.class.getName());
+
+    private final X509Certificate certificate;
+
+    private final byte[] fingerprint;
+
+    private final int hashCode;
+
+    private final byte[] subjectKeyIdentifier;
+
+    private final byte[] authorityKeyIdentifier;
+
+    private final List<String> crlUris;
+
+    private final List<String> ocspUris;
+
+    private final List<String> caIssuersUris;
+
+    /**
+     * 
+     * The default constructor for PooledCertificate.
+     * 
+     * @param certificate
+     * @param fingerprint the SHA-256 fingerprint, or null if the certificate cannot be encoded
+     */
+    PooledCertificate(X509Certificate certificate, byte[] fingerprint) {
+        this.certificate = certificate;
+        this.fingerprint = fingerprint;
+        this.hashCode = fingerprint == null ? certificate.hashCode() : Arrays.hashCode(fingerprint);
+        this.subjectKeyIdentifier = readSubjectKeyIdentifier(certificate);
+        this.authorityKeyIdentifier = readAuthorityKeyIdentifier(certificate
+                .getExtensionValue(X509Extensions.AuthorityKeyIdentifier.getId()));
+        this.crlUris = readCrlUris(certificate);
+        List<String> ocsp = new ArrayList<String>(1);
+        List<String> caIssuers = new ArrayList<String>(1);
+        readAccessLocations(certificate, ocsp, caIssuers);
+        this.ocspUris = unmodifiable(ocsp);
+        this.caIssuersUris = unmodifiable(caIssuers);
+    }
+
+    /**
+     * @return the canonical X509Certificate
+     */
+    public X509Certificate getCertificate() {
+        return certificate;
+    }
+
+    /**
+     * @return the SHA-256 digest of the encoded certificate, or null if it cannot be encoded
+     */
+    public byte[] getFingerprint() {
+        return fingerprint == null ? null : fingerprint.clone();
+    }
+
+    /**
+     * @return the keyIdentifier of the SubjectKeyIdentifier extension, or null if there is none
+     */
+    public byte[] getSubjectKeyIdentifier() {
+        return subjectKeyIdentifier == null ? null : subjectKeyIdentifier.clone();
+    }
+
+    /**
+     * @return the keyIdentifier of the AuthorityKeyIdentifier extension, or null if there is none
+     */
+    public byte[] getAuthorityKeyIdentifier() {
+        return authorityKeyIdentifier == null ? null : authorityKeyIdentifier.clone();
+    }
+
+    /**
+     * @return the URI of the full names of the CRLDistributionPoints extension, never null
+     */
+    public List<String> getCrlUris() {
+        return crlUris;
+    }
+
+    /**
+     * @return the URI of the OCSP responders in the AuthorityInfoAccess extension, never null
+     */
+    public List<String> getOcspUris() {
+        return ocspUris;
+    }
+
+    /**
+     * @return the URI of the issuer certificate in the AuthorityInfoAccess extension, never null
+     */
+    public List<String> getCaIssuersUris() {
+        return caIssuersUris;
+    }
+
+    /**
+     * @param other
+     * @return true if both instances are the same certificate, comparing the fingerprints
+     */
+    public boolean isSameCertificate(PooledCertificate other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || hashCode != other.hashCode) {
+            return false;
+        }
+        if (fingerprint == null || other.fingerprint == null) {
+            return certificate.equals(other.certificate);
+        }
+        return Arrays.equals(fingerprint, other.fingerprint);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof PooledCertificate && isSameCertificate((PooledCertificate) obj);
+    }
+
+    @Override
+    public String toString() {
+        return "PooledCertificate[subjectName=" + certificate.getSubjectX500Principal() + "]";
+    }
+
+    /**
+     * @param cert
+     * @return the SHA-256 digest of the encoded certificate, or null if it cannot be encoded
+     */
+    static byte[] computeFingerprint(X509Certificate cert) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(cert.getEncoded());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Cannot instantiate digest for algorithm SHA-256", e);
+        } catch (CertificateEncodingException e) {
+            LOG.warning("Cannot encode certificate " + cert.getSubjectDN());
+            return null;
+        }
+    }
+
+    private static byte[] readSubjectKeyIdentifier(X509Certificate cert) {
+        byte[] extension = cert.getExtensionValue(X509Extensions.SubjectKeyIdentifier.getId());
+        if (extension == null) {
+            return null;
+        }
+        try {
+            return SubjectKeyIdentifier.getInstance(getExtensionContent(extension)).getKeyIdentifier();
+        } catch (IOException e) {
+            LOG.warning("Invalid SubjectKeyIdentifier in certificate " + cert.getSubjectDN());
+            return null;
+        } catch (IllegalArgumentException e) {
+            LOG.warning("Invalid SubjectKeyIdentifier in certificate " + cert.getSubjectDN());
+            return null;
+        }
+    }
+
+    /**
+     * @param extension the value of the AuthorityKeyIdentifier extension of a certificate or a CRL
+     * @return the keyIdentifier, or null if there is none
+     */
+    static byte[] readAuthorityKeyIdentifier(byte[] extension) {
+        if (extension == null) {
+            return null;
+        }
+        try {
+            DERObject content = getExtensionContent(extension);
+            return new AuthorityKeyIdentifier(ASN1Sequence.getInstance(content)).getKeyIdentifier();
+        } catch (IOException e) {
+            LOG.warning("Invalid AuthorityKeyIdentifier " + e.getMessage());
+            return null;
+        } catch (IllegalArgumentException e) {
+            LOG.warning("Invalid AuthorityKeyIdentifier " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static List<String> readCrlUris(X509Certificate cert) {
+        byte[] extension = cert.getExtensionValue(X509Extensions.CRLDistributionPoints.getId());
+        if (extension == null) {
+            return Collections.emptyList();
+        }
+        List<String> uris = new ArrayList<String>(1);
+        try {
+            CRLDistPoint distPoint = CRLDistPoint.getInstance(getExtensionContent(extension));
+            for (DistributionPoint distributionPoint : distPoint.getDistributionPoints()) {
+                DistributionPointName distributionPointName = distributionPoint.getDistributionPoint();
+                if (distributionPointName == null
+                        || DistributionPointName.FULL_NAME != distributionPointName.getType()) {
+                    continue;
+                }
+                GeneralNames generalNames = (GeneralNames) distributionPointName.getName();
+                for (GeneralName name : generalNames.getNames()) {
+                    String uri = getUri(name);
+                    if (uri != null) {
+                        uris.add(uri);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOG.warning("Invalid CRLDistributionPoints in certificate " + cert.getSubjectDN());
+        } catch (IllegalArgumentException e) {
+            LOG.warning("Invalid CRLDistributionPoints in certificate " + cert.getSubjectDN());
+        }
+        return unmodifiable(uris);
+    }
+
+    private static void readAccessLocations(X509Certificate cert, List<String> ocsp, List<String> caIssuers) {
+        byte[] extension = cert.getExtensionValue(X509Extensions.AuthorityInfoAccess.getId());
+        if (extension == null) {
+            return;
+        }
+        try {
+            AuthorityInformationAccess authorityInformationAccess = new AuthorityInformationAccess(
+                    (ASN1Sequence) getExtensionContent(extension));
+            for (AccessDescription accessDescription : authorityInformationAccess.getAccessDescriptions()) {
+                DERObjectIdentifier accessMethod = accessDescription.getAccessMethod();
+                String uri = getUri(accessDescription.getAccessLocation());
+                if (uri == null) {
+                    continue;
+                }
+                if (X509ObjectIdentifiers.ocspAccessMethod.equals(accessMethod)) {
+                    ocsp.add(uri);
+                } else if (X509ObjectIdentifiers.id_ad_caIssuers.equals(accessMethod)) {
+                    caIssuers.add(uri);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warning("Invalid AuthorityInfoAccess in certificate " + cert.getSubjectDN());
+        } catch (RuntimeException e) {
+            /* ClassCastException or IllegalArgumentException of a malformed extension */
+            LOG.warning("Invalid AuthorityInfoAccess in certificate " + cert.getSubjectDN());
+        }
+    }
+
+    private static String getUri(GeneralName name) {
+        if (name.getTagNo() != GeneralName.uniformResourceIdentifier) {
+            LOG.fine("not a uniform resource identifier");
+            return null;
+        }
+        DERIA5String str;
+        if (name.getDERObject() instanceof DERTaggedObject) {
+            str = DERIA5String.getInstance(((DERTaggedObject) name.getDERObject()).getObject());
+        } else {
+            str = DERIA5String.getInstance(name.getDERObject());
+        }
+        return str.getString();
+    }
+
+    /**
+     * @param extension the value of an extension, as returned by getExtensionValue
+     * @return the content of the OCTET STRING of the extension
+     * @throws IOException
+     */
+    static DERObject getExtensionContent(byte[] extension) throws IOException {
+        ASN1OctetString octets = ASN1OctetString.getInstance(new ASN1InputStream(extension).readObject());
+        return new ASN1InputStream(octets.getOctets()).readObject();
+    }
+
+    private static List<String> unmodifiable(List<String> list) {
+        return list.isEmpty() ? Collections.<String> emptyList() : Collections.unmodifiableList(list);
+    }
+
+}
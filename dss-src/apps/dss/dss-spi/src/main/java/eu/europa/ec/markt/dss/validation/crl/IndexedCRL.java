@@ -0,0 +1,410 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.crl;
+
+import eu.europa.ec.markt.dss.validation.x509.SignatureVerificationCache;
+
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CRLException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Compact, read-only index of the revoked serial numbers of one version of a CRL. The serial numbers are kept sorted
+ * in primitive arrays, so a revocation lookup is a binary search. The signature verification goes through the shared
+ * SignatureVerificationCache, so the CRL is verified only once per issuer key.
+ * 
+ * The entries of an indirect CRL are indexed by certificate issuer and serial number: an entry that follows a
+ * certificateIssuer extension belongs to that issuer, not to the issuer of the CRL.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class IndexedCRL {
+
+    private static final Logger LOG = Logger.getLogger(IndexedCRL.class.getName());
+
+    private final X500Principal issuer;
+
+    /* SHA-256 of the encoded CRL, identifying the version of the CRL this index has been built from */
+    private final byte[] digest;
+
+    private final Date thisUpdate;
+
+    private final Date nextUpdate;
+
+    /* Entries of the certificates issued by the issuer of the CRL */
+    private final RevokedSerials revoked;
+
+    /* Entries of the certificates of the other issuers, for an indirect CRL */
+    private final Map<X500Principal, RevokedSerials> indirectRevoked;
+
+    /**
+     * Build the index of the provided CRL.
+     * 
+     * @param crl
+     */
+    public IndexedCRL(X509CRL crl) {
+        this(crl, digest(crl));
+    }
+
+    IndexedCRL(X509CRL crl, byte[] digest) {
+        this(crl.getIssuerX500Principal(), digest, crl.getThisUpdate(), crl.getNextUpdate(), indexEntries(crl));
+    }
+
+    private IndexedCRL(X500Principal issuer, byte[] digest, Date thisUpdate, Date nextUpdate, Builder builder) {
+        this.issuer = issuer;
+        this.digest = digest;
+        this.thisUpdate = thisUpdate;
+        this.nextUpdate = nextUpdate;
+
+        revoked = new RevokedSerials(builder);
+        indirectRevoked = new HashMap<X500Principal, RevokedSerials>();
+        for (Map.Entry<X500Principal, Builder> e : builder.indirect.entrySet()) {
+            indirectRevoked.put(e.getKey(), new RevokedSerials(e.getValue()));
+        }
+
+        LOG.fine("CRL of " + issuer + " indexed with " + getRevokedCount() + " entries");
+    }
+
+    private static Builder indexEntries(X509CRL crl) {
+        Builder builder = new Builder();
+        Set<? extends X509CRLEntry> entries = crl.getRevokedCertificates();
+        if (entries != null) {
+            for (X509CRLEntry entry : entries) {
+                /* The X509CRL already carries the certificateIssuer extension over the following entries */
+                X500Principal certificateIssuer = entry.getCertificateIssuer();
+                if (certificateIssuer != null && certificateIssuer.equals(crl.getIssuerX500Principal())) {
+                    certificateIssuer = null;
+                }
+                builder.addRevokedSerial(certificateIssuer, entry.getSerialNumber(), entry.getRevocationDate());
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Compute the SHA-256 of the encoded CRL
+     * 
+     * @param crl
+     * @return
+     */
+    static byte[] digest(X509CRL crl) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(crl.getEncoded());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (CRLException e) {
+            throw new IllegalArgumentException("Cannot encode the CRL of " + crl.getIssuerX500Principal(), e);
+        }
+    }
+
+    /**
+     * @return the issuer of the CRL
+     */
+    public X500Principal getIssuer() {
+        return issuer;
+    }
+
+    /**
+     * @return the SHA-256 of the encoded CRL this index has been built from
+     */
+    public byte[] getDigest() {
+        return digest.clone();
+    }
+
+    /**
+     * @return the thisUpdate of the CRL
+     */
+    public Date getThisUpdate() {
+        return thisUpdate;
+    }
+
+    /**
+     * @return the nextUpdate of the CRL, or null if absent
+     */
+    public Date getNextUpdate() {
+        return nextUpdate;
+    }
+
+    /**
+     * @return the number of revoked certificates in the CRL, whatever their issuer
+     */
+    public int getRevokedCount() {
+        int count = revoked.size();
+        for (RevokedSerials r : indirectRevoked.values()) {
+            count += r.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return true if the CRL has entries for certificates that are not issued by the issuer of the CRL
+     */
+    public boolean isIndirect() {
+        return !indirectRevoked.isEmpty();
+    }
+
+    /**
+     * Return the revocation date of the certificate with the given serial number, issued by the issuer of the CRL.
+     * 
+     * @param serialNumber
+     * @return the revocation date, or null if the serial number is not in the CRL
+     */
+    public Date getRevocationDate(BigInteger serialNumber) {
+        return revoked.getRevocationDate(serialNumber);
+    }
+
+    /**
+     * Return the revocation date of the certificate with the given issuer and serial number.
+     * 
+     * @param certificateIssuer
+     * @param serialNumber
+     * @return the revocation date, or null if the certificate is not in the CRL
+     */
+    public Date getRevocationDate(X500Principal certificateIssuer, BigInteger serialNumber) {
+        if (issuer.equals(certificateIssuer)) {
+            return revoked.getRevocationDate(serialNumber);
+        }
+        RevokedSerials r = indirectRevoked.get(certificateIssuer);
+        return r == null ? null : r.getRevocationDate(serialNumber);
+    }
+
+    /**
+     * Check if the CRL is signed with the key. The verification is done only the first time for a given CRL and key.
+     * The outcome is kept for the digest of the encoded CRL computed when this index was built, so the CRL is not
+     * encoded and digested again.
+     * 
+     * @param crl The CRL from which this index has been built
+     * @param publicKey
+     * @return
+     */
+    public boolean isSignedBy(final X509CRL crl, final PublicKey publicKey) {
+        return SignatureVerificationCache.getSharedCache().isDigestSignedBy(digest, publicKey.getEncoded(),
+                new SignatureVerificationCache.Verification() {
+
+                    @Override
+                    public Boolean verify() {
+                        return IndexedCRL.verify(crl, publicKey);
+                    }
+
+                });
+    }
+
+    /**
+     * Verify the signature of the CRL.
+     * 
+     * @param crl
+     * @param publicKey
+     * @return true if the signature is valid, false if it is not, or null if the verification could not be performed
+     */
+    public static Boolean verify(X509CRL crl, PublicKey publicKey) {
+        try {
+            if (crl.getSigAlgParams() == null) {
+                Boolean outcome = SignatureVerificationCache.verify(crl.getSigAlgName(), crl.getTBSCertList(),
+                        crl.getSignature(), publicKey);
+                if (outcome != null) {
+                    return outcome;
+                }
+            }
+            /* The signature algorithm has parameters, or is not known under its name */
+            crl.verify(publicKey);
+            return Boolean.TRUE;
+        } catch (InvalidKeyException e) {
+            return Boolean.FALSE;
+        } catch (CRLException e) {
+            return Boolean.FALSE;
+        } catch (Exception e) {
+            /* Either an invalid signature or a failure of the provider, both are reported the same way */
+            LOG.warning("The signature verification for CRL cannot be performed : " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Sort the serial numbers in ascending order, moving the revocation dates along (heapsort, no allocation).
+     */
+    private static void sort(long[] keys, long[] values) {
+        int n = keys.length;
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(keys, values, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            swap(keys, values, 0, end);
+            siftDown(keys, values, 0, end);
+        }
+    }
+
+    private static void siftDown(long[] keys, long[] values, int root, int n) {
+        while (2 * root + 1 < n) {
+            int child = 2 * root + 1;
+            if (child + 1 < n && keys[child + 1] > keys[child]) {
+                child++;
+            }
+            if (keys[root] >= keys[child]) {
+                return;
+            }
+            swap(keys, values, root, child);
+            root = child;
+        }
+    }
+
+    private static void swap(long[] keys, long[] values, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    /**
+     * Collect the revoked serial numbers of a CRL, in any order, before building the index.
+     */
+    static class Builder {
+
+        private long[] serials = new long[256];
+
+        private long[] revocationDates = new long[256];
+
+        private int size;
+
+        private final List<RevokedSerial> large = new ArrayList<RevokedSerial>();
+
+        /* Entries of the other certificate issuers of an indirect CRL */
+        private final Map<X500Principal, Builder> indirect = new HashMap<X500Principal, Builder>();
+
+        /**
+         * @param certificateIssuer the issuer of the revoked certificate, or null if it is the issuer of the CRL
+         */
+        void addRevokedSerial(X500Principal certificateIssuer, BigInteger serial, Date revocationDate) {
+            if (certificateIssuer == null) {
+                addRevokedSerial(serial, revocationDate);
+                return;
+            }
+            Builder builder = indirect.get(certificateIssuer);
+            if (builder == null) {
+                builder = new Builder();
+                indirect.put(certificateIssuer, builder);
+            }
+            builder.addRevokedSerial(serial, revocationDate);
+        }
+
+        private void addRevokedSerial(BigInteger serial, Date revocationDate) {
+            if (serial.bitLength() < 64) {
+                if (size == serials.length) {
+                    serials = Arrays.copyOf(serials, size * 2);
+                    revocationDates = Arrays.copyOf(revocationDates, size * 2);
+                }
+                serials[size] = serial.longValue();
+                revocationDates[size] = revocationDate.getTime();
+                size++;
+            } else {
+                large.add(new RevokedSerial(serial, revocationDate.getTime()));
+            }
+        }
+
+        IndexedCRL build(X500Principal issuer, byte[] digest, Date thisUpdate, Date nextUpdate) {
+            return new IndexedCRL(issuer, digest, thisUpdate, nextUpdate, this);
+        }
+
+    }
+
+    /**
+     * Revoked serial numbers of one certificate issuer, sorted.
+     */
+    private static class RevokedSerials {
+
+        /* Serial numbers that fit in a long, sorted, and their revocation dates */
+        private final long[] serials;
+
+        private final long[] revocationDates;
+
+        /* Serial numbers too big for a long, sorted, and their revocation dates */
+        private final BigInteger[] largeSerials;
+
+        private final long[] largeRevocationDates;
+
+        RevokedSerials(Builder builder) {
+            serials = Arrays.copyOf(builder.serials, builder.size);
+            revocationDates = Arrays.copyOf(builder.revocationDates, builder.size);
+            sort(serials, revocationDates);
+
+            Collections.sort(builder.large);
+            largeSerials = new BigInteger[builder.large.size()];
+            largeRevocationDates = new long[builder.large.size()];
+            for (int i = 0; i < largeSerials.length; i++) {
+                largeSerials[i] = builder.large.get(i).serial;
+                largeRevocationDates[i] = builder.large.get(i).revocationDate;
+            }
+        }
+
+        int size() {
+            return serials.length + largeSerials.length;
+        }
+
+        Date getRevocationDate(BigInteger serialNumber) {
+            if (serialNumber.bitLength() < 64) {
+                int index = Arrays.binarySearch(serials, serialNumber.longValue());
+                return index < 0 ? null : new Date(revocationDates[index]);
+            } else {
+                int index = Arrays.binarySearch(largeSerials, serialNumber);
+                return index < 0 ? null : new Date(largeRevocationDates[index]);
+            }
+        }
+
+    }
+
+    private static class RevokedSerial implements Comparable<RevokedSerial> {
+
+        private final BigInteger serial;
+
+        private final long revocationDate;
+
+        RevokedSerial(BigInteger serial, long revocationDate) {
+            this.serial = serial;
+            this.revocationDate = revocationDate;
+        }
+
+        @Override
+        public int compareTo(RevokedSerial o) {
+            return serial.compareTo(o.serial);
+        }
+
+    }
+
+}
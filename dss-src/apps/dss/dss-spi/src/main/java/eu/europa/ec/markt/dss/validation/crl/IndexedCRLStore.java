@@ -0,0 +1,178 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.crl;
+
+import eu.europa.ec.markt.dss.validation.x509.InstanceCache;
+
+import java.math.BigInteger;
+import java.security.cert.X509CRL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * In-memory store of the IndexedCRL of the CRL verified so far. A CRL version is identified by the SHA-256 of its
+ * encoding, so the same CRL decoded several times (e.g. from a cache) is indexed only once, and an index is only kept
+ * once the signature of the CRL has been verified. The index of each X509CRL instance is also remembered, so a lookup
+ * for an instance already seen does not digest the CRL again. The store is bounded and the least recently used CRL are
+ * evicted first.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class IndexedCRLStore {
+
+    private static final Logger LOG = Logger.getLogger(IndexedCRLStore.class.getName());
+
+    private static final IndexedCRLStore SHARED_STORE = new IndexedCRLStore();
+
+    private int maxEntries = 64;
+
+    private final Map<String, IndexedCRL> entries = new LinkedHashMap<String, IndexedCRL>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, IndexedCRL> eldest) {
+            return size() > maxEntries;
+        }
+
+    };
+
+    private final InstanceCache<X509CRL, IndexedCRL> instances = new InstanceCache<X509CRL, IndexedCRL>(maxEntries);
+
+    /* The digest of the CRL instances seen without an index, e.g. by a CRLToken */
+    private final InstanceCache<X509CRL, byte[]> digests = new InstanceCache<X509CRL, byte[]>(maxEntries);
+
+    /**
+     * Return the store shared by every component of the application that does not define its own.
+     * 
+     * @return
+     */
+    public static IndexedCRLStore getSharedStore() {
+        return SHARED_STORE;
+    }
+
+    /**
+     * Set the maximum number of CRL indexes kept in memory
+     * 
+     * @param maxEntries the maxEntries to set
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.instances.setMaxEntries(maxEntries);
+        this.digests.setMaxEntries(maxEntries);
+    }
+
+    /**
+     * Return the index of the CRL. If this version of the CRL has already been verified, the index kept in the store is
+     * returned. Otherwise a new index is built, which the caller registers with putIndex once the signature of the CRL
+     * has been verified.
+     * 
+     * @param crl
+     * @return
+     */
+    public IndexedCRL getIndex(X509CRL crl) {
+        IndexedCRL index = instances.get(crl);
+        if (index != null) {
+            return index;
+        }
+
+        /* A CRL read by the StreamingCRLReader comes with its index and digest */
+        IndexedCRL streamed = crl instanceof StreamedX509CRL ? ((StreamedX509CRL) crl).getIndex() : null;
+        byte[] digest = getDigest(crl);
+        synchronized (entries) {
+            index = entries.get(getKey(digest));
+        }
+        if (index != null) {
+            /* Same encoding as a CRL already verified */
+            instances.put(crl, index);
+            return index;
+        }
+        if (streamed != null) {
+            return streamed;
+        }
+
+        LOG.fine("New CRL index for " + crl.getIssuerX500Principal());
+        return new IndexedCRL(crl, digest);
+    }
+
+    /**
+     * Return the SHA-256 digest of the encoded CRL. The digest is computed once per X509CRL instance.
+     * 
+     * @param crl
+     * @return
+     * @throws IllegalArgumentException if the CRL cannot be encoded
+     */
+    public byte[] getDigest(X509CRL crl) {
+        IndexedCRL index = instances.get(crl);
+        if (index == null && crl instanceof StreamedX509CRL) {
+            index = ((StreamedX509CRL) crl).getIndex();
+        }
+        if (index != null) {
+            return index.getDigest();
+        }
+        byte[] digest = digests.get(crl);
+        if (digest == null) {
+            digest = IndexedCRL.digest(crl);
+            digests.put(crl, digest);
+        }
+        return digest.clone();
+    }
+
+    /**
+     * Keep the index of a CRL whose signature has been verified, so the same CRL is not indexed again.
+     * 
+     * @param crl
+     * @param index the index of the CRL, as returned by getIndex
+     * @return the index kept in the store
+     */
+    public IndexedCRL putIndex(X509CRL crl, IndexedCRL index) {
+        String key = getKey(index.getDigest());
+        synchronized (entries) {
+            IndexedCRL previous = entries.get(key);
+            if (previous != null) {
+                index = previous;
+            } else {
+                entries.put(key, index);
+            }
+        }
+        instances.put(crl, index);
+        return index;
+    }
+
+    /**
+     * Remove every index from the store
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        instances.clear();
+        digests.clear();
+    }
+
+    private static String getKey(byte[] digest) {
+        return new BigInteger(1, digest).toString(16);
+    }
+
+}
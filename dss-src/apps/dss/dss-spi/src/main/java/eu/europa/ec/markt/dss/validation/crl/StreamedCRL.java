@@ -0,0 +1,133 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.crl;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.CRLException;
+import java.security.cert.X509CRL;
+import java.util.logging.Logger;
+
+/**
+ * A CRL read by the StreamingCRLReader. The raw bytes are kept in a spool file, together with the index of the revoked
+ * serial numbers and what is needed to verify the signature without decoding the CRL again.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class StreamedCRL {
+
+    private static final Logger LOG = Logger.getLogger(StreamedCRL.class.getName());
+
+    private final File spoolFile;
+
+    private final long length;
+
+    private final long tbsOffset;
+
+    private final long tbsLength;
+
+    private final String signatureAlgorithm;
+
+    private final byte[] signature;
+
+    private final IndexedCRL index;
+
+    StreamedCRL(File spoolFile, long length, long tbsOffset, long tbsLength, String signatureAlgorithm,
+            byte[] signature, IndexedCRL index) {
+        this.spoolFile = spoolFile;
+        this.length = length;
+        this.tbsOffset = tbsOffset;
+        this.tbsLength = tbsLength;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.signature = signature;
+        this.index = index;
+    }
+
+    /**
+     * @return the size of the encoded CRL in bytes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the index of the revoked serial numbers
+     */
+    public IndexedCRL getIndex() {
+        return index;
+    }
+
+    /**
+     * Open a stream on the encoded CRL. The caller must close it.
+     * 
+     * @return
+     * @throws IOException
+     */
+    public InputStream openStream() throws IOException {
+        return new BufferedInputStream(new FileInputStream(spoolFile));
+    }
+
+    /**
+     * Load the X509CRL from the spooled bytes. The encoded CRL is read in memory but not decoded again: the index and
+     * the signature read while streaming are reused, and the CRL is only decoded if its entries or extensions are
+     * requested. The returned X509CRL keeps the whole encoded CRL, so the heap it uses grows with the size of the CRL.
+     * 
+     * @return
+     * @throws IOException
+     * @throws CRLException if the CRL is too big to be loaded
+     */
+    public X509CRL toX509CRL() throws IOException, CRLException {
+        if (length > Integer.MAX_VALUE) {
+            throw new CRLException("CRL too big: " + length + " bytes");
+        }
+        byte[] encoded = new byte[(int) length];
+        InputStream in = openStream();
+        try {
+            int offset = 0;
+            while (offset < encoded.length) {
+                int read = in.read(encoded, offset, encoded.length - offset);
+                if (read < 0) {
+                    throw new EOFException("Spooled CRL truncated");
+                }
+                offset += read;
+            }
+        } finally {
+            in.close();
+        }
+        return new StreamedX509CRL(encoded, (int) tbsOffset, (int) tbsLength, signatureAlgorithm, signature, index);
+    }
+
+    /**
+     * Delete the spool file
+     */
+    public void delete() {
+        if (!spoolFile.delete()) {
+            LOG.warning("Cannot delete the spooled CRL " + spoolFile);
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.crl;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Principal;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.CRLException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Set;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * X509CRL read by the StreamingCRLReader. The issuer, the dates, the revoked serial numbers and the signature come from
+ * the single streaming pass, so neither a revocation lookup nor the verification of the signature decodes the CRL
+ * again. The CRL is only decoded by the CertificateFactory, once, when the entries or the extensions are requested.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+class StreamedX509CRL extends X509CRL {
+
+    private final byte[] encoded;
+
+    private final int tbsOffset;
+
+    private final int tbsLength;
+
+    private final String signatureAlgorithm;
+
+    private final byte[] signature;
+
+    private final IndexedCRL index;
+
+    private X509CRL decoded;
+
+    StreamedX509CRL(byte[] encoded, int tbsOffset, int tbsLength, String signatureAlgorithm, byte[] signature,
+            IndexedCRL index) {
+        this.encoded = encoded;
+        this.tbsOffset = tbsOffset;
+        this.tbsLength = tbsLength;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.signature = signature;
+        this.index = index;
+    }
+
+    /**
+     * @return the index built while the CRL was read
+     */
+    IndexedCRL getIndex() {
+        return index;
+    }
+
+    private synchronized X509CRL getDecoded() {
+        if (decoded == null) {
+            try {
+                CertificateFactory factory = CertificateFactory.getInstance("X.509");
+                decoded = (X509CRL) factory.generateCRL(new ByteArrayInputStream(encoded));
+            } catch (CertificateException e) {
+                throw new IllegalStateException("Cannot instanciate X509 Factory", e);
+            } catch (CRLException e) {
+                throw new IllegalStateException("Cannot decode the CRL of " + index.getIssuer(), e);
+            }
+        }
+        return decoded;
+    }
+
+    @Override
+    public byte[] getEncoded() throws CRLException {
+        return encoded.clone();
+    }
+
+    @Override
+    public void verify(PublicKey key) throws CRLException, NoSuchAlgorithmException, InvalidKeyException,
+            NoSuchProviderException, SignatureException {
+        verify(Signature.getInstance(signatureAlgorithm), key);
+    }
+
+    @Override
+    public void verify(PublicKey key, String sigProvider) throws CRLException, NoSuchAlgorithmException,
+            InvalidKeyException, NoSuchProviderException, SignatureException {
+        verify(Signature.getInstance(signatureAlgorithm, sigProvider), key);
+    }
+
+    private void verify(Signature verifier, PublicKey key) throws InvalidKeyException, SignatureException {
+        verifier.initVerify(key);
+        verifier.update(encoded, tbsOffset, tbsLength);
+        if (!verifier.verify(signature)) {
+            throw new SignatureException("Signature does not match.");
+        }
+    }
+
+    @Override
+    public int getVersion() {
+        return getDecoded().getVersion();
+    }
+
+    @Override
+    public Principal getIssuerDN() {
+        return index.getIssuer();
+    }
+
+    @Override
+    public X500Principal getIssuerX500Principal() {
+        return index.getIssuer();
+    }
+
+    @Override
+    public Date getThisUpdate() {
+        return new Date(index.getThisUpdate().getTime());
+    }
+
+    @Override
+    public Date getNextUpdate() {
+        return index.getNextUpdate() == null ? null : new Date(index.getNextUpdate().getTime());
+    }
+
+    @Override
+    public X509CRLEntry getRevokedCertificate(BigInteger serialNumber) {
+        if (index.getRevocationDate(serialNumber) == null) {
+            return null;
+        }
+        return getDecoded().getRevokedCertificate(serialNumber);
+    }
+
+    @Override
+    public Set<? extends X509CRLEntry> getRevokedCertificates() {
+        if (index.getRevokedCount() == 0) {
+            return null;
+        }
+        return getDecoded().getRevokedCertificates();
+    }
+
+    @Override
+    public boolean isRevoked(Certificate cert) {
+        if (cert instanceof X509Certificate) {
+            X509Certificate certificate = (X509Certificate) cert;
+            if (index.getRevocationDate(certificate.getIssuerX500Principal(), certificate.getSerialNumber()) == null) {
+                return false;
+            }
+        }
+        return getDecoded().isRevoked(cert);
+    }
+
+    @Override
+    public byte[] getTBSCertList() throws CRLException {
+        return Arrays.copyOfRange(encoded, tbsOffset, tbsOffset + tbsLength);
+    }
+
+    @Override
+    public byte[] getSignature() {
+        return signature.clone();
+    }
+
+    @Override
+    public String getSigAlgName() {
+        return getDecoded().getSigAlgName();
+    }
+
+    @Override
+    public String getSigAlgOID() {
+        return signatureAlgorithm;
+    }
+
+    @Override
+    public byte[] getSigAlgParams() {
+        return getDecoded().getSigAlgParams();
+    }
+
+    @Override
+    public boolean hasUnsupportedCriticalExtension() {
+        return getDecoded().hasUnsupportedCriticalExtension();
+    }
+
+    @Override
+    public Set<String> getCriticalExtensionOIDs() {
+        return getDecoded().getCriticalExtensionOIDs();
+    }
+
+    @Override
+    public Set<String> getNonCriticalExtensionOIDs() {
+        return getDecoded().getNonCriticalExtensionOIDs();
+    }
+
+    @Override
+    public byte[] getExtensionValue(String oid) {
+        return getDecoded().getExtensionValue(oid);
+    }
+
+    @Override
+    public String toString() {
+        return "X509CRL[issuer=" + index.getIssuer() + ", thisUpdate=" + index.getThisUpdate() + ", nextUpdate="
+                + index.getNextUpdate() + ", revoked=" + index.getRevokedCount() + "]";
+    }
+
+}
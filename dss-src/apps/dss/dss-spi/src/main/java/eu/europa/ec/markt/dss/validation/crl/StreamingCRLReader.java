@@ -0,0 +1,457 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.crl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Read a DER encoded CRL from a stream in a single pass, without building the X509CRL. While reading, the raw bytes are
+ * spooled to a file and digested, and the revoked serial numbers are collected in an IndexedCRL. The heap used while
+ * reading is bounded by the size of the largest element read at once (a CRL entry, the issuer name, ...), not by the
+ * size of the CRL. This does not hold for the X509CRL loaded afterwards by {@link StreamedCRL#toX509CRL()}, which keeps
+ * the whole encoded CRL in memory.
+ * 
+ * A CRL that does not start with a DER sequence (PEM or Base64) is decoded by the CertificateFactory first, as a whole.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class StreamingCRLReader {
+
+    private static final int SEQUENCE = 0x30;
+
+    private static final int BOOLEAN = 0x01;
+
+    private static final int INTEGER = 0x02;
+
+    private static final int BIT_STRING = 0x03;
+
+    private static final int OCTET_STRING = 0x04;
+
+    private static final int OBJECT_IDENTIFIER = 0x06;
+
+    private static final int UTC_TIME = 0x17;
+
+    private static final int GENERALIZED_TIME = 0x18;
+
+    private static final int CRL_EXTENSIONS = 0xA0;
+
+    /* directoryName [4] of a GeneralName */
+    private static final int DIRECTORY_NAME = 0xA4;
+
+    /* certificateIssuer CRL entry extension, for the indirect CRLs */
+    private static final String CERTIFICATE_ISSUER = "2.5.29.29";
+
+    /* No element read in memory may be bigger than that */
+    private static final int MAX_ELEMENT_SIZE = 1024 * 1024;
+
+    private File spoolDirectory;
+
+    /**
+     * Set the directory where the raw CRL are spooled. By default, the temporary directory of the system is used.
+     * 
+     * @param spoolDirectory the spoolDirectory to set
+     */
+    public void setSpoolDirectory(File spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    /**
+     * Read the CRL from the stream. The stream is read until the end of the CRL but not closed.
+     * 
+     * @param input
+     * @return the CRL spooled on disk, with its index
+     * @throws IOException if the stream cannot be read or the CRL is not properly encoded
+     */
+    public StreamedCRL read(InputStream input) throws IOException {
+        InputStream buffered = new BufferedInputStream(input);
+        buffered.mark(1);
+        int first = buffered.read();
+        buffered.reset();
+        if (first != SEQUENCE) {
+            return readDER(new ByteArrayInputStream(decode(buffered)));
+        }
+        return readDER(buffered);
+    }
+
+    /* Not DER encoded, the CertificateFactory also reads PEM and Base64 */
+    private static byte[] decode(InputStream input) throws IOException {
+        try {
+            X509CRL crl = (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(input);
+            if (crl == null) {
+                throw new EOFException("No CRL found in the stream");
+            }
+            return crl.getEncoded();
+        } catch (CertificateException e) {
+            throw new IOException("Cannot decode the CRL: " + e.getMessage());
+        } catch (CRLException e) {
+            throw new IOException("Cannot decode the CRL: " + e.getMessage());
+        }
+    }
+
+    private StreamedCRL readDER(InputStream input) throws IOException {
+        File spoolFile = File.createTempFile("crl", ".der", spoolDirectory);
+        OutputStream spool = new BufferedOutputStream(new FileOutputStream(spoolFile));
+        boolean complete = false;
+        try {
+            SpoolingInputStream in = new SpoolingInputStream(input, spool,
+                    MessageDigest.getInstance("SHA-256"));
+            StreamedCRL crl = read(in, spoolFile);
+            spool.close();
+            complete = true;
+            return crl;
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (!complete) {
+                spool.close();
+                spoolFile.delete();
+            }
+        }
+    }
+
+    private StreamedCRL read(SpoolingInputStream in, File spoolFile) throws IOException {
+
+        expectTag(in, SEQUENCE);
+        readLength(in);
+
+        long tbsOffset = in.position;
+        expectTag(in, SEQUENCE);
+        long tbsEnd = readLength(in) + in.position;
+
+        int tag = readTag(in);
+        if (tag == INTEGER) {
+            /* version */
+            skip(in, readLength(in));
+            tag = readTag(in);
+        }
+
+        /* signature algorithm, repeated after the tbsCertList */
+        checkTag(tag, SEQUENCE);
+        skip(in, readLength(in));
+
+        expectTag(in, SEQUENCE);
+        int issuerLength = (int) readLength(in);
+        byte[] issuer = readBytes(in, issuerLength);
+        X500Principal issuerName = new X500Principal(encode(SEQUENCE, issuer));
+
+        Date thisUpdate = readTime(in, readTag(in));
+        Date nextUpdate = null;
+
+        IndexedCRL.Builder builder = new IndexedCRL.Builder();
+
+        tag = in.position < tbsEnd ? readTag(in) : -1;
+        if (tag == UTC_TIME || tag == GENERALIZED_TIME) {
+            nextUpdate = readTime(in, tag);
+            tag = in.position < tbsEnd ? readTag(in) : -1;
+        }
+
+        if (tag == SEQUENCE) {
+            long revokedEnd = readLength(in) + in.position;
+            /* The certificate issuer applies to the following entries until the next certificateIssuer extension */
+            X500Principal certificateIssuer = null;
+            while (in.position < revokedEnd) {
+                expectTag(in, SEQUENCE);
+                long entryEnd = readLength(in) + in.position;
+                expectTag(in, INTEGER);
+                BigInteger serial = new BigInteger(readBytes(in, readLength(in)));
+                Date revocationDate = readTime(in, readTag(in));
+                if (in.position < entryEnd) {
+                    certificateIssuer = readEntryExtensions(in, issuerName, certificateIssuer);
+                }
+                skip(in, entryEnd - in.position);
+                builder.addRevokedSerial(certificateIssuer, serial, revocationDate);
+            }
+            tag = in.position < tbsEnd ? readTag(in) : -1;
+        }
+
+        if (tag == CRL_EXTENSIONS) {
+            skip(in, readLength(in));
+        }
+        skip(in, tbsEnd - in.position);
+
+        expectTag(in, SEQUENCE);
+        long algorithmEnd = readLength(in) + in.position;
+        expectTag(in, OBJECT_IDENTIFIER);
+        String signatureAlgorithm = decodeOid(readBytes(in, readLength(in)));
+        skip(in, algorithmEnd - in.position);
+
+        expectTag(in, BIT_STRING);
+        byte[] bitString = readBytes(in, readLength(in));
+        byte[] signature = Arrays.copyOfRange(bitString, 1, bitString.length);
+
+        IndexedCRL index = builder.build(issuerName, in.digest.digest(), thisUpdate, nextUpdate);
+        return new StreamedCRL(spoolFile, in.position, tbsOffset, tbsEnd - tbsOffset, signatureAlgorithm,
+                signature, index);
+    }
+
+    /**
+     * Read the extensions of a CRL entry and return the issuer of the revoked certificate, or null if it is the issuer
+     * of the CRL.
+     */
+    private static X500Principal readEntryExtensions(SpoolingInputStream in, X500Principal issuerName,
+            X500Principal certificateIssuer) throws IOException {
+        expectTag(in, SEQUENCE);
+        long extensionsEnd = readLength(in) + in.position;
+        while (in.position < extensionsEnd) {
+            expectTag(in, SEQUENCE);
+            long extensionEnd = readLength(in) + in.position;
+            expectTag(in, OBJECT_IDENTIFIER);
+            String oid = decodeOid(readBytes(in, readLength(in)));
+            if (CERTIFICATE_ISSUER.equals(oid)) {
+                int tag = readTag(in);
+                if (tag == BOOLEAN) {
+                    /* critical */
+                    skip(in, readLength(in));
+                    tag = readTag(in);
+                }
+                checkTag(tag, OCTET_STRING);
+                readLength(in);
+                X500Principal name = readDirectoryName(in);
+                certificateIssuer = issuerName.equals(name) ? null : name;
+            }
+            skip(in, extensionEnd - in.position);
+        }
+        return certificateIssuer;
+    }
+
+    /* The first directoryName of the GeneralNames */
+    private static X500Principal readDirectoryName(SpoolingInputStream in) throws IOException {
+        expectTag(in, SEQUENCE);
+        long namesEnd = readLength(in) + in.position;
+        while (in.position < namesEnd) {
+            int tag = readTag(in);
+            long length = readLength(in);
+            if (tag == DIRECTORY_NAME) {
+                expectTag(in, SEQUENCE);
+                X500Principal name = new X500Principal(encode(SEQUENCE, readBytes(in, readLength(in))));
+                skip(in, namesEnd - in.position);
+                return name;
+            }
+            skip(in, length);
+        }
+        throw new IOException("Unsupported CRL, the certificate issuer of an entry is not a directory name");
+    }
+
+    private static int readTag(InputStream in) throws IOException {
+        int tag = in.read();
+        if (tag < 0) {
+            throw new EOFException("Unexpected end of CRL");
+        }
+        return tag;
+    }
+
+    private static void expectTag(InputStream in, int expected) throws IOException {
+        checkTag(readTag(in), expected);
+    }
+
+    private static void checkTag(int tag, int expected) throws IOException {
+        if (tag != expected) {
+            throw new IOException("Malformed CRL, expected tag " + expected + " but found " + tag);
+        }
+    }
+
+    private static long readLength(InputStream in) throws IOException {
+        int first = readTag(in);
+        if (first < 0x80) {
+            return first;
+        }
+        int count = first & 0x7F;
+        if (count == 0) {
+            throw new IOException("Indefinite length is not supported in DER");
+        }
+        if (count > 7) {
+            throw new IOException("Length too big: " + count + " bytes");
+        }
+        long length = 0;
+        for (int i = 0; i < count; i++) {
+            length = (length << 8) | readTag(in);
+        }
+        return length;
+    }
+
+    private static byte[] readBytes(InputStream in, long length) throws IOException {
+        if (length > MAX_ELEMENT_SIZE) {
+            throw new IOException("Element too big: " + length + " bytes");
+        }
+        byte[] bytes = new byte[(int) length];
+        int offset = 0;
+        while (offset < bytes.length) {
+            int read = in.read(bytes, offset, bytes.length - offset);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of CRL");
+            }
+            offset += read;
+        }
+        return bytes;
+    }
+
+    private static void skip(InputStream in, long length) throws IOException {
+        byte[] buffer = new byte[4096];
+        while (length > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (read < 0) {
+                throw new EOFException("Unexpected end of CRL");
+            }
+            length -= read;
+        }
+    }
+
+    private static Date readTime(InputStream in, int tag) throws IOException {
+        String value = new String(readBytes(in, readLength(in)), "US-ASCII");
+        SimpleDateFormat format;
+        if (tag == UTC_TIME) {
+            format = new SimpleDateFormat("yyMMddHHmmss");
+            /* Years 50 to 99 are 1950 to 1999 (RFC 5280) */
+            Date start = new Date(-631152000000L);
+            format.set2DigitYearStart(start);
+        } else if (tag == GENERALIZED_TIME) {
+            format = new SimpleDateFormat("yyyyMMddHHmmss");
+        } else {
+            throw new IOException("Malformed CRL, expected a time but found tag " + tag);
+        }
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return format.parse(value.substring(0, value.length() - 1));
+        } catch (ParseException e) {
+            throw new IOException("Malformed time in CRL: " + value);
+        }
+    }
+
+    private static byte[] encode(int tag, byte[] content) {
+        int length = content.length;
+        byte[] header;
+        if (length < 0x80) {
+            header = new byte[] { (byte) tag, (byte) length };
+        } else {
+            int count = 0;
+            for (int l = length; l > 0; l >>= 8) {
+                count++;
+            }
+            header = new byte[2 + count];
+            header[0] = (byte) tag;
+            header[1] = (byte) (0x80 | count);
+            for (int i = 0; i < count; i++) {
+                header[2 + i] = (byte) (length >> (8 * (count - 1 - i)));
+            }
+        }
+        byte[] encoded = new byte[header.length + length];
+        System.arraycopy(header, 0, encoded, 0, header.length);
+        System.arraycopy(content, 0, encoded, header.length, length);
+        return encoded;
+    }
+
+    private static String decodeOid(byte[] bytes) {
+        StringBuilder oid = new StringBuilder();
+        long value = 0;
+        boolean first = true;
+        for (byte b : bytes) {
+            value = (value << 7) | (b & 0x7F);
+            if ((b & 0x80) == 0) {
+                if (first) {
+                    int root = (int) Math.min(value / 40, 2);
+                    oid.append(root).append('.').append(value - 40 * root);
+                    first = false;
+                } else {
+                    oid.append('.').append(value);
+                }
+                value = 0;
+            }
+        }
+        return oid.toString();
+    }
+
+    /**
+     * Copy every byte read to the spool and to the digest, and keep track of the position in the stream.
+     */
+    private static class SpoolingInputStream extends FilterInputStream {
+
+        private final OutputStream spool;
+
+        private final MessageDigest digest;
+
+        private long position;
+
+        SpoolingInputStream(InputStream in, OutputStream spool, MessageDigest digest) {
+            super(in);
+            this.spool = spool;
+            this.digest = digest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                spool.write(b);
+                digest.update((byte) b);
+                position++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                spool.write(b, off, read);
+                digest.update(b, off, read);
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new UnsupportedOperationException("Every byte must be spooled");
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+    }
+
+}
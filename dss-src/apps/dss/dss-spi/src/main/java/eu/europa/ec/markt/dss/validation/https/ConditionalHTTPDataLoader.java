@@ -0,0 +1,47 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.https;
+
+import eu.europa.ec.markt.dss.CannotFetchDataException;
+
+/**
+ * 
+ * HTTPDataLoader able to execute conditional GET operations, so a resource that did not change since the previous
+ * download is not transferred again.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public interface ConditionalHTTPDataLoader extends HTTPDataLoader {
+
+    /**
+     * Execute a HTTP GET operation with the If-None-Match and If-Modified-Since headers
+     * 
+     * @param URL
+     * @param eTag the ETag of the previous response, or null
+     * @param lastModified the Last-Modified of the previous response, or null
+     * @return
+     * @throws CannotFetchDataException
+     */
+    ConditionalResponse getIfModified(String URL, String eTag, String lastModified) throws CannotFetchDataException;
+
+}
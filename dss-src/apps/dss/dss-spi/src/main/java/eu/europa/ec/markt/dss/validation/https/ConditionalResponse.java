@@ -0,0 +1,86 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.https;
+
+import java.io.InputStream;
+
+/**
+ * 
+ * Result of a conditional GET operation.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class ConditionalResponse {
+
+    private final boolean notModified;
+
+    private final InputStream content;
+
+    private final String eTag;
+
+    private final String lastModified;
+
+    /**
+     * The default constructor for ConditionalResponse.
+     * 
+     * @param notModified
+     * @param content
+     * @param eTag
+     * @param lastModified
+     */
+    public ConditionalResponse(boolean notModified, InputStream content, String eTag, String lastModified) {
+        this.notModified = notModified;
+        this.content = content;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return true if the resource did not change since the previous response; there is no content then
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    /**
+     * @return the content of the resource, to be closed by the caller, or null if not modified
+     */
+    public InputStream getContent() {
+        return content;
+    }
+
+    /**
+     * @return the ETag of the response, or null
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * @return the Last-Modified of the response, or null
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+}
@@ -71,6 +71,13 @@ public class QcStatementCondition implements Condition, Serializable {
         this(qcStatementId.getId());
     }
 
+    /**
+     * @return the qcStatementId
+     */
+    public String getQcStatementId() {
+        return qcStatementId;
+    }
+
     @SuppressWarnings("deprecation")
     @Override
     public boolean check(CertificateAndContext cert) {
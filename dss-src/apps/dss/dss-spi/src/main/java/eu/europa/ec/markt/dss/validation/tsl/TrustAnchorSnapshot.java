@@ -0,0 +1,133 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.markt.dss.validation.tsl;
+
+import eu.europa.ec.markt.dss.validation.certificate.CertificateAndContext;
+import eu.europa.ec.markt.dss.validation.certificate.CertificateSource;
+import eu.europa.ec.markt.dss.validation.certificate.IndexedCertificateSource;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * One generation of the trust anchors loaded from the Trusted Lists. A snapshot is immutable: a reload publishes a new
+ * snapshot with a greater version, so a validation that keeps a reference to a snapshot uses the same trust anchors
+ * from the beginning to the end.
+ * 
+ * 
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public final class TrustAnchorSnapshot implements IndexedCertificateSource {
+
+    private final long version;
+
+    private final long loadingTime;
+
+    private final boolean restored;
+
+    private final CertificateSource certificateSource;
+
+    /**
+     * 
+     * The default constructor for TrustAnchorSnapshot.
+     * 
+     * @param version the generation of the trust anchors, incremented at each reload
+     * @param loadingTime the time the Trusted Lists were loaded
+     * @param restored true if the trust anchors were restored from a previous run instead of loaded
+     * @param certificateSource the trust anchors, never modified afterwards
+     */
+    public TrustAnchorSnapshot(long version, Date loadingTime, boolean restored, CertificateSource certificateSource) {
+        this.version = version;
+        this.loadingTime = loadingTime.getTime();
+        this.restored = restored;
+        this.certificateSource = certificateSource;
+    }
+
+    /**
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the time the Trusted Lists were loaded
+     */
+    public Date getLoadingTime() {
+        return new Date(loadingTime);
+    }
+
+    /**
+     * @param now
+     * @return the age of the trust anchors in milliseconds at the specified time
+     */
+    public long getAge(Date now) {
+        return now.getTime() - loadingTime;
+    }
+
+    /**
+     * @return true if the trust anchors were restored from a previous run instead of loaded
+     */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    /**
+     * @return the certificateSource
+     */
+    public CertificateSource getCertificateSource() {
+        return certificateSource;
+    }
+
+    @Override
+    public List<CertificateAndContext> getCertificateBySubjectName(X500Principal subjectName) throws IOException {
+        return certificateSource.getCertificateBySubjectName(subjectName);
+    }
+
+    @Override
+    public List<CertificateAndContext> getCertificateBySubjectKeyIdentifier(byte[] subjectKeyIdentifier)
+            throws IOException {
+        if (certificateSource instanceof IndexedCertificateSource) {
+            return ((IndexedCertificateSource) certificateSource).getCertificateBySubjectKeyIdentifier(
+                    subjectKeyIdentifier);
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<CertificateAndContext> getCertificateByFingerprint(byte[] fingerprint) throws IOException {
+        if (certificateSource instanceof IndexedCertificateSource) {
+            return ((IndexedCertificateSource) certificateSource).getCertificateByFingerprint(fingerprint);
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String toString() {
+        return "TrustAnchorSnapshot[version=" + version + ", loadingTime=" + getLoadingTime() + ", restored="
+                + restored + "]";
+    }
+
+}
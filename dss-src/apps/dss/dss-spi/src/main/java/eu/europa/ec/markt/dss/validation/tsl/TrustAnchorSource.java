@@ -0,0 +1,49 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.markt.dss.validation.tsl;
+
+import eu.europa.ec.markt.dss.validation.certificate.IndexedCertificateSource;
+
+/**
+ * A CertificateSource of trust anchors that are reloaded over time. Each reload publishes a new TrustAnchorSnapshot,
+ * which callers can keep to use the same generation of trust anchors for a whole validation.
+ * 
+ * 
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public interface TrustAnchorSource extends IndexedCertificateSource {
+
+    /**
+     * @return the current snapshot of the trust anchors, or null if none is loaded yet
+     */
+    TrustAnchorSnapshot getSnapshot();
+
+    /**
+     * @return true when trust anchors are available, even if they are stale
+     */
+    boolean isReady();
+
+    /**
+     * @return true when the trust anchors were not loaded recently enough, or were only restored from a previous run
+     */
+    boolean isStale();
+
+}
@@ -0,0 +1,128 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.x509;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded memory of a value computed from an object instance, such as the digest of an encoded certificate or CRL. The
+ * instances are compared by identity, so a lookup costs neither an encoding nor a digest, and they are only weakly
+ * referenced. The least recently used entries are evicted first.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class InstanceCache<K, V> {
+
+    private int maxEntries;
+
+    private final Map<Instance<K>, V> entries = new LinkedHashMap<Instance<K>, V>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Instance<K>, V> eldest) {
+            return size() > maxEntries || eldest.getKey().get() == null;
+        }
+
+    };
+
+    /**
+     * The default constructor for InstanceCache.
+     * 
+     * @param maxEntries the maximum number of instances kept in the cache
+     */
+    public InstanceCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Set the maximum number of instances kept in the cache
+     * 
+     * @param maxEntries the maxEntries to set
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param instance
+     * @return the value registered for this very instance, or null
+     */
+    public V get(K instance) {
+        synchronized (entries) {
+            return entries.get(new Instance<K>(instance));
+        }
+    }
+
+    /**
+     * Register the value computed for the instance.
+     * 
+     * @param instance
+     * @param value
+     */
+    public void put(K instance, V value) {
+        synchronized (entries) {
+            entries.put(new Instance<K>(instance), value);
+        }
+    }
+
+    /**
+     * Remove every entry of the cache
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static final class Instance<K> extends WeakReference<K> {
+
+        private final int hashCode;
+
+        Instance(K instance) {
+            super(instance);
+            this.hashCode = System.identityHashCode(instance);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Instance)) {
+                return false;
+            }
+            Object referent = get();
+            return referent != null && referent == ((Instance<?>) obj).get();
+        }
+
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * DSS - Digital Signature Services
+ *
+ * Copyright (C) 2011 European Commission, Directorate-General Internal Market and Services (DG MARKT), B-1049 Bruxelles/Brussel
+ *
+ * Developed by: 2011 ARHS Developments S.A. (rue Nicolas Bové 2B, L-1253 Luxembourg) http://www.arhs-developments.com
+ *
+ * This file is part of the "DSS - Digital Signature Services" project.
+ *
+ * "DSS - Digital Signature Services" is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * DSS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * "DSS - Digital Signature Services".  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.europa.ec.markt.dss.validation.x509;
+
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, process-wide memory of the signature verifications already performed. An outcome is identified by the
+ * digest of the signed object and the digest of the signer (its encoded public key or certificate), so the same
+ * certificate, CRL or OCSP response checked against the same signer is verified only once. Only the outcomes of
+ * verifications that could be performed are kept: a failure of the provider is not remembered as an invalid signature.
+ * The least recently used outcomes are evicted first.
+ * 
+ *
+ * @version $Revision: 1867 $ - $Date: 2013-04-08 13:44:56 +0200 (Mon, 08 Apr 2013) $
+ */
+
+public class SignatureVerificationCache {
+
+    private static final SignatureVerificationCache SHARED_CACHE = new SignatureVerificationCache();
+
+    private int maxEntries = 4096;
+
+    private final Map<Key, Boolean> outcomes = new LinkedHashMap<Key, Boolean>(256, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+            return size() > maxEntries;
+        }
+
+    };
+
+    /**
+     * The signature verification performed when the outcome is not known yet.
+     */
+    public static interface Verification {
+
+        /**
+         * @return true if the signature is valid, false if it is not, or null if the verification could not be
+         *         performed (algorithm or provider not available, signature that cannot be processed, ...)
+         */
+        Boolean verify();
+
+    }
+
+    /**
+     * Return the cache shared by every component of the application that does not define its own.
+     * 
+     * @return
+     */
+    public static SignatureVerificationCache getSharedCache() {
+        return SHARED_CACHE;
+    }
+
+    /**
+     * Set the maximum number of verification outcomes kept in memory
+     * 
+     * @param maxEntries the maxEntries to set
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Return the outcome of the verification of the signed object by the signer, performing the verification only if
+     * this pair has not been seen before. The verification is done outside of the lock.
+     * 
+     * @param signedObject the encoded signed object, including the signature
+     * @param signer the encoded public key (or certificate) of the potential signer
+     * @param verification
+     * @return
+     */
+    public boolean isSignedBy(byte[] signedObject, byte[] signer, Verification verification) {
+        return isDigestSignedBy(digest(signedObject), signer, verification);
+    }
+
+    /**
+     * Same as isSignedBy, for a caller which already knows the SHA-256 digest of the encoded signed object.
+     * 
+     * @param signedObjectDigest the SHA-256 digest of the encoded signed object, including the signature
+     * @param signer the encoded public key (or certificate) of the potential signer
+     * @param verification
+     * @return
+     */
+    public boolean isDigestSignedBy(byte[] signedObjectDigest, byte[] signer, Verification verification) {
+        return isVerified(signedObjectDigest, digest(signer), verification);
+    }
+
+    /**
+     * Same as isSignedBy, for a caller which already knows the SHA-256 digests of both the encoded signed object and
+     * the encoded signer, such as the fingerprints of pooled certificates.
+     * 
+     * @param signedObjectDigest the SHA-256 digest of the encoded signed object, including the signature
+     * @param signerDigest the SHA-256 digest of the encoded public key (or certificate) of the potential signer
+     * @param verification
+     * @return
+     */
+    public boolean isVerified(byte[] signedObjectDigest, byte[] signerDigest, Verification verification) {
+        Key key = new Key(signedObjectDigest.clone(), signerDigest.clone());
+        synchronized (outcomes) {
+            Boolean outcome = outcomes.get(key);
+            if (outcome != null) {
+                return outcome;
+            }
+        }
+
+        Boolean outcome = verification.verify();
+        if (outcome == null) {
+            return false;
+        }
+        synchronized (outcomes) {
+            outcomes.put(key, outcome);
+        }
+        return outcome;
+    }
+
+    /**
+     * Verify a signature with the default providers. Unlike the verify methods of X509Certificate and X509CRL, an
+     * invalid signature is told apart from a verification that cannot be performed.
+     * 
+     * @param algorithm the name of the signature algorithm
+     * @param data the signed data
+     * @param signature
+     * @param publicKey
+     * @return true if the signature is valid, false if it is not or if the key does not fit the algorithm, null if the
+     *         algorithm is not available or the signature cannot be processed
+     */
+    public static Boolean verify(String algorithm, byte[] data, byte[] signature, PublicKey publicKey) {
+        try {
+            Signature verifier = Signature.getInstance(algorithm);
+            verifier.initVerify(publicKey);
+            verifier.update(data);
+            return verifier.verify(signature);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        } catch (InvalidKeyException e) {
+            return Boolean.FALSE;
+        } catch (SignatureException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of outcomes kept in memory
+     */
+    public int size() {
+        synchronized (outcomes) {
+            return outcomes.size();
+        }
+    }
+
+    /**
+     * Remove every outcome from the cache
+     */
+    public void clear() {
+        synchronized (outcomes) {
+            outcomes.clear();
+        }
+    }
+
+    private static byte[] digest(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final class Key {
+
+        private final byte[] signedObjectDigest;
+
+        private final byte[] signerDigest;
+
+        private final int hashCode;
+
+        Key(byte[] signedObjectDigest, byte[] signerDigest) {
+            this.signedObjectDigest = signedObjectDigest;
+            this.signerDigest = signerDigest;
+            this.hashCode = 31 * Arrays.hashCode(signedObjectDigest) + Arrays.hashCode(signerDigest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return Arrays.equals(signedObjectDigest, other.signedObjectDigest)
+                    && Arrays.equals(signerDigest, other.signerDigest);
+        }
+
+    }
+
+}
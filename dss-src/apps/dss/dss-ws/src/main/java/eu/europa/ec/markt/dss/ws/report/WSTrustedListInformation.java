@@ -55,6 +55,14 @@ public class WSTrustedListInformation {
 
     private Date statusStartingDateAtReferenceTime;
 
+    private Long trustedListsVersion;
+
+    private Date trustedListsLoadingTime;
+
+    private Long trustedListsAge;
+
+    private boolean trustedListsRestored;
+
     /**
      * The default constructor for WSTrustedListInformation.
      */
@@ -76,6 +84,10 @@ public class WSTrustedListInformation {
         currentStatusStartingDate = info.getCurrentStatusStartingDate();
         statusAtReferenceTime = info.getStatusAtReferenceTime();
         statusStartingDateAtReferenceTime = info.getStatusStartingDateAtReferenceTime();
+        trustedListsVersion = info.getTrustedListsVersion();
+        trustedListsLoadingTime = info.getTrustedListsLoadingTime();
+        trustedListsAge = info.getTrustedListsAge();
+        trustedListsRestored = info.isTrustedListsRestored();
     }
 
     /**
@@ -232,4 +244,60 @@ public class WSTrustedListInformation {
         this.statusStartingDateAtReferenceTime = statusStartingDateAtReferenceTime;
     }
 
+    /**
+     * @return the trustedListsVersion
+     */
+    public Long getTrustedListsVersion() {
+        return trustedListsVersion;
+    }
+
+    /**
+     * @param trustedListsVersion the trustedListsVersion to set
+     */
+    public void setTrustedListsVersion(Long trustedListsVersion) {
+        this.trustedListsVersion = trustedListsVersion;
+    }
+
+    /**
+     * @return the trustedListsLoadingTime
+     */
+    public Date getTrustedListsLoadingTime() {
+        return trustedListsLoadingTime;
+    }
+
+    /**
+     * @param trustedListsLoadingTime the trustedListsLoadingTime to set
+     */
+    public void setTrustedListsLoadingTime(Date trustedListsLoadingTime) {
+        this.trustedListsLoadingTime = trustedListsLoadingTime;
+    }
+
+    /**
+     * @return the trustedListsAge
+     */
+    public Long getTrustedListsAge() {
+        return trustedListsAge;
+    }
+
+    /**
+     * @param trustedListsAge the trustedListsAge to set
+     */
+    public void setTrustedListsAge(Long trustedListsAge) {
+        this.trustedListsAge = trustedListsAge;
+    }
+
+    /**
+     * @return the trustedListsRestored
+     */
+    public boolean isTrustedListsRestored() {
+        return trustedListsRestored;
+    }
+
+    /**
+     * @param trustedListsRestored the trustedListsRestored to set
+     */
+    public void setTrustedListsRestored(boolean trustedListsRestored) {
+        this.trustedListsRestored = trustedListsRestored;
+    }
+
 }